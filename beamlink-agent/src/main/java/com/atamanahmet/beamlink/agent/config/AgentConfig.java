@@ -28,6 +28,15 @@ public class AgentConfig {
     @Value("${agent.upload.partial-directory:./data/partial}")
     private String partialDirectory;
 
+    /* CHANNEL, MAPPED for fast local SSDs or DIRECT to keep huge files out of the page cache.
+       MAPPED files are unmapped by the GC, on Windows a completed file can stay locked until then */
+    @Value("${agent.upload.write-mode:CHANNEL}")
+    private String writeMode;
+
+    /* files smaller than this are always written through the page cache */
+    @Value("${agent.upload.write-mode-min-size:0}")
+    private long writeModeMinSize;
+
     @Value("${server.port}")
     private int port;
 
@@ -40,6 +49,196 @@ public class AgentConfig {
     @Value("${agent.auto-resume-group-transfers:false}")
     private boolean autoResumeGroupTransfers;
 
+    /* chunks kept in flight per transfer, 1 means stop and wait */
+    @Value("${agent.transfer.window-size:4}")
+    private int transferWindowSize;
+
+    /* how far ahead of confirmedOffset the receiver accepts out of order chunks */
+    @Value("${agent.transfer.receive-window-bytes:67108864}")
+    private long receiveWindowBytes;
+
+    /* size of the first chunk to a peer, later chunks are sized from measured throughput and ack time */
+    @Value("${agent.transfer.chunk-size-initial:8388608}")
+    private long chunkSizeInitial;
+
+    @Value("${agent.transfer.chunk-size-min:262144}")
+    private long chunkSizeMin;
+
+    /* keep window-size times this within the receive window, 0 sends every chunk at the initial size */
+    @Value("${agent.transfer.chunk-size-max:16777216}")
+    private long chunkSizeMax;
+
+    /* how long one chunk should take to send and ack */
+    @Value("${agent.transfer.chunk-target-ms:1000}")
+    private long chunkTargetMs;
+
+    /* COPY reads chunks into pooled direct buffers, MAPPED sends them from a mapping of the file.
+       A mapped file cut short while its chunk is read crashes the JVM and stays locked on Windows */
+    @Value("${agent.transfer.chunk-read-mode:COPY}")
+    private String chunkReadMode;
+
+    /* idle chunk buffers kept for reuse */
+    @Value("${agent.transfer.chunk-buffer-pool-bytes:134217728}")
+    private long chunkBufferPoolBytes;
+
+    /* first retry of a failed chunk waits up to this long, doubling per attempt, the actual wait is random below it */
+    @Value("${agent.transfer.retry-base-delay-ms:1000}")
+    private long retryBaseDelayMs;
+
+    @Value("${agent.transfer.retry-max-delay-ms:30000}")
+    private long retryMaxDelayMs;
+
+    /* consecutive failed chunks to one peer that pause all transfers to it until it answers again, 0 disables it */
+    @Value("${agent.transfer.circuit-breaker-failures:5}")
+    private int circuitBreakerFailures;
+
+    /* how long an open circuit stays open before sends and a probe go through again, 0 waits for the peer to be reported online */
+    @Value("${agent.transfer.circuit-breaker-cooldown-ms:30000}")
+    private long circuitBreakerCooldownMs;
+
+    /* byte ranges a large file is split into, also the most this agent accepts as receiver */
+    @Value("${agent.transfer.stripes:4}")
+    private int transferStripes;
+
+    /* files below this size are always sent as a single stream */
+    @Value("${agent.transfer.stripe-min-size:268435456}")
+    private long stripeMinSize;
+
+    /* confirmedOffset is written to the DB after this many bytes or millis, whichever comes first */
+    @Value("${agent.transfer.checkpoint-interval-bytes:16777216}")
+    private long checkpointIntervalBytes;
+
+    @Value("${agent.transfer.checkpoint-interval-ms:1000}")
+    private long checkpointIntervalMs;
+
+    /* NONE, GROUP_COMMIT or STRICT, how received bytes are forced to disk before their offset is persisted */
+    @Value("${agent.transfer.durability:GROUP_COMMIT}")
+    private String durability;
+
+    /* under GROUP_COMMIT the partial file is forced after this many bytes or millis, whichever comes first */
+    @Value("${agent.transfer.fsync-interval-bytes:67108864}")
+    private long fsyncIntervalBytes;
+
+    @Value("${agent.transfer.fsync-interval-ms:1000}")
+    private long fsyncIntervalMs;
+
+    /* chunks are sent with their CRC32C and files with the CRC32C of every segment, the receiver verifies both */
+    @Value("${agent.transfer.checksums:true}")
+    private boolean checksums;
+
+    /* chunks are deflated when the target agrees and the file and chunk are not compressed already */
+    @Value("${agent.transfer.compression:true}")
+    private boolean compression;
+
+    /* a whole-file mismatch is resent from the start of the segment it was found in */
+    @Value("${agent.transfer.checksum-segment-size:67108864}")
+    private long checksumSegmentSize;
+
+    /* child files of a directory or batch transfer sent at the same time, 1 means one after another */
+    @Value("${agent.transfer.group-parallelism:4}")
+    private int groupParallelism;
+
+    /* directory files below this size are sent packed together, 0 sends every file on its own */
+    @Value("${agent.transfer.pack-threshold:1048576}")
+    private long packThreshold;
+
+    /* upper bound of one pack chunk, also the most this agent accepts as receiver */
+    @Value("${agent.transfer.pack-size:8388608}")
+    private long packSize;
+
+    /* files per directory manifest segment registered on the target, 0 registers the whole tree at once */
+    @Value("${agent.transfer.manifest-segment-size:1000}")
+    private int manifestSegmentSize;
+
+    /* files from this size carry a content hash so the target can reuse a copy it already has, 0 disables it */
+    @Value("${agent.transfer.dedup-min-size:1048576}")
+    private long dedupMinSize;
+
+    /* a file from this size replacing an earlier copy is rebuilt from that copy, only changed blocks are sent, 0 disables it */
+    @Value("${agent.transfer.delta-min-size:67108864}")
+    private long deltaMinSize;
+
+    /* block size this agent signs its earlier copy with as receiver of a delta transfer */
+    @Value("${agent.transfer.delta-block-size:131072}")
+    private int deltaBlockSize;
+
+    /* time a source waits for the block signatures of a delta transfer, the target reads its whole earlier copy */
+    @Value("${agent.transfer.signatures-timeout-ms:900000}")
+    private long signaturesTimeoutMs;
+
+    /* single file transfers sent at the same time, more wait in the queue */
+    @Value("${agent.executor.transfer-threads:8}")
+    private int transferThreads;
+
+    /* directory and batch transfers orchestrated at the same time, each holds a thread for the whole group */
+    @Value("${agent.executor.group-threads:4}")
+    private int groupThreads;
+
+    /* registration and peer recovery work */
+    @Value("${agent.executor.control-threads:2}")
+    private int controlThreads;
+
+    /* chunk requests in flight across all transfers */
+    @Value("${agent.executor.chunk-threads:64}")
+    private int chunkThreads;
+
+    /* file checksums computed at the same time, on the sending and the receiving side */
+    @Value("${agent.executor.checksum-threads:2}")
+    private int checksumThreads;
+
+    /* work waiting for a thread, per pool */
+    @Value("${agent.executor.queue-capacity:1000}")
+    private int executorQueueCapacity;
+
+    /* outbound transfers sending at the same time, a directory or batch counts as one. 0 for no limit */
+    @Value("${agent.queue.max-concurrent:4}")
+    private int queueMaxConcurrent;
+
+    /* HTTP_1_1 or HTTP_2 for calls to other agents. With HTTP_1_1 every stripe gets a connection of its own,
+       plain-text HTTP_2 multiplexes all of them over one connection to the peer */
+    @Value("${agent.http.version:HTTP_1_1}")
+    private String httpVersion;
+
+    /* time to open a connection to another agent */
+    @Value("${agent.http.connect-timeout-ms:5000}")
+    private long httpConnectTimeoutMs;
+
+    /* time for another agent to answer a request, requests that set their own keep it */
+    @Value("${agent.http.request-timeout-ms:60000}")
+    private long httpRequestTimeoutMs;
+
+    /* bytes per second sent to all peers together, 0 for no limit. Can be changed at runtime */
+    @Value("${agent.bandwidth.global-bytes-per-second:0}")
+    private long bandwidthGlobalBytesPerSecond;
+
+    /* share of the global limit directory and batch sends keep while single file sends run, single files keep the rest, 1 for no priority */
+    @Value("${agent.bandwidth.background-share:0.2}")
+    private double bandwidthBackgroundShare;
+
+    /* inbound transfers receiving at the same time, more are told to retry later. 0 for no limit */
+    @Value("${agent.receive.max-transfers:8}")
+    private int receiveMaxTransfers;
+
+    /* chunk bytes being written at the same time across inbound transfers. 0 for no limit */
+    @Value("${agent.receive.max-bytes-in-flight:134217728}")
+    private long receiveMaxBytesInFlight;
+
+    /* an inbound transfer with no chunk for this long gives up its receive slot */
+    @Value("${agent.receive.slot-idle-ms:10000}")
+    private long receiveSlotIdleMs;
+
+    /* how long a rejected sender is asked to wait before trying again */
+    @Value("${agent.receive.retry-after-ms:1000}")
+    private long receiveRetryAfterMs;
+
+    /* flight recordings started from the UI are written here when they stop */
+    @Value("${agent.diagnostics.recording-directory:./data/recordings}")
+    private String recordingDirectory;
+
+    /* a recording left running stops and is written after this long */
+    @Value("${agent.diagnostics.recording-max-minutes:30}")
+    private long recordingMaxMinutes;
+
     @PostConstruct
     public void init() {
 
@@ -0,0 +1,102 @@
+package com.atamanahmet.beamlink.agent.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Thread pools per workload, so one kind of work cannot starve another.
+ * Single file sends, group orchestration and control plane calls (registration,
+ * recovery) each get their own bounded pool, work beyond it waits in the pool's queue.
+ * Chunk I/O gets a bounded pool too, a chunk it rejects is handed back to the retry
+ * timer and tried again shortly, it never runs on the thread that submitted it.
+ * The retry timer is a single thread that only hands due attempts to the chunk pool.
+ * Stripe loops, which wait on their chunks, run on their own pool sized for every stripe
+ * of every transfer, so they never hold the chunk threads their chunks need.
+ * File checksums are read on their own pool, off the threads moving chunks.
+ * Unqualified @Async methods run on the control pool.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class ExecutorConfig implements AsyncConfigurer {
+
+    public static final String TRANSFER_EXECUTOR = "transferExecutor";
+    public static final String GROUP_EXECUTOR = "groupExecutor";
+    public static final String GROUP_FILE_EXECUTOR = "groupFileExecutor";
+    public static final String CONTROL_EXECUTOR = "controlExecutor";
+    public static final String CHUNK_EXECUTOR = "chunkExecutor";
+    public static final String STRIPE_EXECUTOR = "stripeExecutor";
+    public static final String RETRY_SCHEDULER = "retryScheduler";
+    public static final String CHECKSUM_EXECUTOR = "checksumExecutor";
+
+    private final AgentConfig agentConfig;
+
+    @Bean(TRANSFER_EXECUTOR)
+    public ThreadPoolTaskExecutor transferExecutor() {
+        return pool("transfer-", agentConfig.getTransferThreads(), agentConfig.getExecutorQueueCapacity());
+    }
+
+    @Bean(GROUP_EXECUTOR)
+    public ThreadPoolTaskExecutor groupExecutor() {
+        return pool("group-", agentConfig.getGroupThreads(), agentConfig.getExecutorQueueCapacity());
+    }
+
+    /* child files of running groups, a group never holds more than its parallelism */
+    @Bean(GROUP_FILE_EXECUTOR)
+    public ThreadPoolTaskExecutor groupFileExecutor() {
+        int parallelism = Math.max(1, agentConfig.getGroupParallelism());
+        return pool("group-file-", agentConfig.getGroupThreads() * parallelism, agentConfig.getExecutorQueueCapacity());
+    }
+
+    @Bean(CONTROL_EXECUTOR)
+    public ThreadPoolTaskExecutor controlExecutor() {
+        return pool("control-", agentConfig.getControlThreads(), agentConfig.getExecutorQueueCapacity());
+    }
+
+    @Bean(CHUNK_EXECUTOR)
+    public ThreadPoolTaskExecutor chunkExecutor() {
+        return pool("chunk-", agentConfig.getChunkThreads(), agentConfig.getExecutorQueueCapacity());
+    }
+
+    @Bean(STRIPE_EXECUTOR)
+    public ThreadPoolTaskExecutor stripeExecutor() {
+        int stripes = Math.max(1, agentConfig.getTransferStripes());
+        return pool("stripe-", agentConfig.getTransferThreads() * stripes, agentConfig.getExecutorQueueCapacity());
+    }
+
+    @Bean(name = RETRY_SCHEDULER, destroyMethod = "shutdownNow")
+    public ScheduledExecutorService retryScheduler() {
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("chunk-retry-");
+        threads.setDaemon(true);
+        return Executors.newSingleThreadScheduledExecutor(threads);
+    }
+
+    @Bean(CHECKSUM_EXECUTOR)
+    public ThreadPoolTaskExecutor checksumExecutor() {
+        return pool("checksum-", agentConfig.getChecksumThreads(), agentConfig.getExecutorQueueCapacity());
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return controlExecutor();
+    }
+
+    /* threads beyond those busy time out, an idle agent holds none */
+    private ThreadPoolTaskExecutor pool(String prefix, int threads, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(prefix);
+        executor.setCorePoolSize(Math.max(1, threads));
+        executor.setMaxPoolSize(Math.max(1, threads));
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+}
@@ -0,0 +1,30 @@
+package com.atamanahmet.beamlink.agent.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * The one JDK HttpClient for calls to other agents.
+ * It keeps connections to each peer open between requests, a batch of many small
+ * files reuses the same few connections instead of opening one per file.
+ * HTTP/1.1 by default, so parallel stripes of a transfer each stream over a connection
+ * of their own instead of sharing the window of one multiplexed connection.
+ */
+@Configuration
+public class PeerHttpClientConfig {
+
+    @Bean
+    public HttpClient peerHttpClient(AgentConfig config) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.valueOf(config.getHttpVersion()))
+                .followRedirects(HttpClient.Redirect.NEVER);
+
+        if (config.getHttpConnectTimeoutMs() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.getHttpConnectTimeoutMs()));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,38 @@
+package com.atamanahmet.beamlink.agent.controller;
+
+import com.atamanahmet.beamlink.agent.dto.BandwidthLimits;
+import com.atamanahmet.beamlink.agent.service.BandwidthScheduler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Bandwidth limits of outgoing transfers, changed from the UI at runtime
+ */
+@RestController
+@RequestMapping("/api/bandwidth")
+@RequiredArgsConstructor
+public class BandwidthController {
+
+    private final BandwidthScheduler bandwidthScheduler;
+
+    @GetMapping
+    public ResponseEntity<BandwidthLimits> getLimits() {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(bandwidthScheduler.limits());
+    }
+
+    /**
+     * Replaces all limits, returns them as applied
+     */
+    @PutMapping
+    public ResponseEntity<BandwidthLimits> setLimits(@RequestBody BandwidthLimits limits) {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(bandwidthScheduler.apply(limits));
+    }
+}
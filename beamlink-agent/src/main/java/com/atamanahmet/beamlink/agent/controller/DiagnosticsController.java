@@ -0,0 +1,75 @@
+package com.atamanahmet.beamlink.agent.controller;
+
+import com.atamanahmet.beamlink.agent.dto.FlightRecordingStatus;
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.service.FlightRecordingService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Flight recordings of a live agent, started and stopped from the UI
+ */
+@RestController
+@RequestMapping("/api/diagnostics/recording")
+@RequiredArgsConstructor
+public class DiagnosticsController {
+
+    private final FlightRecordingService flightRecordingService;
+
+    @GetMapping
+    public ResponseEntity<FlightRecordingStatus> getStatus() {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(flightRecordingService.status());
+    }
+
+    /**
+     * Starts a recording with the JDK's default or profile settings.
+     * Returns 400 for other settings, 409 if one is already running.
+     */
+    @PostMapping("/start")
+    public ResponseEntity<FlightRecordingStatus> start(
+            @RequestParam(defaultValue = "default") String settings) throws IOException {
+        try {
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .body(flightRecordingService.start(settings));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (FileTransferException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /**
+     * Stops the recording and downloads it, open it in JDK Mission Control or with the jfr tool.
+     * Returns 409 if none was started.
+     */
+    @PostMapping("/stop")
+    public ResponseEntity<Resource> stop() {
+        Path file;
+        try {
+            file = flightRecordingService.stop();
+        } catch (FileTransferException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(file.getFileName().toString()).build().toString())
+                .body(new FileSystemResource(file));
+    }
+}
@@ -1,15 +1,23 @@
 package com.atamanahmet.beamlink.agent.controller;
 
 import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.dto.ExecutorStats;
+import com.atamanahmet.beamlink.agent.dto.PeerHttpStats;
+import com.atamanahmet.beamlink.agent.dto.ReceiveAdmissionStats;
+import com.atamanahmet.beamlink.agent.http.PeerHttpMetrics;
 import com.atamanahmet.beamlink.agent.service.AgentService;
+import com.atamanahmet.beamlink.agent.service.ReceiveAdmission;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
 
 import java.io.File;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Provides agent status information
@@ -21,6 +29,9 @@ public class StatusController {
 
     private final AgentConfig config;
     private final AgentService agentService;
+    private final Map<String, ThreadPoolTaskExecutor> executors;
+    private final PeerHttpMetrics peerHttpMetrics;
+    private final ReceiveAdmission receiveAdmission;
 
     /**
      * Get agent status
@@ -43,6 +54,48 @@ public class StatusController {
                 .body(status);
     }
 
+    /**
+     * Active threads and queue depth of each worker pool
+     */
+    @GetMapping("/status/executors")
+    public ResponseEntity<List<ExecutorStats>> getExecutors() {
+
+        List<ExecutorStats> stats = executors.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> {
+                    ThreadPoolExecutor pool = entry.getValue().getThreadPoolExecutor();
+                    return new ExecutorStats(entry.getKey(), pool.getActiveCount(), pool.getPoolSize(),
+                            pool.getMaximumPoolSize(), pool.getQueue().size(), pool.getCompletedTaskCount());
+                })
+                .toList();
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(stats);
+    }
+
+    /**
+     * Requests, latency and HTTP version per peer of calls to other agents
+     */
+    @GetMapping("/status/http")
+    public ResponseEntity<List<PeerHttpStats>> getPeerHttp() {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(peerHttpMetrics.stats());
+    }
+
+    /**
+     * Inbound transfers holding a receive slot, bytes being written and requests turned away
+     */
+    @GetMapping("/status/receive")
+    public ResponseEntity<ReceiveAdmissionStats> getReceiveAdmission() {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(receiveAdmission.stats());
+    }
+
     private int getFileCount() {
         File dir = new File(config.getUploadDirectory());
         File[] files = dir.listFiles();
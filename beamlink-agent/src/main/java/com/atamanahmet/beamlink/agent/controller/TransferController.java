@@ -1,23 +1,35 @@
 package com.atamanahmet.beamlink.agent.controller;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.*;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.metrics.TransferMetrics;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.service.AdaptiveChunkSizer;
 import com.atamanahmet.beamlink.agent.service.BatchSenderService;
 import com.atamanahmet.beamlink.agent.service.ChunkReceiverService;
 import com.atamanahmet.beamlink.agent.service.DirectorySenderService;
+import com.atamanahmet.beamlink.agent.service.OutboundTransferQueue;
+import com.atamanahmet.beamlink.agent.service.ReceiveAdmission;
 import com.atamanahmet.beamlink.agent.service.TransferSenderService;
+import com.atamanahmet.beamlink.agent.util.ChecksumFormat;
+import com.atamanahmet.beamlink.agent.util.ChunkCompression;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -33,6 +45,11 @@ public class TransferController {
     private final ChunkReceiverService receiverService;
     private final DirectorySenderService directorySenderService;
     private final BatchSenderService batchSenderService;
+    private final AgentConfig agentConfig;
+    private final AdaptiveChunkSizer chunkSizer;
+    private final OutboundTransferQueue outboundQueue;
+    private final ReceiveAdmission receiveAdmission;
+    private final TransferMetrics metrics;
 
     /**
      * User initiates a transfer from the UI.
@@ -75,6 +92,60 @@ public class TransferController {
                 .body(transfers);
     }
 
+    /**
+     * Chunk size currently chosen per peer and the measurements it was chosen from.
+     */
+    @GetMapping("/chunk-sizing")
+    public ResponseEntity<List<ChunkSizingStats>> getChunkSizing() {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(chunkSizer.stats());
+    }
+
+    /**
+     * Outbound transfers waiting for a send slot, in the order they will start.
+     */
+    @GetMapping("/queue")
+    public ResponseEntity<List<QueuedTransferResponse>> getQueue() {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(outboundQueue.snapshot());
+    }
+
+    /**
+     * Changes the priority of a waiting transfer, directory or batch.
+     * Returns 409 if it is not waiting in the queue.
+     */
+    @PutMapping("/queue/{id}/priority")
+    public ResponseEntity<QueuedTransferResponse> reprioritize(
+            @PathVariable UUID id,
+            @RequestParam int priority) {
+        try {
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .body(outboundQueue.reprioritize(id, priority));
+        } catch (FileTransferException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /**
+     * Moves a waiting transfer ahead of the others of its priority.
+     * Returns 409 if it is not waiting in the queue.
+     */
+    @PostMapping("/queue/{id}/front")
+    public ResponseEntity<QueuedTransferResponse> moveToFront(@PathVariable UUID id) {
+        try {
+            return ResponseEntity
+                    .status(HttpStatus.OK)
+                    .body(outboundQueue.moveToFront(id));
+        } catch (FileTransferException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
     /**
      * Resume a paused transfer.
      * Queries target for confirmed offset first, then restarts async sending.
@@ -104,11 +175,13 @@ public class TransferController {
     /**
      * Cancel an in progress transfer.
      * Sender loop checks status before each chunk and stops on CANCELLED.
+     * An inbound transfer gives up its receive window right away.
      */
     @DeleteMapping("/{transferId}")
     public ResponseEntity<Void> cancel(@PathVariable UUID transferId) {
 
         senderService.cancel(transferId);
+        receiverService.evictWindow(transferId);
 
         return ResponseEntity
                 .status(HttpStatus.NO_CONTENT)
@@ -118,14 +191,19 @@ public class TransferController {
     /**
      * Source registers the transfer on target before sending any chunks.
      * Target prepares the partial file on disk and saves its own FileTransfer record.
+     * Replies with the stripe count it accepted, capped by its own stripe setting,
+     * whether the file was completed from a local copy with the same content hash,
+     * whether it is to be sent as a delta against the target's earlier copy
+     * and the codec chunks may be compressed with, none when the source offered none this agent decodes.
      */
     @PostMapping("/receive")
-    public ResponseEntity<Void> prepareReceive(@RequestBody Map<String, Object> body) {
+    public ResponseEntity<Map<String, Object>> prepareReceive(@RequestBody Map<String, Object> body) {
 
         UUID transferId = UUID.fromString((String) body.get("transferId"));
         UUID sourceAgentId = UUID.fromString((String) body.get("sourceAgentId"));
         String fileName = (String) body.get("fileName");
         long fileSize = ((Number) body.get("fileSize")).longValue();
+        int requestedStripes = body.get("stripes") instanceof Number n ? n.intValue() : 1;
 
         FileTransfer transfer = FileTransfer.initiate(
                 transferId,
@@ -135,32 +213,168 @@ public class TransferController {
                 null,
                 fileSize
         );
+        transfer.setContentHash((String) body.get("contentHash"));
         transfer.setStatus(TransferStatus.ACTIVE);
+        transfer.splitIntoStripes(Math.min(requestedStripes, agentConfig.getTransferStripes()));
 
         receiverService.prepareReceive(transfer);
 
+        Map<String, Object> accepted = new HashMap<>();
+        accepted.put("stripes", transfer.getStripeCount());
+        accepted.put("completed", transfer.getStatus() == TransferStatus.COMPLETED);
+        accepted.put("delta", transfer.isDelta());
+        String compression = negotiateCompression(body.get("compression") instanceof List<?> offered ? offered : null);
+        if (compression != null) {
+            accepted.put("compression", compression);
+        }
+
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .build();
+                .body(accepted);
 
     }
 
     /**
      * Receives a raw chunk of bytes and writes it to disk at the correct offset.
+     * A chunk with a Content-Encoding is decompressed as it is written, its range and checksum are of the decompressed bytes.
+     * A chunk that decodes to more or fewer bytes than its range is rejected, it is admitted by the length of its range.
+     * A chunk sent with its CRC32C is answered with 422 when its bytes do not match.
+     * Returns 503 with Retry-After while the receiver is at its admission limits.
      */
     @PatchMapping("/{transferId}/chunk")
     public ResponseEntity<ChunkAckResponse> receiveChunk(
             @PathVariable UUID transferId,
             @RequestHeader("Content-Range") String contentRange,
+            @RequestHeader(value = ChecksumFormat.CHUNK_HEADER, required = false) String checksum,
+            @RequestHeader(value = "Content-Encoding", required = false) String encoding,
             HttpServletRequest request) throws IOException {
 
-        long offset = parseOffset(contentRange);
+        ByteRange range = parseRange(contentRange);
+        Long expectedChecksum = parseChecksum(checksum);
+
+        // the bytes written, a compressed body is smaller than what it decodes to
+        ReceiveAdmission.Admission admission = receiveAdmission.tryAdmit(transferId, range.length());
+        if (admission == null) return receiverBusy();
+
+        ChunkAckResponse ack;
+        try (admission; InputStream body = decoding(request.getInputStream(), encoding, range.length())) {
+            ack = receiverService.receiveChunk(
+                    transferId,
+                    range.start(),
+                    range.length(),
+                    body,   // decompressed while it is written, held to the range
+                    expectedChecksum
+            );
+        }
+        metrics.received(request.getRemoteAddr(), request.getContentLengthLong());
+        if (ack.isComplete()) receiveAdmission.finished(transferId);
 
-        ChunkAckResponse ack = receiverService.receiveChunk(
-                transferId,
-                offset,
-                request.getInputStream()   // raw stream
-        );
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(ack);
+    }
+
+    /**
+     * Source sends the CRC32C of every segment of the file before its last chunks,
+     * the file is verified against them before it is moved to its final location.
+     */
+    @PutMapping("/{transferId}/checksums")
+    public ResponseEntity<Void> receiveChecksums(
+            @PathVariable UUID transferId,
+            HttpServletRequest request) throws IOException {
+
+        receiverService.acceptChecksums(transferId,
+                ChecksumFormat.readSegments(new DataInputStream(request.getInputStream())));
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .build();
+    }
+
+    /**
+     * Source offers the content hash of a large file before its first chunk,
+     * replies whether the file was completed from a received copy with the same content.
+     */
+    @PutMapping("/{transferId}/content-hash")
+    public ResponseEntity<Map<String, Object>> receiveContentHash(
+            @PathVariable UUID transferId,
+            @RequestBody Map<String, Object> body) {
+
+        boolean completed = receiverService.acceptContentHash(transferId, (String) body.get("contentHash"));
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(Map.of("completed", completed));
+    }
+
+    /**
+     * Source fetches this before sending a delta transfer,
+     * block signatures of the earlier copy the file is rebuilt from.
+     */
+    @GetMapping("/{transferId}/signatures")
+    public ResponseEntity<byte[]> getBlockSignatures(@PathVariable UUID transferId) {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(receiverService.blockSignatures(transferId));
+    }
+
+    /**
+     * Receives delta instructions for a byte range of a delta transfer
+     * and rebuilds that range of the partial file from the earlier copy.
+     * Admitted like a chunk.
+     */
+    @PatchMapping("/{transferId}/delta")
+    public ResponseEntity<ChunkAckResponse> receiveDelta(
+            @PathVariable UUID transferId,
+            @RequestHeader("Content-Range") String contentRange,
+            HttpServletRequest request) throws IOException {
+
+        ByteRange range = parseRange(contentRange);
+
+        ReceiveAdmission.Admission admission = receiveAdmission.tryAdmit(transferId, request.getContentLengthLong());
+        if (admission == null) return receiverBusy();
+
+        ChunkAckResponse ack;
+        try (admission) {
+            ack = receiverService.receiveDelta(
+                    transferId,
+                    range.start(),
+                    range.length(),
+                    request.getInputStream()
+            );
+        }
+        metrics.received(request.getRemoteAddr(), request.getContentLengthLong());
+        if (ack.isComplete()) receiveAdmission.finished(transferId);
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(ack);
+    }
+
+    /**
+     * Receives a pack of small directory files and writes each to its final location.
+     * Acks the files it completed, the source sends the others on their own.
+     * Admitted like a chunk, the directory holds the receive slot.
+     */
+    @PostMapping("/directory/{directoryTransferId}/pack")
+    public ResponseEntity<PackAckResponse> receivePack(
+            @PathVariable UUID directoryTransferId,
+            HttpServletRequest request) throws IOException {
+
+        ReceiveAdmission.Admission admission =
+                receiveAdmission.tryAdmit(directoryTransferId, request.getContentLengthLong());
+        if (admission == null) return receiverBusy();
+
+        PackAckResponse ack;
+        try (admission) {
+            ack = receiverService.receivePack(
+                    directoryTransferId,
+                    request.getInputStream()
+            );
+        }
+        metrics.received(request.getRemoteAddr(), request.getContentLengthLong());
 
         return ResponseEntity
                 .status(HttpStatus.OK)
@@ -169,59 +383,128 @@ public class TransferController {
 
     /**
      * Target receives directory registration,
-     * creates records and allocates all partial files
+     * creates records and allocates all partial files,
+     * replies with the files completed from a local copy
      */
     @PostMapping("/receive-directory")
-    public ResponseEntity<Void> prepareReceiveDirectory(
+    public ResponseEntity<RegistrationAckResponse> prepareReceiveDirectory(
             @RequestBody ReceiveDirectoryRequest request) {
 
-        receiverService.prepareReceiveDirectory(request);
+        List<UUID> completed = receiverService.prepareReceiveDirectory(request);
 
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .build();
+                .body(new RegistrationAckResponse(completed, negotiateCompression(request.getCompression())));
+    }
+
+    /**
+     * Target receives a further manifest segment of a directory
+     * the source is still walking, allocates the new partial files,
+     * replies with the files completed from a local copy
+     */
+    @PostMapping("/receive-directory/{directoryTransferId}/files")
+    public ResponseEntity<RegistrationAckResponse> appendDirectoryManifest(
+            @PathVariable UUID directoryTransferId,
+            @RequestBody ReceiveDirectoryRequest request) {
+
+        List<UUID> completed = receiverService.appendDirectoryManifest(directoryTransferId, request);
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(new RegistrationAckResponse(completed, negotiateCompression(request.getCompression())));
     }
 
     /** Target receives batch registration,
-     * creates records and allocates all partial files
+     * creates records and allocates all partial files,
+     * replies with the files completed from a local copy
      */
     @PostMapping("/receive-batch")
-    public ResponseEntity<Void> prepareReceiveBatch(
+    public ResponseEntity<RegistrationAckResponse> prepareReceiveBatch(
             @RequestBody ReceiveBatchRequest request) {
 
-        receiverService.prepareReceiveBatch(request);
+        List<UUID> completed = receiverService.prepareReceiveBatch(request);
 
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .build();
+                .body(new RegistrationAckResponse(completed, negotiateCompression(request.getCompression())));
     }
 
     /**
      * Source queries this to find confirmed offset before resuming.
+     * Striped transfers also report the confirmed offset of every stripe.
      */
     @GetMapping("/{transferId}/offset")
-    public ResponseEntity<Map<String, Long>> getOffset(@PathVariable UUID transferId) {
+    public ResponseEntity<Map<String, Object>> getOffset(@PathVariable UUID transferId) {
 
         FileTransfer transfer = senderService.getTransfer(transferId);
+        receiverService.applyLiveOffsets(transfer);
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("confirmedOffset", transfer.getConfirmedOffset());
+        if (transfer.isStriped()) {
+            body.put("stripeOffsets", transfer.getStripeOffsets());
+        }
 
         return ResponseEntity
                 .status(HttpStatus.OK)
-                .body(Map.of("confirmedOffset", transfer.getConfirmedOffset()));
+                .body(body);
+    }
+
+    /* the sender waits Retry-After seconds and sends the same request again */
+    private <T> ResponseEntity<T> receiverBusy() {
+        return ResponseEntity
+                .status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(receiveAdmission.retryAfterSeconds()))
+                .build();
     }
 
     /**
-     * Parses offset from Content-Range header.
+     * Parses the byte range from Content-Range header, both ends inclusive.
      */
-    private long parseOffset(String contentRange) {
+    private ByteRange parseRange(String contentRange) {
+        ByteRange range;
         try {
-            // "bytes 0-8388607/104857600" → "0"
+            // "bytes 0-8388607/104857600" → 0, 8388607
             String bytesPart = contentRange.replace("bytes ", "");
-            String offsetStr = bytesPart.substring(0, bytesPart.indexOf('-'));
-            return Long.parseLong(offsetStr.trim());
+            int dash = bytesPart.indexOf('-');
+            int slash = bytesPart.indexOf('/');
+            range = new ByteRange(
+                    Long.parseLong(bytesPart.substring(0, dash).trim()),
+                    Long.parseLong(bytesPart.substring(dash + 1, slash < 0 ? bytesPart.length() : slash).trim()));
         } catch (Exception e) {
             throw new FileTransferException(
                     "Invalid Content-Range header: " + contentRange, e);
         }
+        if (range.start() < 0 || range.end() < range.start()) {
+            throw new FileTransferException("Invalid Content-Range header: " + contentRange, null);
+        }
+        return range;
+    }
+
+    /* the codec of the offered ones this agent decodes, null when compression is off */
+    private String negotiateCompression(List<?> offered) {
+        return agentConfig.isCompression() ? ChunkCompression.negotiate(offered) : null;
+    }
+
+    private InputStream decoding(InputStream body, String encoding, long length) {
+        try {
+            return ChunkCompression.decoding(body, encoding, length);
+        } catch (IllegalArgumentException e) {
+            throw new FileTransferException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Parses the optional chunk checksum header, null when the chunk came without one.
+     */
+    private Long parseChecksum(String checksum) {
+        if (checksum == null) return null;
+        try {
+            return ChecksumFormat.parse(checksum);
+        } catch (IllegalArgumentException e) {
+            throw new FileTransferException(
+                    "Invalid " + ChecksumFormat.CHUNK_HEADER + " header: " + checksum, e);
+        }
     }
 
     /**
@@ -253,6 +536,12 @@ public class TransferController {
                 .body(response);
     }
 
+    private record ByteRange(long start, long end) {
+        long length() {
+            return end - start + 1;
+        }
+    }
+
     // Mapper for transfer
     private TransferStatusResponse toResponse(FileTransfer t) {
         return new TransferStatusResponse(
@@ -51,6 +51,13 @@ public class BatchTransfer {
     @Column
     private String failureReason;
 
+    /* higher leaves the outbound queue first, queuedAt orders equal priorities */
+    @Column(columnDefinition = "INTEGER DEFAULT 0")
+    private int queuePriority;
+
+    @Column
+    private Instant queuedAt;
+
     public static BatchTransfer initiate(
             UUID batchTransferId,
             UUID sourceAgentId,
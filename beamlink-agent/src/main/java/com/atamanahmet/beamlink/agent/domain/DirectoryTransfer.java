@@ -69,6 +69,17 @@ public class DirectoryTransfer {
     @Column
     private String failureReason;
 
+    /* higher leaves the outbound queue first, queuedAt orders equal priorities */
+    @Column(columnDefinition = "INTEGER DEFAULT 0")
+    private int queuePriority;
+
+    @Column
+    private Instant queuedAt;
+
+    /* true while the source is still walking the tree and registering files in segments */
+    @Column(columnDefinition = "BOOLEAN DEFAULT 0")
+    private boolean walkInProgress;
+
     public static DirectoryTransfer initiate(
             UUID directoryTransferId,
             UUID sourceAgentId,
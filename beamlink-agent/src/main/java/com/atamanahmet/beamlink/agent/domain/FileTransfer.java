@@ -7,10 +7,13 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Entity
-@Table(name = "file_transfer")
+@Table(name = "file_transfer",
+        indexes = @Index(name = "idx_file_transfer_content_hash", columnList = "content_hash"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -55,7 +58,21 @@ public class FileTransfer {
     private String directoryName;
 
     @Column(nullable = false)
-    private long confirmedOffset;   // bytes written to disk on target
+    private long confirmedOffset;   // bytes written to disk on target, summed over stripes when striped
+
+    /* number of byte ranges sent in parallel, 1 for a single stream */
+    @Column(columnDefinition = "INTEGER DEFAULT 1")
+    private int stripeCount;
+
+    /* absolute confirmed offset per stripe, empty unless striped */
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(
+            name = "file_transfer_stripe_offsets",
+            joinColumns = @JoinColumn(name = "transfer_id")
+    )
+    @OrderColumn(name = "stripe_index")
+    @Column(name = "confirmed_offset")
+    private List<Long> stripeOffsets = new ArrayList<>();
 
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
@@ -79,6 +96,21 @@ public class FileTransfer {
     @Column
     private String failureReason;   // last error, for UI and logs
 
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;     // SHA-256 of the whole file, set only above dedup-min-size
+
+    @Column(columnDefinition = "BOOLEAN DEFAULT 0")
+    private boolean delta;          // target rebuilds from its earlier copy, only changed blocks are sent
+
+    @Column
+    private String compression;     // codec the target agreed to decode chunks with, null when sent raw
+
+    @Column(columnDefinition = "INTEGER DEFAULT 0")
+    private int queuePriority;      // higher leaves the outbound queue first
+
+    @Column
+    private Instant queuedAt;       // order within a priority, earliest first
+
     public static FileTransfer initiate(
             UUID transferId,
             UUID sourceAgentId,
@@ -95,10 +127,57 @@ public class FileTransfer {
         ft.filePath = filePath;
         ft.fileSize = fileSize;
         ft.confirmedOffset = 0;
+        ft.stripeCount = 1;
         ft.status = TransferStatus.PENDING;
         ft.retryCount = 0;
         ft.maxRetries = 5;
         ft.createdAt = Instant.now();
         return ft;
     }
-}
\ No newline at end of file
+
+    /**
+     * Splits the file into equal byte ranges, each stripe starts unconfirmed.
+     * A count of 1 or less keeps the single stream layout.
+     */
+    public void splitIntoStripes(int count) {
+        stripeCount = Math.max(1, count);
+        stripeOffsets = new ArrayList<>();
+        if (stripeCount > 1) {
+            for (int i = 0; i < stripeCount; i++) {
+                stripeOffsets.add(stripeStart(i));
+            }
+        }
+    }
+
+    public boolean isStriped() {
+        return stripeCount > 1;
+    }
+
+    /* inclusive start of the stripe's byte range */
+    public long stripeStart(int stripe) {
+        return Math.min(fileSize, stripe * stripeLength());
+    }
+
+    /* exclusive end of the stripe's byte range */
+    public long stripeEnd(int stripe) {
+        return Math.min(fileSize, (stripe + 1) * stripeLength());
+    }
+
+    public int stripeOf(long offset) {
+        return (int) Math.min(Math.max(1, stripeCount) - 1, offset / stripeLength());
+    }
+
+    /* bytes confirmed across all stripes, used as confirmedOffset for striped transfers */
+    public long confirmedStripeBytes() {
+        long total = 0;
+        for (int i = 0; i < stripeOffsets.size(); i++) {
+            total += stripeOffsets.get(i) - stripeStart(i);
+        }
+        return total;
+    }
+
+    private long stripeLength() {
+        int stripes = Math.max(1, stripeCount);
+        return Math.max(1, (fileSize + stripes - 1) / stripes);
+    }
+}
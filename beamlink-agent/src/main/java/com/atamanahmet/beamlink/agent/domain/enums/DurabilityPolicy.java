@@ -0,0 +1,7 @@
+package com.atamanahmet.beamlink.agent.domain.enums;
+
+public enum DurabilityPolicy {
+    NONE,           // the OS writes received bytes back when it likes, offsets are persisted unforced
+    GROUP_COMMIT,   // the partial file is forced every fsync interval, only forced offsets are persisted
+    STRICT          // the partial file is forced before every ack
+}
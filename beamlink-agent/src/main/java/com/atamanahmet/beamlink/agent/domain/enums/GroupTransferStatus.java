@@ -2,6 +2,7 @@ package com.atamanahmet.beamlink.agent.domain.enums;
 
 public enum GroupTransferStatus {
     PENDING,      // registered, not yet sending
+    QUEUED,       // registered on target, waiting in the outbound queue for a send slot
     ACTIVE,       // files are flowing
     PARTIAL,      // some files failed or cancelled, others completed
     PAUSED,       // active file paused, queued files PENDING
@@ -2,6 +2,7 @@ package com.atamanahmet.beamlink.agent.domain.enums;
 
 public enum TransferStatus {
     PENDING,    // initiated, not yet sending
+    QUEUED,     // registered on target, waiting in the outbound queue for a send slot
     ACTIVE,     // chunks are flowing
     PAUSED,     // explicitly paused by user
     COMPLETED,  // all chunks received and verified
@@ -0,0 +1,16 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ChunkSizingStats {
+    private String peer;             // base url chunks are sent to
+    private long chunkSize;          // size of the next chunk
+    private long bytesPerSecond;     // smoothed throughput of one chunk stream
+    private long rttMillis;          // smoothed ack time not explained by chunk size
+    private double failureRate;      // smoothed share of failed attempts, 0 to 1
+    private long acks;
+    private long failures;
+}
@@ -0,0 +1,15 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ExecutorStats {
+    private String name;             // bean name of the pool
+    private int activeThreads;       // threads running a task
+    private int poolSize;            // threads alive, busy or idle
+    private int maxPoolSize;
+    private int queueDepth;          // tasks waiting for a thread
+    private long completedTasks;
+}
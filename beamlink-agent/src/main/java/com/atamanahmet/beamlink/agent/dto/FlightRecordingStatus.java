@@ -0,0 +1,15 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+
+@Getter
+@AllArgsConstructor
+public class FlightRecordingStatus {
+    private boolean running;
+    private String settings;         // default or profile
+    private Instant startedAt;       // null when no recording was started
+    private String file;             // where the recording is written when it stops
+}
@@ -17,4 +17,5 @@ public class InitiateBatchTransferRequest {
     private String targetIp;
     private int targetPort;
     private String targetToken;
+    private int priority;           // outbound queue priority, higher is sent first
 }
\ No newline at end of file
@@ -16,4 +16,5 @@ public class InitiateDirectoryTransferRequest {
     private String targetIp;
     private int targetPort;
     private String targetToken;
+    private int priority;           // outbound queue priority, higher is sent first
 }
\ No newline at end of file
@@ -15,4 +15,5 @@ public class InitiateTransferRequest {
     private String targetIp;
     private int targetPort;
     private String targetToken;     // auth token for target agent
+    private int priority;           // outbound queue priority, higher is sent first
 }
\ No newline at end of file
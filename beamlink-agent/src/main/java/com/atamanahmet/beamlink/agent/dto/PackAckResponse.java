@@ -0,0 +1,20 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+public class PackAckResponse {
+
+    // files of the pack written to their final location, the rest are sent on their own
+    private final List<UUID> completed;
+
+    @JsonCreator
+    public PackAckResponse(@JsonProperty("completed") List<UUID> completed) {
+        this.completed = completed;
+    }
+}
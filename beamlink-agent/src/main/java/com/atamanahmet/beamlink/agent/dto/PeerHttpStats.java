@@ -0,0 +1,15 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class PeerHttpStats {
+    private String peer;             // ip:port requests went to
+    private long requests;
+    private long failures;           // requests that got no response
+    private long http2Responses;     // responses over HTTP/2, the rest used HTTP/1.1
+    private long averageMillis;      // time from send to a complete response
+    private long maxMillis;
+}
@@ -0,0 +1,18 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Getter
+@AllArgsConstructor
+public class QueuedTransferResponse {
+    private int position;            // 0 starts next
+    private String kind;             // TRANSFER, DIRECTORY or BATCH
+    private UUID id;                 // transferId, directoryTransferId or batchTransferId
+    private String name;             // file or directory name, empty for batches
+    private int priority;
+    private Instant queuedAt;
+}
@@ -0,0 +1,15 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ReceiveAdmissionStats {
+    private int activeTransfers;     // inbound transfers holding a receive slot
+    private int maxTransfers;        // 0 for no limit
+    private long bytesInFlight;      // bytes of admitted requests still being written
+    private long maxBytesInFlight;   // 0 for no limit
+    private int waitingSources;      // source agents turned away within the idle window
+    private long rejected;           // requests answered with Retry-After since startup
+}
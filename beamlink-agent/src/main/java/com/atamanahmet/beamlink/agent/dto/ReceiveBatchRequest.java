@@ -16,6 +16,8 @@ public class ReceiveBatchRequest {
     private UUID sourceAgentId;
     private int totalFiles;
     private long totalSize;
+    // chunk codecs the source can send, the target picks one
+    private List<String> compression;
     private List<FileEntry> files;
 
     @Getter
@@ -25,5 +27,7 @@ public class ReceiveBatchRequest {
         private UUID transferId;
         private String fileName;
         private long fileSize;
+        // SHA-256 of the content, null when the file is too small to be worth deduplicating
+        private String contentHash;
     }
 }
\ No newline at end of file
@@ -17,6 +17,8 @@ public class ReceiveDirectoryRequest {
     private String directoryName;
     private int totalFiles;
     private long totalSize;
+    // chunk codecs the source can send, the target picks one
+    private List<String> compression;
     private List<String> emptyDirectories;
     // child file registrations, one per file in walk order
     private List<FileEntry> files;
@@ -29,5 +31,9 @@ public class ReceiveDirectoryRequest {
         private String fileName;
         private String relativePath;
         private long fileSize;
+        // arrives inside a pack chunk, no partial file is allocated for it
+        private boolean packed;
+        // SHA-256 of the content, null when the file is too small to be worth deduplicating
+        private String contentHash;
     }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+public class RegistrationAckResponse {
+
+    // files the target already had a copy of and completed locally, the source does not send them
+    private final List<UUID> completed;
+
+    // codec the target decodes chunks with, null when they are to be sent raw
+    private final String compression;
+
+    @JsonCreator
+    public RegistrationAckResponse(
+            @JsonProperty("completed") List<UUID> completed,
+            @JsonProperty("compression") String compression) {
+        this.completed = completed;
+        this.compression = compression;
+    }
+
+    public RegistrationAckResponse(List<UUID> completed) {
+        this(completed, null);
+    }
+}
@@ -0,0 +1,5 @@
+package com.atamanahmet.beamlink.agent.event;
+
+/* a peer with an open circuit answered a send again, keyed by "ip:port" */
+public record PeerCircuitClosedEvent(String peer) {
+}
@@ -0,0 +1,7 @@
+package com.atamanahmet.beamlink.agent.event;
+
+import java.util.UUID;
+
+/* a peer the nexus reported offline is online again */
+public record PeerOnlineEvent(UUID agentId, String ipAddress, int port) {
+}
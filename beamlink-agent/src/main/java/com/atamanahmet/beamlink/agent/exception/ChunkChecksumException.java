@@ -0,0 +1,13 @@
+package com.atamanahmet.beamlink.agent.exception;
+
+/**
+ * A chunk whose bytes do not match the checksum it was sent with.
+ * Nothing of it is confirmed, the sender sends the same chunk again.
+ */
+public class ChunkChecksumException extends FileTransferException {
+
+    public ChunkChecksumException(long offset, long expected, long actual) {
+        super(String.format("Chunk at offset %d failed its checksum, expected %08x got %08x",
+                offset, expected, actual), null);
+    }
+}
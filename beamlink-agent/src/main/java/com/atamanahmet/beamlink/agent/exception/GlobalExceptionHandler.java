@@ -36,6 +36,20 @@ public class GlobalExceptionHandler {
                 .body(response);
     }
 
+    @ExceptionHandler(ChunkChecksumException.class)
+    public ResponseEntity<Map<String, Object>> handleChunkChecksumException(ChunkChecksumException e) {
+        log.warn("Chunk rejected: {}", e.getMessage());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", "Checksum mismatch");
+        response.put("message", e.getMessage());
+
+        return ResponseEntity
+                .status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body(response);
+    }
+
     @ExceptionHandler(FileTransferException.class)
     public ResponseEntity<Map<String, Object>> handleFileTransferException(FileTransferException e) {
         log.error("File transfer failed: {}", e.getMessage(), e);
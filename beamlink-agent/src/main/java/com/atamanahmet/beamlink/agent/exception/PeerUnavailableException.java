@@ -0,0 +1,17 @@
+package com.atamanahmet.beamlink.agent.exception;
+
+import lombok.Getter;
+
+/**
+ * The circuit to the target peer is open, the transfer is paused instead of failed.
+ */
+@Getter
+public class PeerUnavailableException extends FileTransferException {
+
+    private final String peer;
+
+    public PeerUnavailableException(String peer, Throwable cause) {
+        super("Peer unreachable: " + peer, cause);
+        this.peer = peer;
+    }
+}
@@ -0,0 +1,44 @@
+package com.atamanahmet.beamlink.agent.exception;
+
+import lombok.Getter;
+
+import java.net.http.HttpResponse;
+
+/**
+ * The target turned a chunk or pack away at its admission limits and asked to be retried later.
+ * Not a failure of the link, the same request is sent again after retryAfterMs.
+ */
+@Getter
+public class ReceiverBusyException extends FileTransferException {
+
+    /* used when the target sends no usable Retry-After */
+    private static final long DEFAULT_RETRY_AFTER_MS = 1000;
+
+    private final long retryAfterMs;
+
+    public ReceiverBusyException(long retryAfterMs) {
+        super("Target busy, retry after " + retryAfterMs + " ms", null);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * The exception for a 503 response, null for any other status
+     */
+    public static ReceiverBusyException of(HttpResponse<?> response) {
+        if (response.statusCode() != 503) return null;
+
+        long retryAfterMs = response.headers().firstValue("Retry-After")
+                .map(ReceiverBusyException::parseSeconds)
+                .orElse(DEFAULT_RETRY_AFTER_MS);
+        return new ReceiverBusyException(retryAfterMs);
+    }
+
+    /* delta-seconds only, the agent never sends an HTTP date */
+    private static long parseSeconds(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            return DEFAULT_RETRY_AFTER_MS;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.atamanahmet.beamlink.agent.http;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct buffers chunk bodies are read into, reused across chunks so a transfer does not
+ * allocate direct memory per chunk. Buffers come in power-of-two sizes from 256 KiB, a chunk
+ * takes the smallest that fits. Up to agent.transfer.chunk-buffer-pool-bytes are kept idle,
+ * buffers released beyond that are left to the GC.
+ */
+@Component
+@RequiredArgsConstructor
+public class ChunkBufferPool {
+
+    private static final int MIN_CAPACITY = 256 * 1024;
+
+    private final AgentConfig agentConfig;
+
+    private final Map<Integer, Queue<ByteBuffer>> idle = new ConcurrentHashMap<>();
+    private final AtomicLong idleBytes = new AtomicLong();
+
+    /* a cleared buffer of at least length bytes, its limit set to length */
+    public ByteBuffer acquire(int length) {
+        int capacity = capacityFor(length);
+        ByteBuffer buffer = idle.computeIfAbsent(capacity, c -> new ConcurrentLinkedQueue<>()).poll();
+
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        } else {
+            idleBytes.addAndGet(-capacity);
+        }
+        buffer.clear().limit(length);
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (!buffer.isDirect() || capacity != capacityFor(capacity)) return;
+
+        if (idleBytes.addAndGet(capacity) > agentConfig.getChunkBufferPoolBytes()) {
+            idleBytes.addAndGet(-capacity);
+            return;
+        }
+        idle.computeIfAbsent(capacity, c -> new ConcurrentLinkedQueue<>()).offer(buffer);
+    }
+
+    /* bytes held by idle buffers */
+    public long idleBytes() {
+        return idleBytes.get();
+    }
+
+    private static int capacityFor(int length) {
+        if (length <= MIN_CAPACITY) return MIN_CAPACITY;
+        int capacity = Integer.highestOneBit(length);
+        return capacity == length ? capacity : capacity << 1;
+    }
+}
@@ -0,0 +1,170 @@
+package com.atamanahmet.beamlink.agent.http;
+
+import com.atamanahmet.beamlink.agent.util.ChecksumFormat;
+import com.atamanahmet.beamlink.agent.util.ChunkCompression;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request body backed by a region of a file, read into a pooled direct buffer or mapped.
+ * Slices of the region are published as-is, a direct buffer goes to the socket
+ * without another copy into the Java heap. Each subscription reads a fresh
+ * view of the same region, so a retry replays it without re-reading the file.
+ * A read region is a copy, the file may change or shrink under it. Checksums and
+ * compression read the region, over a mapping of a file cut short that faults the JVM,
+ * so mapping is only used when asked for.
+ */
+public class FileRegionBodyPublisher implements HttpRequest.BodyPublisher {
+
+    private static final int SLICE_SIZE = 256 * 1024;
+
+    private final ByteBuffer region;
+
+    /* gets the buffer back once no attempt reads it anymore, null for a mapping */
+    private final ChunkBufferPool pool;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private static final byte[] INCOMPRESSIBLE = new byte[0];
+
+    /* CRC32C of the region, computed by the first attempt, retries reuse it */
+    private volatile Long crc32c;
+
+    /* the region deflated by the first attempt that asked, INCOMPRESSIBLE when it did not shrink */
+    private volatile byte[] compressed;
+
+    private FileRegionBodyPublisher(ByteBuffer region, ChunkBufferPool pool) {
+        this.region = region;
+        this.pool = pool;
+    }
+
+    /**
+     * Reads [position, position + length) of the channel into a buffer of the pool
+     * with positional reads. EOFException when the file ends before the region does.
+     */
+    public static FileRegionBodyPublisher read(FileChannel channel, long position, int length,
+                                               ChunkBufferPool pool) throws IOException {
+        ByteBuffer buffer = pool.acquire(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("File ended at " + (position + buffer.position())
+                            + " before the chunk ending at " + (position + length));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pool.release(buffer);
+            throw e;
+        }
+        return new FileRegionBodyPublisher(buffer.flip(), pool);
+    }
+
+    /**
+     * Maps [position, position + length) of the channel read-only.
+     * The mapping stays valid after the channel is closed.
+     */
+    public static FileRegionBodyPublisher map(FileChannel channel, long position, long length)
+            throws IOException {
+        return new FileRegionBodyPublisher(
+                channel.map(FileChannel.MapMode.READ_ONLY, position, length), null);
+    }
+
+    /**
+     * Returns a read buffer to its pool, only once no request is sending it anymore.
+     * Later calls and calls on a mapping do nothing.
+     */
+    public void release() {
+        if (pool != null && released.compareAndSet(false, true)) {
+            pool.release(region);
+        }
+    }
+
+    public long crc32c() {
+        Long crc = crc32c;
+        if (crc == null) {
+            crc = ChecksumFormat.crc32c(region);
+            crc32c = crc;
+        }
+        return crc;
+    }
+
+    /* the region deflated, null when it does not compress well */
+    public byte[] compressed() {
+        byte[] bytes = compressed;
+        if (bytes == null) {
+            bytes = ChunkCompression.compress(region);
+            if (bytes == null) bytes = INCOMPRESSIBLE;
+            compressed = bytes;
+        }
+        return bytes == INCOMPRESSIBLE ? null : bytes;
+    }
+
+    @Override
+    public long contentLength() {
+        return region.limit();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new RegionSubscription(subscriber, region.duplicate()));
+    }
+
+    /**
+     * Emits slices of the region as demand arrives.
+     * Reentrant request calls from onNext are folded into the running drain loop.
+     */
+    private static class RegionSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final ByteBuffer region;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger draining = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        RegionSubscription(Flow.Subscriber<? super ByteBuffer> subscriber, ByteBuffer region) {
+            this.subscriber = subscriber;
+            this.region = region;
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) return;
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (draining.getAndIncrement() != 0) return;
+
+            do {
+                while (!cancelled && demand.get() > 0 && region.hasRemaining()) {
+                    int size = Math.min(SLICE_SIZE, region.remaining());
+                    ByteBuffer slice = region.slice(region.position(), size);
+                    region.position(region.position() + size);
+                    demand.decrementAndGet();
+                    subscriber.onNext(slice);
+                }
+                if (!cancelled && !region.hasRemaining()) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                }
+            } while (draining.decrementAndGet() != 0);
+        }
+    }
+}
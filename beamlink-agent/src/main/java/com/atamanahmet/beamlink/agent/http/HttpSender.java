@@ -9,4 +9,6 @@ import java.net.http.HttpResponse;
  */
 public interface HttpSender {
     HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException;
+
+    HttpResponse<byte[]> sendForBytes(HttpRequest request) throws IOException, InterruptedException;
 }
\ No newline at end of file
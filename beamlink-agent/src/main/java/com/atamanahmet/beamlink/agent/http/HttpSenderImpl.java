@@ -1,26 +1,61 @@
 package com.atamanahmet.beamlink.agent.http;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 
 /**
- * Delegates to the JDK HttpClient
+ * Delegates to the shared JDK HttpClient.
+ * Requests without a timeout get the configured request timeout,
+ * every request is counted per peer in PeerHttpMetrics.
  */
 @Component
 public class HttpSenderImpl implements HttpSender {
 
     private final HttpClient httpClient;
+    private final AgentConfig agentConfig;
+    private final PeerHttpMetrics metrics;
 
-    public HttpSenderImpl(HttpClient httpClient) {
+    public HttpSenderImpl(HttpClient httpClient, AgentConfig agentConfig, PeerHttpMetrics metrics) {
         this.httpClient = httpClient;
+        this.agentConfig = agentConfig;
+        this.metrics = metrics;
     }
 
     @Override
     public HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
-        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return timed(request, HttpResponse.BodyHandlers.ofString());
     }
-}
\ No newline at end of file
+
+    @Override
+    public HttpResponse<byte[]> sendForBytes(HttpRequest request) throws IOException, InterruptedException {
+        return timed(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private <T> HttpResponse<T> timed(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<T> response = httpClient.send(withTimeout(request), handler);
+            metrics.responded(request.uri(), response.version(), System.nanoTime() - start);
+            return response;
+        } catch (IOException | InterruptedException e) {
+            metrics.failed(request.uri());
+            throw e;
+        }
+    }
+
+    private HttpRequest withTimeout(HttpRequest request) {
+        long timeoutMs = agentConfig.getHttpRequestTimeoutMs();
+        if (request.timeout().isPresent() || timeoutMs <= 0) return request;
+
+        return HttpRequest.newBuilder(request, (name, value) -> true)
+                .timeout(Duration.ofMillis(timeoutMs))
+                .build();
+    }
+}
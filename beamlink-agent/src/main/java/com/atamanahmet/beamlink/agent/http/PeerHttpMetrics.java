@@ -0,0 +1,66 @@
+package com.atamanahmet.beamlink.agent.http;
+
+import com.atamanahmet.beamlink.agent.dto.PeerHttpStats;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counts and latency per peer of the shared HttpClient.
+ * The JDK client does not expose its connection pool, requests per peer and
+ * the HTTP version of their responses show how much one client is reused.
+ * State is in memory and lost on restart.
+ */
+@Component
+public class PeerHttpMetrics {
+
+    private final Map<String, PeerCounters> peers = new ConcurrentHashMap<>();
+
+    public void responded(URI uri, HttpClient.Version version, long elapsedNanos) {
+        PeerCounters counters = counters(uri);
+        counters.requests.increment();
+        if (version == HttpClient.Version.HTTP_2) counters.http2Responses.increment();
+        counters.totalNanos.add(elapsedNanos);
+        counters.maxNanos.accumulate(elapsedNanos);
+    }
+
+    public void failed(URI uri) {
+        PeerCounters counters = counters(uri);
+        counters.requests.increment();
+        counters.failures.increment();
+    }
+
+    public List<PeerHttpStats> stats() {
+        return peers.entrySet().stream()
+                .map(entry -> entry.getValue().stats(entry.getKey()))
+                .sorted(Comparator.comparing(PeerHttpStats::getPeer))
+                .toList();
+    }
+
+    private PeerCounters counters(URI uri) {
+        return peers.computeIfAbsent(uri.getAuthority(), peer -> new PeerCounters());
+    }
+
+    private static class PeerCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder http2Responses = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        PeerHttpStats stats(String peer) {
+            long responded = requests.sum() - failures.sum();
+            long average = responded > 0 ? totalNanos.sum() / responded : 0;
+            return new PeerHttpStats(peer, requests.sum(), failures.sum(), http2Responses.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(average), TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+        }
+    }
+}
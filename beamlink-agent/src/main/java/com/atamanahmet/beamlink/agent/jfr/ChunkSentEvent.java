@@ -0,0 +1,51 @@
+package com.atamanahmet.beamlink.agent.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One attempt at sending a chunk or delta request, from encoding its body to reading
+ * the ack. An attempt held back by the bandwidth limits ends as throttled and is made
+ * again once its wait is over.
+ */
+@Name("beamlink.ChunkSent")
+@Label("Chunk Sent")
+@Category({"Beamlink", "Transfer"})
+@Description("One attempt at sending a chunk to a peer")
+public class ChunkSentEvent extends Event {
+
+    @Label("Transfer Id")
+    public String transferId;
+
+    @Label("Peer")
+    public String peer;
+
+    @Label("Endpoint")
+    @Description("chunk or delta")
+    public String endpoint;
+
+    @Label("Offset")
+    public long offset;
+
+    @Label("Bytes")
+    @Description("Bytes on the wire, compressed chunks by their compressed size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Attempt")
+    public int attempt;
+
+    @Label("Bandwidth Wait")
+    @Description("Wait before the next attempt, throttled attempts only")
+    @Timespan
+    public long bandwidthWait;
+
+    @Label("Outcome")
+    @Description("acked, stalled, busy, throttled, failed or interrupted")
+    public String outcome;
+}
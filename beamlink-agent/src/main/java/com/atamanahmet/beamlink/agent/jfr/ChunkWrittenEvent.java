@@ -0,0 +1,49 @@
+package com.atamanahmet.beamlink.agent.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One received range, from reading its record to the ack. The range is written as it is
+ * read off the request, the write duration leaves the reads out. The force and the DB
+ * checkpoint only happen when due.
+ */
+@Name("beamlink.ChunkWritten")
+@Label("Chunk Written")
+@Category({"Beamlink", "Transfer"})
+@Description("One received range written into its partial file")
+public class ChunkWrittenEvent extends Event {
+
+    @Label("Transfer Id")
+    public String transferId;
+
+    @Label("Offset")
+    public long offset;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Write Duration")
+    @Description("Writing into the partial file, without waiting for the range to arrive")
+    @Timespan
+    public long writeDuration;
+
+    @Label("Force Duration")
+    @Description("Forcing the partial file to disk when the durability policy asks for it")
+    @Timespan
+    public long forceDuration;
+
+    @Label("Commit Duration")
+    @Description("Saving the checkpoint to the DB, zero when none was due")
+    @Timespan
+    public long commitDuration;
+
+    @Label("Complete")
+    public boolean complete;
+}
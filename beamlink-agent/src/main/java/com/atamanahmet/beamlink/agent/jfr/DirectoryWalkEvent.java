@@ -0,0 +1,37 @@
+package com.atamanahmet.beamlink.agent.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The walk of a source directory tree. Segments are handed out while it runs,
+ * the time it waited for them to be taken is recorded on its own.
+ */
+@Name("beamlink.DirectoryWalk")
+@Label("Directory Walk")
+@Category({"Beamlink", "Transfer"})
+@Description("Walk of a directory tree into manifest segments")
+public class DirectoryWalkEvent extends Event {
+
+    @Label("Root")
+    public String root;
+
+    @Label("Files")
+    public long files;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Segments")
+    public int segments;
+
+    @Label("Segment Wait")
+    @Timespan
+    public long segmentWait;
+}
@@ -0,0 +1,52 @@
+package com.atamanahmet.beamlink.agent.jfr;
+
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.UUID;
+
+/**
+ * One file of a directory or batch, from the scheduler starting it to its sender returning.
+ */
+@Name("beamlink.GroupFile")
+@Label("Group File")
+@Category({"Beamlink", "Transfer"})
+@Description("One file of a directory or batch transfer sent on its own")
+public class GroupFileEvent extends Event {
+
+    @Label("Group")
+    @Description("directory or batch")
+    public String group;
+
+    @Label("Group Id")
+    public String groupId;
+
+    @Label("Transfer Id")
+    public String transferId;
+
+    @Label("File Name")
+    public String fileName;
+
+    @Label("File Size")
+    @DataAmount
+    public long fileSize;
+
+    /* begun as the file starts, committed when its sender returns */
+    public static GroupFileEvent started(String group, UUID groupId, FileTransfer file) {
+        GroupFileEvent event = new GroupFileEvent();
+        if (event.isEnabled()) {
+            event.group = group;
+            event.groupId = groupId.toString();
+            event.transferId = file.getTransferId().toString();
+            event.fileName = file.getFileName();
+            event.fileSize = file.getFileSize();
+        }
+        event.begin();
+        return event;
+    }
+}
@@ -0,0 +1,51 @@
+package com.atamanahmet.beamlink.agent.metrics;
+
+import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
+import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
+import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Transfers by type and status, counted in the DB on each scrape.
+ * Files are counted with those of directories and batches, inbound and outbound alike.
+ * Executor queues are measured by Spring Boot, executor.queued tagged with the pool's bean name.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransferGauges implements MeterBinder {
+
+    private static final List<String> STATUSES = List.of("ACTIVE", "PAUSED", "QUEUED");
+
+    private final FileTransferRepository transferRepository;
+    private final DirectoryTransferRepository directoryTransferRepository;
+    private final BatchTransferRepository batchTransferRepository;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (String status : STATUSES) {
+            register(registry, "file", status,
+                    () -> transferRepository.countByStatus(TransferStatus.valueOf(status)));
+            register(registry, "directory", status,
+                    () -> directoryTransferRepository.countByStatus(GroupTransferStatus.valueOf(status)));
+            register(registry, "batch", status,
+                    () -> batchTransferRepository.countByStatus(GroupTransferStatus.valueOf(status)));
+        }
+    }
+
+    private void register(MeterRegistry registry, String type, String status, Supplier<Number> count) {
+        Gauge.builder("beamlink.transfers", count)
+                .description("Transfers in a status")
+                .tag("type", type)
+                .tag("status", status.toLowerCase())
+                .register(registry);
+    }
+}
@@ -0,0 +1,77 @@
+package com.atamanahmet.beamlink.agent.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Data plane meters, exported with the rest on /actuator/prometheus.
+ * Bytes are counted as they went over the wire, compressed chunks by their compressed size.
+ * Peers are tagged as the sender knows them, ip:port of the target, and as the
+ * receiver sees them, the remote address of the request.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransferMetrics {
+
+    public enum RetryReason {
+        FAILED,     // the request failed or was rejected
+        STALLED,    // the peer answered without moving its offset
+        BUSY        // the peer was at its admission limits
+    }
+
+    private final MeterRegistry registry;
+
+    /* a chunk, delta or pack request the peer acked */
+    public void sent(String peer, long bytes) {
+        // a body of unknown length counts nothing
+        if (bytes <= 0) return;
+        Counter.builder("beamlink.transfer.sent")
+                .description("Bytes sent to a peer in acked requests")
+                .baseUnit("bytes")
+                .tag("peer", peer)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /* plain chunks only, a delta ack includes rebuilding the range from the basis */
+    public void chunkAcked(String peer, long nanos) {
+        Timer.builder("beamlink.chunk.ack")
+                .description("Time from sending a chunk to its ack")
+                .tag("peer", peer)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void chunkRetried(String peer, RetryReason reason) {
+        Counter.builder("beamlink.chunk.retries")
+                .description("Chunk attempts repeated, by why the previous one did not land")
+                .tag("peer", peer)
+                .tag("reason", reason.name().toLowerCase())
+                .register(registry)
+                .increment();
+    }
+
+    public void received(String peer, long bytes) {
+        Counter.builder("beamlink.transfer.received")
+                .description("Bytes received from a peer in acked requests")
+                .baseUnit("bytes")
+                .tag("peer", peer)
+                .register(registry)
+                .increment(bytes);
+    }
+
+    /* only the writes and the force when due, waiting for the range to arrive is left out */
+    public void rangeWritten(long nanos) {
+        Timer.builder("beamlink.receive.write")
+                .description("Time to write a received range into its partial file and force it when due")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
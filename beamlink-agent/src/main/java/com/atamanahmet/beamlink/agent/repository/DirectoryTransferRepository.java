@@ -2,13 +2,33 @@ package com.atamanahmet.beamlink.agent.repository;
 
 import com.atamanahmet.beamlink.agent.domain.BatchTransfer;
 import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
+import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface DirectoryTransferRepository extends JpaRepository<DirectoryTransfer, UUID> {
     Optional<DirectoryTransfer> findByDirectoryTransferId(UUID directoryTransferId);
+
+    List<DirectoryTransfer> findByStatus(GroupTransferStatus status);
+
+    long countByStatus(GroupTransferStatus status);
+
+    /* stores the queue order of a waiting transfer, 0 rows once it left the queue */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DirectoryTransfer dt SET dt.queuePriority = :priority, dt.queuedAt = :queuedAt"
+            + " WHERE dt.directoryTransferId = :id"
+            + " AND dt.status = com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus.QUEUED")
+    int reorderIfQueued(@Param("id") UUID id, @Param("priority") int priority,
+                        @Param("queuedAt") Instant queuedAt);
 }
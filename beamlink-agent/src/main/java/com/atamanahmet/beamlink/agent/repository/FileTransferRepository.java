@@ -3,9 +3,11 @@ package com.atamanahmet.beamlink.agent.repository;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
@@ -19,6 +21,8 @@ public interface FileTransferRepository extends JpaRepository<FileTransfer, UUID
 
     List<FileTransfer> findByStatus(TransferStatus status);
 
+    long countByStatus(TransferStatus status);
+
     List<FileTransfer> findByStatusAndExpiresAtBefore(TransferStatus status, Instant now);
 
     List<FileTransfer> findAllByOrderByCreatedAtDesc();
@@ -31,6 +35,52 @@ public interface FileTransferRepository extends JpaRepository<FileTransfer, UUID
 
     List<FileTransfer> findByBatchTransferIdAndStatus(UUID batchTransferId, TransferStatus status);
 
+    List<FileTransfer> findByContentHashAndStatus(String contentHash, TransferStatus status);
+
     @Query("SELECT ft.status FROM FileTransfer ft WHERE ft.transferId = :transferId")
     Optional<TransferStatus> findStatusByTransferId(@Param("transferId") UUID transferId);
-}
\ No newline at end of file
+
+    /* moves the checkpoint of an ACTIVE transfer forward, never back, 0 rows when it is not active */
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTransfer ft SET ft.confirmedOffset = :offset, ft.lastChunkAt = :at"
+            + " WHERE ft.transferId = :transferId"
+            + " AND ft.status = com.atamanahmet.beamlink.agent.domain.enums.TransferStatus.ACTIVE"
+            + " AND ft.confirmedOffset <= :offset")
+    int advanceCheckpoint(@Param("transferId") UUID transferId, @Param("offset") long offset,
+                          @Param("at") Instant at);
+
+    /* ACTIVE to COMPLETED, 0 rows when the transfer was cancelled or expired meanwhile */
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTransfer ft"
+            + " SET ft.status = com.atamanahmet.beamlink.agent.domain.enums.TransferStatus.COMPLETED,"
+            + " ft.confirmedOffset = :offset, ft.lastChunkAt = :at"
+            + " WHERE ft.transferId = :transferId"
+            + " AND ft.status = com.atamanahmet.beamlink.agent.domain.enums.TransferStatus.ACTIVE")
+    int completeIfActive(@Param("transferId") UUID transferId, @Param("offset") long offset,
+                         @Param("at") Instant at);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTransfer ft SET ft.contentHash = :contentHash WHERE ft.transferId = :transferId")
+    int recordContentHash(@Param("transferId") UUID transferId, @Param("contentHash") String contentHash);
+
+    /* moves one stripe's offset forward, never back */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE file_transfer_stripe_offsets SET confirmed_offset = :offset"
+            + " WHERE transfer_id = :transferId AND stripe_index = :stripe AND confirmed_offset < :offset",
+            nativeQuery = true)
+    int advanceStripeOffset(@Param("transferId") String transferId, @Param("stripe") int stripe,
+                            @Param("offset") long offset);
+
+    /* stores the queue order of a waiting transfer, 0 rows once it left the queue */
+    @Modifying
+    @Transactional
+    @Query("UPDATE FileTransfer ft SET ft.queuePriority = :priority, ft.queuedAt = :queuedAt"
+            + " WHERE ft.transferId = :id"
+            + " AND ft.status = com.atamanahmet.beamlink.agent.domain.enums.TransferStatus.QUEUED")
+    int reorderIfQueued(@Param("id") UUID id, @Param("priority") int priority,
+                        @Param("queuedAt") Instant queuedAt);
+}
@@ -32,7 +32,15 @@ public class SecurityConfig {
             "/api/upload",
             "/api/update/receive",
             "/api/transfers/receive",
+            "/api/transfers/receive-batch",
+            "/api/transfers/receive-directory",
+            "/api/transfers/receive-directory/*/files",
             "/api/transfers/*/chunk",
+            "/api/transfers/*/checksums",
+            "/api/transfers/*/content-hash",
+            "/api/transfers/*/delta",
+            "/api/transfers/*/signatures",
+            "/api/transfers/directory/*/pack",
             "/api/transfers/*/offset",
             "/api/transfers/*/resume"
     };
@@ -45,6 +53,12 @@ public class SecurityConfig {
             "/api/agent/events"
     };
 
+    /* scraped by Prometheus on the LAN, like the peer endpoints */
+    private static final String[] MONITORING = {
+            "/actuator/health",
+            "/actuator/prometheus"
+    };
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
@@ -57,6 +71,7 @@ public class SecurityConfig {
                         .requestMatchers(PUBLIC_AUTH).permitAll()
                         .requestMatchers(AGENT_TO_AGENT).permitAll()
                         .requestMatchers(NEXUS_FACING).permitAll()
+                        .requestMatchers(MONITORING).permitAll()
                         .anyRequest().authenticated()
                 )
                 .httpBasic(AbstractHttpConfigurer::disable)
@@ -0,0 +1,145 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import com.atamanahmet.beamlink.agent.dto.BandwidthLimits;
+import com.atamanahmet.beamlink.agent.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token buckets every chunk and pack send takes its bytes from as it goes on the wire.
+ * A send takes from the global bucket and from its target peer's bucket, all at once and
+ * only when all of them have the bytes, otherwise it is told how long to wait and takes
+ * nothing. Single file sends are INTERACTIVE, directory and batch sends BACKGROUND.
+ * While both are running each one also takes from a bucket of its own share of the
+ * global limit, background-share for background sends and the rest for interactive ones,
+ * so a large directory push can neither starve single files nor be starved by them.
+ * Alone, either one has the whole global limit. With no global limit there is
+ * nothing to share and priorities have no effect.
+ * Limits start from configuration and can be replaced at runtime from the UI or by
+ * Nexus, runtime changes are kept in memory and lost on restart.
+ */
+@Component
+public class BandwidthScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(BandwidthScheduler.class);
+
+    /* background sends keep at least this share, they slow down but never stop */
+    private static final double MIN_BACKGROUND_SHARE = 0.05;
+
+    /* sends of a priority count as running for this long after their last acquire */
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private volatile Buckets buckets;
+    private volatile long lastInteractiveAt;
+    private volatile long lastBackgroundAt;
+
+    public BandwidthScheduler(AgentConfig agentConfig) {
+        // nanoTime has no fixed origin, zero could fall within the idle window
+        lastInteractiveAt = System.nanoTime() - IDLE_NANOS;
+        lastBackgroundAt = lastInteractiveAt;
+        apply(new BandwidthLimits(agentConfig.getBandwidthGlobalBytesPerSecond(), new HashMap<>(),
+                agentConfig.getBandwidthBackgroundShare()));
+    }
+
+    public static Priority priorityOf(FileTransfer transfer) {
+        return transfer.getDirectoryTransferId() != null || transfer.getBatchTransferId() != null
+                ? Priority.BACKGROUND
+                : Priority.INTERACTIVE;
+    }
+
+    /**
+     * Takes the bytes when they may be sent to the peer now and returns 0, otherwise
+     * takes nothing and returns the nanos to wait before asking again
+     */
+    public long tryAcquire(String peer, Priority priority, long bytes) {
+        if (bytes <= 0) return 0;
+        Buckets current = buckets;
+        long now = System.nanoTime();
+
+        TokenBucket share;
+        if (priority == Priority.INTERACTIVE) {
+            lastInteractiveAt = now;
+            share = now - lastBackgroundAt < IDLE_NANOS ? current.interactive : null;
+        } else {
+            lastBackgroundAt = now;
+            share = now - lastInteractiveAt < IDLE_NANOS ? current.background : null;
+        }
+        TokenBucket[] from = {current.peers.get(peer), current.global, share};
+
+        synchronized (current) {
+            long wait = 0;
+            for (TokenBucket bucket : from) {
+                if (bucket != null) wait = Math.max(wait, bucket.shortfall(bytes));
+            }
+            if (wait > 0) return wait;
+
+            for (TokenBucket bucket : from) {
+                if (bucket != null) bucket.take(bytes);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Blocks until the bytes may be sent to the peer under the current limits
+     */
+    public void acquire(String peer, Priority priority, long bytes) throws InterruptedException {
+        for (long wait = tryAcquire(peer, priority, bytes); wait > 0; wait = tryAcquire(peer, priority, bytes)) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    public BandwidthLimits limits() {
+        BandwidthLimits limits = buckets.limits;
+        return new BandwidthLimits(limits.getGlobalBytesPerSecond(),
+                new HashMap<>(limits.getPeerBytesPerSecond()), limits.getBackgroundShare());
+    }
+
+    /**
+     * Replaces all limits, sends already waiting finish their wait under the old ones
+     */
+    public BandwidthLimits apply(BandwidthLimits requested) {
+        long global = Math.max(0, requested.getGlobalBytesPerSecond());
+        double share = requested.getBackgroundShare() > 0
+                ? Math.max(MIN_BACKGROUND_SHARE, Math.min(1, requested.getBackgroundShare()))
+                : 1;
+
+        Map<String, Long> peerLimits = new HashMap<>();
+        Map<String, TokenBucket> peers = new HashMap<>();
+        if (requested.getPeerBytesPerSecond() != null) {
+            requested.getPeerBytesPerSecond().forEach((peer, limit) -> {
+                if (limit == null || limit <= 0) return;
+                peerLimits.put(peer, limit);
+                peers.put(peer, new TokenBucket(limit));
+            });
+        }
+
+        BandwidthLimits limits = new BandwidthLimits(global, peerLimits, share);
+        boolean split = global > 0 && share < 1;
+        buckets = new Buckets(limits,
+                global > 0 ? new TokenBucket(global) : null,
+                split ? new TokenBucket(Math.max(1, (long) (global * share))) : null,
+                split ? new TokenBucket(Math.max(1, (long) (global * (1 - share)))) : null,
+                Map.copyOf(peers));
+
+        log.info("Bandwidth limits: global {} B/s, background share {}, {} peer limit(s)",
+                global, share, peerLimits.size());
+        return limits();
+    }
+
+    public enum Priority {
+        INTERACTIVE,    // single file sends
+        BACKGROUND      // files of directory and batch transfers
+    }
+
+    private record Buckets(BandwidthLimits limits, TokenBucket global, TokenBucket background,
+                           TokenBucket interactive, Map<String, TokenBucket> peers) {
+    }
+}
@@ -1,21 +1,27 @@
 package com.atamanahmet.beamlink.agent.service;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.config.ExecutorConfig;
 import com.atamanahmet.beamlink.agent.domain.BatchTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
+import com.atamanahmet.beamlink.agent.jfr.GroupFileEvent;
 import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @RequiredArgsConstructor
@@ -26,62 +32,111 @@ public class BatchAsyncSender {
     private final BatchTransferRepository batchTransferRepository;
     private final FileTransferRepository fileTransferRepository;
     private final TransferAsyncSender transferAsyncSender;
+    private final AgentConfig agentConfig;
+    private final PeerHealthTracker peerHealth;
+
+    /* runs the files of a group side by side, the group itself holds a group executor thread */
+    @Qualifier(ExecutorConfig.GROUP_FILE_EXECUTOR)
+    private final AsyncTaskExecutor groupFileExecutor;
 
     /**
-     * Called by BatchSenderService
-     * Blocks until current file completes, sequential by design
-     * Single file uses full bandwidth before moving to the next file.
+     * Called by OutboundTransferQueue once the group gets a send slot, the future completes
+     * when the group stops sending, finished or not.
+     * Sends up to agent.transfer.group-parallelism files at once, paused files first,
+     * then small files alongside the largest remaining one.
+     * Batch status is checked before each file starts and re-read after each one finishes.
      */
-    @Async
-    public void sendAsync(UUID batchTransferId, String targetIp,
-                          int targetPort, String targetToken) {
+    @Async(ExecutorConfig.GROUP_EXECUTOR)
+    public CompletableFuture<Void> sendAsync(UUID batchTransferId, String targetIp,
+                                             int targetPort, String targetToken) {
+        doSend(batchTransferId, targetIp, targetPort, targetToken);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void doSend(UUID batchTransferId, String targetIp,
+                        int targetPort, String targetToken) {
 
         List<FileTransfer> children = fileTransferRepository
                 .findByBatchTransferId(batchTransferId);
 
-        List<FileTransfer> queue = new ArrayList<>();
-        children.stream()
+        List<FileTransfer> paused = children.stream()
                 .filter(ft -> ft.getStatus() == TransferStatus.PAUSED)
-                .forEach(queue::add);
-        children.stream()
+                .toList();
+        List<FileTransfer> queue = children.stream()
                 .filter(ft -> ft.getStatus() == TransferStatus.PENDING
                         || ft.getStatus() == TransferStatus.ACTIVE)
-                .forEach(queue::add);
-
-        // fetch once before loop, re-fetch only on status signal
-        BatchTransfer bt = batchTransferRepository.findById(batchTransferId).orElse(null);
-        if (bt == null) return;
-
-        for (FileTransfer ft : queue) {
-
-            if (bt.getStatus() == GroupTransferStatus.CANCELLED
-                    || bt.getStatus() == GroupTransferStatus.FAILED) {
-                log.info("Batch stopped before file {}: status={}",
-                        ft.getFileName(), bt.getStatus());
-                return;
-            }
-            if (bt.getStatus() == GroupTransferStatus.PAUSED) {
-                log.info("Batch paused before file: {}", ft.getFileName());
-                return;
-            }
-
-            // blocking by design, sequential, single file owns full bandwidth
-            // doSend handles its own exceptions and marks the file FAILED internally
-            try {
-                transferAsyncSender.sendBlocking(
-                        ft.getTransferId(), targetIp, targetPort, targetToken
-                );
-            } catch (RuntimeException e) {
-                log.error("File failed in batch {}: {}", batchTransferId, ft.getFileName(), e);
-            }
-
-            bt = batchTransferRepository.findById(batchTransferId).orElse(null);
-            if (bt == null) return;
-        }
+                .toList();
+
+        // fetch once before the first file, re-fetch after each finished file
+        BatchTransfer first = batchTransferRepository.findById(batchTransferId).orElse(null);
+        if (first == null) return;
+
+        AtomicReference<BatchTransfer> bt = new AtomicReference<>(first);
+        String peer = PeerHealthTracker.peerKey(targetIp, targetPort);
+
+        GroupTransferScheduler scheduler =
+                new GroupTransferScheduler(agentConfig.getGroupParallelism(), groupFileExecutor);
+
+        boolean finished = scheduler.run(paused, queue,
+                ft -> {
+                    if (pausedForPeer(batchTransferId, peer)) return false;
+                    GroupTransferStatus status = bt.get().getStatus();
+                    if (status == GroupTransferStatus.CANCELLED
+                            || status == GroupTransferStatus.FAILED) {
+                        log.info("Batch stopped before file {}: status={}",
+                                ft.getFileName(), status);
+                        return false;
+                    }
+                    if (status == GroupTransferStatus.PAUSED) {
+                        log.info("Batch paused before file: {}", ft.getFileName());
+                        return false;
+                    }
+                    return true;
+                },
+                () -> {
+                    BatchTransfer current = batchTransferRepository
+                            .findById(batchTransferId).orElse(null);
+                    if (current == null) return false;
+                    bt.set(current);
+                    return true;
+                },
+                // the transfer sender handles its own exceptions and marks the file FAILED internally
+                ft -> {
+                    GroupFileEvent event = GroupFileEvent.started("batch", batchTransferId, ft);
+                    try {
+                        transferAsyncSender.sendBlocking(
+                                ft.getTransferId(), targetIp, targetPort, targetToken
+                        );
+                    } catch (RuntimeException e) {
+                        log.error("File failed in batch {}: {}", batchTransferId, ft.getFileName(), e);
+                    } finally {
+                        event.commit();
+                    }
+                });
+
+        // the last files may have been paused by an open circuit rather than finished
+        if (!finished || pausedForPeer(batchTransferId, peer)) return;
 
         completeBatchTransfer(batchTransferId, children);
     }
 
+    /**
+     * Pauses the batch when the circuit to its target is open, files left are sent
+     * when the peer is back online instead of failing one by one. Returns true when open.
+     */
+    private boolean pausedForPeer(UUID batchTransferId, String peer) {
+        if (!peerHealth.isOpen(peer)) return false;
+
+        batchTransferRepository.findById(batchTransferId).ifPresent(bt -> {
+            if (bt.getStatus() != GroupTransferStatus.ACTIVE) return;
+            bt.setStatus(GroupTransferStatus.PAUSED);
+            batchTransferRepository.save(bt);
+            peerHealth.pausedByCircuit(peer, PeerHealthTracker.PausedKind.BATCH, batchTransferId);
+            log.warn("Batch paused, peer {} unreachable: {}", peer, batchTransferId);
+        });
+        return true;
+    }
+
     private void completeBatchTransfer(UUID batchTransferId,
                                        List<FileTransfer> children) {
 
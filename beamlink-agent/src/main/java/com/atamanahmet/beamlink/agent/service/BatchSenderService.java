@@ -4,12 +4,16 @@ import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.BatchTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
+import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.InitiateBatchTransferRequest;
 import com.atamanahmet.beamlink.agent.dto.InitiateBatchTransferResponse;
 import com.atamanahmet.beamlink.agent.dto.ReceiveBatchRequest;
+import com.atamanahmet.beamlink.agent.dto.RegistrationAckResponse;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.http.HttpSender;
 import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.util.ChunkCompression;
 import com.atamanahmet.beamlink.agent.util.PathNormalizer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -19,7 +23,6 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
@@ -27,7 +30,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -40,10 +45,11 @@ public class BatchSenderService {
     private final FileTransferRepository fileTransferRepository;
     private final AgentService agentService;
     private final AgentConfig agentConfig;
-    private final BatchAsyncSender batchAsyncSender;
+    private final OutboundTransferQueue outboundQueue;
     private final ObjectMapper objectMapper;
+    private final ContentHashService contentHashService;
 
-    private final HttpClient httpClient;
+    private final HttpSender httpSender;
 
     public InitiateBatchTransferResponse initiate(InitiateBatchTransferRequest request) {
 
@@ -87,25 +93,53 @@ public class BatchSenderService {
             ft.setTargetIp(request.getTargetIp());
             ft.setTargetPort(request.getTargetPort());
             ft.setExpiresAt(Instant.now().plusSeconds(agentConfig.getTransferExpiryHours() * 3600L));
+            ft.setContentHash(contentHashService.hashForRegistration(vf.path, vf.fileSize));
             fileTransfers.add(ft);
 
             ReceiveBatchRequest.FileEntry fe = new ReceiveBatchRequest.FileEntry();
             fe.setTransferId(transferId);
             fe.setFileName(vf.path.getFileName().toString());
             fe.setFileSize(vf.fileSize);
+            fe.setContentHash(ft.getContentHash());
             fileEntries.add(fe);
         }
 
         fileTransferRepository.saveAll(fileTransfers);
 
-        registerOnTarget(request, batchTransferId, sourceAgentId,
+        RegistrationAckResponse ack = registerOnTarget(request, batchTransferId, sourceAgentId,
                 validatedFiles.size(), totalSize, fileEntries);
+        List<UUID> completed = ack.getCompleted() != null ? ack.getCompleted() : List.of();
+
+        // the target already had these, they are done without sending a byte
+        if (!completed.isEmpty()) {
+            Set<UUID> completedIds = new HashSet<>(completed);
+            List<FileTransfer> completedOnTarget = new ArrayList<>();
+            for (FileTransfer ft : fileTransfers) {
+                if (!completedIds.contains(ft.getTransferId())) continue;
+                ft.setConfirmedOffset(ft.getFileSize());
+                ft.setLastChunkAt(Instant.now());
+                ft.setStatus(TransferStatus.COMPLETED);
+                completedOnTarget.add(ft);
+            }
+            fileTransferRepository.saveAll(completedOnTarget);
+            log.info("Target already had {} of {} batch files, not sending them",
+                    completedOnTarget.size(), fileTransfers.size());
+        }
+
+        // chunks of the files are compressed with the codec the target agreed to
+        if (ack.getCompression() != null) {
+            fileTransfers.forEach(ft ->
+                    ft.setCompression(ChunkCompression.forFile(ack.getCompression(), ft.getFileName())));
+            fileTransferRepository.saveAll(fileTransfers);
+        }
 
-        batchTransfer.setStatus(GroupTransferStatus.ACTIVE);
+        // sending starts when the outbound queue has a slot
+        batchTransfer.setStatus(GroupTransferStatus.QUEUED);
+        batchTransfer.setQueuePriority(request.getPriority());
+        batchTransfer.setQueuedAt(Instant.now());
         batchTransferRepository.save(batchTransfer);
 
-        batchAsyncSender.sendAsync(batchTransferId, request.getTargetIp(),
-                request.getTargetPort(), request.getTargetToken());
+        outboundQueue.enqueue(batchTransfer, request.getTargetToken());
 
         log.info("Batch transfer initiated: {} files → {} ({})",
                 validatedFiles.size(), request.getTargetAgentId(), batchTransferId);
@@ -123,11 +157,11 @@ public class BatchSenderService {
                     "Batch transfer is not paused, current status: " + bt.getStatus(), null);
         }
 
-        bt.setStatus(GroupTransferStatus.ACTIVE);
+        bt.setStatus(GroupTransferStatus.QUEUED);
+        bt.setQueuedAt(Instant.now());
         batchTransferRepository.save(bt);
 
-        batchAsyncSender.sendAsync(batchTransferId, bt.getTargetIp(),
-                bt.getTargetPort(), null);
+        outboundQueue.enqueue(bt, null);
     }
 
     private List<ValidatedFile> validateFiles(List<String> filePaths) {
@@ -155,7 +189,8 @@ public class BatchSenderService {
         return result;
     }
 
-    private void registerOnTarget(
+    /* registers the batch on the target, returns the files it completed from a local copy and the codec it agreed to */
+    private RegistrationAckResponse registerOnTarget(
             InitiateBatchTransferRequest request,
             UUID batchTransferId,
             UUID sourceAgentId,
@@ -169,6 +204,9 @@ public class BatchSenderService {
         payload.setTotalFiles(totalFiles);
         payload.setTotalSize(totalSize);
         payload.setFiles(fileEntries);
+        if (agentConfig.isCompression()) {
+            payload.setCompression(ChunkCompression.SUPPORTED);
+        }
 
         try {
             String body = objectMapper.writeValueAsString(payload);
@@ -182,8 +220,7 @@ public class BatchSenderService {
                     .POST(HttpRequest.BodyPublishers.ofString(body))
                     .build();
 
-            HttpResponse<String> response = httpClient.send(
-                    httpRequest, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = httpSender.send(httpRequest);
 
             if (response.statusCode() != 200) {
                 throw new FileTransferException(
@@ -191,6 +228,11 @@ public class BatchSenderService {
                                 + response.statusCode(), null);
             }
 
+            if (response.body() == null || response.body().isBlank()) {
+                return new RegistrationAckResponse(List.of());
+            }
+            return objectMapper.readValue(response.body(), RegistrationAckResponse.class);
+
         } catch (IOException | InterruptedException e) {
             throw new FileTransferException("Cannot reach target agent", e);
         }
@@ -3,40 +3,68 @@ package com.atamanahmet.beamlink.agent.service;
 import com.atamanahmet.beamlink.agent.domain.BatchTransfer;
 import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import com.atamanahmet.beamlink.agent.domain.enums.DurabilityPolicy;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.ChunkAckResponse;
+import com.atamanahmet.beamlink.agent.dto.PackAckResponse;
 import com.atamanahmet.beamlink.agent.dto.ReceiveBatchRequest;
 import com.atamanahmet.beamlink.agent.dto.ReceiveDirectoryRequest;
+import com.atamanahmet.beamlink.agent.exception.ChunkChecksumException;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.jfr.ChunkWrittenEvent;
+import com.atamanahmet.beamlink.agent.metrics.TransferMetrics;
 import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
 import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.config.ExecutorConfig;
+import com.atamanahmet.beamlink.agent.util.BlockSignatures;
+import com.atamanahmet.beamlink.agent.util.ChecksumFormat;
+import com.atamanahmet.beamlink.agent.util.FilePackFormat;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
 
 @Service
 @RequiredArgsConstructor
 public class ChunkReceiverService {
 
     private static final Logger log = LoggerFactory.getLogger(ChunkReceiverService.class);
-    private static final int BUFFER_SIZE = 8192;
 
     private final FileTransferRepository transferRepository;
     private final DirectoryTransferRepository directoryTransferRepository;
@@ -44,10 +72,26 @@ public class ChunkReceiverService {
     private final AgentConfig agentConfig;
     private final LogService logService;
     private final AgentService agentService;
+    private final PartialFileChannels partialFileChannels;
+    private final ContentHashService contentHashService;
+    private final TransferMetrics metrics;
+
+    /* reads segments back for verification, off the request threads */
+    @Qualifier(ExecutorConfig.CHECKSUM_EXECUTOR)
+    private final AsyncTaskExecutor checksumExecutor;
+
+    /* live receive windows, keyed by transferId */
+    private final Map<UUID, ReceiveWindow> receiveWindows = new ConcurrentHashMap<>();
+
+    /* block signatures of delta bases in wire form, computed when the basis is kept, keyed by transferId */
+    private final Map<UUID, Future<byte[]>> basisSignatures = new ConcurrentHashMap<>();
 
     /**
      * Called by target agent when source initiates a transfer.
      * Creates the FileTransfer record and prepares the partial file on disk.
+     * A file this agent already has a copy of is completed locally instead,
+     * the record is then saved as COMPLETED. A large file replacing an earlier copy
+     * is received as a delta against that copy, in a single stripe.
      */
     @Transactional
     public void prepareReceive(FileTransfer transfer) {
@@ -57,21 +101,100 @@ public class ChunkReceiverService {
                     "Invalid file size: " + transfer.getFileSize(), null);
         }
 
+        if (completeFromLocalCopy(transfer)) {
+            transferRepository.save(transfer);
+            logCompletedTransfer(transfer);
+            return;
+        }
+
         Path partialFile = resolvePartialPath(transfer.getFileName());
         allocatePartialFile(partialFile, transfer.getFileSize());
+        prepareDeltaBasis(transfer);
+        if (transfer.isDelta()) {
+            // signed now, the source asks for them once it gets a send slot
+            signaturesOf(transfer);
+        }
 
         transferRepository.save(transfer);
-        log.info("Prepared to receive: {} ({} bytes)",
-                transfer.getFileName(), transfer.getFileSize());
+        log.info("Prepared to receive: {} ({} bytes{})",
+                transfer.getFileName(), transfer.getFileSize(), transfer.isDelta() ? ", delta" : "");
+    }
+
+    /**
+     * Keeps the earlier copy at the final location as basis of a delta transfer.
+     * It is hard-linked next to the partial file, so it stays intact when the final
+     * location is replaced. Without link support the file is received in full.
+     */
+    private void prepareDeltaBasis(FileTransfer transfer) {
+        long minSize = agentConfig.getDeltaMinSize();
+        if (minSize <= 0 || transfer.getFileSize() < minSize) return;
+
+        Path earlier = resolveFinalPath(transfer);
+        try {
+            if (!Files.isRegularFile(earlier) || Files.size(earlier) < agentConfig.getDeltaBlockSize()) return;
+
+            Path basis = resolveBasisPath(transfer.getFileName());
+            Files.deleteIfExists(basis);
+            Files.createLink(basis, earlier);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Cannot keep earlier copy of {} as delta basis, receiving it in full: {}",
+                    transfer.getFileName(), e.getMessage());
+            return;
+        }
+
+        transfer.setDelta(true);
+        transfer.splitIntoStripes(1);
+    }
+
+    /**
+     * Signatures of every block of the earlier copy a delta transfer is rebuilt from,
+     * in the wire form the source matches its file against. They are computed on the
+     * checksum pool when the basis is kept, a request arriving earlier waits for them.
+     * After a restart the first request starts them.
+     */
+    public byte[] blockSignatures(UUID transferId) {
+        FileTransfer transfer = transferRepository.findByTransferId(transferId)
+                .orElseThrow(() -> new FileTransferException(
+                        "Transfer not found: " + transferId, null));
+
+        if (!transfer.isDelta()) {
+            throw new FileTransferException("Transfer is not a delta transfer: " + transferId, null);
+        }
+
+        try {
+            return signaturesOf(transfer).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileTransferException("Interrupted signing earlier copy of " + transfer.getFileName(), e);
+        } catch (ExecutionException e) {
+            basisSignatures.remove(transferId);
+            throw new FileTransferException("Failed to sign earlier copy of " + transfer.getFileName(), e.getCause());
+        }
+    }
+
+    private Future<byte[]> signaturesOf(FileTransfer transfer) {
+        Path basis = resolveBasisPath(transfer.getFileName());
+        return basisSignatures.computeIfAbsent(transfer.getTransferId(), id -> checksumExecutor.submit(() -> {
+            BlockSignatures signatures = BlockSignatures.compute(basis, agentConfig.getDeltaBlockSize());
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(body)) {
+                signatures.write(out);
+            }
+            log.info("Signed {} blocks of earlier copy for delta transfer: {}",
+                    signatures.blockCount(), transfer.getFileName());
+            return body.toByteArray();
+        }));
     }
 
     /**
      * Called by target when source registers a directory transfer.
      * Creates DirectoryTransfer record, empty dirs on disk,
      * allocates partial files, saves all in one batch.
+     * Returns the files completed from a local copy, the source does not send them.
      */
     @Transactional
-    public void prepareReceiveDirectory(ReceiveDirectoryRequest request) {
+    public List<UUID> prepareReceiveDirectory(ReceiveDirectoryRequest request) {
         DirectoryTransfer dt = DirectoryTransfer.initiate(
                 request.getDirectoryTransferId(),
                 request.getSourceAgentId(),
@@ -90,10 +213,55 @@ public class ChunkReceiverService {
         directoryTransferRepository.save(dt);
 
         /* create empty directories before any file chunks arrive */
+        createEmptyDirectories(request.getDirectoryName(), dt.getEmptyDirectories());
+
+        /* build and allocate all child file transfers */
+        List<FileTransfer> fileTransfers = prepareDirectoryFiles(
+                request.getDirectoryTransferId(), request.getSourceAgentId(),
+                request.getDirectoryName(), request.getFiles());
+
+        log.info("Prepared to receive directory: {} ({} files)",
+                request.getDirectoryName(), fileTransfers.size());
+
+        return completedIds(fileTransfers);
+    }
+
+    /**
+     * Called by target for each further manifest segment while the source is still walking.
+     * Adds the segment's files and empty dirs to the registered directory transfer.
+     * Returns the files completed from a local copy.
+     */
+    @Transactional
+    public List<UUID> appendDirectoryManifest(UUID directoryTransferId, ReceiveDirectoryRequest request) {
+        DirectoryTransfer dt = directoryTransferRepository.findById(directoryTransferId)
+                .orElseThrow(() -> new FileTransferException(
+                        "Directory transfer not found: " + directoryTransferId, null));
+
+        List<String> segmentEmptyDirs = request.getEmptyDirectories() != null
+                ? request.getEmptyDirectories()
+                : Collections.emptyList();
+        createEmptyDirectories(dt.getDirectoryName(), segmentEmptyDirs);
+
+        List<String> emptyDirectories = new ArrayList<>(dt.getEmptyDirectories());
+        emptyDirectories.addAll(segmentEmptyDirs);
+        dt.setEmptyDirectories(emptyDirectories);
+        dt.setTotalFiles(request.getTotalFiles());
+        dt.setTotalSize(request.getTotalSize());
+        directoryTransferRepository.save(dt);
+
+        List<FileTransfer> fileTransfers = prepareDirectoryFiles(
+                directoryTransferId, dt.getSourceAgentId(), dt.getDirectoryName(), request.getFiles());
+
+        log.debug("Appended {} files to directory: {}", fileTransfers.size(), dt.getDirectoryName());
+
+        return completedIds(fileTransfers);
+    }
+
+    private void createEmptyDirectories(String directoryName, List<String> emptyDirectories) {
         Path uploadsDir = Paths.get(agentConfig.getUploadDirectory());
-        Path dirRoot = uploadsDir.resolve(request.getDirectoryName());
+        Path dirRoot = uploadsDir.resolve(directoryName);
 
-        for (String emptyDir : dt.getEmptyDirectories()) {
+        for (String emptyDir : emptyDirectories) {
             try {
                 Files.createDirectories(dirRoot.resolve(emptyDir));
             } catch (IOException e) {
@@ -101,11 +269,15 @@ public class ChunkReceiverService {
                         "Failed to create empty directory: " + emptyDir, e);
             }
         }
+    }
+
+    private List<FileTransfer> prepareDirectoryFiles(
+            UUID directoryTransferId, UUID sourceAgentId, String directoryName,
+            List<ReceiveDirectoryRequest.FileEntry> entries) {
 
-        /* build and allocate all child file transfers */
         List<FileTransfer> fileTransfers = new ArrayList<>();
 
-        for (ReceiveDirectoryRequest.FileEntry entry : request.getFiles()) {
+        for (ReceiveDirectoryRequest.FileEntry entry : entries) {
             if (entry.getFileSize() <= 0) {
                 throw new FileTransferException(
                         "Invalid file size for: " + entry.getFileName(), null);
@@ -113,35 +285,41 @@ public class ChunkReceiverService {
 
             FileTransfer ft = FileTransfer.initiate(
                     entry.getTransferId(),
-                    request.getSourceAgentId(),
+                    sourceAgentId,
                     null,
                     entry.getFileName(),
                     null,
                     entry.getFileSize()
             );
-            ft.setDirectoryTransferId(request.getDirectoryTransferId());
+            ft.setDirectoryTransferId(directoryTransferId);
             ft.setRelativePath(entry.getRelativePath());
-            ft.setDirectoryName(request.getDirectoryName());
+            ft.setDirectoryName(directoryName);
+            ft.setContentHash(entry.getContentHash());
             ft.setStatus(TransferStatus.ACTIVE);
 
-            Path partialFile = resolvePartialPath(entry.getFileName());
-            allocatePartialFile(partialFile, entry.getFileSize());
+            // packed files are written straight to their final location
+            if (!entry.isPacked() && !completeFromLocalCopy(ft)) {
+                Path partialFile = resolvePartialPath(entry.getFileName());
+                allocatePartialFile(partialFile, entry.getFileSize());
+            }
 
             fileTransfers.add(ft);
         }
 
         transferRepository.saveAll(fileTransfers);
-
-        log.info("Prepared to receive directory: {} ({} files)",
-                request.getDirectoryName(), fileTransfers.size());
+        logCompletedTransfers(fileTransfers.stream()
+                .filter(ft -> ft.getStatus() == TransferStatus.COMPLETED)
+                .toList());
+        return fileTransfers;
     }
 
     /**
      * Called by target when source registers a batch transfer.
      * Creates BatchTransfer record, allocates partial files, saves all in one batch.
+     * Returns the files completed from a local copy, the source does not send them.
      */
     @Transactional
-    public void prepareReceiveBatch(ReceiveBatchRequest request) {
+    public List<UUID> prepareReceiveBatch(ReceiveBatchRequest request) {
         BatchTransfer bt = BatchTransfer.initiate(
                 request.getBatchTransferId(),
                 request.getSourceAgentId(),
@@ -171,119 +349,557 @@ public class ChunkReceiverService {
                     entry.getFileSize()
             );
             ft.setBatchTransferId(request.getBatchTransferId());
+            ft.setContentHash(entry.getContentHash());
             ft.setStatus(TransferStatus.ACTIVE);
 
-            Path partialFile = resolvePartialPath(entry.getFileName());
-            allocatePartialFile(partialFile, entry.getFileSize());
+            if (!completeFromLocalCopy(ft)) {
+                Path partialFile = resolvePartialPath(entry.getFileName());
+                allocatePartialFile(partialFile, entry.getFileSize());
+            }
 
             fileTransfers.add(ft);
         }
 
         transferRepository.saveAll(fileTransfers);
 
+        List<FileTransfer> completed = fileTransfers.stream()
+                .filter(ft -> ft.getStatus() == TransferStatus.COMPLETED)
+                .toList();
+        logCompletedTransfers(completed);
+
         log.info("Prepared to receive batch: {} ({} files)",
                 request.getBatchTransferId(), fileTransfers.size());
+
+        return completed.stream().map(FileTransfer::getTransferId).toList();
+    }
+
+    private List<UUID> completedIds(List<FileTransfer> fileTransfers) {
+        return fileTransfers.stream()
+                .filter(ft -> ft.getStatus() == TransferStatus.COMPLETED)
+                .map(FileTransfer::getTransferId)
+                .toList();
+    }
+
+    /**
+     * Completes a registered file from a copy already on this agent with the same content hash,
+     * a file received earlier or a file this agent sent itself. The candidate is re-hashed
+     * before use, then hard-linked to the final location, or copied where links are not supported.
+     * Returns false when there is no usable copy, the file is then received as usual.
+     */
+    private boolean completeFromLocalCopy(FileTransfer transfer) {
+        String contentHash = transfer.getContentHash();
+        if (contentHash == null) return false;
+
+        Path finalPath = resolveFinalPath(transfer);
+        Path uploads = Paths.get(agentConfig.getUploadDirectory()).toAbsolutePath().normalize();
+
+        for (FileTransfer candidate : transferRepository.findByContentHashAndStatus(
+                contentHash, TransferStatus.COMPLETED)) {
+
+            // received files only, a file this agent sent is the user's own and is never linked
+            if (candidate.getFilePath() != null) continue;
+
+            Path existing = resolveFinalPath(candidate).toAbsolutePath().normalize();
+            if (!existing.startsWith(uploads)) continue;
+
+            if (!contentHashService.matches(existing, transfer.getFileSize(), contentHash)) continue;
+
+            try {
+                linkOrCopy(existing, finalPath);
+            } catch (IOException e) {
+                log.warn("Could not reuse local copy {} for {}, receiving it instead",
+                        existing, transfer.getFileName(), e);
+                return false;
+            }
+
+            transfer.setConfirmedOffset(transfer.getFileSize());
+            transfer.setLastChunkAt(Instant.now());
+            transfer.setStatus(TransferStatus.COMPLETED);
+            log.info("Completed {} from local copy {}", transfer.getFileName(), existing);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Content hash a source offers before the first chunk of a large file. With a received
+     * copy of the same content the file completes from it and its partial file is dropped,
+     * otherwise the hash is recorded and the file is a candidate for later registrations.
+     */
+    public boolean acceptContentHash(UUID transferId, String contentHash) {
+        FileTransfer transfer = transferRepository.findByTransferId(transferId)
+                .orElseThrow(() -> new FileTransferException(
+                        "Transfer not found: " + transferId, null));
+
+        if (contentHash == null || transfer.getStatus() != TransferStatus.ACTIVE) return false;
+
+        transferRepository.recordContentHash(transferId, contentHash);
+        transfer.setContentHash(contentHash);
+
+        if (transfer.getConfirmedOffset() > 0 || receiveWindows.containsKey(transferId)
+                || !completeFromLocalCopy(transfer)) {
+            return false;
+        }
+
+        partialFileChannels.close(transferId);
+        try {
+            Files.deleteIfExists(resolvePartialPath(transfer.getFileName()));
+        } catch (IOException e) {
+            log.warn("Could not delete partial file for: {}", transfer.getFileName());
+        }
+        if (transfer.isDelta()) {
+            deleteBasis(transfer);
+        }
+        persistCheckpoint(transfer, true);
+        logCompletedTransfer(transfer);
+        return true;
+    }
+
+    private void linkOrCopy(Path existing, Path finalPath) throws IOException {
+        Files.createDirectories(finalPath.getParent());
+
+        if (Files.exists(finalPath) && Files.isSameFile(existing, finalPath)) return;
+
+        try {
+            Files.deleteIfExists(finalPath);
+            Files.createLink(finalPath, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            // other file system or no link support
+            Files.copy(existing, finalPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        }
     }
 
 
     /**
      * Called on each incoming chunk PATCH request.
-     * Writes bytes at the correct offset, updates confirmedOffset in DB.
-     * Reject chunks for non-active and out of order transfers
+     * Writes bytes at the correct offset, checkpoints confirmedOffset to the DB.
+     * Chunks ahead of confirmedOffset are accepted within the receive window,
+     * written in place and held until the gap before them is filled.
+     * Reject chunks for non-active transfers, chunks beyond the window and chunks running past their stripe.
+     * Runs without a transaction, the DB is not held while the chunk streams in
+     * and only checkpoints are written, each in its own.
+     * Each range is a ChunkWrittenEvent in a flight recording, with its write, force and checkpoint timed apart.
      */
-    @Transactional
-    public ChunkAckResponse receiveChunk(UUID transferId, long offset, InputStream chunkStream) {
+    public ChunkAckResponse receiveChunk(UUID transferId, long offset, long length, InputStream chunkStream) {
+        return receiveChunk(transferId, offset, length, chunkStream, null);
+    }
+
+    /**
+     * Receives a chunk sent with the CRC32C of its bytes, null when it came without one.
+     * The checksum is computed while the chunk is written, a chunk that does not match
+     * is rejected before its range is confirmed and the sender sends it again.
+     */
+    public ChunkAckResponse receiveChunk(UUID transferId, long offset, long length, InputStream chunkStream, Long checksum) {
+        if (checksum == null) {
+            return receiveRange(transferId, offset, length, chunkStream, (transfer, partialFile, body) ->
+                    partialFileChannels.write(transferId, partialFile, offset, body));
+        }
+
+        // summed as the chunk is read, outside the timed write
+        CheckedInputStream checked = new CheckedInputStream(chunkStream, new CRC32C());
+        return receiveRange(transferId, offset, length, checked, (transfer, partialFile, body) -> {
+            long written = partialFileChannels.write(transferId, partialFile, offset, body);
+            long actual = checked.getChecksum().getValue();
+            if (actual != checksum) {
+                throw new ChunkChecksumException(offset, checksum, actual);
+            }
+            return written;
+        });
+    }
+
+    /**
+     * Takes the checksums of every segment of the source file, sent before the last chunks.
+     * A segment is read back and verified once all of it is confirmed, one that does not
+     * match is received again, the file completes only when every segment matches.
+     * Transfers whose source sends no checksums complete unverified.
+     */
+    @Transactional(readOnly = true)
+    public void acceptChecksums(UUID transferId, ChecksumFormat.Segments segments) {
+        FileTransfer transfer = transferRepository.findByTransferId(transferId)
+                .orElseThrow(() -> new FileTransferException(
+                        "Transfer not found: " + transferId, null));
+
+        if (transfer.getStatus() != TransferStatus.ACTIVE) {
+            throw new FileTransferException(
+                    "Transfer is not active: " + transfer.getStatus(), null);
+        }
+        if (segments.crcs().length != ChecksumFormat.segmentCount(transfer.getFileSize(), segments.segmentSize())) {
+            throw new FileTransferException("File checksums cover " + segments.crcs().length
+                    + " segments of " + segments.segmentSize() + " bytes, file is " + transfer.getFileSize(), null);
+        }
+
+        ReceiveWindow window = receiveWindows.computeIfAbsent(
+                transferId, id -> new ReceiveWindow(transfer));
+        window.expect(segments);
+        verifySegments(window, resolvePartialPath(transfer.getFileName()));
+    }
+
+    /**
+     * Called on each incoming delta PATCH request of a delta transfer.
+     * The range is rebuilt from copies of the earlier copy and literal bytes,
+     * then acked and checkpointed exactly like a chunk of the same range.
+     */
+    public ChunkAckResponse receiveDelta(UUID transferId, long offset, long length, InputStream deltaStream) {
+        return receiveRange(transferId, offset, length, deltaStream, (transfer, partialFile, body) -> {
+            if (!transfer.isDelta()) {
+                throw new FileTransferException("Transfer is not a delta transfer: " + transferId, null);
+            }
+            return partialFileChannels.applyDelta(transferId, partialFile, offset, length, body,
+                    resolveBasisPath(transfer.getFileName()));
+        });
+    }
+
+    private ChunkAckResponse receiveRange(UUID transferId, long offset, long length, InputStream rangeStream,
+                                          RangeWriter writer) {
+        ChunkWrittenEvent event = new ChunkWrittenEvent();
+        event.begin();
+
         FileTransfer transfer = transferRepository.findByTransferId(transferId)
                 .orElseThrow(() -> new FileTransferException(
                         "Transfer not found: " + transferId, null));
 
         if (transfer.getStatus() != TransferStatus.ACTIVE) {
+            receiveWindows.remove(transferId);
+            partialFileChannels.close(transferId);
             throw new FileTransferException(
                     "Transfer is not active: " + transfer.getStatus(), null);
         }
 
-        if (offset != transfer.getConfirmedOffset()) {
+        ReceiveWindow window = receiveWindows.computeIfAbsent(
+                transferId, id -> new ReceiveWindow(transfer));
+
+        int stripe = transfer.stripeOf(offset);
+        long confirmed = window.confirmedOffset(stripe);
+        if (offset > confirmed && offset - confirmed >= agentConfig.getReceiveWindowBytes()) {
             throw new FileTransferException(
-                    "Unexpected offset. Expected: "
-                            + transfer.getConfirmedOffset() + " got: " + offset, null);
+                    "Unexpected offset. Expected: " + confirmed + " got: " + offset, null);
+        }
+        // checked before writing, a range past its stripe would confirm the next stripe's bytes
+        long stripeEnd = window.stripeEnd(stripe);
+        if (offset + length > stripeEnd) {
+            throw new FileTransferException("Range " + offset + "-" + (offset + length - 1)
+                    + " runs past the end of stripe " + stripe + " at " + stripeEnd, null);
         }
 
         Path partialFile = resolvePartialPath(transfer.getFileName());
-        long bytesWritten = writeChunkToDisk(partialFile, offset, chunkStream);
-        long newOffset = offset + bytesWritten;
+        // the range is written as it arrives, time spent waiting on the request is taken out
+        ReadTimedInputStream body = new ReadTimedInputStream(rangeStream);
+        long writeStarted = System.nanoTime();
+        long bytesWritten = writer.write(transfer, partialFile, body);
+        long writeDuration = System.nanoTime() - writeStarted - body.readNanos();
+        if (bytesWritten != length) {
+            throw new FileTransferException("Range at " + offset + " wrote " + bytesWritten
+                    + " bytes, its length is " + length, null);
+        }
 
-        transfer.setConfirmedOffset(newOffset);
-        transfer.setLastChunkAt(Instant.now());
+        boolean filled;
+        synchronized (window) {
+            window.record(stripe, offset, offset + bytesWritten);
+            window.touch();
+            filled = window.isFilled(transfer);
+        }
+
+        verifySegments(window, partialFile);
+        if (filled) {
+            // a file completes verified, usually only the segment just filled is still being read
+            window.awaitVerification();
+        }
+
+        long newOffset;
+        boolean complete;
+        synchronized (window) {
+            newOffset = window.confirmedOffset(stripe);
+            filled = window.isFilled(transfer) && window.isVerified();
+            complete = filled && window.markCompleted();
+        }
+
+        DurabilityPolicy durability = partialFileChannels.durabilityPolicy();
+        long forceStarted = System.nanoTime();
+        List<Long> durableOffsets = forceIfDue(transferId, window, durability, complete);
+        long forceDuration = System.nanoTime() - forceStarted;
+        metrics.rangeWritten(writeDuration + forceDuration);
 
-        boolean complete = newOffset >= transfer.getFileSize();
+        boolean checkpoint;
+        synchronized (window) {
+            /* only forced offsets are persisted, any of them is safe, a stale commit only causes a resend */
+            applyOffsets(transfer, durableOffsets);
+            checkpoint = complete || window.checkpointDue(transfer.getConfirmedOffset(),
+                    agentConfig.getCheckpointIntervalBytes(), agentConfig.getCheckpointIntervalMs());
+        }
+        transfer.setLastChunkAt(Instant.now());
 
         if (complete) {
+            receiveWindows.remove(transferId);
+            partialFileChannels.close(transferId);
             transfer.setStatus(TransferStatus.COMPLETED);
             moveToFinalLocation(transfer, partialFile);
+            if (transfer.isDelta()) {
+                deleteBasis(transfer);
+            }
             logCompletedTransfer(transfer);
             log.info("Transfer completed: {}", transfer.getFileName());
         }
 
-        transferRepository.save(transfer);
+        // the window holds the live offsets, the DB only gets checkpoints
+        long commitDuration = 0;
+        if (checkpoint) {
+            long commitStarted = System.nanoTime();
+            persistCheckpoint(transfer, complete);
+            commitDuration = System.nanoTime() - commitStarted;
+        }
+
+        if (event.shouldCommit()) {
+            event.transferId = transferId.toString();
+            event.offset = offset;
+            event.bytes = bytesWritten;
+            event.writeDuration = writeDuration;
+            event.forceDuration = forceDuration;
+            event.commitDuration = commitDuration;
+            event.complete = complete;
+            event.commit();
+        }
 
-        return new ChunkAckResponse(newOffset, complete);
+        return new ChunkAckResponse(newOffset, filled, durableOffsets.get(stripe), durability);
     }
 
     /**
-     * Allocates the partial file on disk at exact size, no data written yet
+     * Writes the offsets as conditional updates instead of saving the record. Requests run
+     * without a transaction on a record read when they started, a save of an older read would
+     * lower the offsets or put a completed, cancelled or expired transfer back to ACTIVE.
      */
-    private void allocatePartialFile(Path partialFile, long fileSize) {
-        try {
-            Files.createDirectories(partialFile.getParent());
-            try (RandomAccessFile raf = new RandomAccessFile(partialFile.toFile(), "rw")) {
-                raf.setLength(fileSize);
-            }
-        } catch (IOException e) {
-            throw new FileTransferException(
-                    "Failed to allocate partial file: " + partialFile, e);
+    private void persistCheckpoint(FileTransfer transfer, boolean complete) {
+        UUID transferId = transfer.getTransferId();
+        int updated = complete
+                ? transferRepository.completeIfActive(transferId, transfer.getConfirmedOffset(), transfer.getLastChunkAt())
+                : transferRepository.advanceCheckpoint(transferId, transfer.getConfirmedOffset(), transfer.getLastChunkAt());
+
+        if (updated == 0) {
+            if (complete) log.warn("Transfer {} was no longer active when it completed", transferId);
+            return;
+        }
+        if (!transfer.isStriped()) return;
+
+        List<Long> offsets = transfer.getStripeOffsets();
+        for (int stripe = 0; stripe < offsets.size(); stripe++) {
+            transferRepository.advanceStripeOffset(transferId.toString(), stripe, offsets.get(stripe));
         }
     }
 
     /**
-     * Writes chunk bytes to disk at the given offset using RandomAccessFile.
+     * Drops the live receive window of a transfer that stopped receiving and closes its
+     * partial file. Offsets it confirmed beyond the last checkpoint are forced and persisted
+     * first, a transfer that is still active resumes from them.
      */
-    private long writeChunkToDisk(Path filePath, long offset, InputStream chunkStream) {
-        long bytesWritten = 0;
-        byte[] buffer = new byte[BUFFER_SIZE];
+    public void evictWindow(UUID transferId) {
+        basisSignatures.remove(transferId);
+        ReceiveWindow window = receiveWindows.remove(transferId);
+        if (window != null) {
+            List<Long> durable = forceIfDue(transferId, window, partialFileChannels.durabilityPolicy(), true);
+            transferRepository.findByTransferId(transferId)
+                    .filter(t -> t.getStatus() == TransferStatus.ACTIVE)
+                    .ifPresent(t -> {
+                        applyOffsets(t, durable);
+                        persistCheckpoint(t, false);
+                    });
+        }
+        partialFileChannels.close(transferId);
+    }
 
-        try (RandomAccessFile raf = new RandomAccessFile(filePath.toFile(), "rw")) {
-            raf.seek(offset);
+    /* windows that received nothing for slot-idle-ms, the same time a receive slot is held */
+    @Scheduled(fixedDelayString = "${agent.receive.slot-idle-ms:10000}")
+    public void evictIdleWindows() {
+        long idle = TimeUnit.MILLISECONDS.toNanos(Math.max(0, agentConfig.getReceiveSlotIdleMs()));
+        long now = System.nanoTime();
 
-            int bytesRead;
-            while ((bytesRead = chunkStream.read(buffer)) != -1) {
-                raf.write(buffer, 0, bytesRead);
-                bytesWritten += bytesRead;
+        receiveWindows.forEach((transferId, window) -> {
+            if (window.idleSince(now) > idle) {
+                log.debug("Evicting idle receive window of {}", transferId);
+                evictWindow(transferId);
             }
+        });
+    }
 
-        } catch (IOException e) {
-            throw new FileTransferException("Failed to write chunk at offset " + offset, e);
+    /* reads back every segment that became fully confirmed, on the checksum pool */
+    private void verifySegments(ReceiveWindow window, Path partialFile) {
+        for (ReceiveWindow.Segment segment : window.segmentsToVerify()) {
+            window.verifying(segment.index(), checksumExecutor.submit(() -> {
+                long actual;
+                try (FileChannel channel = FileChannel.open(partialFile, StandardOpenOption.READ)) {
+                    actual = ChecksumFormat.crc32c(channel, segment.from(), segment.to());
+                } catch (IOException e) {
+                    log.warn("Could not read back {} for verification: {}", partialFile, e.getMessage());
+                    actual = -1;
+                }
+                if (!window.verified(segment.index(), actual)) {
+                    log.warn("Bytes {}-{} of {} do not match the source, receiving them again",
+                            segment.from(), segment.to(), partialFile.getFileName());
+                }
+            }));
+        }
+    }
+
+    /**
+     * Forces the partial file when the durability policy asks for it and returns the
+     * offsets known to be on disk. Offsets are taken before the force, every range they
+     * cover was written before it started. The last range of a transfer is always forced.
+     */
+    private List<Long> forceIfDue(UUID transferId, ReceiveWindow window,
+                                  DurabilityPolicy durability, boolean complete) {
+        if (durability == DurabilityPolicy.NONE) {
+            return window.stripeOffsets();
         }
 
-        return bytesWritten;
+        List<Long> written;
+        synchronized (window) {
+            if (!complete && durability == DurabilityPolicy.GROUP_COMMIT
+                    && !window.forceDue(agentConfig.getFsyncIntervalBytes(), agentConfig.getFsyncIntervalMs())) {
+                return window.durableOffsets();
+            }
+            written = window.stripeOffsets();
+        }
+
+        partialFileChannels.force(transferId);
+        return window.forced(written);
     }
 
     /**
-     * Moves the completed partial file to the final upload directory.
+     * Called on each incoming pack chunk of a directory transfer.
+     * Every entry is a whole small file, written straight to its final location and
+     * marked COMPLETED. Entries that do not match an active file of the directory
+     * are skipped and left for the sender to send on their own.
+     * Like a chunk it runs without a transaction, the completed records are saved in one at the end.
      */
-    private void moveToFinalLocation(FileTransfer transfer, Path partialFile) {
-        Path uploadsDir = Paths.get(agentConfig.getUploadDirectory());
+    public PackAckResponse receivePack(UUID directoryTransferId, InputStream packStream) {
+        DirectoryTransfer dt = directoryTransferRepository.findById(directoryTransferId)
+                .orElseThrow(() -> new FileTransferException(
+                        "Directory transfer not found: " + directoryTransferId, null));
 
-        Path finalPath;
+        if (dt.getStatus() != GroupTransferStatus.ACTIVE) {
+            throw new FileTransferException(
+                    "Directory transfer is not active: " + dt.getStatus(), null);
+        }
 
-        if (transfer.getRelativePath() != null && transfer.getDirectoryName() != null) {
+        // the whole pack is bounded by pack-size, read it first and load its records in one query
+        Map<UUID, byte[]> entries = new LinkedHashMap<>();
+        long packBytes = 0;
 
-            // For directory transfer, rebuild folder structure under directoryName/
-            finalPath = uploadsDir
-                    .resolve(transfer.getDirectoryName())
-                    .resolve(transfer.getRelativePath());
+        try {
+            DataInputStream in = new DataInputStream(packStream);
+            FilePackFormat.EntryHeader entry;
+
+            while ((entry = FilePackFormat.readHeader(in)) != null) {
+                packBytes += FilePackFormat.HEADER_BYTES + entry.length();
+                if (packBytes > agentConfig.getPackSize()) {
+                    throw new FileTransferException(
+                            "Pack exceeds " + agentConfig.getPackSize() + " bytes", null);
+                }
+
+                byte[] content = in.readNBytes((int) entry.length());
+                if (content.length != entry.length()) {
+                    throw new FileTransferException(
+                            "Pack truncated in entry: " + entry.transferId(), null);
+                }
+                entries.put(entry.transferId(), content);
+            }
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to read pack for directory " + directoryTransferId, e);
+        }
+
+        List<FileTransfer> completed = new ArrayList<>();
+        boolean force = partialFileChannels.durabilityPolicy() != DurabilityPolicy.NONE;
+
+        try {
+            for (FileTransfer transfer : transferRepository.findAllById(entries.keySet())) {
+                byte[] content = entries.get(transfer.getTransferId());
+
+                if (!directoryTransferId.equals(transfer.getDirectoryTransferId())
+                        || transfer.getStatus() != TransferStatus.ACTIVE
+                        || transfer.getFileSize() != content.length) {
+                    log.warn("Skipping pack entry not expected in directory {}: {}",
+                            directoryTransferId, transfer.getTransferId());
+                    continue;
+                }
+
+                Path finalPath = resolveFinalPath(transfer);
+                Files.createDirectories(finalPath.getParent());
+                // may be a hard link to a deduplicated file, never write through it
+                Files.deleteIfExists(finalPath);
+                Files.write(finalPath, content);
+                if (force) {
+                    // acked entries are never resent, they must be on disk first
+                    try (FileChannel channel = FileChannel.open(finalPath, StandardOpenOption.WRITE)) {
+                        channel.force(false);
+                    }
+                }
+
+                // allocated when the file was registered unpacked, e.g. before a threshold change
+                deletePartialFile(transfer.getFileName());
+
+                transfer.setConfirmedOffset(transfer.getFileSize());
+                transfer.setLastChunkAt(Instant.now());
+                transfer.setStatus(TransferStatus.COMPLETED);
+                completed.add(transfer);
+            }
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to unpack chunk for directory " + directoryTransferId, e);
+        } finally {
+            // whatever was written is kept, the sender resends the files not acked
+            transferRepository.saveAll(completed);
+            logCompletedTransfers(completed);
+        }
+
+        log.info("Unpacked {} files into directory: {}", completed.size(), dt.getDirectoryName());
+
+        return new PackAckResponse(completed.stream().map(FileTransfer::getTransferId).toList());
+    }
+
+    private static void applyOffsets(FileTransfer transfer, List<Long> offsets) {
+        if (transfer.isStriped()) {
+            transfer.setStripeOffsets(new ArrayList<>(offsets));
+            transfer.setConfirmedOffset(transfer.confirmedStripeBytes());
         } else {
-            finalPath = uploadsDir.resolve(transfer.getFileName());
+            transfer.setConfirmedOffset(offsets.get(0));
+        }
+    }
+
+    /**
+     * Overlays the live receive window onto a loaded record,
+     * the DB copy lags behind by up to one checkpoint interval.
+     */
+    public void applyLiveOffsets(FileTransfer transfer) {
+        ReceiveWindow window = receiveWindows.get(transfer.getTransferId());
+        if (window == null) return;
+
+        synchronized (window) {
+            if (transfer.isStriped()) {
+                transfer.setStripeOffsets(window.stripeOffsets());
+                transfer.setConfirmedOffset(transfer.confirmedStripeBytes());
+            } else {
+                transfer.setConfirmedOffset(window.confirmedOffset(0));
+            }
+        }
+    }
+
+    /**
+     * Allocates the partial file on disk at exact size, no data written yet
+     */
+    private void allocatePartialFile(Path partialFile, long fileSize) {
+        try {
+            Files.createDirectories(partialFile.getParent());
+            try (RandomAccessFile raf = new RandomAccessFile(partialFile.toFile(), "rw")) {
+                raf.setLength(fileSize);
+            }
+        } catch (IOException e) {
+            throw new FileTransferException(
+                    "Failed to allocate partial file: " + partialFile, e);
         }
+    }
+
+    /**
+     * Moves the completed partial file to the final upload directory.
+     */
+    private void moveToFinalLocation(FileTransfer transfer, Path partialFile) {
+        Path finalPath = resolveFinalPath(transfer);
 
         try {
             Files.createDirectories(finalPath.getParent());
@@ -294,6 +910,19 @@ public class ChunkReceiverService {
         }
     }
 
+    private Path resolveFinalPath(FileTransfer transfer) {
+        Path uploadsDir = Paths.get(agentConfig.getUploadDirectory());
+
+        if (transfer.getRelativePath() != null && transfer.getDirectoryName() != null) {
+
+            // For directory transfer, rebuild folder structure under directoryName/
+            return uploadsDir
+                    .resolve(transfer.getDirectoryName())
+                    .resolve(transfer.getRelativePath());
+        }
+        return uploadsDir.resolve(transfer.getFileName());
+    }
+
     /**
      * Partial files live in a separate directory during transfer.
      * Only move to uploads/ on completion.
@@ -302,6 +931,11 @@ public class ChunkReceiverService {
         return Paths.get(agentConfig.getPartialDirectory()).resolve(fileName + ".part");
     }
 
+    /* earlier copy a delta transfer is rebuilt from, next to its partial file */
+    private Path resolveBasisPath(String fileName) {
+        return Paths.get(agentConfig.getPartialDirectory()).resolve(fileName + ".basis");
+    }
+
     /**
      * Log completed transfer using existing LogService
      */
@@ -320,6 +954,26 @@ public class ChunkReceiverService {
         }
     }
 
+    /* one log file write per pack instead of one per file */
+    private void logCompletedTransfers(List<FileTransfer> transfers) {
+        try {
+            List<com.atamanahmet.beamlink.agent.domain.TransferLog> entries = new ArrayList<>();
+            for (FileTransfer transfer : transfers) {
+                com.atamanahmet.beamlink.agent.domain.TransferLog transferLog =
+                        new com.atamanahmet.beamlink.agent.domain.TransferLog();
+                transferLog.setFilename(transfer.getFileName());
+                transferLog.setFileSize(transfer.getFileSize());
+                transferLog.setFromAgentId(transfer.getSourceAgentId());
+                transferLog.setToAgentId(agentService.getAgentId());
+                transferLog.setToAgentName(agentService.getAgentName());
+                entries.add(transferLog);
+            }
+            logService.logTransfers(entries);
+        } catch (Exception e) {
+            log.warn("Failed to log completed pack transfers, files were saved successfully", e);
+        }
+    }
+
     private void deletePartialFile(String fileName) {
         try {
             Files.deleteIfExists(
@@ -329,4 +983,305 @@ public class ChunkReceiverService {
             log.warn("Could not delete partial file for: {}", fileName);
         }
     }
-}
\ No newline at end of file
+
+    private void deleteBasis(FileTransfer transfer) {
+        basisSignatures.remove(transfer.getTransferId());
+        try {
+            Files.deleteIfExists(resolveBasisPath(transfer.getFileName()));
+        } catch (IOException e) {
+            log.warn("Could not delete delta basis for: {}", transfer.getFileName());
+        }
+    }
+
+    /* writes one incoming range read from body into the partial file, returns the bytes written */
+    @FunctionalInterface
+    private interface RangeWriter {
+        long write(FileTransfer transfer, Path partialFile, InputStream body);
+    }
+
+    /* adds up the time spent in reads of the underlying stream */
+    private static class ReadTimedInputStream extends FilterInputStream {
+        private long readNanos;
+
+        ReadTimedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long started = System.nanoTime();
+            try {
+                return in.read();
+            } finally {
+                readNanos += System.nanoTime() - started;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long started = System.nanoTime();
+            try {
+                return in.read(b, off, len);
+            } finally {
+                readNanos += System.nanoTime() - started;
+            }
+        }
+
+        long readNanos() {
+            return readNanos;
+        }
+    }
+
+    /**
+     * In-memory receive state for one live transfer, one contiguous offset per stripe.
+     * Written ranges beyond a stripe's offset wait until the gap before them is filled,
+     * lost on restart, the sender then resends from the persisted offsets.
+     * With source checksums it also holds the verification state of every segment.
+     */
+    private static class ReceiveWindow {
+        private static final byte UNVERIFIED = 0;
+        private static final byte VERIFYING = 1;
+        private static final byte VERIFIED = 2;
+
+        private final long fileSize;
+        private final long[] stripeStarts;
+        private final long[] stripeEnds;
+        private final long[] confirmedOffsets;
+        private final List<TreeMap<Long, Long>> pendingRanges = new ArrayList<>();
+        private final long[] durableOffsets;
+        private boolean completed;
+        private long checkpointedBytes;
+        private long checkpointedAt = System.nanoTime();
+        private long unforcedBytes;
+        private long forcedAt = System.nanoTime();
+        private long lastActivity = System.nanoTime();
+
+        /* source checksums per segment, null until the sender sends them */
+        private ChecksumFormat.Segments expected;
+        private byte[] segmentStates;
+        private final Map<Integer, Future<?>> verifications = new HashMap<>();
+
+        ReceiveWindow(FileTransfer transfer) {
+            checkpointedBytes = transfer.getConfirmedOffset();
+            fileSize = transfer.getFileSize();
+            int stripes = Math.max(1, transfer.getStripeCount());
+            stripeStarts = new long[stripes];
+            stripeEnds = new long[stripes];
+            confirmedOffsets = new long[stripes];
+            for (int i = 0; i < stripes; i++) {
+                stripeStarts[i] = transfer.isStriped() ? transfer.stripeStart(i) : 0;
+                stripeEnds[i] = transfer.isStriped() ? transfer.stripeEnd(i) : fileSize;
+                confirmedOffsets[i] = transfer.isStriped()
+                        ? transfer.getStripeOffsets().get(i)
+                        : transfer.getConfirmedOffset();
+                pendingRanges.add(new TreeMap<>());
+            }
+            // persisted offsets were forced, or persisted under NONE
+            durableOffsets = confirmedOffsets.clone();
+        }
+
+        synchronized long confirmedOffset(int stripe) {
+            return confirmedOffsets[stripe];
+        }
+
+        synchronized long stripeEnd(int stripe) {
+            return stripeEnds[stripe];
+        }
+
+        /* records a written range [start, end) and returns the stripe's new contiguous offset */
+        synchronized long record(int stripe, long start, long end) {
+            if (end <= start) {
+                return confirmedOffsets[stripe];
+            }
+            unforcedBytes += end - start;
+            TreeMap<Long, Long> pending = pendingRanges.get(stripe);
+            if (start <= confirmedOffsets[stripe]) {
+                confirmedOffsets[stripe] = Math.max(confirmedOffsets[stripe], end);
+            } else {
+                pending.merge(start, end, Math::max);
+            }
+
+            Map.Entry<Long, Long> next;
+            while ((next = pending.firstEntry()) != null && next.getKey() <= confirmedOffsets[stripe]) {
+                confirmedOffsets[stripe] = Math.max(confirmedOffsets[stripe], next.getValue());
+                pending.pollFirstEntry();
+            }
+            return confirmedOffsets[stripe];
+        }
+
+        synchronized List<Long> stripeOffsets() {
+            List<Long> offsets = new ArrayList<>(confirmedOffsets.length);
+            for (long offset : confirmedOffsets) {
+                offsets.add(offset);
+            }
+            return offsets;
+        }
+
+        synchronized boolean isFilled(FileTransfer transfer) {
+            for (int i = 0; i < confirmedOffsets.length; i++) {
+                if (confirmedOffsets[i] < transfer.stripeEnd(i)) return false;
+            }
+            return true;
+        }
+
+        /* marks the window used, idle windows are evicted */
+        synchronized void touch() {
+            lastActivity = System.nanoTime();
+        }
+
+        synchronized long idleSince(long now) {
+            return now - lastActivity;
+        }
+
+        /* true when the byte or time interval since the last DB write has passed */
+        synchronized boolean checkpointDue(long confirmedBytes, long intervalBytes, long intervalMs) {
+            long now = System.nanoTime();
+            if (confirmedBytes - checkpointedBytes < intervalBytes
+                    && now - checkpointedAt < TimeUnit.MILLISECONDS.toNanos(intervalMs)) {
+                return false;
+            }
+            checkpointedBytes = confirmedBytes;
+            checkpointedAt = now;
+            return true;
+        }
+
+        synchronized List<Long> durableOffsets() {
+            List<Long> offsets = new ArrayList<>(durableOffsets.length);
+            for (long offset : durableOffsets) {
+                offsets.add(offset);
+            }
+            return offsets;
+        }
+
+        /* true when the byte or time interval since the last force has passed, the caller forces */
+        synchronized boolean forceDue(long intervalBytes, long intervalMs) {
+            long now = System.nanoTime();
+            if (unforcedBytes < intervalBytes
+                    && now - forcedAt < TimeUnit.MILLISECONDS.toNanos(intervalMs)) {
+                return false;
+            }
+            unforcedBytes = 0;
+            forcedAt = now;
+            return true;
+        }
+
+        /* offsets taken before a completed force are on disk, forces may finish out of order */
+        synchronized List<Long> forced(List<Long> offsets) {
+            for (int i = 0; i < durableOffsets.length; i++) {
+                // a range taken back for verification since the snapshot stays undurable
+                durableOffsets[i] = Math.max(durableOffsets[i], Math.min(offsets.get(i), confirmedOffsets[i]));
+            }
+            return durableOffsets();
+        }
+
+        /* new checksums replace earlier ones, every segment is verified against them */
+        synchronized void expect(ChecksumFormat.Segments segments) {
+            expected = segments;
+            segmentStates = new byte[segments.crcs().length];
+        }
+
+        /* confirmed segments not verified yet, marked as being verified */
+        synchronized List<Segment> segmentsToVerify() {
+            if (expected == null) return List.of();
+
+            List<Segment> ready = new ArrayList<>();
+            for (int i = 0; i < segmentStates.length; i++) {
+                if (segmentStates[i] != UNVERIFIED) continue;
+                Segment segment = segment(i);
+                if (isConfirmed(segment.from(), segment.to())) {
+                    segmentStates[i] = VERIFYING;
+                    ready.add(segment);
+                }
+            }
+            return ready;
+        }
+
+        /* a verification that already finished has recorded its result, nothing to wait for */
+        synchronized void verifying(int segment, Future<?> verification) {
+            if (!verification.isDone()) {
+                verifications.put(segment, verification);
+            }
+        }
+
+        /**
+         * Records the checksum read back for a segment, false when it does not match the source.
+         * The segment is then taken back from every stripe it lies in and received again,
+         * what was confirmed beyond it waits as a written range until the gap is filled.
+         */
+        synchronized boolean verified(int segment, long actual) {
+            verifications.remove(segment);
+            if (expected == null || segmentStates[segment] != VERIFYING) return true;
+
+            if (expected.crcs()[segment] == actual) {
+                segmentStates[segment] = VERIFIED;
+                return true;
+            }
+
+            segmentStates[segment] = UNVERIFIED;
+            Segment range = segment(segment);
+            for (int i = 0; i < confirmedOffsets.length; i++) {
+                long from = Math.max(range.from(), stripeStarts[i]);
+                long to = Math.min(range.to(), stripeEnds[i]);
+                if (from >= to || confirmedOffsets[i] <= from) continue;
+
+                if (confirmedOffsets[i] > to) {
+                    pendingRanges.get(i).merge(to, confirmedOffsets[i], Math::max);
+                }
+                confirmedOffsets[i] = from;
+                durableOffsets[i] = Math.min(durableOffsets[i], from);
+            }
+            return false;
+        }
+
+        /* waits for the verifications running now, a failed one has already taken its range back */
+        void awaitVerification() {
+            List<Future<?>> running;
+            synchronized (this) {
+                running = new ArrayList<>(verifications.values());
+            }
+            for (Future<?> verification : running) {
+                try {
+                    verification.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException | CancellationException e) {
+                    log.warn("Segment verification did not finish: {}", e.getMessage());
+                }
+            }
+        }
+
+        /* true when no checksums were sent or every segment matched them */
+        synchronized boolean isVerified() {
+            if (expected == null) return true;
+            for (byte state : segmentStates) {
+                if (state != VERIFIED) return false;
+            }
+            return true;
+        }
+
+        private Segment segment(int index) {
+            long from = index * expected.segmentSize();
+            return new Segment(index, from, Math.min(fileSize, from + expected.segmentSize()));
+        }
+
+        /* true when every byte of [from, to) is below its stripe's confirmed offset */
+        private boolean isConfirmed(long from, long to) {
+            for (int i = 0; i < confirmedOffsets.length; i++) {
+                long end = Math.min(to, stripeEnds[i]);
+                if (Math.max(from, stripeStarts[i]) < end && confirmedOffsets[i] < end) return false;
+            }
+            return true;
+        }
+
+        record Segment(int index, long from, long to) {
+        }
+
+        /* true only for the first caller, the file is moved exactly once */
+        synchronized boolean markCompleted() {
+            if (completed) return false;
+            completed = true;
+            return true;
+        }
+    }
+}
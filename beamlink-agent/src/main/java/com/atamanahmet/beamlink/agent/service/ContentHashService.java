@@ -0,0 +1,81 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content hashes used to skip sending files the target already has.
+ * The source hashes files above dedup-min-size, group files before registering them and
+ * a single file before its first chunk. The target re-hashes a received candidate before reusing it.
+ */
+@Service
+@RequiredArgsConstructor
+public class ContentHashService {
+
+    private static final Logger log = LoggerFactory.getLogger(ContentHashService.class);
+    private static final int BUFFER_BYTES = 1024 * 1024;
+
+    private final AgentConfig agentConfig;
+
+    /**
+     * Hash sent along with the file registration.
+     * Returns null for files below dedup-min-size or when the file cannot be read,
+     * the file is then sent in full as before.
+     */
+    public String hashForRegistration(Path file, long fileSize) {
+        long minSize = agentConfig.getDedupMinSize();
+        if (minSize <= 0 || fileSize < minSize) return null;
+
+        try {
+            return sha256(file);
+        } catch (IOException e) {
+            log.warn("Could not hash {}, sending without content hash", file, e);
+            return null;
+        }
+    }
+
+    /* true when the file still has the given size and content, it may have changed since it was recorded */
+    public boolean matches(Path file, long fileSize, String contentHash) {
+        try {
+            return Files.isRegularFile(file)
+                    && Files.size(file) == fileSize
+                    && contentHash.equals(sha256(file));
+        } catch (IOException e) {
+            log.debug("Could not verify local copy {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    /* streams the file through SHA-256, lowercase hex */
+    static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,202 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.util.BlockSignatures;
+import com.atamanahmet.beamlink.agent.util.RollingChecksum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the parts of a file the receiver already has in its previous copy, rsync style.
+ * A window of one block slides over the file a byte at a time, wherever its weak and
+ * strong checksum match a block of the previous copy a copy is emitted and the window
+ * jumps past it. Bytes in between are emitted as literals. Adjacent copies are merged.
+ */
+class DeltaEncoder {
+
+    /* longest literal emitted at once, bounds what is held in memory */
+    static final int MAX_LITERAL = 1024 * 1024;
+
+    private static final int READ_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int FILTER_BITS = 20;
+
+    private final int blockSize;
+    private final BlockSignatures signatures;
+    private final Map<Integer, int[]> blocksByWeak = new HashMap<>();
+
+    /* one bit per hashed weak checksum, most windows are rejected without a map lookup */
+    private final long[] filter = new long[(1 << FILTER_BITS) / Long.SIZE];
+
+    private final MessageDigest sha256 = RollingChecksum.newDigest();
+
+    private byte[] buf;
+    private long bufStart;
+    private int bufLen;
+
+    private long copyOffset = -1;
+    private long copyLength;
+    private int nextBlock = -1;
+
+    DeltaEncoder(BlockSignatures signatures) {
+        this.signatures = signatures;
+        this.blockSize = signatures.blockSize();
+
+        Map<Integer, List<Integer>> index = new HashMap<>();
+        for (int block = 0; block < signatures.blockCount(); block++) {
+            int weak = signatures.weak(block);
+            index.computeIfAbsent(weak, w -> new ArrayList<>(1)).add(block);
+            int bit = filterBit(weak);
+            filter[bit >>> 6] |= 1L << bit;
+        }
+        index.forEach((weak, blocks) ->
+                blocksByWeak.put(weak, blocks.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Encodes the range [from, to) of the source. Instructions are handed to the sink in order,
+     * their lengths add up to the range. Throws if the source cannot be read.
+     */
+    void encode(FileChannel source, long from, long to, Sink sink) throws IOException {
+        buf = new byte[Math.max(READ_BUFFER_SIZE, 2 * (MAX_LITERAL + blockSize))];
+        bufStart = from;
+        bufLen = 0;
+        copyOffset = -1;
+        nextBlock = -1;
+
+        RollingChecksum rolling = new RollingChecksum(blockSize);
+        boolean rolled = false;
+        long pos = from;
+        long literalStart = from;
+
+        while (blockSize > 0 && to - pos >= blockSize) {
+            fill(source, literalStart, pos + blockSize);
+            int window = (int) (pos - bufStart);
+
+            if (!rolled) {
+                rolling.reset(buf, window);
+                rolled = true;
+            }
+
+            int block = match(rolling.value(), window);
+            if (block >= 0) {
+                if (pos > literalStart) {
+                    emitLiteral(sink, literalStart, pos);
+                }
+                emitCopy(sink, block);
+                pos += blockSize;
+                literalStart = pos;
+                rolled = false;
+                continue;
+            }
+
+            if (to - (pos + 1) >= blockSize) {
+                fill(source, literalStart, pos + 1 + blockSize);
+                window = (int) (pos - bufStart);
+                rolling.roll(buf[window], buf[window + blockSize]);
+            }
+            pos++;
+
+            if (pos - literalStart >= MAX_LITERAL) {
+                emitLiteral(sink, literalStart, pos);
+                literalStart = pos;
+            }
+        }
+
+        // the tail is shorter than a block, sent as it is
+        fill(source, literalStart, to);
+        while (literalStart < to) {
+            long end = Math.min(to, literalStart + MAX_LITERAL);
+            emitLiteral(sink, literalStart, end);
+            literalStart = end;
+        }
+        flushCopy(sink);
+        buf = null;
+    }
+
+    /* index of a block with the window's content, the one after the last match preferred */
+    private int match(int weak, int window) {
+        int bit = filterBit(weak);
+        if ((filter[bit >>> 6] & (1L << bit)) == 0) return -1;
+
+        int[] candidates = blocksByWeak.get(weak);
+        if (candidates == null) return -1;
+
+        byte[] strong = RollingChecksum.strong(sha256, buf, window, blockSize);
+        int found = -1;
+        for (int block : candidates) {
+            if (!Arrays.equals(strong, signatures.strong(block))) continue;
+            if (block == nextBlock) return block;
+            if (found < 0) found = block;
+        }
+        return found;
+    }
+
+    private void emitCopy(Sink sink, int block) throws IOException {
+        long offset = (long) block * blockSize;
+        if (copyOffset >= 0 && copyOffset + copyLength == offset
+                && copyLength + blockSize <= Integer.MAX_VALUE) {
+            copyLength += blockSize;
+        } else {
+            flushCopy(sink);
+            copyOffset = offset;
+            copyLength = blockSize;
+        }
+        nextBlock = block + 1;
+    }
+
+    private void emitLiteral(Sink sink, long start, long end) throws IOException {
+        flushCopy(sink);
+        sink.literal(buf, (int) (start - bufStart), (int) (end - start));
+    }
+
+    private void flushCopy(Sink sink) throws IOException {
+        if (copyOffset < 0) return;
+        sink.copy(copyOffset, (int) copyLength);
+        copyOffset = -1;
+    }
+
+    /* makes [keepFrom, until) available in the buffer, dropping what lies before keepFrom */
+    private void fill(FileChannel source, long keepFrom, long until) throws IOException {
+        if (bufStart + bufLen >= until) return;
+
+        int drop = (int) (keepFrom - bufStart);
+        if (drop > 0) {
+            System.arraycopy(buf, drop, buf, 0, bufLen - drop);
+            bufStart = keepFrom;
+            bufLen -= drop;
+        }
+
+        ByteBuffer target = ByteBuffer.wrap(buf);
+        while (bufStart + bufLen < until) {
+            target.limit(buf.length).position(bufLen);
+            int read = source.read(target, bufStart + bufLen);
+            if (read < 0) {
+                throw new IOException("Source ended at " + (bufStart + bufLen) + " while encoding delta");
+            }
+            bufLen += read;
+        }
+    }
+
+    private static int filterBit(int weak) {
+        return (weak * 0x9E3779B1) >>> (Integer.SIZE - FILTER_BITS);
+    }
+
+    /**
+     * Receives the instructions of an encoded range in order.
+     */
+    interface Sink {
+
+        /* length bytes starting at basisOffset of the receiver's previous copy */
+        void copy(long basisOffset, int length) throws IOException;
+
+        /* bytes the receiver does not have, buf is reused after the call returns */
+        void literal(byte[] buf, int off, int length) throws IOException;
+    }
+}
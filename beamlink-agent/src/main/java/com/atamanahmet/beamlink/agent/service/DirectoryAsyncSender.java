@@ -1,21 +1,34 @@
 package com.atamanahmet.beamlink.agent.service;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.config.ExecutorConfig;
 import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.jfr.GroupFileEvent;
 import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
 
 @Service
 @RequiredArgsConstructor
@@ -26,62 +39,207 @@ public class DirectoryAsyncSender {
     private final DirectoryTransferRepository directoryTransferRepository;
     private final FileTransferRepository fileTransferRepository;
     private final TransferAsyncSender transferAsyncSender;
+    private final AgentConfig agentConfig;
+    private final PeerHealthTracker peerHealth;
+
+    /* runs the files of a group side by side, the group itself holds a group executor thread */
+    @Qualifier(ExecutorConfig.GROUP_FILE_EXECUTOR)
+    private final AsyncTaskExecutor groupFileExecutor;
+    private final FilePackSender filePackSender;
+    private final DirectoryWalkProgress walkProgress;
 
     /**
-     * Called by DirectorySenderService
-     * Blocks until current file completes, sequential by design
-     * Single file uses full bandwidth before moving to the next file.
+     * Called by OutboundTransferQueue once the group gets a send slot, the future completes
+     * when the group stops sending, finished or not.
+     * Pending files below the pack threshold are sent first, packed many per request.
+     * The rest go up to agent.transfer.group-parallelism at once, resumed files first,
+     * then small files alongside the largest remaining one.
+     * Group status is checked before each file starts and re-read after each one finishes.
+     * While the source is still walking the tree, newly registered files are picked up
+     * until the walk is done, only then the directory is completed.
      */
-    @Async
-    public void sendAsync(UUID directoryTransferId, String targetIp,
-                          int targetPort, String targetToken) {
+    @Async(ExecutorConfig.GROUP_EXECUTOR)
+    public CompletableFuture<Void> sendAsync(UUID directoryTransferId, String targetIp,
+                                             int targetPort, String targetToken) {
+        doSend(directoryTransferId, targetIp, targetPort, targetToken);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void doSend(UUID directoryTransferId, String targetIp,
+                        int targetPort, String targetToken) {
 
         List<FileTransfer> children = fileTransferRepository
                 .findByDirectoryTransferId(directoryTransferId);
 
 
-        List<FileTransfer> queue = new ArrayList<>();
+        List<FileTransfer> inProgress = new ArrayList<>();
         children.stream()
                 .filter(ft -> ft.getStatus() == TransferStatus.PAUSED)
-                .forEach(queue::add);
+                .forEach(inProgress::add);
         children.stream()
                 .filter(ft -> ft.getStatus() == TransferStatus.ACTIVE)
-                .forEach(queue::add);
-        children.stream()
+                .forEach(inProgress::add);
+        List<FileTransfer> pending = children.stream()
                 .filter(ft -> ft.getStatus() == TransferStatus.PENDING)
-                .forEach(queue::add);
+                .toList();
 
-        DirectoryTransfer dt = directoryTransferRepository.findById(directoryTransferId).orElse(null);
+        DirectoryTransfer first = directoryTransferRepository.findById(directoryTransferId).orElse(null);
 
-        if (dt == null) return;
+        if (first == null) return;
 
-        for (FileTransfer ft : queue) {
+        // re-read by whichever file finishes, read before starting the next one
+        AtomicReference<DirectoryTransfer> dt = new AtomicReference<>(first);
+        String peer = PeerHealthTracker.peerKey(targetIp, targetPort);
 
-            if (dt.getStatus() == GroupTransferStatus.CANCELLED
-                    || dt.getStatus() == GroupTransferStatus.FAILED) {
+        Predicate<FileTransfer> mayStart = ft -> {
+            if (pausedForPeer(directoryTransferId, peer)) return false;
+            GroupTransferStatus status = dt.get().getStatus();
+            if (status == GroupTransferStatus.CANCELLED
+                    || status == GroupTransferStatus.FAILED) {
                 log.info("Directory transfer stopped before file {}: group status={}",
-                        ft.getFileName(), dt.getStatus());
-                return;
+                        ft.getFileName(), status);
+                return false;
             }
-            if (dt.getStatus() == GroupTransferStatus.PAUSED) {
+            if (status == GroupTransferStatus.PAUSED) {
                 log.info("Directory transfer paused, stopping before file: {}", ft.getFileName());
-                return;
+                return false;
+            }
+            return true;
+        };
+        BooleanSupplier refresh = () -> {
+            DirectoryTransfer current = directoryTransferRepository
+                    .findById(directoryTransferId).orElse(null);
+            if (current == null) return false;
+            dt.set(current);
+            return true;
+        };
+
+        Set<UUID> started = new HashSet<>();
+        while (true) {
+            pending.forEach(ft -> started.add(ft.getTransferId()));
+            if (!sendFiles(directoryTransferId, inProgress, pending, mayStart, refresh,
+                    targetIp, targetPort, targetToken)) return;
+
+            inProgress = List.of();
+            pending = awaitRegistered(directoryTransferId, dt, refresh, started);
+            if (pending == null) return;
+            if (pending.isEmpty()) break;
+        }
+
+        // the last files may have been paused by an open circuit rather than finished
+        if (pausedForPeer(directoryTransferId, peer)) return;
+
+        completeDirectoryTransfer(directoryTransferId);
+    }
+
+    /**
+     * Files registered by the walk and not started yet, also those registered while the last
+     * round was sending. While the walk goes on and nothing new is in, waits for the walker
+     * to register its next segment or finish. Returns an empty list once the walk is done
+     * and every file was started, null when the group stopped or disappeared.
+     */
+    private List<FileTransfer> awaitRegistered(UUID directoryTransferId,
+                                               AtomicReference<DirectoryTransfer> dt,
+                                               BooleanSupplier refresh, Set<UUID> started) {
+        while (true) {
+            // taken before the re-read, a segment registered from here on releases it
+            CountDownLatch nextSegment = walkProgress.nextSegment(directoryTransferId);
+            if (!refresh.getAsBoolean()) return null;
+            boolean walking = dt.get().isWalkInProgress();
+
+            List<FileTransfer> pending = fileTransferRepository.findByDirectoryTransferIdAndStatus(
+                            directoryTransferId, TransferStatus.PENDING).stream()
+                    .filter(ft -> !started.contains(ft.getTransferId()))
+                    .toList();
+            if (!pending.isEmpty() || !walking) return pending;
+
+            GroupTransferStatus status = dt.get().getStatus();
+            if (status != GroupTransferStatus.ACTIVE) {
+                log.info("Directory transfer stopped while walk in progress: group status={}", status);
+                return null;
             }
 
             try {
-                transferAsyncSender.sendBlocking(
-                        ft.getTransferId(), targetIp, targetPort, targetToken
-                );
+                nextSegment.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
             }
-            catch (RuntimeException e) {
-                log.error("File failed in directory {}: {}", directoryTransferId, ft.getFileName(), e);
+        }
+    }
+
+    /**
+     * Pauses the directory when the circuit to its target is open, files left are sent
+     * when the peer is back online instead of failing one by one. Returns true when open.
+     */
+    private boolean pausedForPeer(UUID directoryTransferId, String peer) {
+        if (!peerHealth.isOpen(peer)) return false;
+
+        directoryTransferRepository.findById(directoryTransferId).ifPresent(dt -> {
+            if (dt.getStatus() != GroupTransferStatus.ACTIVE) return;
+            dt.setStatus(GroupTransferStatus.PAUSED);
+            directoryTransferRepository.save(dt);
+            peerHealth.pausedByCircuit(peer, PeerHealthTracker.PausedKind.DIRECTORY, directoryTransferId);
+            log.warn("Directory transfer paused, peer {} unreachable: {}", peer, directoryTransferId);
+        });
+        return true;
+    }
+
+    /**
+     * Sends one round of files, small pending ones packed, then the rest through the scheduler.
+     * Returns false when the group was stopped or disappeared.
+     */
+    private boolean sendFiles(UUID directoryTransferId,
+                              List<FileTransfer> inProgress, List<FileTransfer> pending,
+                              Predicate<FileTransfer> mayStart, BooleanSupplier refresh,
+                              String targetIp, int targetPort, String targetToken) {
+
+        // small files that have not started go first, many per request
+        List<FileTransfer> packable = pending.stream()
+                .filter(ft -> filePackSender.isPackable(ft.getFileSize()))
+                .toList();
+
+        if (!packable.isEmpty()) {
+            Set<UUID> packed = new HashSet<>();
+
+            for (List<FileTransfer> pack : filePackSender.plan(packable)) {
+                if (!mayStart.test(pack.get(0))) return false;
+
+                try {
+                    packed.addAll(filePackSender.sendPack(
+                            directoryTransferId, pack, targetIp, targetPort, targetToken));
+                } catch (FileTransferException e) {
+                    // the files of this and later packs fall back to one transfer each
+                    log.warn("Pack failed in directory {}, sending remaining files individually: {}",
+                            directoryTransferId, e.getMessage());
+                    break;
+                }
+
+                if (!refresh.getAsBoolean()) return false;
             }
 
-            dt = directoryTransferRepository.findById(directoryTransferId).orElse(null);
-            if (dt == null) return;
+            pending = pending.stream()
+                    .filter(ft -> !packed.contains(ft.getTransferId()))
+                    .toList();
         }
 
-        completeDirectoryTransfer(directoryTransferId);
+        GroupTransferScheduler scheduler =
+                new GroupTransferScheduler(agentConfig.getGroupParallelism(), groupFileExecutor);
+
+        return scheduler.run(inProgress, pending, mayStart, refresh,
+                ft -> {
+                    GroupFileEvent event = GroupFileEvent.started("directory", directoryTransferId, ft);
+                    try {
+                        transferAsyncSender.sendBlocking(
+                                ft.getTransferId(), targetIp, targetPort, targetToken
+                        );
+                    }
+                    catch (RuntimeException e) {
+                        log.error("File failed in directory {}: {}", directoryTransferId, ft.getFileName(), e);
+                    } finally {
+                        event.commit();
+                    }
+                });
     }
 
     private void completeDirectoryTransfer(UUID directoryTransferId) {
@@ -0,0 +1,156 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.jfr.DirectoryWalkEvent;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Single pass walk of a directory tree, handing out the manifest in segments
+ * while the walk is still running. A directory is empty when no regular file
+ * exists anywhere beneath it, decided bottom-up as each directory is left.
+ */
+class DirectoryManifestWalker {
+
+    private final Path root;
+    private final int segmentSize;
+
+    /* segmentSize of 0 or less hands out the whole tree as a single segment */
+    DirectoryManifestWalker(Path root, int segmentSize) {
+        this.root = root;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Walks the tree and passes each segment to the sink as soon as it fills.
+     * The final segment has last set, it carries no files only when the tree has none.
+     * Throws if any file is unreadable or the tree cannot be walked.
+     * The walk is a DirectoryWalkEvent in a flight recording, finished or not.
+     */
+    void walk(SegmentSink sink) throws InterruptedException {
+        DirectoryWalkEvent event = new DirectoryWalkEvent();
+        event.begin();
+
+        // counts what was handed out and how long the sink held the walk up
+        SegmentSink recorded = segment -> {
+            long accepting = System.nanoTime();
+            sink.accept(segment);
+            event.segmentWait += System.nanoTime() - accepting;
+            event.segments++;
+            event.files += segment.files().size();
+            event.bytes += segment.size();
+        };
+
+        Visitor visitor = new Visitor(recorded);
+        try {
+            Files.walkFileTree(root, visitor);
+            recorded.accept(visitor.cut(true));
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to walk directory", e);
+        } catch (SinkInterrupted e) {
+            throw e.cause;
+        } finally {
+            event.root = root.toString();
+            event.commit();
+        }
+    }
+
+    record FileEntry(Path absolutePath, long fileSize) {
+    }
+
+    record Segment(List<FileEntry> files, List<String> emptyDirectories, long size, boolean last) {
+    }
+
+    @FunctionalInterface
+    interface SegmentSink {
+        void accept(Segment segment) throws InterruptedException;
+    }
+
+    private class Visitor extends SimpleFileVisitor<Path> {
+
+        private final SegmentSink sink;
+
+        /* one flag per open directory, true once a file was found beneath it */
+        private final Deque<boolean[]> hasFile = new ArrayDeque<>();
+
+        private List<FileEntry> files = new ArrayList<>();
+        private List<String> emptyDirectories = new ArrayList<>();
+        private long size;
+
+        Visitor(SegmentSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            hasFile.push(new boolean[1]);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            if (!Files.isRegularFile(file)) return FileVisitResult.CONTINUE;
+
+            if (!Files.isReadable(file)) {
+                throw new FileTransferException("File is not readable: " + file, null);
+            }
+            hasFile.peek()[0] = true;
+
+            // cut only once the next file shows up, the last segment is never empty
+            if (segmentSize > 0 && files.size() >= segmentSize) {
+                try {
+                    sink.accept(cut(false));
+                } catch (InterruptedException e) {
+                    throw new SinkInterrupted(e);
+                }
+            }
+
+            long fileSize = Files.size(file);
+            files.add(new FileEntry(file, fileSize));
+            size += fileSize;
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            if (exc != null) throw exc;
+
+            boolean found = hasFile.pop()[0];
+            if (dir.equals(root)) return FileVisitResult.CONTINUE;
+
+            if (found) {
+                hasFile.peek()[0] = true;
+            } else {
+                emptyDirectories.add(root.relativize(dir).toString());
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        /* hands out everything found since the previous segment */
+        Segment cut(boolean last) {
+            Segment segment = new Segment(files, emptyDirectories, size, last);
+            files = new ArrayList<>();
+            emptyDirectories = new ArrayList<>();
+            size = 0;
+            return segment;
+        }
+    }
+
+    /* carries an interrupt out of the visitor, which may only throw IOException */
+    private static class SinkInterrupted extends RuntimeException {
+        private final InterruptedException cause;
+
+        SinkInterrupted(InterruptedException cause) {
+            this.cause = cause;
+        }
+    }
+}
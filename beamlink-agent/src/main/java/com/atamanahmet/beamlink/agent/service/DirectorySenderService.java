@@ -3,13 +3,17 @@ package com.atamanahmet.beamlink.agent.service;
 import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
+import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.InitiateDirectoryTransferRequest;
 import com.atamanahmet.beamlink.agent.dto.InitiateDirectoryTransferResponse;
 import com.atamanahmet.beamlink.agent.dto.ReceiveDirectoryRequest;
+import com.atamanahmet.beamlink.agent.dto.RegistrationAckResponse;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.http.HttpSender;
 import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.util.ChunkCompression;
 import com.atamanahmet.beamlink.agent.util.PathNormalizer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -19,7 +23,6 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
@@ -28,29 +31,46 @@ import java.nio.file.Paths;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Stream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
 public class DirectorySenderService {
 
     private static final Logger log = LoggerFactory.getLogger(DirectorySenderService.class);
+    private static final int SEGMENTS_AHEAD = 4;
 
     private final DirectoryTransferRepository directoryTransferRepository;
     private final FileTransferRepository fileTransferRepository;
     private final AgentService agentService;
     private final AgentConfig agentConfig;
-    private final DirectoryAsyncSender directoryAsyncSender;
+    private final OutboundTransferQueue outboundQueue;
     private final ObjectMapper objectMapper;
+    private final FilePackSender filePackSender;
+    private final ContentHashService contentHashService;
+    private final DirectoryWalkProgress walkProgress;
 
-    private final HttpClient httpClient;
+    private final HttpSender httpSender;
+
+    /* directory walks and their background segment registration */
+    private final ExecutorService walkExecutor = Executors.newCachedThreadPool();
 
     /**
-     * Called by controller. Validates and walks the directory fully,
-     * saves all records, registers on target, then fires async send.
-     * Returns directoryTransferId immediately.
+     * Called by controller. Validates the directory and starts a single pass walk.
+     * The first manifest segment is registered on the target before returning,
+     * sending starts right away while later segments are walked and registered
+     * in the background. Returns directoryTransferId immediately.
      */
     public InitiateDirectoryTransferResponse initiate(InitiateDirectoryTransferRequest request) {
 
@@ -61,76 +81,91 @@ public class DirectorySenderService {
             throw new FileTransferException("Directory not found: " + cleanedPath, null);
         }
 
-        // Full walk, must complete before any network call
-        WalkResult walk = walkDirectory(sourceDir);
-
-        UUID directoryTransferId = UUID.randomUUID();
-        UUID sourceAgentId = agentService.getAgentId();
-        String directoryName = sourceDir.getFileName().toString();
-
-        DirectoryTransfer directoryTransfer = DirectoryTransfer.initiate(
-                directoryTransferId,
-                sourceAgentId,
-                request.getTargetAgentId(),
-                request.getTargetIp(),
-                request.getTargetPort(),
-                directoryName,
-                cleanedPath,
-                walk.files.size(),
-                walk.totalSize,
-                walk.emptyDirectories
-        );
-        directoryTransferRepository.save(directoryTransfer);
-
-        // Build FileTransfer records and registration payload together
-        List<FileTransfer> fileTransfers = new ArrayList<>();
-        List<ReceiveDirectoryRequest.FileEntry> fileEntries = new ArrayList<>();
+        // walker runs ahead by a few segments, no network call before the first one is in
+        BlockingQueue<DirectoryManifestWalker.Segment> segments = new ArrayBlockingQueue<>(SEGMENTS_AHEAD);
+        DirectoryManifestWalker walker =
+                new DirectoryManifestWalker(sourceDir, agentConfig.getManifestSegmentSize());
+        Future<?> walk = walkExecutor.submit(() -> {
+            walker.walk(segments::put);
+            return null;
+        });
 
-        for (WalkResult.FileEntry entry : walk.files) {
-            UUID transferId = UUID.randomUUID();
-            String fileName = entry.absolutePath.getFileName().toString();
-            String relativePath = sourceDir.relativize(entry.absolutePath).toString();
+        try {
+            DirectoryManifestWalker.Segment first = nextSegment(segments, walk);
 
-            FileTransfer ft = FileTransfer.initiate(
-                    transferId,
+            if (first.files().isEmpty()) {
+                throw new FileTransferException(
+                        "Directory contains no files to transfer", null);
+            }
+
+            UUID directoryTransferId = UUID.randomUUID();
+            UUID sourceAgentId = agentService.getAgentId();
+            String directoryName = sourceDir.getFileName().toString();
+
+            DirectoryTransfer directoryTransfer = DirectoryTransfer.initiate(
+                    directoryTransferId,
                     sourceAgentId,
                     request.getTargetAgentId(),
-                    fileName,
-                    entry.absolutePath.toString(),
-                    entry.fileSize
+                    request.getTargetIp(),
+                    request.getTargetPort(),
+                    directoryName,
+                    cleanedPath,
+                    first.files().size(),
+                    first.size(),
+                    first.emptyDirectories().isEmpty()
+                            ? Collections.emptyList() : first.emptyDirectories()
             );
-            ft.setDirectoryTransferId(directoryTransferId);
-            ft.setRelativePath(relativePath);
-            ft.setTargetIp(request.getTargetIp());
-            ft.setTargetPort(request.getTargetPort());
-            ft.setExpiresAt(Instant.now().plusSeconds(agentConfig.getTransferExpiryHours() * 3600L));
-            fileTransfers.add(ft);
-
-            ReceiveDirectoryRequest.FileEntry fe = new ReceiveDirectoryRequest.FileEntry();
-            fe.setTransferId(transferId);
-            fe.setFileName(fileName);
-            fe.setRelativePath(relativePath);
-            fe.setFileSize(entry.fileSize);
-            fileEntries.add(fe);
-        }
+            directoryTransfer.setWalkInProgress(!first.last());
+            directoryTransferRepository.save(directoryTransfer);
+
+            SegmentFiles files = toSegmentFiles(directoryTransfer, sourceDir, first, request);
+            fileTransferRepository.saveAll(files.transfers());
+
+            // Register the first segment on target, later segments are appended to it
+            ReceiveDirectoryRequest payload = new ReceiveDirectoryRequest();
+            payload.setDirectoryTransferId(directoryTransferId);
+            payload.setSourceAgentId(sourceAgentId);
+            payload.setDirectoryName(directoryName);
+            payload.setTotalFiles(directoryTransfer.getTotalFiles());
+            payload.setTotalSize(directoryTransfer.getTotalSize());
+            payload.setEmptyDirectories(directoryTransfer.getEmptyDirectories());
+            payload.setFiles(files.entries());
+            RegistrationAckResponse ack = registerOnTarget(request, "/api/transfers/receive-directory", payload);
+
+            List<FileTransfer> completedOnTarget = markCompletedOnTarget(files.transfers(), completed(ack));
+            if (ack.getCompression() != null) {
+                applyCompression(files.transfers(), ack.getCompression());
+                fileTransferRepository.saveAll(files.transfers());
+            } else if (!completedOnTarget.isEmpty()) {
+                fileTransferRepository.saveAll(completedOnTarget);
+            }
 
-        fileTransferRepository.saveAll(fileTransfers);
+            // Target accepted, sending starts when the outbound queue has a slot
+            directoryTransfer.setStatus(GroupTransferStatus.QUEUED);
+            directoryTransfer.setQueuePriority(request.getPriority());
+            directoryTransfer.setQueuedAt(Instant.now());
+            directoryTransferRepository.save(directoryTransfer);
 
-        // Register everything on target in one call, walk is complete, no partial state
-        registerOnTarget(request, directoryTransferId, sourceAgentId, directoryName,
-                walk, fileEntries);
+            // the sender waits on the walk once it runs out of registered files
+            if (!first.last()) {
+                walkProgress.walkStarted(directoryTransferId);
+            }
+            outboundQueue.enqueue(directoryTransfer, request.getTargetToken());
 
-        // Target accepted, mark active and start
-        directoryTransfer.setStatus(GroupTransferStatus.ACTIVE);
-        directoryTransferRepository.save(directoryTransfer);
+            if (!first.last()) {
+                walkExecutor.execute(() -> registerRemainingSegments(
+                        directoryTransfer, sourceDir, request, segments, walk));
+            }
 
-        directoryAsyncSender.sendAsync(directoryTransferId, request.getTargetIp(),
-                request.getTargetPort(), request.getTargetToken());
+            log.info("Directory transfer initiated: {} → {} ({})",
+                    directoryName, request.getTargetAgentId(), directoryTransferId);
 
-        log.info("Directory transfer initiated: {} → {} ({})",
-                directoryName, request.getTargetAgentId(), directoryTransferId);
+            return new InitiateDirectoryTransferResponse(directoryTransferId);
 
-        return new InitiateDirectoryTransferResponse(directoryTransferId);
+        } catch (RuntimeException e) {
+            walk.cancel(true);
+            throw e;
+        }
     }
 
     /**
@@ -147,97 +182,218 @@ public class DirectorySenderService {
                     "Directory transfer is not paused, current status: " + dt.getStatus(), null);
         }
 
-        dt.setStatus(GroupTransferStatus.ACTIVE);
+        dt.setStatus(GroupTransferStatus.QUEUED);
+        dt.setQueuedAt(Instant.now());
         directoryTransferRepository.save(dt);
 
-        /* Fires on a Spring-managed proxy — @Async works correctly here. */
-        directoryAsyncSender.sendAsync(directoryTransferId, dt.getTargetIp(),
-                dt.getTargetPort(), null); // token not stored — TODO: agent-to-agent auth
+        outboundQueue.enqueue(dt, null); // token not stored — TODO: agent-to-agent auth
     }
 
     /**
-     * Full recursive walk. Completes entirely before any network call
-     * Throws if any file is unreadable, no partial walks ever reach the target
+     * Saves and registers the segments after the first one while the sender is already
+     * running, then clears walkInProgress. A failing walk or registration fails the
+     * directory transfer, files already registered stay where they are.
      */
-    private WalkResult walkDirectory(Path root) {
-        List<WalkResult.FileEntry> files = new ArrayList<>();
-        List<String> emptyDirectories = new ArrayList<>();
-        long totalSize = 0;
-
-        try (Stream<Path> stream = Files.walk(root)) {
-            List<Path> all = stream.sorted().toList();
-
-            for (Path path : all) {
-                if (path.equals(root)) continue;
-
-                if (Files.isDirectory(path)) {
-                    boolean hasAnyFileAnywhere;
-                    try (Stream<Path> dirContents = Files.walk(path)) {
-                        hasAnyFileAnywhere = dirContents
-                                .filter(p -> !p.equals(path))
-                                .anyMatch(Files::isRegularFile);
-                    }
-                    if (!hasAnyFileAnywhere) {
-                        emptyDirectories.add(root.relativize(path).toString());
-                    }
-                } else if (Files.isRegularFile(path)) {
-                    if (!Files.isReadable(path)) {
-                        throw new FileTransferException(
-                                "File is not readable: " + path, null);
-                    }
-                    long size = Files.size(path);
-                    files.add(new WalkResult.FileEntry(path, size));
-                    totalSize += size;
+    private void registerRemainingSegments(
+            DirectoryTransfer directoryTransfer,
+            Path sourceDir,
+            InitiateDirectoryTransferRequest request,
+            BlockingQueue<DirectoryManifestWalker.Segment> segments,
+            Future<?> walk
+    ) {
+        UUID directoryTransferId = directoryTransfer.getDirectoryTransferId();
+        int totalFiles = directoryTransfer.getTotalFiles();
+        long totalSize = directoryTransfer.getTotalSize();
+
+        try {
+            DirectoryManifestWalker.Segment segment;
+            do {
+                segment = nextSegment(segments, walk);
+                totalFiles += segment.files().size();
+                totalSize += segment.size();
+
+                SegmentFiles files = toSegmentFiles(directoryTransfer, sourceDir, segment, request);
+
+                ReceiveDirectoryRequest payload = new ReceiveDirectoryRequest();
+                payload.setDirectoryTransferId(directoryTransferId);
+                payload.setTotalFiles(totalFiles);
+                payload.setTotalSize(totalSize);
+                payload.setEmptyDirectories(segment.emptyDirectories());
+                payload.setFiles(files.entries());
+                RegistrationAckResponse ack = registerOnTarget(request,
+                        "/api/transfers/receive-directory/" + directoryTransferId + "/files", payload);
+
+                // saved only once the target knows them, the running sender picks up PENDING rows
+                markCompletedOnTarget(files.transfers(), completed(ack));
+                applyCompression(files.transfers(), ack.getCompression());
+                fileTransferRepository.saveAll(files.transfers());
+
+                // re-read, the sender or the user may have changed the status meanwhile
+                DirectoryTransfer dt = directoryTransferRepository.findById(directoryTransferId)
+                        .orElse(null);
+                if (dt == null) {
+                    walk.cancel(true);
+                    return;
                 }
+                List<String> emptyDirectories = new ArrayList<>(dt.getEmptyDirectories());
+                emptyDirectories.addAll(segment.emptyDirectories());
+                dt.setEmptyDirectories(emptyDirectories);
+                dt.setTotalFiles(totalFiles);
+                dt.setTotalSize(totalSize);
+                dt.setWalkInProgress(!segment.last());
+                directoryTransferRepository.save(dt);
+                walkProgress.segmentRegistered(directoryTransferId);
+
+            } while (!segment.last());
+
+            log.info("Directory walk finished: {} ({} files)",
+                    directoryTransfer.getDirectoryName(), totalFiles);
+
+        } catch (FileTransferException e) {
+            walk.cancel(true);
+            log.error("Directory walk failed, stopping transfer {}: {}",
+                    directoryTransferId, e.getMessage());
+
+            directoryTransferRepository.findById(directoryTransferId).ifPresent(dt -> {
+                dt.setWalkInProgress(false);
+                dt.setStatus(GroupTransferStatus.FAILED);
+                dt.setFailureReason(e.getMessage());
+                directoryTransferRepository.save(dt);
+            });
+        } finally {
+            walkProgress.walkEnded(directoryTransferId);
+        }
+    }
+
+    /* one FileTransfer and one registration entry per file of the segment, not saved yet */
+    private SegmentFiles toSegmentFiles(
+            DirectoryTransfer directoryTransfer,
+            Path sourceDir,
+            DirectoryManifestWalker.Segment segment,
+            InitiateDirectoryTransferRequest request
+    ) {
+        List<FileTransfer> fileTransfers = new ArrayList<>();
+        List<ReceiveDirectoryRequest.FileEntry> fileEntries = new ArrayList<>();
+
+        for (DirectoryManifestWalker.FileEntry entry : segment.files()) {
+            UUID transferId = UUID.randomUUID();
+            String fileName = entry.absolutePath().getFileName().toString();
+            String relativePath = sourceDir.relativize(entry.absolutePath()).toString();
+
+            FileTransfer ft = FileTransfer.initiate(
+                    transferId,
+                    directoryTransfer.getSourceAgentId(),
+                    request.getTargetAgentId(),
+                    fileName,
+                    entry.absolutePath().toString(),
+                    entry.fileSize()
+            );
+            ft.setDirectoryTransferId(directoryTransfer.getDirectoryTransferId());
+            ft.setRelativePath(relativePath);
+            ft.setTargetIp(request.getTargetIp());
+            ft.setTargetPort(request.getTargetPort());
+            ft.setExpiresAt(Instant.now().plusSeconds(agentConfig.getTransferExpiryHours() * 3600L));
+
+            ReceiveDirectoryRequest.FileEntry fe = new ReceiveDirectoryRequest.FileEntry();
+            fe.setTransferId(transferId);
+            fe.setFileName(fileName);
+            fe.setRelativePath(relativePath);
+            fe.setFileSize(entry.fileSize());
+            fe.setPacked(filePackSender.isPackable(entry.fileSize()));
+
+            // packed files are too small to be worth hashing
+            if (!fe.isPacked()) {
+                String contentHash = contentHashService.hashForRegistration(
+                        entry.absolutePath(), entry.fileSize());
+                ft.setContentHash(contentHash);
+                fe.setContentHash(contentHash);
             }
-        } catch (IOException e) {
-            throw new FileTransferException("Failed to walk directory", e);
+
+            fileTransfers.add(ft);
+            fileEntries.add(fe);
         }
 
-        if (files.isEmpty()) {
-            throw new FileTransferException(
-                    "Directory contains no files to transfer", null);
+        return new SegmentFiles(fileTransfers, fileEntries);
+    }
+
+    /* marks the files the target completed from a local copy, returns them */
+    private List<FileTransfer> markCompletedOnTarget(List<FileTransfer> fileTransfers, List<UUID> completed) {
+        if (completed.isEmpty()) return List.of();
+
+        Set<UUID> completedIds = new HashSet<>(completed);
+        List<FileTransfer> marked = new ArrayList<>();
+        for (FileTransfer ft : fileTransfers) {
+            if (!completedIds.contains(ft.getTransferId())) continue;
+            ft.setConfirmedOffset(ft.getFileSize());
+            ft.setLastChunkAt(Instant.now());
+            ft.setStatus(TransferStatus.COMPLETED);
+            marked.add(ft);
+        }
+        log.info("Target already had {} of {} files, not sending them", marked.size(), fileTransfers.size());
+        return marked;
+    }
+
+    private record SegmentFiles(List<FileTransfer> transfers, List<ReceiveDirectoryRequest.FileEntry> entries) {
+    }
+
+    /* next segment from the walker, rethrows the walk failure if it ended without one */
+    private DirectoryManifestWalker.Segment nextSegment(
+            BlockingQueue<DirectoryManifestWalker.Segment> segments, Future<?> walk) {
+        try {
+            while (true) {
+                DirectoryManifestWalker.Segment segment = segments.poll(100, TimeUnit.MILLISECONDS);
+                if (segment != null) return segment;
+
+                if (walk.isDone()) {
+                    segment = segments.poll();
+                    if (segment != null) return segment;
+                    walk.get();
+                    throw new FileTransferException("Directory walk ended unexpectedly", null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileTransferException("Interrupted while walking directory", e);
+        } catch (CancellationException e) {
+            throw new FileTransferException("Directory walk was cancelled", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FileTransferException fte) throw fte;
+            throw new FileTransferException("Failed to walk directory", e.getCause());
         }
+    }
+
+    /* chunks of the files are compressed with the codec the target agreed to, if any */
+    private void applyCompression(List<FileTransfer> transfers, String codec) {
+        if (codec == null) return;
+        transfers.forEach(ft -> ft.setCompression(ChunkCompression.forFile(codec, ft.getFileName())));
+    }
 
-        WalkResult result = new WalkResult();
-        result.files = files;
-        result.emptyDirectories = emptyDirectories.isEmpty()
-                ? Collections.emptyList() : emptyDirectories;
-        result.totalSize = totalSize;
-        return result;
+    private List<UUID> completed(RegistrationAckResponse ack) {
+        return ack.getCompleted() != null ? ack.getCompleted() : List.of();
     }
 
-    private void registerOnTarget(
+    /* registers files on the target, returns those it completed from a local copy and the codec it agreed to */
+    private RegistrationAckResponse registerOnTarget(
             InitiateDirectoryTransferRequest request,
-            UUID directoryTransferId,
-            UUID sourceAgentId,
-            String directoryName,
-            WalkResult walk,
-            List<ReceiveDirectoryRequest.FileEntry> fileEntries
+            String path,
+            ReceiveDirectoryRequest payload
     ) {
-        ReceiveDirectoryRequest payload = new ReceiveDirectoryRequest();
-        payload.setDirectoryTransferId(directoryTransferId);
-        payload.setSourceAgentId(sourceAgentId);
-        payload.setDirectoryName(directoryName);
-        payload.setTotalFiles(walk.files.size());
-        payload.setTotalSize(walk.totalSize);
-        payload.setEmptyDirectories(walk.emptyDirectories);
-        payload.setFiles(fileEntries);
-
+        if (agentConfig.isCompression()) {
+            payload.setCompression(ChunkCompression.SUPPORTED);
+        }
         try {
             String body = objectMapper.writeValueAsString(payload);
 
             HttpRequest httpRequest = HttpRequest.newBuilder()
                     .uri(URI.create("http://" + request.getTargetIp() + ":"
-                            + request.getTargetPort() + "/api/transfers/receive-directory"))
+                            + request.getTargetPort() + path))
                     .header("Content-Type", "application/json")
                     .header("X-Auth-Token",
                             request.getTargetToken() != null ? request.getTargetToken() : "")
                     .POST(HttpRequest.BodyPublishers.ofString(body))
                     .build();
 
-            HttpResponse<String> response = httpClient.send(
-                    httpRequest, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = httpSender.send(httpRequest);
 
             if (response.statusCode() != 200) {
                 throw new FileTransferException(
@@ -245,6 +401,11 @@ public class DirectorySenderService {
                                 + response.statusCode(), null);
             }
 
+            if (response.body() == null || response.body().isBlank()) {
+                return new RegistrationAckResponse(List.of());
+            }
+            return objectMapper.readValue(response.body(), RegistrationAckResponse.class);
+
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new FileTransferException("Cannot reach target agent", e);
@@ -252,20 +413,4 @@ public class DirectorySenderService {
             throw new FileTransferException("Cannot reach target agent", e);
         }
     }
-
-    private static class WalkResult {
-        List<FileEntry> files;
-        List<String> emptyDirectories;
-        long totalSize;
-
-        static class FileEntry {
-            final Path absolutePath;
-            final long fileSize;
-
-            FileEntry(Path absolutePath, long fileSize) {
-                this.absolutePath = absolutePath;
-                this.fileSize = fileSize;
-            }
-        }
-    }
-}
\ No newline at end of file
+}
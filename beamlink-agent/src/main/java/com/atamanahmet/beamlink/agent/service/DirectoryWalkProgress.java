@@ -0,0 +1,51 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Signals from a background directory walk to the sender of that directory.
+ * Each registered segment and the end of the walk release the latch the sender
+ * waits on, so a sender that ran out of files sleeps until there is more to send.
+ */
+@Component
+class DirectoryWalkProgress {
+
+    private static final CountDownLatch NOT_WALKING = new CountDownLatch(0);
+
+    /* released on the next registered segment or the end of the walk, keyed by directoryTransferId */
+    private final Map<UUID, CountDownLatch> nextSegment = new ConcurrentHashMap<>();
+
+    /** Called before the walk goes to the background. */
+    void walkStarted(UUID directoryTransferId) {
+        nextSegment.put(directoryTransferId, new CountDownLatch(1));
+    }
+
+    /** Called once the files of a segment are saved, the walk goes on. */
+    void segmentRegistered(UUID directoryTransferId) {
+        CountDownLatch registered = nextSegment.replace(directoryTransferId, new CountDownLatch(1));
+        if (registered != null) {
+            registered.countDown();
+        }
+    }
+
+    /** Called when the walk finished, failed or was abandoned. */
+    void walkEnded(UUID directoryTransferId) {
+        CountDownLatch registered = nextSegment.remove(directoryTransferId);
+        if (registered != null) {
+            registered.countDown();
+        }
+    }
+
+    /**
+     * Latch released by the next segment, take it before reading the directory state
+     * so a segment registered in between is not missed. Already released when no walk runs.
+     */
+    CountDownLatch nextSegment(UUID directoryTransferId) {
+        return nextSegment.getOrDefault(directoryTransferId, NOT_WALKING);
+    }
+}
@@ -0,0 +1,167 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
+import com.atamanahmet.beamlink.agent.dto.PackAckResponse;
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.exception.ReceiverBusyException;
+import com.atamanahmet.beamlink.agent.http.HttpSender;
+import com.atamanahmet.beamlink.agent.metrics.TransferMetrics;
+import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.util.FilePackFormat;
+import com.atamanahmet.beamlink.agent.util.PathNormalizer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Sends the small files of a directory transfer concatenated into pack chunks,
+ * one POST per pack instead of a registration and a PATCH per file.
+ * Files the target does not ack stay PENDING and go through the regular chunk path.
+ */
+@Service
+@RequiredArgsConstructor
+public class FilePackSender {
+
+    private static final Logger log = LoggerFactory.getLogger(FilePackSender.class);
+
+    private final FileTransferRepository fileTransferRepository;
+    private final AgentConfig agentConfig;
+    private final HttpSender httpSender;
+    private final ObjectMapper objectMapper;
+    private final BandwidthScheduler bandwidth;
+    private final TransferMetrics metrics;
+
+    /* true when the file is sent inside a pack rather than on its own */
+    public boolean isPackable(long fileSize) {
+        return fileSize > 0 && fileSize < agentConfig.getPackThreshold();
+    }
+
+    /**
+     * Splits files into packs of at most pack-size bytes including entry headers,
+     * in the given order so files of the same folder travel together.
+     */
+    public List<List<FileTransfer>> plan(List<FileTransfer> files) {
+        long packSize = agentConfig.getPackSize();
+        List<List<FileTransfer>> packs = new ArrayList<>();
+        List<FileTransfer> current = new ArrayList<>();
+        long currentBytes = 0;
+
+        for (FileTransfer ft : files) {
+            long entryBytes = FilePackFormat.HEADER_BYTES + ft.getFileSize();
+            if (!current.isEmpty() && currentBytes + entryBytes > packSize) {
+                packs.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+            current.add(ft);
+            currentBytes += entryBytes;
+        }
+        if (!current.isEmpty()) {
+            packs.add(current);
+        }
+        return packs;
+    }
+
+    /**
+     * Sends one pack and marks the files the target wrote as COMPLETED.
+     * Returns their transferIds, throws when the pack as a whole was not accepted.
+     * A target at its admission limits is waited for and sent the pack again.
+     */
+    public Set<UUID> sendPack(UUID directoryTransferId, List<FileTransfer> pack,
+                              String targetIp, int targetPort, String targetToken) {
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        List<FileTransfer> packed = new ArrayList<>();
+
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            for (FileTransfer ft : pack) {
+                byte[] content = Files.readAllBytes(
+                        Paths.get(PathNormalizer.normalize(ft.getFilePath())));
+
+                // changed since the walk, the regular path reports the mismatch
+                if (content.length != ft.getFileSize()) {
+                    log.warn("File size changed since walk, not packing: {}", ft.getFilePath());
+                    continue;
+                }
+                FilePackFormat.writeEntry(out, ft.getTransferId(), content);
+                packed.add(ft);
+            }
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to build pack for directory " + directoryTransferId, e);
+        }
+
+        if (packed.isEmpty()) return Set.of();
+
+        PackAckResponse ack;
+        try {
+            bandwidth.acquire(PeerHealthTracker.peerKey(targetIp, targetPort),
+                    BandwidthScheduler.Priority.BACKGROUND, body.size());
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://" + targetIp + ":" + targetPort
+                            + "/api/transfers/directory/" + directoryTransferId + "/pack"))
+                    .header("Content-Type", "application/octet-stream")
+                    .header("X-Auth-Token", targetToken != null ? targetToken : "")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                    .build();
+
+            HttpResponse<String> response = httpSender.send(request);
+            for (ReceiverBusyException busy = ReceiverBusyException.of(response); busy != null;
+                 busy = ReceiverBusyException.of(response)) {
+                log.debug("Target busy, pack for directory {} retried in {} ms",
+                        directoryTransferId, busy.getRetryAfterMs());
+                Thread.sleep(busy.getRetryAfterMs());
+                response = httpSender.send(request);
+            }
+
+            if (response.statusCode() != 200) {
+                throw new FileTransferException(
+                        "Pack rejected. Status: " + response.statusCode()
+                                + " Body: " + response.body(), null);
+            }
+            ack = objectMapper.readValue(response.body(), PackAckResponse.class);
+            metrics.sent(PeerHealthTracker.peerKey(targetIp, targetPort), body.size());
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FileTransferException("Cannot reach target agent", e);
+        } catch (IOException e) {
+            throw new FileTransferException("Cannot reach target agent", e);
+        }
+
+        Set<UUID> completed = new HashSet<>(ack.getCompleted());
+        List<FileTransfer> done = new ArrayList<>();
+        for (FileTransfer ft : packed) {
+            if (!completed.contains(ft.getTransferId())) continue;
+            ft.setConfirmedOffset(ft.getFileSize());
+            ft.setLastChunkAt(Instant.now());
+            ft.setStatus(TransferStatus.COMPLETED);
+            done.add(ft);
+        }
+        fileTransferRepository.saveAll(done);
+
+        log.info("Pack sent for directory {}: {}/{} files completed",
+                directoryTransferId, done.size(), pack.size());
+
+        return completed;
+    }
+}
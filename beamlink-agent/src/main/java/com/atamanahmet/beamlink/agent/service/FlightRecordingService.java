@@ -0,0 +1,117 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.dto.FlightRecordingStatus;
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+
+/**
+ * One flight recording at a time, started and stopped from the UI on a live agent,
+ * so a slow transfer can be recorded while it runs. The Beamlink events are on in
+ * both JDK settings, profile adds method sampling at a higher overhead.
+ * A recording left running stops after agent.diagnostics.recording-max-minutes,
+ * either way it is written to the recording directory and stays there.
+ */
+@Service
+@RequiredArgsConstructor
+public class FlightRecordingService {
+
+    private static final Logger log = LoggerFactory.getLogger(FlightRecordingService.class);
+
+    private static final Set<String> SETTINGS = Set.of("default", "profile");
+
+    private static final DateTimeFormatter FILE_TIME =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+    private final AgentConfig agentConfig;
+
+    private Recording recording;
+    private String settings;
+    private Path file;
+
+    /* IllegalArgumentException for settings other than default and profile */
+    public synchronized FlightRecordingStatus start(String settings) throws IOException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new FileTransferException("A flight recording is already running", null);
+        }
+        if (!SETTINGS.contains(settings)) {
+            throw new IllegalArgumentException("Unknown recording settings: " + settings);
+        }
+        closeStopped();
+
+        Path destination;
+        Recording started;
+        try {
+            Path directory = Paths.get(agentConfig.getRecordingDirectory());
+            Files.createDirectories(directory);
+            destination = directory.resolve("beamlink-agent-" + FILE_TIME.format(Instant.now()) + ".jfr")
+                    .toAbsolutePath();
+
+            started = new Recording(Configuration.getConfiguration(settings));
+            started.setName("beamlink-agent");
+            started.setToDisk(true);
+            // written here when stopped, also when it runs out
+            started.setDestination(destination);
+            started.setDuration(Duration.ofMinutes(agentConfig.getRecordingMaxMinutes()));
+            started.start();
+        } catch (ParseException e) {
+            // both settings ship with the JDK
+            throw new IllegalStateException("JDK recording settings unreadable: " + settings, e);
+        }
+
+        this.recording = started;
+        this.settings = settings;
+        this.file = destination;
+        log.info("Flight recording started with {} settings, written to {}", settings, destination);
+        return status();
+    }
+
+    /**
+     * Stops the recording and returns the file it was written to.
+     * A recording that already ran out was written then.
+     */
+    public synchronized Path stop() {
+        if (recording == null) {
+            throw new FileTransferException("No flight recording to stop", null);
+        }
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+        }
+        closeStopped();
+
+        log.info("Flight recording written to {}", file);
+        return file;
+    }
+
+    public synchronized FlightRecordingStatus status() {
+        if (recording == null) {
+            return new FlightRecordingStatus(false, null, null, file != null ? file.toString() : null);
+        }
+        return new FlightRecordingStatus(recording.getState() == RecordingState.RUNNING, settings,
+                recording.getStartTime(), file.toString());
+    }
+
+    /* a recording that ran out is closed on the next start or stop */
+    private void closeStopped() {
+        if (recording == null) return;
+        recording.close();
+        recording = null;
+    }
+}
@@ -0,0 +1,135 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Sends the child files of a directory or batch transfer with up to N files in flight.
+ * Files already in progress go first, in the given order. The rest are ordered by size:
+ * one slot streams the largest remaining file while the other slots drain the smallest,
+ * so small files fill the idle gaps of a large one instead of queueing behind it.
+ * With a single slot every file goes strictly in the given order, on the calling thread.
+ * Parallel files run on the shared group file pool.
+ */
+class GroupTransferScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(GroupTransferScheduler.class);
+
+    private final int parallelism;
+    private final Executor executor;
+
+    GroupTransferScheduler(int parallelism, Executor executor) {
+        this.parallelism = Math.max(1, parallelism);
+        this.executor = executor;
+    }
+
+    /**
+     * Runs until every file was sent or the group is stopped.
+     * mayStart is asked before each file is started, refresh re-reads the group
+     * after each finished file and returns false when it is gone.
+     * Returns true when every file ran, files still running on a stop are awaited.
+     * A file whose send throws stops the group as well, the others still running are awaited.
+     * When the calling thread is interrupted the files still running are cancelled instead.
+     */
+    boolean run(List<FileTransfer> inProgress, List<FileTransfer> pending,
+                Predicate<FileTransfer> mayStart, BooleanSupplier refresh,
+                Consumer<FileTransfer> send) {
+
+        if (parallelism == 1) {
+            List<FileTransfer> queue = new ArrayList<>(inProgress);
+            queue.addAll(pending);
+            for (FileTransfer file : queue) {
+                if (!mayStart.test(file)) return false;
+                send.accept(file);
+                if (!refresh.getAsBoolean()) return false;
+            }
+            return true;
+        }
+
+        Deque<FileTransfer> resumes = new ArrayDeque<>(inProgress);
+        Deque<FileTransfer> bySize = new ArrayDeque<>(pending.stream()
+                .sorted(Comparator.comparingLong(FileTransfer::getFileSize))
+                .toList());
+
+        CompletionService<FileTransfer> finished = new ExecutorCompletionService<>(executor);
+        List<Future<FileTransfer>> submitted = new ArrayList<>();
+        FileTransfer largeLane = null;
+        int running = 0;
+        boolean stopped = false;
+
+        try {
+            while (true) {
+                while (!stopped && running < parallelism
+                        && !(resumes.isEmpty() && bySize.isEmpty())) {
+
+                    FileTransfer next;
+                    if (!resumes.isEmpty()) {
+                        next = resumes.peekFirst();
+                    } else if (largeLane == null) {
+                        next = bySize.peekLast();
+                    } else {
+                        next = bySize.peekFirst();
+                    }
+
+                    if (!mayStart.test(next)) {
+                        stopped = true;
+                        break;
+                    }
+
+                    if (!resumes.isEmpty()) {
+                        resumes.pollFirst();
+                    } else if (largeLane == null) {
+                        largeLane = bySize.pollLast();
+                    } else {
+                        bySize.pollFirst();
+                    }
+
+                    submitted.add(finished.submit(() -> send.accept(next), next));
+                    running++;
+                }
+
+                if (running == 0) break;
+
+                Future<FileTransfer> next = finished.take();
+                running--;
+                FileTransfer done;
+                try {
+                    done = next.get();
+                } catch (ExecutionException e) {
+                    // send handles its own failures, anything reaching here is a bug in the caller
+                    log.error("Group file send failed unexpectedly", e.getCause());
+                    stopped = true;
+                    continue;
+                }
+                if (done == largeLane) {
+                    largeLane = null;
+                }
+                if (!refresh.getAsBoolean()) {
+                    stopped = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            // the caller marks the group stopped next, no file may keep sending behind it
+            submitted.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return !stopped;
+    }
+}
@@ -38,6 +38,22 @@ public class LogService {
         saveLogs();
     }
 
+    /**
+     * Log several file transfers with a single write of the log file
+     */
+    public synchronized void logTransfers(List<TransferLog> entries) {
+        if (entries.isEmpty()) return;
+
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        for (TransferLog log : entries) {
+            log.setId(UUID.randomUUID().toString());
+            log.setTimestamp(now);
+            log.setSyncedToNexus(false);
+            logs.add(log);
+        }
+        saveLogs();
+    }
+
     /**
      * Get all transfer logs
      */
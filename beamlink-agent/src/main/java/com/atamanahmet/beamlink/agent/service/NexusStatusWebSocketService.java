@@ -4,6 +4,7 @@ import com.atamanahmet.beamlink.agent.domain.TransferLog;
 import com.atamanahmet.beamlink.agent.domain.Peer;
 import com.atamanahmet.beamlink.agent.dto.AgentStatusDTO;
 import com.atamanahmet.beamlink.agent.dto.ApprovalPushRequest;
+import com.atamanahmet.beamlink.agent.dto.BandwidthLimits;
 import com.atamanahmet.beamlink.agent.dto.WebSocketMessageDTO;
 import com.atamanahmet.beamlink.agent.event.WsConnectionEvent;
 import com.atamanahmet.beamlink.agent.event.WsMessageEvent;
@@ -30,6 +31,7 @@ public class NexusStatusWebSocketService {
     private final PeerCacheService peerCacheService;
     private final NexusConnectionStateService connectionState;
     private final NexusWebSocketService nexusWebSocketService;
+    private final BandwidthScheduler bandwidthScheduler;
 
     /**
      * Listeners for ws (to avoid circular dependency)
@@ -91,6 +93,7 @@ public class NexusStatusWebSocketService {
             case "approval_push"  -> handleApprovalPush(message);
             case "peer_update"    -> handlePeerUpdate(message);
             case "rename_request" -> handleRename(message);
+            case "bandwidth_limits" -> handleBandwidthLimits(message);
             default -> log.warn("Unknown WS message type: {}", message.getType());
         }
     }
@@ -120,6 +123,16 @@ public class NexusStatusWebSocketService {
         }
     }
 
+    private void handleBandwidthLimits(WebSocketMessageDTO<JsonNode> message) {
+        try {
+            BandwidthLimits limits = objectMapper.treeToValue(message.getPayload(), BandwidthLimits.class);
+            bandwidthScheduler.apply(limits);
+            log.info("Bandwidth limits applied via WS");
+        } catch (Exception e) {
+            log.error("Failed to apply bandwidth limits: {}", e.getMessage(), e);
+        }
+    }
+
     private void handleRename(WebSocketMessageDTO<JsonNode> message) {
         try {
             String newName = message.getPayload().get("agentName").asText();
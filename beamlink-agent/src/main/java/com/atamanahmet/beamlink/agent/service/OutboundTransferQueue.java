@@ -0,0 +1,332 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.BatchTransfer;
+import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
+import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
+import com.atamanahmet.beamlink.agent.dto.QueuedTransferResponse;
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound transfers waiting for a send slot. A single file, a directory and a batch
+ * each take one slot, at most queue.max-concurrent of them send at once and the rest
+ * wait QUEUED. Higher priority leaves first, equal priorities in the order they were queued.
+ * Priority and queue time are stored on the records and the queue is rebuilt from them
+ * on startup. Target tokens are not stored, transfers rebuilt after a restart are sent
+ * without one like any resumed transfer.
+ * A transfer whose record is no longer QUEUED when its turn comes is skipped.
+ * One whose sender refuses it goes back QUEUED and is tried again on the next dispatch.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboundTransferQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundTransferQueue.class);
+
+    private static final Comparator<Entry> ORDER = Comparator.<Entry>comparingInt(Entry::priority).reversed()
+            .thenComparing(Entry::queuedAt)
+            .thenComparingLong(Entry::sequence);
+
+    private final FileTransferRepository transferRepository;
+    private final DirectoryTransferRepository directoryTransferRepository;
+    private final BatchTransferRepository batchTransferRepository;
+    private final TransferAsyncSender transferAsyncSender;
+    private final DirectoryAsyncSender directoryAsyncSender;
+    private final BatchAsyncSender batchAsyncSender;
+    private final AgentConfig agentConfig;
+
+    private final PriorityQueue<Entry> waiting = new PriorityQueue<>(ORDER);
+    private final AtomicLong sequence = new AtomicLong();
+    private int running;
+
+    /**
+     * Queues a standalone transfer the caller has saved as QUEUED.
+     * Inside a transaction it becomes eligible to start once the transaction commits.
+     */
+    public void enqueue(FileTransfer transfer, String targetToken) {
+        add(entry(transfer, targetToken));
+        dispatchAfterCommit();
+    }
+
+    public void enqueue(DirectoryTransfer directoryTransfer, String targetToken) {
+        add(entry(directoryTransfer, targetToken));
+        dispatchAfterCommit();
+    }
+
+    public void enqueue(BatchTransfer batchTransfer, String targetToken) {
+        add(entry(batchTransfer, targetToken));
+        dispatchAfterCommit();
+    }
+
+    /**
+     * Re-queues every QUEUED record, called once on startup
+     */
+    public void rebuild() {
+        List<Entry> entries = new ArrayList<>();
+        transferRepository.findByStatus(TransferStatus.QUEUED)
+                .forEach(t -> entries.add(entry(t, null)));
+        directoryTransferRepository.findByStatus(GroupTransferStatus.QUEUED)
+                .forEach(dt -> entries.add(entry(dt, null)));
+        batchTransferRepository.findByStatus(GroupTransferStatus.QUEUED)
+                .forEach(bt -> entries.add(entry(bt, null)));
+
+        if (entries.isEmpty()) return;
+
+        entries.forEach(this::add);
+        log.info("Rebuilt outbound queue with {} transfer(s)", entries.size());
+        dispatch();
+    }
+
+    /* takes a transfer out of the queue, false when it was not waiting */
+    public synchronized boolean remove(UUID id) {
+        return waiting.removeIf(e -> e.id().equals(id));
+    }
+
+    /**
+     * Waiting transfers in the order they will start
+     */
+    public synchronized List<QueuedTransferResponse> snapshot() {
+        List<Entry> ordered = waiting.stream().sorted(ORDER).toList();
+        List<QueuedTransferResponse> result = new ArrayList<>();
+        for (int i = 0; i < ordered.size(); i++) {
+            result.add(ordered.get(i).toResponse(i));
+        }
+        return result;
+    }
+
+    /**
+     * Moves a waiting transfer to another priority, it keeps its queue time within it
+     */
+    public QueuedTransferResponse reprioritize(UUID id, int priority) {
+        Entry updated;
+        synchronized (this) {
+            Entry entry = waitingEntry(id);
+            updated = entry.reordered(priority, entry.queuedAt());
+            waiting.remove(entry);
+            waiting.add(updated);
+        }
+        persistOrder(updated);
+        return position(id);
+    }
+
+    /**
+     * Moves a waiting transfer ahead of everything else of its priority
+     */
+    public QueuedTransferResponse moveToFront(UUID id) {
+        Entry updated;
+        synchronized (this) {
+            Entry entry = waitingEntry(id);
+            Instant first = waiting.stream()
+                    .filter(e -> e.priority() == entry.priority())
+                    .map(Entry::queuedAt)
+                    .min(Comparator.naturalOrder())
+                    .orElse(entry.queuedAt());
+            updated = entry.reordered(entry.priority(), first.minusMillis(1));
+            waiting.remove(entry);
+            waiting.add(updated);
+        }
+        persistOrder(updated);
+        return position(id);
+    }
+
+    private synchronized QueuedTransferResponse position(UUID id) {
+        return snapshot().stream()
+                .filter(r -> r.getId().equals(id))
+                .findFirst()
+                // started in between
+                .orElse(null);
+    }
+
+    private Entry waitingEntry(UUID id) {
+        return waiting.stream()
+                .filter(e -> e.id().equals(id))
+                .findFirst()
+                .orElseThrow(() -> new FileTransferException("Transfer is not queued: " + id, null));
+    }
+
+    private synchronized void add(Entry entry) {
+        waiting.removeIf(e -> e.id().equals(entry.id()));
+        waiting.add(entry);
+    }
+
+    private void dispatchAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            dispatch();
+            return;
+        }
+        // the sender reads the record on another thread, it must see the committed state
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                dispatch();
+            }
+        });
+    }
+
+    /* starts waiting transfers while slots are free */
+    private void dispatch() {
+        while (true) {
+            Entry next;
+            synchronized (this) {
+                int max = agentConfig.getQueueMaxConcurrent();
+                if (waiting.isEmpty() || (max > 0 && running >= max)) return;
+                next = waiting.poll();
+                running++;
+            }
+
+            CompletableFuture<Void> sending;
+            try {
+                sending = start(next);
+            } catch (RuntimeException e) {
+                log.error("Could not start queued {} {}: {}", next.kind(), next.id(), e.getMessage(), e);
+                // back in line, a finishing send or the next enqueue dispatches again
+                add(next);
+                release();
+                return;
+            }
+
+            if (sending == null) {
+                release();
+                continue;
+            }
+            sending.whenComplete((result, error) -> {
+                release();
+                dispatch();
+            });
+        }
+    }
+
+    private synchronized void release() {
+        running--;
+    }
+
+    /**
+     * Marks the record ACTIVE and hands it to its sender, null when it left the queue meanwhile.
+     * A sender that refuses it, a full executor for one, puts the record back to QUEUED and throws.
+     */
+    private CompletableFuture<Void> start(Entry entry) {
+        switch (entry.kind()) {
+            case TRANSFER -> {
+                FileTransfer transfer = transferRepository.findByTransferId(entry.id()).orElse(null);
+                if (transfer == null || transfer.getStatus() != TransferStatus.QUEUED) return skipped(entry);
+                transfer.setStatus(TransferStatus.ACTIVE);
+                transferRepository.save(transfer);
+                log.info("Starting queued transfer: {} ({})", transfer.getFileName(), entry.id());
+                try {
+                    return transferAsyncSender.sendAsync(
+                            entry.id(), entry.targetIp(), entry.targetPort(), entry.targetToken());
+                } catch (RuntimeException e) {
+                    transfer.setStatus(TransferStatus.QUEUED);
+                    transferRepository.save(transfer);
+                    throw e;
+                }
+            }
+            case DIRECTORY -> {
+                DirectoryTransfer dt = directoryTransferRepository.findById(entry.id()).orElse(null);
+                if (dt == null || dt.getStatus() != GroupTransferStatus.QUEUED) return skipped(entry);
+                dt.setStatus(GroupTransferStatus.ACTIVE);
+                directoryTransferRepository.save(dt);
+                log.info("Starting queued directory transfer: {} ({})", dt.getDirectoryName(), entry.id());
+                try {
+                    return directoryAsyncSender.sendAsync(
+                            entry.id(), entry.targetIp(), entry.targetPort(), entry.targetToken());
+                } catch (RuntimeException e) {
+                    dt.setStatus(GroupTransferStatus.QUEUED);
+                    directoryTransferRepository.save(dt);
+                    throw e;
+                }
+            }
+            default -> {
+                BatchTransfer bt = batchTransferRepository.findById(entry.id()).orElse(null);
+                if (bt == null || bt.getStatus() != GroupTransferStatus.QUEUED) return skipped(entry);
+                bt.setStatus(GroupTransferStatus.ACTIVE);
+                batchTransferRepository.save(bt);
+                log.info("Starting queued batch transfer: {}", entry.id());
+                try {
+                    return batchAsyncSender.sendAsync(
+                            entry.id(), entry.targetIp(), entry.targetPort(), entry.targetToken());
+                } catch (RuntimeException e) {
+                    bt.setStatus(GroupTransferStatus.QUEUED);
+                    batchTransferRepository.save(bt);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<Void> skipped(Entry entry) {
+        log.debug("Queued {} {} is no longer QUEUED, skipping", entry.kind(), entry.id());
+        return null;
+    }
+
+    /* only the order columns and only while QUEUED, a start running meanwhile keeps its ACTIVE */
+    private void persistOrder(Entry entry) {
+        switch (entry.kind()) {
+            case TRANSFER -> transferRepository.reorderIfQueued(entry.id(), entry.priority(), entry.queuedAt());
+            case DIRECTORY -> directoryTransferRepository.reorderIfQueued(entry.id(), entry.priority(), entry.queuedAt());
+            default -> batchTransferRepository.reorderIfQueued(entry.id(), entry.priority(), entry.queuedAt());
+        }
+    }
+
+    private Entry entry(FileTransfer t, String targetToken) {
+        return new Entry(Kind.TRANSFER, t.getTransferId(), t.getFileName(), t.getQueuePriority(),
+                queuedAt(t.getQueuedAt(), t.getCreatedAt()), sequence.incrementAndGet(),
+                t.getTargetIp(), t.getTargetPort(), targetToken);
+    }
+
+    private Entry entry(DirectoryTransfer dt, String targetToken) {
+        return new Entry(Kind.DIRECTORY, dt.getDirectoryTransferId(), dt.getDirectoryName(), dt.getQueuePriority(),
+                queuedAt(dt.getQueuedAt(), dt.getCreatedAt()), sequence.incrementAndGet(),
+                dt.getTargetIp(), dt.getTargetPort(), targetToken);
+    }
+
+    private Entry entry(BatchTransfer bt, String targetToken) {
+        return new Entry(Kind.BATCH, bt.getBatchTransferId(), "", bt.getQueuePriority(),
+                queuedAt(bt.getQueuedAt(), bt.getCreatedAt()), sequence.incrementAndGet(),
+                bt.getTargetIp(), bt.getTargetPort(), targetToken);
+    }
+
+    private static Instant queuedAt(Instant queuedAt, Instant createdAt) {
+        if (queuedAt != null) return queuedAt;
+        return createdAt != null ? createdAt : Instant.now();
+    }
+
+    public enum Kind {
+        TRANSFER,       // standalone file transfer
+        DIRECTORY,
+        BATCH
+    }
+
+    private record Entry(Kind kind, UUID id, String name, int priority, Instant queuedAt, long sequence,
+                         String targetIp, int targetPort, String targetToken) {
+
+        Entry reordered(int newPriority, Instant newQueuedAt) {
+            return new Entry(kind, id, name, newPriority, newQueuedAt, sequence,
+                    targetIp, targetPort, targetToken);
+        }
+
+        QueuedTransferResponse toResponse(int position) {
+            return new QueuedTransferResponse(position, kind.name(), id, name, priority, queuedAt);
+        }
+    }
+}
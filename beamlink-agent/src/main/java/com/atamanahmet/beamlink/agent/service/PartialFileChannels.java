@@ -0,0 +1,227 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.enums.DurabilityPolicy;
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.util.DeltaFormat;
+import com.atamanahmet.beamlink.common.storage.PartialFileWriter;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one open PartialFileWriter per live inbound transfer so chunks are written
+ * with positional writes instead of reopening the partial file for every chunk.
+ * Positional writes do not share a file pointer, concurrent chunks of the same
+ * transfer can be written in parallel.
+ * Partial files of at least upload.write-mode-min-size are written in upload.write-mode,
+ * smaller ones and files the mode cannot be used for are written through the page cache.
+ * Nothing is forced to disk here, the receiver forces a transfer as its durability policy asks.
+ * Partial files are allocated when a transfer is registered and never created here, a chunk
+ * arriving after its file was completed and moved fails instead of starting a new partial file.
+ */
+@Component
+@RequiredArgsConstructor
+public class PartialFileChannels {
+
+    private static final Logger log = LoggerFactory.getLogger(PartialFileChannels.class);
+
+    private final AgentConfig agentConfig;
+
+    private final Map<UUID, PartialFileWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * Streams the chunk into the partial file at the given offset.
+     * Returns the number of bytes written.
+     */
+    public long write(UUID transferId, Path partialFile, long offset, InputStream chunkStream) {
+        PartialFileWriter writer = open(transferId, partialFile);
+
+        try {
+            return writer.write(offset, chunkStream);
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to write chunk at offset " + offset, e);
+        }
+    }
+
+    /**
+     * Rebuilds a range of the partial file from delta instructions starting at the given offset.
+     * Copies are transferred from the receiver's previous copy (basis) without passing through
+     * the heap, literals are streamed like a chunk. Instructions running past length bytes are rejected.
+     * Returns the number of bytes written.
+     */
+    public long applyDelta(UUID transferId, Path partialFile, long offset, long length,
+                           InputStream deltaStream, Path basis) {
+        FileChannel channel = open(transferId, partialFile).channel();
+        long position = offset;
+
+        try (FileChannel basisChannel = FileChannel.open(basis, StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(deltaStream);
+            DeltaFormat.Instruction instruction;
+
+            while ((instruction = DeltaFormat.readInstruction(in)) != null) {
+                if (position - offset + instruction.length() > length) {
+                    throw new FileTransferException(
+                            "Delta runs past its range of " + length + " bytes at offset " + position, null);
+                }
+                if (instruction.type() == DeltaFormat.COPY) {
+                    if (instruction.basisOffset() + instruction.length() > basisChannel.size()) {
+                        throw new FileTransferException(
+                                "Delta copy beyond previous copy at offset " + instruction.basisOffset(), null);
+                    }
+                    long copied = 0;
+                    while (copied < instruction.length()) {
+                        basisChannel.position(instruction.basisOffset() + copied);
+                        long n = channel.transferFrom(basisChannel, position + copied,
+                                instruction.length() - copied);
+                        if (n <= 0) {
+                            throw new IOException("No progress copying from previous copy at "
+                                    + (instruction.basisOffset() + copied));
+                        }
+                        copied += n;
+                    }
+                    position += copied;
+                } else {
+                    long written = write(transferId, partialFile, position,
+                            new BoundedInputStream(in, instruction.length()));
+                    if (written != instruction.length()) {
+                        throw new FileTransferException(
+                                "Delta literal truncated at offset " + position, null);
+                    }
+                    position += written;
+                }
+            }
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to apply delta at offset " + offset, e);
+        }
+
+        return position - offset;
+    }
+
+    /**
+     * Forces the bytes written so far for the transfer to disk, nothing to do without an open writer.
+     */
+    public void force(UUID transferId) {
+        PartialFileWriter writer = writers.get(transferId);
+        if (writer == null) return;
+
+        try {
+            writer.force();
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to force partial file of " + transferId, e);
+        }
+    }
+
+    /* GROUP_COMMIT unless configured otherwise */
+    public DurabilityPolicy durabilityPolicy() {
+        String configured = agentConfig.getDurability();
+        if (configured == null || configured.isBlank()) return DurabilityPolicy.GROUP_COMMIT;
+        try {
+            return DurabilityPolicy.valueOf(configured.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown durability policy {}, forcing in groups", configured);
+            return DurabilityPolicy.GROUP_COMMIT;
+        }
+    }
+
+    /**
+     * Closes the cached writer of a transfer, if any.
+     * Called on completion before the file is moved, on pause/cancel and on expiry.
+     */
+    public void close(UUID transferId) {
+        PartialFileWriter writer = writers.remove(transferId);
+        if (writer == null) return;
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Could not close partial file channel for: {}", transferId);
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        writers.keySet().forEach(this::close);
+    }
+
+    private PartialFileWriter open(UUID transferId, Path partialFile) {
+        try {
+            return writers.computeIfAbsent(transferId, id -> {
+                try {
+                    return createWriter(partialFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new FileTransferException(
+                    "Failed to open partial file: " + partialFile, e.getCause());
+        }
+    }
+
+    private PartialFileWriter createWriter(Path partialFile) throws IOException {
+        PartialFileWriter.Mode mode = writeMode();
+        if (mode != PartialFileWriter.Mode.CHANNEL
+                && Files.exists(partialFile) && Files.size(partialFile) >= agentConfig.getWriteModeMinSize()) {
+            try {
+                return PartialFileWriter.open(mode, partialFile, durabilityPolicy() != DurabilityPolicy.NONE);
+            } catch (IOException e) {
+                log.warn("{} writes not available for {}, writing through the page cache: {}",
+                        mode, partialFile, e.getMessage());
+            }
+        }
+        return PartialFileWriter.open(PartialFileWriter.Mode.CHANNEL, partialFile, false);
+    }
+
+    private PartialFileWriter.Mode writeMode() {
+        String configured = agentConfig.getWriteMode();
+        if (configured == null || configured.isBlank()) return PartialFileWriter.Mode.CHANNEL;
+        try {
+            return PartialFileWriter.Mode.valueOf(configured.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown upload write mode {}, writing through the page cache", configured);
+            return PartialFileWriter.Mode.CHANNEL;
+        }
+    }
+
+    /* the next length bytes of a stream, for literals inside a delta chunk */
+    private static class BoundedInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+    }
+}
@@ -5,11 +5,13 @@ import com.atamanahmet.beamlink.agent.domain.Peer;
 import com.atamanahmet.beamlink.agent.domain.PeerCache;
 import com.atamanahmet.beamlink.agent.dto.PeerListResponse;
 import com.atamanahmet.beamlink.agent.dto.PeerStatusUpdate;
+import com.atamanahmet.beamlink.agent.event.PeerOnlineEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
@@ -20,7 +22,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -31,6 +36,7 @@ public class PeerCacheService {
     private final AgentConfig config;
     private final ObjectMapper objectMapper;
     private final WebClient nexusWebClient;
+    private final ApplicationEventPublisher eventPublisher;
 
     private static final String CACHE_FILE = "peers_cache.json";
     private volatile boolean initialPeersReceived = false;
@@ -117,7 +123,17 @@ public class PeerCacheService {
     }
 
     public void updatePeers(List<Peer> peers, long version) {
+        Map<UUID, Peer> previous = cachedPeers.stream()
+                .filter(p -> p.getAgentId() != null)
+                .collect(Collectors.toMap(Peer::getAgentId, Function.identity(), (a, b) -> a));
+
         cachedPeers = new ArrayList<>(peers);
+        for (Peer peer : peers) {
+            Peer before = previous.get(peer.getAgentId());
+            if (before != null && !before.isOnline() && peer.isOnline()) {
+                publishOnline(peer);
+            }
+        }
         currentPeerListVersion = version;
         initialPeersReceived = true;
         saveToCache();
@@ -131,10 +147,20 @@ public class PeerCacheService {
             cachedPeers.stream()
                     .filter(p -> p.getAgentId().toString().equals(status.getAgentId()))
                     .findFirst()
-                    .ifPresent(p -> p.setOnline(status.isOnline()));
+                    .ifPresent(p -> {
+                        boolean cameOnline = !p.isOnline() && status.isOnline();
+                        p.setOnline(status.isOnline());
+                        if (cameOnline) publishOnline(p);
+                    });
         }
     }
 
+    /* transfers paused while the peer was unreachable resume on this */
+    private void publishOnline(Peer peer) {
+        log.info("Peer back online: {} ({})", peer.getAgentName(), peer.getAddress());
+        eventPublisher.publishEvent(new PeerOnlineEvent(peer.getAgentId(), peer.getIpAddress(), peer.getPort()));
+    }
+
     public void clearCache() {
         cachedPeers.clear();
         log.info("Peer cache cleared");
@@ -0,0 +1,158 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.event.PeerCircuitClosedEvent;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker per target peer, keyed by "ip:port".
+ * Consecutive failed chunk attempts to a peer are counted across all transfers to it,
+ * any success resets the count. At circuit-breaker-failures the circuit opens: senders
+ * stop retrying and pause their transfers instead of failing them one by one, and
+ * new sends to the peer pause before their first chunk. Transfers paused this way
+ * are remembered so they can be resumed together when the peer comes back online.
+ * After circuit-breaker-cooldown-ms the circuit is half-open: sends go through again and
+ * one paused transfer per cooldown is handed out as a probe. The first success closes
+ * the circuit and publishes PeerCircuitClosedEvent, a failure opens it for another cooldown.
+ * State is in memory and lost on restart, a restart pauses interrupted transfers anyway.
+ */
+@Component
+@RequiredArgsConstructor
+public class PeerHealthTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(PeerHealthTracker.class);
+
+    private final AgentConfig agentConfig;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Map<String, PeerHealth> peers = new ConcurrentHashMap<>();
+
+    public static String peerKey(String ip, int port) {
+        return ip + ":" + port;
+    }
+
+    public void succeeded(String peer) {
+        PeerHealth health = peers.get(peer);
+        if (health == null) return;
+        synchronized (health) {
+            health.consecutiveFailures = 0;
+            if (!health.open) return;
+            health.open = false;
+        }
+        log.info("Peer {} answered again, closing its circuit", peer);
+        eventPublisher.publishEvent(new PeerCircuitClosedEvent(peer));
+    }
+
+    /**
+     * Counts a failed attempt, returns true when this failure opened the circuit
+     */
+    public boolean failed(String peer) {
+        int threshold = agentConfig.getCircuitBreakerFailures();
+        if (threshold <= 0) return false;
+
+        PeerHealth health = peers.computeIfAbsent(peer, p -> new PeerHealth());
+        synchronized (health) {
+            health.consecutiveFailures++;
+            if (health.open) {
+                // a failed probe, or one sent before the circuit opened, starts the cooldown over
+                health.openedAt = System.nanoTime();
+                return false;
+            }
+            if (health.consecutiveFailures < threshold) return false;
+            health.open = true;
+            health.openedAt = System.nanoTime();
+            health.probedAt = health.openedAt;
+        }
+        log.warn("Peer {} unreachable after {} consecutive failures, pausing its transfers", peer, threshold);
+        return true;
+    }
+
+    /* false once the cooldown has passed, half-open lets sends through as probes */
+    public boolean isOpen(String peer) {
+        PeerHealth health = peers.get(peer);
+        if (health == null) return false;
+        synchronized (health) {
+            return health.open && !cooledDown(health.openedAt, System.nanoTime());
+        }
+    }
+
+    /**
+     * One paused transfer per half-open peer to try it with, taken out of what the circuit
+     * remembers. A peer gets at most one probe per cooldown.
+     */
+    public List<Probe> probes() {
+        long now = System.nanoTime();
+        List<Probe> probes = new ArrayList<>();
+
+        peers.forEach((peer, health) -> {
+            synchronized (health) {
+                if (!health.open || !cooledDown(health.openedAt, now) || !cooledDown(health.probedAt, now)) return;
+
+                for (Map.Entry<PausedKind, Set<UUID>> entry : health.paused.entrySet()) {
+                    Iterator<UUID> ids = entry.getValue().iterator();
+                    if (!ids.hasNext()) continue;
+                    probes.add(new Probe(peer, entry.getKey(), ids.next()));
+                    ids.remove();
+                    health.probedAt = now;
+                    return;
+                }
+            }
+        });
+        return probes;
+    }
+
+    /* without a cooldown the circuit stays open until the peer is reported online */
+    private boolean cooledDown(long since, long now) {
+        long cooldownMs = agentConfig.getCircuitBreakerCooldownMs();
+        return cooldownMs > 0 && now - since >= cooldownMs * 1_000_000L;
+    }
+
+    /* a transfer or group paused because the circuit was open, resumed when the peer is back */
+    public void pausedByCircuit(String peer, PausedKind kind, UUID id) {
+        PeerHealth health = peers.computeIfAbsent(peer, p -> new PeerHealth());
+        synchronized (health) {
+            health.paused.computeIfAbsent(kind, k -> new LinkedHashSet<>()).add(id);
+        }
+    }
+
+    /**
+     * Closes the circuit and hands back what it paused, empty when it was not open
+     */
+    public Map<PausedKind, Set<UUID>> close(String peer) {
+        PeerHealth health = peers.remove(peer);
+        if (health == null) return Map.of();
+        synchronized (health) {
+            return Map.copyOf(health.paused);
+        }
+    }
+
+    public record Probe(String peer, PausedKind kind, UUID id) {
+    }
+
+    public enum PausedKind {
+        TRANSFER,       // standalone file transfer
+        DIRECTORY,
+        BATCH
+    }
+
+    private static class PeerHealth {
+        private int consecutiveFailures;
+        private volatile boolean open;
+        private long openedAt;
+        private long probedAt;
+        private final Map<PausedKind, Set<UUID>> paused = new ConcurrentHashMap<>();
+    }
+}
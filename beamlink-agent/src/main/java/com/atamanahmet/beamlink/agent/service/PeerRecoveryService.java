@@ -0,0 +1,108 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.ExecutorConfig;
+import com.atamanahmet.beamlink.agent.event.PeerCircuitClosedEvent;
+import com.atamanahmet.beamlink.agent.event.PeerOnlineEvent;
+import com.atamanahmet.beamlink.agent.service.PeerHealthTracker.PausedKind;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Resumes the transfers the circuit breaker paused once their target peer is reported online
+ * again or answers a send. While a circuit is half-open one paused transfer at a time is resumed
+ * as a probe, its first acked chunk closes the circuit.
+ */
+@Service
+@RequiredArgsConstructor
+public class PeerRecoveryService {
+
+    private static final Logger log = LoggerFactory.getLogger(PeerRecoveryService.class);
+
+    private final PeerHealthTracker peerHealth;
+    private final TransferSenderService transferSenderService;
+    private final DirectorySenderService directorySenderService;
+    private final BatchSenderService batchSenderService;
+
+    /**
+     * Closes the peer's circuit and resumes everything it paused.
+     * A resume that cannot reach the peer is remembered again for the next time it comes
+     * online, a transfer the user resumed or cancelled meanwhile is left alone.
+     */
+    @Async(ExecutorConfig.CONTROL_EXECUTOR)
+    @EventListener
+    public void onPeerOnline(PeerOnlineEvent event) {
+        resumeAll(PeerHealthTracker.peerKey(event.ipAddress(), event.port()));
+    }
+
+    @Async(ExecutorConfig.CONTROL_EXECUTOR)
+    @EventListener
+    public void onCircuitClosed(PeerCircuitClosedEvent event) {
+        resumeAll(event.peer());
+    }
+
+    /**
+     * Resumes one paused transfer per half-open peer. A probe that cannot reach the peer
+     * counts as a failure, the circuit stays open for another cooldown.
+     */
+    @Scheduled(fixedDelayString = "${agent.transfer.circuit-breaker-cooldown-ms:30000}")
+    public void probeHalfOpenPeers() {
+        for (PeerHealthTracker.Probe probe : peerHealth.probes()) {
+            log.info("Probing peer {} by resuming {} {}", probe.peer(), probe.kind(), probe.id());
+            Map<PausedKind, Set<UUID>> paused = Map.of(probe.kind(), Set.of(probe.id()));
+            if (!resumeEach(probe.peer(), probe.kind(), paused, resumer(probe.kind()))) {
+                peerHealth.failed(probe.peer());
+            }
+        }
+    }
+
+    private void resumeAll(String peer) {
+        Map<PausedKind, Set<UUID>> paused = peerHealth.close(peer);
+        if (paused.isEmpty()) return;
+
+        log.info("Resuming transfers paused while peer {} was unreachable", peer);
+
+        for (PausedKind kind : PausedKind.values()) {
+            resumeEach(peer, kind, paused, resumer(kind));
+        }
+    }
+
+    private Consumer<UUID> resumer(PausedKind kind) {
+        return switch (kind) {
+            case TRANSFER -> transferSenderService::resume;
+            case DIRECTORY -> directorySenderService::resume;
+            case BATCH -> batchSenderService::resume;
+        };
+    }
+
+    /* false when the peer was still unreachable for one of them */
+    private boolean resumeEach(String peer, PausedKind kind, Map<PausedKind, Set<UUID>> paused,
+                               Consumer<UUID> resume) {
+
+        boolean reached = true;
+        for (UUID id : paused.getOrDefault(kind, Set.of())) {
+            try {
+                resume.accept(id);
+                log.info("Auto-resumed {} {} after peer {} came back", kind, id, peer);
+            } catch (RuntimeException e) {
+                log.warn("Could not auto-resume {} {}: {}", kind, id, e.getMessage());
+                // still unreachable, anything else means the transfer moved on without us
+                if (e.getCause() instanceof IOException) {
+                    peerHealth.pausedByCircuit(peer, kind, id);
+                    reached = false;
+                }
+            }
+        }
+        return reached;
+    }
+}
@@ -0,0 +1,201 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import com.atamanahmet.beamlink.agent.dto.ReceiveAdmissionStats;
+import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for inbound chunk, delta and pack requests.
+ * A transfer takes a receive slot with its first admitted request and keeps it until it
+ * completes or sends nothing for slot-idle-ms, at most receive.max-transfers hold one.
+ * Bytes of requests being written are capped by receive.max-bytes-in-flight.
+ * While several source agents want to send, each is held to an equal share of slots and
+ * bytes, slots already taken are kept. A rejected request is answered with Retry-After,
+ * senders wait and try again without counting it as a failure.
+ * A request larger than the byte cap is still admitted when nothing else is in flight.
+ */
+@Component
+@RequiredArgsConstructor
+public class ReceiveAdmission {
+
+    private static final Logger log = LoggerFactory.getLogger(ReceiveAdmission.class);
+
+    private final AgentConfig agentConfig;
+    private final FileTransferRepository transferRepository;
+    private final DirectoryTransferRepository directoryTransferRepository;
+
+    /* transfers holding a receive slot, keyed by transferId or directoryTransferId for packs */
+    private final Map<UUID, Slot> slots = new HashMap<>();
+
+    /* sources turned away recently, nanoTime of their last rejection */
+    private final Map<UUID, Long> waitingSources = new HashMap<>();
+
+    private long bytesInFlight;
+    private long rejected;
+
+    /**
+     * Admits a request of the given size for the transfer, null when the sender is to retry later.
+     * The returned admission must be closed once the request body is written.
+     */
+    public Admission tryAdmit(UUID transferId, long bytes) {
+        long requestBytes = Math.max(0, bytes);
+        UUID source = sourceOf(transferId);
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            expireIdle(now);
+            Slot slot = slots.get(transferId);
+            if (slot == null) {
+                // unknown transfers are left to the receiver to reject
+                if (source == null) return new Admission(null, 0);
+                if (!slotAvailable(source)) return reject(source, now);
+            } else {
+                source = slot.source;
+            }
+
+            if (!bytesAvailable(source, requestBytes)) return reject(source, now);
+
+            if (slot == null) {
+                slot = new Slot(source);
+                slots.put(transferId, slot);
+            }
+            slot.requests++;
+            slot.bytes += requestBytes;
+            slot.lastActivity = now;
+            bytesInFlight += requestBytes;
+            waitingSources.remove(source);
+            return new Admission(transferId, requestBytes);
+        }
+    }
+
+    /* the transfer received its last byte, its slot is freed once its requests are done */
+    public synchronized void finished(UUID transferId) {
+        Slot slot = slots.get(transferId);
+        if (slot == null) return;
+        if (slot.requests == 0) {
+            slots.remove(transferId);
+        } else {
+            slot.finished = true;
+        }
+    }
+
+    public long retryAfterSeconds() {
+        long ms = Math.max(1, agentConfig.getReceiveRetryAfterMs());
+        return Math.max(1, (ms + 999) / 1000);
+    }
+
+    public synchronized ReceiveAdmissionStats stats() {
+        expireIdle(System.nanoTime());
+        return new ReceiveAdmissionStats(slots.size(), agentConfig.getReceiveMaxTransfers(),
+                bytesInFlight, agentConfig.getReceiveMaxBytesInFlight(), waitingSources.size(), rejected);
+    }
+
+    private boolean slotAvailable(UUID source) {
+        int max = agentConfig.getReceiveMaxTransfers();
+        if (max <= 0) return true;
+        if (slots.size() >= max) return false;
+
+        long held = slots.values().stream().filter(s -> s.source.equals(source)).count();
+        return held < Math.max(1, (max + sources(source) - 1) / sources(source));
+    }
+
+    private boolean bytesAvailable(UUID source, long bytes) {
+        long max = agentConfig.getReceiveMaxBytesInFlight();
+        if (max <= 0 || bytesInFlight == 0) return true;
+        if (bytesInFlight + bytes > max) return false;
+
+        long held = slots.values().stream().filter(s -> s.source.equals(source)).mapToLong(s -> s.bytes).sum();
+        return held == 0 || held + bytes <= max / sources(source);
+    }
+
+    /* sources receiving or waiting, the given one included */
+    private int sources(UUID source) {
+        Set<UUID> sources = new HashSet<>(waitingSources.keySet());
+        slots.values().forEach(s -> sources.add(s.source));
+        sources.add(source);
+        return sources.size();
+    }
+
+    private Admission reject(UUID source, long now) {
+        waitingSources.put(source, now);
+        rejected++;
+        log.debug("Receiver busy, asking source {} to retry: {} transfers, {} bytes in flight",
+                source, slots.size(), bytesInFlight);
+        return null;
+    }
+
+    private void expireIdle(long now) {
+        long idle = TimeUnit.MILLISECONDS.toNanos(Math.max(0, agentConfig.getReceiveSlotIdleMs()));
+        slots.values().removeIf(s -> s.requests == 0 && now - s.lastActivity > idle);
+        waitingSources.values().removeIf(at -> now - at > idle);
+    }
+
+    private synchronized void release(UUID transferId, long bytes) {
+        Slot slot = slots.get(transferId);
+        if (slot == null) return;
+        slot.requests--;
+        slot.bytes -= bytes;
+        slot.lastActivity = System.nanoTime();
+        bytesInFlight -= bytes;
+        if (slot.finished && slot.requests == 0) slots.remove(transferId);
+    }
+
+    /* a chunk request names its transfer, a pack request its directory */
+    private UUID sourceOf(UUID transferId) {
+        synchronized (this) {
+            Slot slot = slots.get(transferId);
+            if (slot != null) return slot.source;
+        }
+        return transferRepository.findByTransferId(transferId)
+                .map(FileTransfer::getSourceAgentId)
+                .or(() -> directoryTransferRepository.findById(transferId).map(DirectoryTransfer::getSourceAgentId))
+                .orElse(null);
+    }
+
+    /**
+     * One admitted request, closing it returns its bytes
+     */
+    public class Admission implements AutoCloseable {
+        private final UUID transferId;
+        private final long bytes;
+        private boolean closed;
+
+        private Admission(UUID transferId, long bytes) {
+            this.transferId = transferId;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void close() {
+            if (closed || transferId == null) return;
+            closed = true;
+            release(transferId, bytes);
+        }
+    }
+
+    private static class Slot {
+        private final UUID source;
+        private int requests;
+        private long bytes;
+        private long lastActivity;
+        private boolean finished;
+
+        Slot(UUID source) {
+            this.source = source;
+        }
+    }
+}
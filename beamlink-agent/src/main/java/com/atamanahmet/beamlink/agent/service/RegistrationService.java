@@ -1,6 +1,7 @@
 package com.atamanahmet.beamlink.agent.service;
 
 import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.config.ExecutorConfig;
 import com.atamanahmet.beamlink.agent.domain.Agent;
 import com.atamanahmet.beamlink.agent.domain.enums.AgentState;
 import com.atamanahmet.beamlink.agent.dto.AgentIdentityResponse;
@@ -36,7 +37,7 @@ public class RegistrationService {
 
     private final AtomicBoolean registrationInProgress = new AtomicBoolean(false);
 
-    @Async
+    @Async(ExecutorConfig.CONTROL_EXECUTOR)
     @EventListener
     public void onNexusLostAgent(NexusLostAgentEvent event) {
         log.warn("NexusLostAgentEvent received — reason: {}. Forcing reset and re-registering.", event.reason());
@@ -1,44 +1,108 @@
 package com.atamanahmet.beamlink.agent.service;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.config.ExecutorConfig;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.ChunkAckResponse;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.exception.PeerUnavailableException;
+import com.atamanahmet.beamlink.agent.exception.ReceiverBusyException;
+import com.atamanahmet.beamlink.agent.http.ChunkBufferPool;
+import com.atamanahmet.beamlink.agent.http.FileRegionBodyPublisher;
 import com.atamanahmet.beamlink.agent.http.HttpSender;
+import com.atamanahmet.beamlink.agent.jfr.ChunkSentEvent;
+import com.atamanahmet.beamlink.agent.metrics.TransferMetrics;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.util.BlockSignatures;
+import com.atamanahmet.beamlink.agent.util.ChecksumFormat;
+import com.atamanahmet.beamlink.agent.util.DeltaFormat;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
 public class TransferAsyncSender {
 
     private static final Logger log = LoggerFactory.getLogger(TransferAsyncSender.class);
-    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
-    private static final long RETRY_DELAY_MS = 2000;
+    /* wait before offering a chunk the pool rejected again */
+    private static final long REJECTED_RETRY_MS = 20;
+
+    /* most encoded bytes one delta request carries */
+    private static final int MAX_DELTA_BODY = 8 * 1024 * 1024;
+
+    /* most output one delta request rebuilds, copies make it far larger than its body */
+    private static final long MAX_DELTA_RANGE = 256L * 1024 * 1024;
 
     private final FileTransferRepository transferRepository;
     private final ObjectMapper objectMapper;
     private final HttpSender httpSender;
+    private final AgentConfig agentConfig;
+    private final TransferProgressRegistry progressRegistry;
+    private final AdaptiveChunkSizer chunkSizer;
+    private final PeerHealthTracker peerHealth;
+    private final BandwidthScheduler bandwidth;
+    private final ChunkBufferPool chunkBuffers;
+    private final ContentHashService contentHashService;
+    private final TransferMetrics metrics;
+
+    /* sends the chunks of a window concurrently, doSend consumes their acks in order.
+       Retries wait on a timer, not on a thread of this pool */
+    @Qualifier(ExecutorConfig.CHUNK_EXECUTOR)
+    private final AsyncTaskExecutor chunkExecutor;
+
+    /* runs the range loop of each stripe, those wait on chunks and stay off the chunk pool */
+    @Qualifier(ExecutorConfig.STRIPE_EXECUTOR)
+    private final AsyncTaskExecutor stripeExecutor;
+
+    /* holds attempts waiting for a retry or a chunk thread, it only hands them to the chunk pool */
+    @Qualifier(ExecutorConfig.RETRY_SCHEDULER)
+    private final ScheduledExecutorService retryScheduler;
 
-    @Async
-    public void sendAsync(UUID transferId, String targetIp, int targetPort, String targetToken) {
+    /* reads the file for its segment checksums while chunks are sent */
+    @Qualifier(ExecutorConfig.CHECKSUM_EXECUTOR)
+    private final AsyncTaskExecutor checksumExecutor;
+
+    /* the future completes when the transfer stops sending, finished or not */
+    @Async(ExecutorConfig.TRANSFER_EXECUTOR)
+    public CompletableFuture<Void> sendAsync(UUID transferId, String targetIp, int targetPort, String targetToken) {
         doSend(transferId, targetIp, targetPort, targetToken);
+        return CompletableFuture.completedFuture(null);
     }
 
     public CompletableFuture<Void> sendBlocking(UUID transferId, String targetIp, int targetPort, String targetToken) {
@@ -47,141 +111,650 @@ public class TransferAsyncSender {
     }
 
     private void doSend(UUID transferId, String targetIp, int targetPort, String targetToken) {
-        FileTransfer transfer = transferRepository.findByTransferId(transferId)
-                .orElse(null);
+        // registered before the record is read, a cancel landing in between is not missed
+        progressRegistry.register(transferId);
+        try {
+            FileTransfer transfer = transferRepository.findByTransferId(transferId)
+                    .orElse(null);
+
+            if (transfer == null) {
+                log.warn("Transfer not found, aborting async send: {}", transferId);
+                return;
+            }
+            progressRegistry.checkpointed(transferId, transfer.getConfirmedOffset());
 
-        if (transfer == null) {
-            log.warn("Transfer not found, aborting async send: {}", transferId);
+            String baseUrl = "http://" + targetIp + ":" + targetPort;
+
+            String peer = PeerHealthTracker.peerKey(targetIp, targetPort);
+            if (peerHealth.isOpen(peer)) {
+                pauseForPeer(transfer, new PeerUnavailableException(peer, null));
+                return;
+            }
+
+            if (completedFromTargetCopy(baseUrl, transfer, targetToken)) return;
+
+            Future<?> checksums = sendFileChecksums(baseUrl, transfer, targetToken);
+
+            if (transfer.isDelta()) {
+                doSendDelta(transfer, baseUrl, targetToken, checksums);
+            } else if (transfer.isStriped()) {
+                doSendStriped(transfer, baseUrl, targetToken, checksums);
+            } else {
+                doSendSingle(transfer, baseUrl, targetToken, checksums);
+            }
+        } finally {
+            progressRegistry.unregister(transferId);
+        }
+    }
+
+    private void doSendSingle(FileTransfer transfer, String baseUrl, String targetToken, Future<?> checksums) {
+        try {
+            RangeOutcome outcome = sendRange(baseUrl, transfer, targetToken,
+                    transfer.getConfirmedOffset(), transfer.getFileSize(),
+                    new SingleStreamProgress(transfer), checksums);
+
+            if (outcome == RangeOutcome.COMPLETE) {
+                markCompleted(transfer);
+            } else {
+                persistOnExit(transfer);
+            }
+
+        } catch (Exception e) {
+            failOrPause(transfer, e);
+        }
+    }
+
+    /**
+     * Sends a file the target rebuilds from its earlier copy, only blocks that copy
+     * lacks travel as literal data. Output offsets equal source offsets, so when the
+     * signatures cannot be fetched the rest is sent as plain chunks instead.
+     */
+    private void doSendDelta(FileTransfer transfer, String baseUrl, String targetToken, Future<?> checksums) {
+        BlockSignatures signatures;
+        try {
+            signatures = fetchSignatures(baseUrl, transfer.getTransferId(), targetToken);
+        } catch (Exception e) {
+            log.warn("Block signatures unavailable for {}, sending in full: {}",
+                    transfer.getTransferId(), e.getMessage());
+            doSendSingle(transfer, baseUrl, targetToken, checksums);
             return;
         }
 
-        String baseUrl = "http://" + targetIp + ":" + targetPort;
+        try {
+            RangeOutcome outcome = sendDeltaRange(baseUrl, transfer, targetToken, signatures,
+                    new SingleStreamProgress(transfer), checksums);
 
-        try (RandomAccessFile raf = new RandomAccessFile(
-                Paths.get(transfer.getFilePath()).toFile(), "r")) {
+            if (outcome == RangeOutcome.COMPLETE) {
+                markCompleted(transfer);
+            } else {
+                persistOnExit(transfer);
+            }
 
-            long offset = transfer.getConfirmedOffset();
-            raf.seek(offset);
+        } catch (Exception e) {
+            failOrPause(transfer, e);
+        }
+    }
 
-            byte[] buffer = new byte[CHUNK_SIZE];
-            int bytesRead;
+    private BlockSignatures fetchSignatures(String baseUrl, UUID transferId, String targetToken)
+            throws IOException, InterruptedException {
 
-            while ((bytesRead = raf.read(buffer)) != -1) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/api/transfers/" + transferId + "/signatures"))
+                .header("X-Auth-Token", targetToken != null ? targetToken : "")
+                .GET();
+        // the target may still be reading its earlier copy, far longer than a usual request
+        if (agentConfig.getSignaturesTimeoutMs() > 0) {
+            request.timeout(Duration.ofMillis(agentConfig.getSignaturesTimeoutMs()));
+        }
 
-                transfer = transferRepository.findByTransferId(transferId)
-                        .orElse(null);
+        HttpResponse<byte[]> response = httpSender.sendForBytes(request.build());
 
-                if (transfer == null) {
-                    log.warn("Transfer disappeared during send, stopping: {}", transferId);
-                    return;
-                }
+        if (response.statusCode() != 200) {
+            throw new FileTransferException(
+                    "Signatures rejected. Status: " + response.statusCode(), null);
+        }
+        byte[] body = response.body();
+        return BlockSignatures.read(new DataInputStream(new ByteArrayInputStream(body)), body.length);
+    }
+
+    /**
+     * Encodes the file from the confirmed offset against the signatures and sends the
+     * instructions one request at a time, each acked like a chunk of the range it rebuilds.
+     */
+    private RangeOutcome sendDeltaRange(
+            String baseUrl, FileTransfer transfer, String targetToken,
+            BlockSignatures signatures, RangeProgress progress, Future<?> checksums
+    ) throws Exception {
+
+        DeltaRequests requests = new DeltaRequests(baseUrl, transfer, targetToken, progress, checksums);
+
+        try (FileChannel channel = FileChannel.open(
+                Paths.get(transfer.getFilePath()), StandardOpenOption.READ)) {
+
+            long end = Math.min(transfer.getFileSize(), channel.size());
+            new DeltaEncoder(signatures).encode(channel, transfer.getConfirmedOffset(), end, requests);
+            requests.flush();
+
+        } catch (DeltaStopped e) {
+            return RangeOutcome.STOPPED;
+        }
+
+        log.info("Delta sent for {}: {} literal bytes of {}", transfer.getTransferId(),
+                requests.literalBytes, transfer.getFileSize());
+
+        return requests.complete ? RangeOutcome.COMPLETE : RangeOutcome.RANGE_SENT;
+    }
+
+    /**
+     * Sends every unfinished stripe concurrently, each over its own connection.
+     * The first failing stripe stops the others and fails the transfer.
+     * When every stripe was acked but the target did not complete the file, it took back
+     * segments that failed verification, the stripes are sent again from its offsets.
+     */
+    private void doSendStriped(FileTransfer transfer, String baseUrl, String targetToken, Future<?> checksums) {
+        boolean complete = false;
+
+        for (int pass = 1; ; pass++) {
+            List<Future<RangeOutcome>> stripes = new ArrayList<>();
+
+            for (int i = 0; i < transfer.getStripeCount(); i++) {
+                int stripe = i;
+                long from = transfer.getStripeOffsets().get(stripe);
+                long to = transfer.stripeEnd(stripe);
+                if (from >= to) continue;
 
-                if (transfer.getStatus() == TransferStatus.CANCELLED) {
-                    log.info("Transfer cancelled: {}", transferId);
-                    return;
+                stripes.add(stripeExecutor.submit(() -> sendRange(baseUrl, transfer, targetToken,
+                        from, to, new StripeProgress(transfer, stripe), checksums)));
+            }
+
+            boolean stopped = false;
+            try {
+                for (Future<RangeOutcome> stripe : stripes) {
+                    RangeOutcome outcome = await(stripe);
+                    complete |= outcome == RangeOutcome.COMPLETE;
+                    stopped |= outcome == RangeOutcome.STOPPED;
+                }
+                if (complete || stopped || stripes.isEmpty()
+                        || !agentConfig.isChecksums() || pass >= transfer.getMaxRetries()) {
+                    break;
                 }
-                if (transfer.getStatus() == TransferStatus.PAUSED) {
-                    log.info("Transfer paused: {}", transferId);
-                    return;
+                log.warn("Target holds back part of {} after verification, sending it again", transfer.getTransferId());
+                refreshStripeOffsets(baseUrl, transfer, targetToken);
+            } catch (Exception e) {
+                stripes.forEach(stripe -> stripe.cancel(true));
+                synchronized (transfer) {
+                    failOrPause(transfer, e);
                 }
+                return;
+            }
+        }
+
+        if (complete) {
+            markCompleted(transfer);
+        } else {
+            persistOnExit(transfer);
+        }
+    }
 
-                byte[] chunk = Arrays.copyOf(buffer, bytesRead);
-                long chunkEnd = offset + bytesRead - 1;
+    /**
+     * Sends the byte range [from, to) keeping up to windowSize chunks in flight,
+     * each sized by the chunk sizer, acks are consumed in send order. Chunks in flight
+     * stay within the receive window so a larger chunk size cannot overrun the receiver. An ack below the end of its chunk means the
+     * receiver lost ground, in-flight chunks are dropped and sending rewinds to it.
+     * Chunks are written in parallel, a chunk written before the one ahead of it is acked below
+     * its end, that is no loss when an earlier ack already confirmed past it.
+     */
+    private RangeOutcome sendRange(
+            String baseUrl, FileTransfer transfer, String targetToken,
+            long from, long to, RangeProgress progress, Future<?> checksums
+    ) throws Exception {
 
-                // retry loop per chunk
-                ChunkAckResponse ack = sendChunkWithRetry(
-                        baseUrl, transferId,
-                        offset, chunkEnd, transfer.getFileSize(),
-                        chunk, targetToken, transfer.getMaxRetries()
-                );
+        UUID transferId = transfer.getTransferId();
+        long declaredSize = transfer.getFileSize();
+        int maxRetries = transfer.getMaxRetries();
+        int windowSize = Math.max(1, agentConfig.getTransferWindowSize());
+        long receiveWindow = agentConfig.getReceiveWindowBytes();
+        Deque<InFlightChunk> inFlight = new ArrayDeque<>();
 
-                if (ack.getConfirmedOffset() < offset) {
-                    log.warn("Receiver offset mismatch. Rewinding from {} to {}", offset, ack.getConfirmedOffset());
-                    offset = ack.getConfirmedOffset();
-                    raf.seek(offset);
-                    continue;
+        try (FileChannel channel = FileChannel.open(
+                Paths.get(transfer.getFilePath()), StandardOpenOption.READ)) {
+
+            long end = Math.min(to, channel.size());
+            long nextOffset = from;
+            long confirmed = from;
+
+            while (true) {
+
+                while (inFlight.size() < windowSize && nextOffset < end
+                        && withinReceiveWindow(inFlight, nextOffset, receiveWindow)) {
+
+                    TransferStatus status = progress.currentStatus();
+
+                    if (status == TransferStatus.CANCELLED) {
+                        log.info("Transfer cancelled: {}", transferId);
+                        return RangeOutcome.STOPPED;
+                    }
+                    if (status == TransferStatus.PAUSED) {
+                        log.info("Transfer paused: {}", transferId);
+                        return RangeOutcome.STOPPED;
+                    }
+
+                    long chunkStart = nextOffset;
+                    long chunkLength = Math.min(chunkSizer.nextChunkSize(baseUrl), end - nextOffset);
+                    long chunkEnd = chunkStart + chunkLength - 1;
+
+                    if (chunkEnd + 1 == end) {
+                        // the target verifies the file when the last chunk completes it
+                        awaitChecksums(checksums);
+                    }
+
+                    // read here, not on the chunk thread, an interrupt there would close the channel
+                    HttpRequest.BodyPublisher chunk = readChunk(channel, chunkStart, chunkLength);
+
+                    // attempts run on the chunk executor, retries are scheduled between them
+                    Future<ChunkAckResponse> ack = sendChunkWithRetry(new ChunkSend(
+                            baseUrl, transfer, "chunk",
+                            chunkStart, chunkEnd, declaredSize,
+                            chunk, targetToken, maxRetries
+                    ));
+                    inFlight.add(new InFlightChunk(chunkStart, chunkEnd, ack));
+                    nextOffset = chunkEnd + 1;
+                }
+
+                InFlightChunk head = inFlight.poll();
+                if (head == null) {
+                    return RangeOutcome.RANGE_SENT;
                 }
 
+                ChunkAckResponse ack = await(head.ack);
 
-                offset = ack.getConfirmedOffset();
+                if (Math.max(confirmed, ack.getConfirmedOffset()) <= head.end) {
+                    log.warn("Receiver offset mismatch. Rewinding from {} to {}",
+                            head.start, ack.getConfirmedOffset());
+                    cancelInFlight(inFlight);
+                    nextOffset = ack.getConfirmedOffset();
+                    confirmed = nextOffset;
+                    continue;
+                }
 
-                transfer.setConfirmedOffset(offset);
-                transfer.setLastChunkAt(Instant.now());
-                transferRepository.save(transfer);
+                // an older ack than the one already taken is not progress
+                if (ack.getConfirmedOffset() >= confirmed) {
+                    confirmed = ack.getConfirmedOffset();
+                    progress.confirmed(ack);
+                }
 
                 if (ack.isComplete()) {
-                    transfer.setStatus(TransferStatus.COMPLETED);
-                    transferRepository.save(transfer);
-                    log.info("Transfer completed: {}", transferId);
-                    return;
+                    return RangeOutcome.COMPLETE;
+                }
+
+                // receiver may have confirmed past chunks still in flight
+                nextOffset = Math.max(nextOffset, ack.getConfirmedOffset());
+            }
+
+        } finally {
+            cancelInFlight(inFlight);
+        }
+    }
+
+    /* a copy of the chunk in a pooled buffer, a mapping of it when agent.transfer.chunk-read-mode is MAPPED */
+    private FileRegionBodyPublisher readChunk(FileChannel channel, long position, long length) throws IOException {
+        if ("MAPPED".equalsIgnoreCase(agentConfig.getChunkReadMode())) {
+            return FileRegionBodyPublisher.map(channel, position, length);
+        }
+        return FileRegionBodyPublisher.read(channel, position, Math.toIntExact(length), chunkBuffers);
+    }
+
+    /* the receiver rejects chunks starting a receive window or more past its confirmed offset */
+    private boolean withinReceiveWindow(Deque<InFlightChunk> inFlight, long nextOffset, long receiveWindow) {
+        InFlightChunk oldest = inFlight.peek();
+        return receiveWindow <= 0 || oldest == null || nextOffset - oldest.start < receiveWindow;
+    }
+
+    /**
+     * Computes the CRC32C of every segment of the file on the checksum pool and sends them
+     * to the target, which verifies the file against them before completing it.
+     * The returned future never fails, without checksums the target completes the file unverified.
+     */
+    private Future<?> sendFileChecksums(String baseUrl, FileTransfer transfer, String targetToken) {
+        long segmentSize = agentConfig.getChecksumSegmentSize();
+        if (!agentConfig.isChecksums() || segmentSize <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return checksumExecutor.submit(() -> {
+            try (FileChannel channel = FileChannel.open(
+                    Paths.get(transfer.getFilePath()), StandardOpenOption.READ)) {
+
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                ChecksumFormat.writeSegments(new DataOutputStream(body),
+                        ChecksumFormat.segments(channel, transfer.getFileSize(), segmentSize));
+
+                HttpRequest request = HttpRequest.newBuilder()
+                        .uri(URI.create(baseUrl + "/api/transfers/" + transfer.getTransferId() + "/checksums"))
+                        .header("Content-Type", "application/octet-stream")
+                        .header("X-Auth-Token", targetToken != null ? targetToken : "")
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                        .build();
+
+                HttpResponse<String> response = httpSender.send(request);
+                if (response.statusCode() != 200) {
+                    log.warn("Target did not take the checksums of {}: {}",
+                            transfer.getTransferId(), response.statusCode());
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("Checksums of {} not sent, the target completes it unverified: {}",
+                        transfer.getTransferId(), e.getMessage());
             }
+        });
+    }
+
+    /**
+     * Hashes a standalone file above dedup-min-size before its first chunk and offers the hash
+     * to the target, which completes the file from a received copy with the same content.
+     * Hashed here and not on initiate, a large file is read on a transfer thread instead of
+     * holding up the request. Any failure just sends the file.
+     */
+    private boolean completedFromTargetCopy(String baseUrl, FileTransfer transfer, String targetToken) {
+        if (transfer.getConfirmedOffset() > 0 || transfer.getContentHash() != null || transfer.getFilePath() == null
+                || transfer.getDirectoryTransferId() != null || transfer.getBatchTransferId() != null) {
+            return false;
+        }
 
+        String contentHash = contentHashService.hashForRegistration(
+                Paths.get(transfer.getFilePath()), transfer.getFileSize());
+        if (contentHash == null) return false;
+        transfer.setContentHash(contentHash);
+
+        try {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(baseUrl + "/api/transfers/" + transfer.getTransferId() + "/content-hash"))
+                    .header("Content-Type", "application/json")
+                    .header("X-Auth-Token", targetToken != null ? targetToken : "")
+                    .PUT(HttpRequest.BodyPublishers.ofString(
+                            objectMapper.writeValueAsString(Map.of("contentHash", contentHash))))
+                    .build();
+
+            HttpResponse<String> response = httpSender.send(request);
+            if (response.statusCode() != 200
+                    || !objectMapper.readTree(response.body()).path("completed").asBoolean()) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         } catch (Exception e) {
-            log.error("Transfer failed: {}", transferId, e);
-            if (transfer != null) {
-                markFailed(transfer, e.getMessage());
+            log.warn("Content hash of {} not offered, sending it in full: {}", transfer.getTransferId(), e.getMessage());
+            return false;
+        }
+
+        transfer.setConfirmedOffset(transfer.getFileSize());
+        transfer.setLastChunkAt(Instant.now());
+        log.info("Transfer {} completed from the target's local copy", transfer.getTransferId());
+        markCompleted(transfer);
+        return true;
+    }
+
+    /* the checksums task handles its own failures, only an interrupt ends the wait early */
+    private void awaitChecksums(Future<?> checksums) throws InterruptedException {
+        try {
+            checksums.get();
+        } catch (ExecutionException | CancellationException e) {
+            log.debug("File checksums unavailable: {}", e.getMessage());
+        }
+    }
+
+    /* the target's offsets per stripe, ranges it took back after verification are below what was acked */
+    private void refreshStripeOffsets(String baseUrl, FileTransfer transfer, String targetToken)
+            throws IOException, InterruptedException {
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/api/transfers/" + transfer.getTransferId() + "/offset"))
+                .header("X-Auth-Token", targetToken != null ? targetToken : "")
+                .GET()
+                .build();
+
+        HttpResponse<String> response = httpSender.send(request);
+        if (response.statusCode() != 200) {
+            throw new FileTransferException(
+                    "Offset query rejected. Status: " + response.statusCode(), null);
+        }
+
+        JsonNode body = objectMapper.readTree(response.body());
+        synchronized (transfer) {
+            List<Long> offsets = new ArrayList<>();
+            body.path("stripeOffsets").forEach(offset -> offsets.add(offset.asLong()));
+            if (offsets.size() == transfer.getStripeCount()) {
+                transfer.setStripeOffsets(offsets);
             }
+            transfer.setConfirmedOffset(transfer.confirmedStripeBytes());
         }
     }
 
-    private ChunkAckResponse sendChunkWithRetry(
-            String baseUrl, UUID transferId,
-            long offset, long chunkEnd, long fileSize,
-            byte[] chunk, String targetToken, int maxRetries
-    ) throws IOException, InterruptedException {
+    private <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private void cancelInFlight(Deque<InFlightChunk> inFlight) {
+        inFlight.forEach(chunk -> chunk.ack.cancel(true));
+        inFlight.clear();
+    }
 
-        Exception lastException = null;
-        int stallCount = 0;
+    /**
+     * Sends a chunk and retries it with exponential backoff and full jitter, up to maxRetries
+     * attempts. The wait between attempts holds no thread. Every failure counts toward the
+     * peer's circuit breaker, once it is open the chunk fails with PeerUnavailableException
+     * without further attempts. A target at its admission limits is not a failure, the same
+     * attempt is repeated after its Retry-After. Cancelling the returned future stops further attempts.
+     * A chunk read into a pooled buffer returns it once its last attempt has been answered.
+     * Each attempt is a ChunkSentEvent in a flight recording.
+     */
+    private CompletableFuture<ChunkAckResponse> sendChunkWithRetry(ChunkSend send) {
+        CompletableFuture<ChunkAckResponse> result = new CompletableFuture<>();
+        dispatch(() -> attemptChunk(send, 1, result), result);
+        return result;
+    }
 
-        for (int attempt = 1; attempt <= maxRetries; attempt++) {
-            try {
-                ChunkAckResponse ack = sendChunk(baseUrl, transferId, offset, chunkEnd, fileSize, chunk, targetToken);
+    /* a full chunk pool defers the attempt instead of running it on this thread */
+    private void dispatch(Runnable attempt, CompletableFuture<ChunkAckResponse> result) {
+        try {
+            chunkExecutor.execute(attempt);
+        } catch (RejectedExecutionException e) {
+            schedule(attempt, result, REJECTED_RETRY_MS);
+        }
+    }
 
+    private void schedule(Runnable attempt, CompletableFuture<ChunkAckResponse> result, long delayMs) {
+        try {
+            retryScheduler.schedule(() -> dispatch(attempt, result), delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            result.completeExceptionally(e);
+        }
+    }
 
-                if (ack.getConfirmedOffset() == offset) {
-                    stallCount++;
-                    lastException = new IOException("No forward progress at offset " + offset);
-                    log.warn("Stall detected (attempt {}/{}): offset still at {}", attempt, maxRetries, offset);
-                    if (attempt < maxRetries) {
-                        Thread.sleep(RETRY_DELAY_MS * attempt);
-                    }
-                    continue;  // ADD
-                }
+    private void attemptChunk(ChunkSend send, int attempt, CompletableFuture<ChunkAckResponse> result) {
+        if (result.isDone()) {
+            // cancelled between attempts, no request reads the chunk anymore
+            release(send);
+            return;
+        }
 
-                return ack;
-            } catch (Exception e) {
-                lastException = e;
-                log.warn("Chunk send failed (attempt {}/{}): {}", attempt, maxRetries, e.getMessage());
-                if (attempt < maxRetries) {
-                    Thread.sleep(RETRY_DELAY_MS * attempt);
+        String peer = send.peer();
+        // delta acks include rebuilding from the basis, only plain chunks are measured
+        boolean measured = "chunk".equals(send.endpoint());
+        Exception failure;
+        TransferMetrics.RetryReason reason;
+
+        ChunkSentEvent event = new ChunkSentEvent();
+        event.begin();
+        String outcome = "failed";
+        long bytes = 0;
+        long bandwidthWait = 0;
+
+        try {
+            // bandwidth is taken as the chunk goes out, a throttled chunk waits on the timer, not on this thread
+            ChunkBody body = encode(send);
+            bytes = body.publisher().contentLength();
+            bandwidthWait = bandwidth.tryAcquire(peer, BandwidthScheduler.priorityOf(send.transfer()), bytes);
+            if (bandwidthWait > 0) {
+                outcome = "throttled";
+                schedule(() -> attemptChunk(send, attempt, result), result,
+                        TimeUnit.NANOSECONDS.toMillis(bandwidthWait) + 1);
+                return;
+            }
+            long sentAt = System.nanoTime();
+            ChunkAckResponse ack = sendChunk(send, body);
+
+            if (ack.getConfirmedOffset() != send.offset()) {
+                outcome = "acked";
+                long elapsed = System.nanoTime() - sentAt;
+                peerHealth.succeeded(peer);
+                metrics.sent(peer, bytes);
+                if (measured) {
+                    chunkSizer.acked(send.baseUrl(), send.chunkEnd() - send.offset() + 1, elapsed);
+                    metrics.chunkAcked(peer, elapsed);
                 }
+                result.complete(ack);
+                release(send);
+                return;
             }
+
+            // the peer answered, a stall does not count toward its circuit
+            failure = new IOException("No forward progress at offset " + send.offset());
+            reason = TransferMetrics.RetryReason.STALLED;
+            outcome = "stalled";
+            log.warn("Stall detected (attempt {}/{}): offset still at {}",
+                    attempt, send.maxRetries(), send.offset());
+
+        } catch (InterruptedException e) {
+            // says nothing about the link, the aborted request may still read the chunk, it is not reused
+            outcome = "interrupted";
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return;
+        } catch (ReceiverBusyException e) {
+            // the target answered, neither the circuit nor the chunk size hear about it
+            log.debug("Target busy, chunk at offset {} retried in {} ms", send.offset(), e.getRetryAfterMs());
+            outcome = "busy";
+            metrics.chunkRetried(peer, TransferMetrics.RetryReason.BUSY);
+            schedule(() -> attemptChunk(send, attempt, result), result, busyDelayMs(e.getRetryAfterMs()));
+            return;
+        } catch (Exception e) {
+            failure = e;
+            reason = TransferMetrics.RetryReason.FAILED;
+            log.warn("Chunk send failed (attempt {}/{}): {}", attempt, send.maxRetries(), e.getMessage());
+            peerHealth.failed(peer);
+        } catch (Error e) {
+            // the range loop waits on this future, it must not be left open
+            result.completeExceptionally(e);
+            throw e;
+        } finally {
+            recordAttempt(event, send, attempt, bytes, bandwidthWait, outcome);
         }
 
-        throw new FileTransferException(
-                "Chunk failed after " + maxRetries + " attempts at offset " + offset,
-                lastException
-        );
+        if (measured) chunkSizer.failed(send.baseUrl());
+
+        if (peerHealth.isOpen(peer)) {
+            result.completeExceptionally(new PeerUnavailableException(peer, failure));
+            release(send);
+            return;
+        }
+        if (attempt >= send.maxRetries()) {
+            result.completeExceptionally(new FileTransferException(
+                    "Chunk failed after " + send.maxRetries() + " attempts at offset " + send.offset(),
+                    failure));
+            release(send);
+            return;
+        }
+
+        metrics.chunkRetried(peer, reason);
+        schedule(() -> attemptChunk(send, attempt + 1, result), result, retryDelayMs(attempt));
     }
 
-    private ChunkAckResponse sendChunk(
-            String baseUrl, UUID transferId,
-            long offset, long chunkEnd, long fileSize,
-            byte[] chunk, String targetToken
-    ) throws IOException, InterruptedException {
+    private static void release(ChunkSend send) {
+        if (send.chunk() instanceof FileRegionBodyPublisher region) {
+            region.release();
+        }
+    }
 
-        String contentRange = "bytes " + offset + "-" + chunkEnd + "/" + fileSize;
+    private static void recordAttempt(ChunkSentEvent event, ChunkSend send, int attempt,
+                                      long bytes, long bandwidthWait, String outcome) {
+        if (!event.shouldCommit()) return;
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(baseUrl + "/api/transfers/" + transferId + "/chunk"))
+        event.transferId = send.transfer().getTransferId().toString();
+        event.peer = send.peer();
+        event.endpoint = send.endpoint();
+        event.offset = send.offset();
+        event.bytes = bytes;
+        event.attempt = attempt;
+        event.bandwidthWait = bandwidthWait;
+        event.outcome = outcome;
+        event.commit();
+    }
+
+    /* full jitter, uniform up to base doubled per attempt, so retries of many chunks spread out */
+    private long retryDelayMs(int attempt) {
+        long base = agentConfig.getRetryBaseDelayMs();
+        long max = agentConfig.getRetryMaxDelayMs();
+        if (base <= 0) return 0;
+
+        long ceiling = base << Math.min(attempt - 1, 20);
+        if (max > 0) ceiling = Math.min(ceiling, max);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /* up to half again on top, senders turned away together do not come back together */
+    private long busyDelayMs(long retryAfterMs) {
+        return retryAfterMs + ThreadLocalRandom.current().nextLong(retryAfterMs / 2 + 1);
+    }
+
+    /**
+     * The chunk as it goes on the wire. Chunks of a transfer the target agreed to a codec for
+     * are compressed here, on the chunk thread, unless the chunk does not shrink.
+     */
+    private ChunkBody encode(ChunkSend send) {
+        String codec = send.transfer().getCompression();
+        if (codec != null && send.chunk() instanceof FileRegionBodyPublisher region) {
+            byte[] compressed = region.compressed();
+            if (compressed != null) {
+                return new ChunkBody(HttpRequest.BodyPublishers.ofByteArray(compressed), codec);
+            }
+        }
+        return new ChunkBody(send.chunk(), null);
+    }
+
+    private ChunkAckResponse sendChunk(ChunkSend send, ChunkBody body) throws IOException, InterruptedException {
+
+        String contentRange = "bytes " + send.offset() + "-" + send.chunkEnd() + "/" + send.fileSize();
+        String targetToken = send.targetToken();
+
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(send.baseUrl() + "/api/transfers/" + send.transfer().getTransferId()
+                        + "/" + send.endpoint()))
                 .header("Content-Type", "application/octet-stream")
                 .header("Content-Range", contentRange)
                 .header("X-Auth-Token", targetToken != null ? targetToken : "")
-                .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(chunk))
-                .build();
+                .method("PATCH", body.publisher());
 
-        HttpResponse<String> response = httpSender.send(request);
+        if (body.encoding() != null) {
+            request.header("Content-Encoding", body.encoding());
+        }
+        // the checksum is of the uncompressed bytes, the receiver checks what it writes
+        if (agentConfig.isChecksums() && send.chunk() instanceof FileRegionBodyPublisher region) {
+            // computed on the chunk thread, the range loop only reads the region
+            request.header(ChecksumFormat.CHUNK_HEADER, ChecksumFormat.format(region.crc32c()));
+        }
+
+        HttpResponse<String> response = httpSender.send(request.build());
+
+        ReceiverBusyException busy = ReceiverBusyException.of(response);
+        if (busy != null) throw busy;
 
         if (response.statusCode() != 200) {
             throw new FileTransferException(
@@ -193,9 +766,260 @@ public class TransferAsyncSender {
         return objectMapper.readValue(response.body(), ChunkAckResponse.class);
     }
 
+    private void markCompleted(FileTransfer transfer) {
+        transfer.setStatus(TransferStatus.COMPLETED);
+        transferRepository.save(transfer);
+        log.info("Transfer completed: {}", transfer.getTransferId());
+    }
+
+    /**
+     * Writes progress held back by the checkpoint interval when a range loop stops early,
+     * a signalled pause or cancel is persisted with it so the save cannot revert it.
+     */
+    private void persistOnExit(FileTransfer transfer) {
+        TransferStatus signal = progressRegistry.signalled(transfer.getTransferId());
+        if (signal != null) {
+            transfer.setStatus(signal);
+        } else if (!progressRegistry.hasUnsavedProgress(
+                transfer.getTransferId(), transfer.getConfirmedOffset())) {
+            return;
+        }
+        transferRepository.save(transfer);
+    }
+
+    /* an open circuit pauses the transfer for the peer to come back, anything else fails it */
+    private void failOrPause(FileTransfer transfer, Exception e) {
+        if (e instanceof PeerUnavailableException unavailable) {
+            pauseForPeer(transfer, unavailable);
+            return;
+        }
+        log.error("Transfer failed: {}", transfer.getTransferId(), e);
+        markFailed(transfer, e.getMessage());
+    }
+
+    /**
+     * Pauses a transfer whose peer is unreachable, a cancel signalled meanwhile still wins.
+     * Standalone transfers are resumed when the peer is back, group children by their group.
+     */
+    private void pauseForPeer(FileTransfer transfer, PeerUnavailableException e) {
+        TransferStatus signal = progressRegistry.signalled(transfer.getTransferId());
+
+        if (signal == TransferStatus.CANCELLED) {
+            transfer.setStatus(TransferStatus.CANCELLED);
+        } else {
+            transfer.setStatus(TransferStatus.PAUSED);
+            log.warn("Transfer {} paused, {}", transfer.getTransferId(), e.getMessage());
+            if (transfer.getDirectoryTransferId() == null && transfer.getBatchTransferId() == null) {
+                peerHealth.pausedByCircuit(e.getPeer(), PeerHealthTracker.PausedKind.TRANSFER,
+                        transfer.getTransferId());
+            }
+        }
+        transferRepository.save(transfer);
+    }
+
     private void markFailed(FileTransfer transfer, String reason) {
         transfer.setStatus(TransferStatus.FAILED);
         transfer.setFailureReason(reason);
         transferRepository.save(transfer);
     }
+
+    private enum RangeOutcome {
+        COMPLETE,       // receiver reported the whole file written
+        RANGE_SENT,     // every chunk of the range acked, other stripes may still be running
+        STOPPED         // paused or cancelled
+    }
+
+    /**
+     * Where a range loop reads status from and records acks to.
+     */
+    private interface RangeProgress {
+
+        /* status before the next chunk is read */
+        TransferStatus currentStatus();
+
+        void confirmed(ChunkAckResponse ack);
+    }
+
+    /**
+     * Single stream, stop signals come from the registry, acks are written on checkpoints.
+     */
+    private class SingleStreamProgress implements RangeProgress {
+        private final FileTransfer transfer;
+
+        SingleStreamProgress(FileTransfer transfer) {
+            this.transfer = transfer;
+        }
+
+        @Override
+        public TransferStatus currentStatus() {
+            TransferStatus signal = progressRegistry.signalled(transfer.getTransferId());
+            return signal != null ? signal : transfer.getStatus();
+        }
+
+        @Override
+        public void confirmed(ChunkAckResponse ack) {
+            transfer.setConfirmedOffset(ack.getConfirmedOffset());
+            transfer.setLastChunkAt(Instant.now());
+            if (progressRegistry.checkpointDue(transfer.getTransferId(), ack.getConfirmedOffset())) {
+                transferRepository.save(transfer);
+            }
+        }
+    }
+
+    /**
+     * One stripe of a striped transfer, all stripes share and checkpoint the same record.
+     */
+    private class StripeProgress implements RangeProgress {
+        private final FileTransfer transfer;
+        private final int stripe;
+
+        StripeProgress(FileTransfer transfer, int stripe) {
+            this.transfer = transfer;
+            this.stripe = stripe;
+        }
+
+        @Override
+        public TransferStatus currentStatus() {
+            TransferStatus signal = progressRegistry.signalled(transfer.getTransferId());
+            return signal != null ? signal : transfer.getStatus();
+        }
+
+        @Override
+        public void confirmed(ChunkAckResponse ack) {
+            synchronized (transfer) {
+                transfer.getStripeOffsets().set(stripe, ack.getConfirmedOffset());
+                transfer.setConfirmedOffset(transfer.confirmedStripeBytes());
+                transfer.setLastChunkAt(Instant.now());
+                if (progressRegistry.checkpointDue(transfer.getTransferId(), transfer.getConfirmedOffset())) {
+                    transferRepository.save(transfer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects encoded instructions into delta requests of up to MAX_DELTA_BODY of body
+     * and MAX_DELTA_RANGE of output, sending each before the next is started.
+     */
+    private class DeltaRequests implements DeltaEncoder.Sink {
+        private final String baseUrl;
+        private final FileTransfer transfer;
+        private final String targetToken;
+        private final RangeProgress progress;
+        private final Future<?> checksums;
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(body);
+        private long rangeStart;
+        private long rangeEnd;
+        private long literalBytes;
+        private boolean complete;
+
+        DeltaRequests(String baseUrl, FileTransfer transfer, String targetToken,
+                      RangeProgress progress, Future<?> checksums) {
+            this.baseUrl = baseUrl;
+            this.transfer = transfer;
+            this.targetToken = targetToken;
+            this.progress = progress;
+            this.checksums = checksums;
+            this.rangeStart = transfer.getConfirmedOffset();
+            this.rangeEnd = rangeStart;
+        }
+
+        @Override
+        public void copy(long basisOffset, int length) throws IOException {
+            DeltaFormat.writeCopy(out, basisOffset, length);
+            rangeEnd += length;
+            flushIfFull();
+        }
+
+        @Override
+        public void literal(byte[] buf, int off, int length) throws IOException {
+            DeltaFormat.writeLiteral(out, buf, off, length);
+            rangeEnd += length;
+            literalBytes += length;
+            flushIfFull();
+        }
+
+        private void flushIfFull() throws IOException {
+            if (body.size() >= MAX_DELTA_BODY || rangeEnd - rangeStart >= MAX_DELTA_RANGE) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            if (rangeEnd == rangeStart) return;
+
+            TransferStatus status = progress.currentStatus();
+            if (status == TransferStatus.CANCELLED) {
+                log.info("Transfer cancelled: {}", transfer.getTransferId());
+                throw new DeltaStopped();
+            }
+            if (status == TransferStatus.PAUSED) {
+                log.info("Transfer paused: {}", transfer.getTransferId());
+                throw new DeltaStopped();
+            }
+
+            ChunkAckResponse ack;
+            try {
+                if (rangeEnd >= transfer.getFileSize()) {
+                    awaitChecksums(checksums);
+                }
+                ack = await(sendChunkWithRetry(new ChunkSend(baseUrl, transfer, "delta",
+                        rangeStart, rangeEnd - 1, transfer.getFileSize(),
+                        HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()),
+                        targetToken, transfer.getMaxRetries())));
+            } catch (IOException | RuntimeException e) {
+                throw e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while sending delta", e);
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            // requests go one at a time, anything short of the range is a receiver fault
+            if (ack.getConfirmedOffset() < rangeEnd) {
+                throw new FileTransferException("Receiver offset mismatch during delta. Expected: "
+                        + rangeEnd + " got: " + ack.getConfirmedOffset(), null);
+            }
+
+            progress.confirmed(ack);
+            complete = ack.isComplete();
+            body.reset();
+            rangeStart = rangeEnd;
+        }
+    }
+
+    /* pause or cancel seen between delta requests, unwinds the encoder */
+    private static class DeltaStopped extends RuntimeException {
+    }
+
+    /* one chunk or delta request and what its attempts need */
+    private record ChunkSend(
+            String baseUrl, FileTransfer transfer, String endpoint,
+            long offset, long chunkEnd, long fileSize,
+            HttpRequest.BodyPublisher chunk, String targetToken, int maxRetries
+    ) {
+        /* ip:port of the target, the key of its circuit */
+        String peer() {
+            return URI.create(baseUrl).getAuthority();
+        }
+    }
+
+    /* encoding is null for a body sent as it is */
+    private record ChunkBody(HttpRequest.BodyPublisher publisher, String encoding) {
+    }
+
+    private static class InFlightChunk {
+        final long start;
+        final long end;
+        final Future<ChunkAckResponse> ack;
+
+        InFlightChunk(long start, long end, Future<ChunkAckResponse> ack) {
+            this.start = start;
+            this.end = end;
+            this.ack = ack;
+        }
+    }
 }
\ No newline at end of file
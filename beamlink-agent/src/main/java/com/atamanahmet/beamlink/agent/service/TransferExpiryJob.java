@@ -26,6 +26,7 @@ public class TransferExpiryJob {
 
     private final FileTransferRepository transferRepository;
     private final AgentConfig agentConfig;
+    private final ChunkReceiverService chunkReceiverService;
 
     @Scheduled(fixedDelay = 3_600_000)
     @Transactional
@@ -42,7 +43,11 @@ public class TransferExpiryJob {
 
         for (FileTransfer transfer : stale) {
             transfer.setStatus(TransferStatus.EXPIRED);
+            chunkReceiverService.evictWindow(transfer.getTransferId());
             deletePartialFile(transfer.getFileName());
+            if (transfer.isDelta()) {
+                deleteDeltaBasis(transfer.getFileName());
+            }
             log.info("Transfer expired: {} ({})", transfer.getFileName(), transfer.getTransferId());
         }
 
@@ -59,4 +64,14 @@ public class TransferExpiryJob {
         }
     }
 
+    private void deleteDeltaBasis(String fileName) {
+        try {
+            Files.deleteIfExists(
+                    Paths.get(agentConfig.getPartialDirectory()).resolve(fileName + ".basis")
+            );
+        } catch (IOException e) {
+            log.warn("Could not delete delta basis for: {}", fileName);
+        }
+    }
+
 }
\ No newline at end of file
@@ -6,7 +6,9 @@ import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.InitiateTransferRequest;
 import com.atamanahmet.beamlink.agent.dto.InitiateTransferResponse;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.http.HttpSender;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.util.ChunkCompression;
 import com.atamanahmet.beamlink.agent.util.PathNormalizer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -17,29 +19,32 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.io.IOException;
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class TransferSenderService {
 
     private static final Logger log = LoggerFactory.getLogger(TransferSenderService.class);
-    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
 
     private final FileTransferRepository transferRepository;
     private final AgentConfig agentConfig;
     private final AgentService agentService;
     private final ObjectMapper objectMapper;
-    private final TransferAsyncSender asyncSender;
+    private final OutboundTransferQueue outboundQueue;
+    private final TransferProgressRegistry progressRegistry;
+    private final HttpSender httpSender;
 
     /**
      * Called by TransferController when UI initiates a transfer.
@@ -80,12 +85,33 @@ public class TransferSenderService {
         transfer.setExpiresAt(Instant.now().plusSeconds(agentConfig.getTransferExpiryHours() * 3600L));
         transferRepository.save(transfer);
 
-        registerOnTarget(request, transferId, filePath.getFileName().toString(), fileSize);
+        int stripes = fileSize >= agentConfig.getStripeMinSize() ? agentConfig.getTransferStripes() : 1;
+        Map<String, Object> accepted = registerOnTarget(request, transfer, stripes);
 
-        transfer.setStatus(TransferStatus.ACTIVE);
+        // target already had the content and completed it locally, nothing to send
+        if (Boolean.TRUE.equals(accepted.get("completed"))) {
+            transfer.setConfirmedOffset(fileSize);
+            transfer.setLastChunkAt(Instant.now());
+            transfer.setStatus(TransferStatus.COMPLETED);
+            transferRepository.save(transfer);
+
+            log.info("Transfer completed from target's local copy: {} → {} ({})", filePath.getFileName(),
+                    request.getTargetAgentId(), transferId);
+            return new InitiateTransferResponse(transferId);
+        }
+
+        int acceptedStripes = accepted.get("stripes") instanceof Number n ? n.intValue() : 1;
+        transfer.splitIntoStripes(acceptedStripes);
+        transfer.setDelta(Boolean.TRUE.equals(accepted.get("delta")));
+        transfer.setCompression(accepted.get("compression") instanceof String codec
+                ? ChunkCompression.forFile(codec, transfer.getFileName()) : null);
+        // registered on the target, sending starts when the outbound queue has a slot
+        transfer.setStatus(TransferStatus.QUEUED);
+        transfer.setQueuePriority(request.getPriority());
+        transfer.setQueuedAt(Instant.now());
         transferRepository.save(transfer);
 
-        asyncSender.sendAsync(transferId, request.getTargetIp(), request.getTargetPort(), request.getTargetToken());
+        outboundQueue.enqueue(transfer, request.getTargetToken());
 
         log.info("Transfer initiated: {} → {} ({})", filePath.getFileName(),
                 request.getTargetAgentId(), transferId);
@@ -115,26 +141,39 @@ public class TransferSenderService {
                     "Source file no longer exists: " + cleanedPath, null);
         }
 
-        long targetOffset = queryTargetOffset(transfer);
+        reconcileWithTarget(transfer);
+
+        transfer.setStatus(TransferStatus.QUEUED);
+        transfer.setQueuedAt(Instant.now());
+        transferRepository.save(transfer);
+
+        //TODO: agent to agent auth
+        outboundQueue.enqueue(transfer, null);
+    }
+
+    /**
+     * Replaces the local offsets with the target's, the target is authoritative
+     * for what reached its disk and local offsets lag by up to one checkpoint.
+     * Throws when the target cannot be reached, the record is left untouched.
+     */
+    public void reconcileWithTarget(FileTransfer transfer) {
+        Map<String, Object> targetState = queryTargetOffset(transfer);
+        long targetOffset = ((Number) targetState.get("confirmedOffset")).longValue();
 
         if (targetOffset != transfer.getConfirmedOffset()) {
             log.info("Correcting offset for {} from {} to {} (target state)",
-                    transferId, transfer.getConfirmedOffset(), targetOffset);
+                    transfer.getTransferId(), transfer.getConfirmedOffset(), targetOffset);
             transfer.setConfirmedOffset(targetOffset);
         }
 
-        transfer.setStatus(TransferStatus.ACTIVE);
-        transferRepository.save(transfer);
-
-        //TODO: agent to agent auth
-        asyncSender.sendAsync(transferId,
-                transfer.getTargetIp(),
-                transfer.getTargetPort(),
-                null);
+        if (transfer.isStriped() && targetState.get("stripeOffsets") instanceof List<?> stripeOffsets) {
+            transfer.setStripeOffsets(stripeOffsets.stream()
+                    .map(o -> ((Number) o).longValue())
+                    .collect(Collectors.toCollection(ArrayList::new)));
+        }
     }
 
-    private long queryTargetOffset(FileTransfer transfer) {
-        HttpClient httpClient = HttpClient.newHttpClient();
+    private Map<String, Object> queryTargetOffset(FileTransfer transfer) {
         String url = "http://" + transfer.getTargetIp() + ":"
                 + transfer.getTargetPort()
                 + "/api/transfers/" + transfer.getTransferId() + "/offset";
@@ -144,8 +183,7 @@ public class TransferSenderService {
                     .GET()
                     .build();
 
-            HttpResponse<String> response = httpClient.send(request,
-                    HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = httpSender.send(request);
 
             if (response.statusCode() != 200) {
                 throw new FileTransferException(
@@ -153,12 +191,10 @@ public class TransferSenderService {
                                 + " when querying offset", null);
             }
 
-            Map<String, Long> body = objectMapper.readValue(
+            return objectMapper.readValue(
                     response.body(),
                     new com.fasterxml.jackson.core.type.TypeReference<>() {});
 
-            return body.get("confirmedOffset");
-
         } catch (IOException | InterruptedException e) {
             // Target is offline, transfer stays PAUSED
             throw new FileTransferException(
@@ -168,22 +204,25 @@ public class TransferSenderService {
 
     /**
      * Registers the transfer on the target agent before sending any chunks.
+     * Returns the target's reply, the accepted stripe count, whether it completed
+     * the file from a local copy and the chunk codec it agreed to. Empty for targets that reply with none.
      */
-    private void registerOnTarget(
+    private Map<String, Object> registerOnTarget(
             InitiateTransferRequest request,
-            UUID transferId,
-            String fileName,
-            long fileSize
+            FileTransfer transfer,
+            int stripes
     ) throws FileTransferException {
-        HttpClient httpClient = HttpClient.newHttpClient();
-
         try {
-            String body = objectMapper.writeValueAsString(Map.of(
-                    "transferId", transferId.toString(),
-                    "sourceAgentId", agentService.getAgentId().toString(),
-                    "fileName", fileName,
-                    "fileSize", fileSize
-            ));
+            Map<String, Object> registration = new HashMap<>();
+            registration.put("transferId", transfer.getTransferId().toString());
+            registration.put("sourceAgentId", agentService.getAgentId().toString());
+            registration.put("fileName", transfer.getFileName());
+            registration.put("fileSize", transfer.getFileSize());
+            registration.put("stripes", stripes);
+            if (agentConfig.isCompression() && !ChunkCompression.isCompressed(transfer.getFileName())) {
+                registration.put("compression", ChunkCompression.SUPPORTED);
+            }
+            String body = objectMapper.writeValueAsString(registration);
 
             HttpRequest httpRequest = HttpRequest.newBuilder()
                     .uri(URI.create("http://" + request.getTargetIp() + ":"
@@ -193,8 +232,7 @@ public class TransferSenderService {
                     .POST(HttpRequest.BodyPublishers.ofString(body))
                     .build();
 
-            HttpResponse<String> response = httpClient.send(httpRequest,
-                    HttpResponse.BodyHandlers.ofString());
+            HttpResponse<String> response = httpSender.send(httpRequest);
 
             if (response.statusCode() != 200) {
                 throw new FileTransferException(
@@ -203,6 +241,13 @@ public class TransferSenderService {
                 );
             }
 
+            if (response.body() == null || response.body().isBlank()) {
+                return Map.of();
+            }
+            return objectMapper.readValue(
+                    response.body(),
+                    new com.fasterxml.jackson.core.type.TypeReference<>() {});
+
         } catch (IOException | InterruptedException e) {
             throw new FileTransferException("Cannot reach target agent", e);
         }
@@ -228,9 +273,13 @@ public class TransferSenderService {
     public void cancel(UUID transferId) {
         transferRepository.findByTransferId(transferId).ifPresent(transfer -> {
             if (transfer.getStatus() == TransferStatus.ACTIVE
-                    || transfer.getStatus() == TransferStatus.PAUSED) {
+                    || transfer.getStatus() == TransferStatus.PAUSED
+                    || transfer.getStatus() == TransferStatus.QUEUED) {
                 transfer.setStatus(TransferStatus.CANCELLED);
                 transferRepository.save(transfer);
+                outboundQueue.remove(transferId);
+                // a live sender stops before its next chunk and persists its own progress
+                progressRegistry.signal(transferId, TransferStatus.CANCELLED);
                 log.info("Transfer cancelled by user: {}", transferId);
             }
         });
@@ -6,6 +6,7 @@ import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
 import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
@@ -15,9 +16,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -32,9 +36,9 @@ public class TransferStartupJob implements ApplicationRunner {
     private final DirectoryTransferRepository directoryTransferRepository;
     private final BatchTransferRepository batchTransferRepository;
     private final DirectorySenderService directorySenderService;
-    private final DirectoryAsyncSender directoryAsyncSender;
     private final BatchSenderService batchSenderService;
-    private final BatchAsyncSender batchAsyncSender;
+    private final OutboundTransferQueue outboundQueue;
+    private final TransferSenderService transferSenderService;
     private final AgentService agentService;
     private final AgentConfig agentConfig;
 
@@ -58,6 +62,15 @@ public class TransferStartupJob implements ApplicationRunner {
         handleInterruptedGroupTransfers(agentId);
     }
 
+    /**
+     * Puts every QUEUED transfer back in the outbound queue. Runs after run() has
+     * committed, so auto-resumed groups are included.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOutboundQueue() {
+        outboundQueue.rebuild();
+    }
+
     /* Standalone file transfers interrupted mid-send, mark paused, user resumes manually */
     private void pauseInterruptedStandaloneTransfers(UUID agentId) {
         List<FileTransfer> interrupted = new ArrayList<>();
@@ -87,9 +100,23 @@ public class TransferStartupJob implements ApplicationRunner {
     }
 
     private void handleInterruptedDirectoryTransfers(UUID agentId) {
-        List<DirectoryTransfer> interrupted = directoryTransferRepository.findAll()
+        List<DirectoryTransfer> owned = directoryTransferRepository.findAll()
                 .stream()
                 .filter(dt -> agentId.equals(dt.getSourceAgentId()))
+                .toList();
+
+        // the walk does not survive a restart, the manifest on both sides is incomplete
+        for (DirectoryTransfer dt : owned) {
+            if (!dt.isWalkInProgress()) continue;
+            dt.setWalkInProgress(false);
+            dt.setStatus(GroupTransferStatus.FAILED);
+            dt.setFailureReason("Directory walk interrupted by restart");
+            directoryTransferRepository.save(dt);
+            log.warn("Failed directory transfer with unfinished walk on startup: {} ({})",
+                    dt.getDirectoryName(), dt.getDirectoryTransferId());
+        }
+
+        List<DirectoryTransfer> interrupted = owned.stream()
                 .filter(dt -> dt.getStatus() == GroupTransferStatus.ACTIVE)
                 .toList();
 
@@ -101,6 +128,7 @@ public class TransferStartupJob implements ApplicationRunner {
             List<FileTransfer> activeChildren = transferRepository
                     .findByDirectoryTransferIdAndStatus(
                             dt.getDirectoryTransferId(), TransferStatus.ACTIVE);
+            activeChildren.forEach(this::reconcileInterrupted);
             activeChildren.forEach(ft -> ft.setStatus(TransferStatus.PAUSED));
             transferRepository.saveAll(activeChildren);
 
@@ -111,10 +139,10 @@ public class TransferStartupJob implements ApplicationRunner {
                     dt.getDirectoryName(), dt.getDirectoryTransferId());
 
             if (agentConfig.isAutoResumeGroupTransfers()) {
-                dt.setStatus(GroupTransferStatus.ACTIVE);
+                // started by the queue rebuild once startup has committed
+                dt.setStatus(GroupTransferStatus.QUEUED);
+                dt.setQueuedAt(Instant.now());
                 directoryTransferRepository.save(dt);
-                directoryAsyncSender.sendAsync(
-                        dt.getDirectoryTransferId(), dt.getTargetIp(), dt.getTargetPort(), null);
                 log.info("Auto-resumed directory transfer: {}", dt.getDirectoryTransferId());
             }
         }
@@ -135,6 +163,7 @@ public class TransferStartupJob implements ApplicationRunner {
             List<FileTransfer> activeChildren = transferRepository
                     .findByBatchTransferIdAndStatus(
                             bt.getBatchTransferId(), TransferStatus.ACTIVE);
+            activeChildren.forEach(this::reconcileInterrupted);
             activeChildren.forEach(ft -> ft.setStatus(TransferStatus.PAUSED));
             transferRepository.saveAll(activeChildren);
 
@@ -145,12 +174,26 @@ public class TransferStartupJob implements ApplicationRunner {
                     bt.getBatchTransferId());
 
             if (agentConfig.isAutoResumeGroupTransfers()) {
-                bt.setStatus(GroupTransferStatus.ACTIVE);
+                bt.setStatus(GroupTransferStatus.QUEUED);
+                bt.setQueuedAt(Instant.now());
                 batchTransferRepository.save(bt);
-                batchAsyncSender.sendAsync(
-                        bt.getBatchTransferId(), bt.getTargetIp(), bt.getTargetPort(), null);
                 log.info("Auto-resumed batch transfer: {}", bt.getBatchTransferId());
             }
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Offsets are checkpointed, not written per chunk, a child cut off mid-file may be
+     * behind what the target has. Standalone transfers reconcile on manual resume instead.
+     */
+    private void reconcileInterrupted(FileTransfer transfer) {
+        if (transfer.getConfirmedOffset() == 0 || transfer.getTargetIp() == null) return;
+
+        try {
+            transferSenderService.reconcileWithTarget(transfer);
+        } catch (FileTransferException e) {
+            log.warn("Could not reconcile offset with target for {}, keeping local offset: {}",
+                    transfer.getTransferId(), e.getMessage());
+        }
+    }
+}
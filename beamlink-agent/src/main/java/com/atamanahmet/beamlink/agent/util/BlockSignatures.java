@@ -0,0 +1,110 @@
+package com.atamanahmet.beamlink.agent.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+
+/**
+ * Weak and strong checksum of every full block of the receiver's previous copy,
+ * the sender matches its file against them to find what it does not need to send.
+ * Wire form is the block size, the block count, then per block the weak checksum
+ * (int) and the strong checksum (STRONG_BYTES).
+ */
+public final class BlockSignatures {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int BLOCK_BYTES = 4 + RollingChecksum.STRONG_BYTES;
+
+    /* most blocks signed or accepted, keeps the arrays well within what the JVM allocates */
+    private static final int MAX_BLOCKS = Integer.MAX_VALUE / 64;
+
+    private final int blockSize;
+    private final int[] weak;
+    private final byte[][] strong;
+
+    public BlockSignatures(int blockSize, int[] weak, byte[][] strong) {
+        this.blockSize = blockSize;
+        this.weak = weak;
+        this.strong = strong;
+    }
+
+    /* reads the basis once, a trailing partial block is left out and always sent as literal */
+    public static BlockSignatures compute(Path basis, int blockSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(basis, StandardOpenOption.READ)) {
+            long fullBlocks = channel.size() / blockSize;
+            if (fullBlocks > MAX_BLOCKS) {
+                throw new IOException("Basis too large to sign: " + fullBlocks + " blocks of " + blockSize);
+            }
+            int blocks = (int) fullBlocks;
+            int[] weak = new int[blocks];
+            byte[][] strong = new byte[blocks][];
+
+            MessageDigest sha256 = RollingChecksum.newDigest();
+            byte[] block = new byte[blockSize];
+            ByteBuffer buffer = ByteBuffer.wrap(block);
+
+            for (int i = 0; i < blocks; i++) {
+                buffer.clear();
+                long position = (long) i * blockSize;
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position + buffer.position());
+                    if (read < 0) throw new IOException("Basis shrank while reading block " + i);
+                }
+                weak[i] = RollingChecksum.of(block, 0, blockSize);
+                strong[i] = RollingChecksum.strong(sha256, block, 0, blockSize);
+            }
+            return new BlockSignatures(blockSize, weak, strong);
+        }
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(blockSize);
+        out.writeInt(weak.length);
+        for (int i = 0; i < weak.length; i++) {
+            out.writeInt(weak[i]);
+            out.write(strong[i]);
+        }
+    }
+
+    /**
+     * Reads signatures of at most bodyBytes on the wire, a block count the body cannot hold
+     * is rejected before anything is allocated for it.
+     */
+    public static BlockSignatures read(DataInputStream in, long bodyBytes) throws IOException {
+        int blockSize = in.readInt();
+        int blocks = in.readInt();
+        if (blockSize <= 0 || blocks < 0 || blocks > MAX_BLOCKS
+                || (long) blocks * BLOCK_BYTES > bodyBytes - HEADER_BYTES) {
+            throw new IOException("Invalid block signatures: " + blocks + " blocks of " + blockSize
+                    + " in " + bodyBytes + " bytes");
+        }
+        int[] weak = new int[blocks];
+        byte[][] strong = new byte[blocks][RollingChecksum.STRONG_BYTES];
+        for (int i = 0; i < blocks; i++) {
+            weak[i] = in.readInt();
+            in.readFully(strong[i]);
+        }
+        return new BlockSignatures(blockSize, weak, strong);
+    }
+
+    public int blockSize() {
+        return blockSize;
+    }
+
+    public int blockCount() {
+        return weak.length;
+    }
+
+    public int weak(int block) {
+        return weak[block];
+    }
+
+    public byte[] strong(int block) {
+        return strong[block];
+    }
+}
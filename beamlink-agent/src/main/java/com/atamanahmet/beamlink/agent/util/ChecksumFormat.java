@@ -0,0 +1,108 @@
+package com.atamanahmet.beamlink.agent.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C checksums of transferred bytes, CRC32C is computed by a CPU instruction on current
+ * hardware and keeps up with any link. A chunk carries the checksum of its body in the
+ * CHUNK_HEADER as 8 hex digits. The file checksums are the checksums of each segment-size
+ * piece of the file, the last one possibly shorter, framed as the segment size (long),
+ * the segment count (int) and one int per segment.
+ */
+public final class ChecksumFormat {
+
+    public static final String CHUNK_HEADER = "X-Chunk-Crc32c";
+
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    /* one reusable read buffer per checksum thread */
+    private static final ThreadLocal<ByteBuffer> READ_BUFFERS =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    private ChecksumFormat() {
+    }
+
+    public static String format(long crc) {
+        return String.format("%08x", crc);
+    }
+
+    /* the checksum of a chunk header, IllegalArgumentException when it is not 8 hex digits */
+    public static long parse(String header) {
+        String value = header.trim();
+        if (value.isEmpty() || value.length() > 8) {
+            throw new IllegalArgumentException("Invalid CRC32C: " + header);
+        }
+        return Long.parseLong(value, 16);
+    }
+
+    /* checksum of the remaining bytes of the buffer, its position is left as it is */
+    public static long crc32c(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        return crc.getValue();
+    }
+
+    /* checksum of [from, to) of the file, read with positional reads */
+    public static long crc32c(FileChannel channel, long from, long to) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = READ_BUFFERS.get();
+        long position = from;
+
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("File ends at " + position + ", expected " + to + " bytes");
+            }
+            buffer.flip();
+            crc.update(buffer);
+            position += n;
+        }
+        return crc.getValue();
+    }
+
+    /* the checksum of every segment of the first fileSize bytes of the file */
+    public static Segments segments(FileChannel channel, long fileSize, long segmentSize) throws IOException {
+        int count = segmentCount(fileSize, segmentSize);
+        long[] crcs = new long[count];
+        for (int i = 0; i < count; i++) {
+            long from = i * segmentSize;
+            crcs[i] = crc32c(channel, from, Math.min(fileSize, from + segmentSize));
+        }
+        return new Segments(segmentSize, crcs);
+    }
+
+    public static int segmentCount(long fileSize, long segmentSize) {
+        return (int) ((fileSize + segmentSize - 1) / segmentSize);
+    }
+
+    public static void writeSegments(DataOutputStream out, Segments segments) throws IOException {
+        out.writeLong(segments.segmentSize());
+        out.writeInt(segments.crcs().length);
+        for (long crc : segments.crcs()) {
+            out.writeInt((int) crc);
+        }
+    }
+
+    public static Segments readSegments(DataInputStream in) throws IOException {
+        long segmentSize = in.readLong();
+        int count = in.readInt();
+        if (segmentSize <= 0 || count < 0) {
+            throw new IOException("Invalid file checksums: " + count + " segments of " + segmentSize);
+        }
+        long[] crcs = new long[count];
+        for (int i = 0; i < count; i++) {
+            crcs[i] = Integer.toUnsignedLong(in.readInt());
+        }
+        return new Segments(segmentSize, crcs);
+    }
+
+    public record Segments(long segmentSize, long[] crcs) {
+    }
+}
@@ -0,0 +1,184 @@
+package com.atamanahmet.beamlink.agent.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of chunk bodies. The source offers the codecs it can send when it registers
+ * a transfer, the target replies with the first one it can decode and chunks of the transfer
+ * may then be sent compressed, named by their Content-Encoding. Offsets, ranges and checksums
+ * stay in uncompressed bytes. Files that are compressed already are sent raw, and every chunk
+ * is sampled before it is compressed, a chunk whose sample does not shrink is sent raw as well.
+ */
+public final class ChunkCompression {
+
+    /* zlib at its fastest level, built into the JDK */
+    public static final String DEFLATE = "deflate";
+
+    public static final List<String> SUPPORTED = List.of(DEFLATE);
+
+    private static final int SAMPLE_SIZE = 64 * 1024;
+
+    /* a chunk compressed to more than this share of its size is not worth decompressing */
+    private static final double MAX_RATIO = 0.9;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /* media, archives and office formats, their bytes are compressed already */
+    private static final Set<String> COMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "zst", "lz4", "jar", "war", "apk",
+            "jpg", "jpeg", "png", "gif", "webp", "heic", "avif",
+            "mp3", "m4a", "aac", "ogg", "opus", "flac",
+            "mp4", "mkv", "mov", "avi", "webm",
+            "docx", "xlsx", "pptx", "odt", "ods", "pdf");
+
+    private ChunkCompression() {
+    }
+
+    /* the first offered codec this agent decodes, null when none or nothing was offered */
+    public static String negotiate(Collection<?> offered) {
+        if (offered == null) return null;
+        for (Object codec : offered) {
+            if (codec instanceof String name && SUPPORTED.contains(name)) return name;
+        }
+        return null;
+    }
+
+    /* the codec chunks of the file are sent with, null for files compressed already */
+    public static String forFile(String codec, String fileName) {
+        return codec == null || isCompressed(fileName) ? null : codec;
+    }
+
+    public static boolean isCompressed(String fileName) {
+        if (fileName == null) return false;
+        int dot = fileName.lastIndexOf('.');
+        return dot >= 0 && COMPRESSED_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The remaining bytes of the region deflated, the region's position is left as it is.
+     * Null when a sample of the region or the whole of it does not compress well enough.
+     */
+    public static byte[] compress(ByteBuffer region) {
+        ByteBuffer source = region.duplicate();
+        int length = source.remaining();
+
+        if (length > SAMPLE_SIZE
+                && deflate(source.slice(source.position(), SAMPLE_SIZE), (long) (SAMPLE_SIZE * MAX_RATIO)) == null) {
+            return null;
+        }
+        return deflate(source, (long) (length * MAX_RATIO));
+    }
+
+    /**
+     * The chunk body decoded per its Content-Encoding, no encoding is the raw body.
+     * Closing the returned stream releases the inflater.
+     * IllegalArgumentException for codecs this agent does not decode.
+     */
+    public static InputStream decoding(InputStream body, String encoding) {
+        if (encoding == null || encoding.isBlank() || "identity".equalsIgnoreCase(encoding.trim())) {
+            return body;
+        }
+        if (DEFLATE.equalsIgnoreCase(encoding.trim())) {
+            // a larger input buffer than the default, the inflater is then ours to end
+            return new InflaterInputStream(body, new Inflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+        throw new IllegalArgumentException("Unsupported chunk encoding: " + encoding);
+    }
+
+    /**
+     * The chunk body decoded per its Content-Encoding and held to the length of its range,
+     * a body that decodes to more or fewer bytes fails the read with an IOException.
+     * Bounds what a small compressed body can write on the receiver.
+     */
+    public static InputStream decoding(InputStream body, String encoding, long length) {
+        return new ExactLengthInputStream(decoding(body, encoding), length);
+    }
+
+    /* null once the output passes limit bytes */
+    private static byte[] deflate(ByteBuffer input, long limit) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(input.remaining(), BUFFER_SIZE));
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+                if (out.size() > limit) return null;
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /* reads exactly length bytes, checks for one more as soon as the last is read */
+    private static class ExactLengthInputStream extends InputStream {
+        private final InputStream in;
+        private final long length;
+        private long remaining;
+
+        ExactLengthInputStream(InputStream in, long length) {
+            this.in = in;
+            this.length = length;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b < 0) throw underrun();
+            consumed(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n < 0) throw underrun();
+            consumed(n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private void consumed(int n) throws IOException {
+            remaining -= n;
+            if (remaining == 0 && in.read() != -1) {
+                throw new IOException("Chunk decodes to more than its range of " + length + " bytes");
+            }
+        }
+
+        private IOException underrun() {
+            return new IOException("Chunk decodes to " + (length - remaining)
+                    + " bytes, its range is " + length);
+        }
+    }
+}
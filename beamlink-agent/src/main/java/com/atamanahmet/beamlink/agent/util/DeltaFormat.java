@@ -0,0 +1,72 @@
+package com.atamanahmet.beamlink.agent.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Framing of a delta chunk, the instructions that rebuild one range of the file on the receiver.
+ * A copy is the type byte, the offset in the receiver's previous copy (long) and the length (int).
+ * A literal is the type byte, the length (int), then the bytes.
+ * Instructions follow each other until the end of the stream, their lengths add up to the range.
+ */
+public final class DeltaFormat {
+
+    public static final byte COPY = 1;
+    public static final byte LITERAL = 2;
+
+    /* type plus basis offset plus length */
+    public static final int COPY_BYTES = 1 + Long.BYTES + Integer.BYTES;
+
+    /* type plus length, the bytes follow */
+    public static final int LITERAL_HEADER_BYTES = 1 + Integer.BYTES;
+
+    private DeltaFormat() {
+    }
+
+    public static void writeCopy(DataOutputStream out, long basisOffset, int length) throws IOException {
+        out.writeByte(COPY);
+        out.writeLong(basisOffset);
+        out.writeInt(length);
+    }
+
+    public static void writeLiteral(DataOutputStream out, byte[] buf, int off, int length) throws IOException {
+        out.writeByte(LITERAL);
+        out.writeInt(length);
+        out.write(buf, off, length);
+    }
+
+    /**
+     * Reads the next instruction, the bytes of a literal follow it on the stream.
+     * Returns null at a clean end of the chunk.
+     */
+    public static Instruction readInstruction(DataInputStream in) throws IOException {
+        byte type;
+        try {
+            type = in.readByte();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        if (type == COPY) {
+            long basisOffset = in.readLong();
+            int length = in.readInt();
+            if (basisOffset < 0 || length < 0) {
+                throw new IOException("Invalid delta copy: " + length + " bytes at " + basisOffset);
+            }
+            return new Instruction(COPY, basisOffset, length);
+        }
+        if (type == LITERAL) {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Negative delta literal length: " + length);
+            }
+            return new Instruction(LITERAL, -1, length);
+        }
+        throw new IOException("Unknown delta instruction type: " + type);
+    }
+
+    public record Instruction(byte type, long basisOffset, int length) {
+    }
+}
@@ -0,0 +1,50 @@
+package com.atamanahmet.beamlink.agent.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Framing of a pack chunk, many small files of one directory transfer in a single body.
+ * Each entry is the transferId (two longs), the content length (long), then the content.
+ * Entries follow each other until the end of the stream.
+ */
+public final class FilePackFormat {
+
+    /* transferId plus length */
+    public static final int HEADER_BYTES = 2 * Long.BYTES + Long.BYTES;
+
+    private FilePackFormat() {
+    }
+
+    public static void writeEntry(DataOutputStream out, UUID transferId, byte[] content) throws IOException {
+        out.writeLong(transferId.getMostSignificantBits());
+        out.writeLong(transferId.getLeastSignificantBits());
+        out.writeLong(content.length);
+        out.write(content);
+    }
+
+    /**
+     * Reads the next entry header, content follows it on the stream.
+     * Returns null at a clean end of the pack.
+     */
+    public static EntryHeader readHeader(DataInputStream in) throws IOException {
+        long msb;
+        try {
+            msb = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        long lsb = in.readLong();
+        long length = in.readLong();
+        if (length < 0) {
+            throw new IOException("Negative pack entry length: " + length);
+        }
+        return new EntryHeader(new UUID(msb, lsb), length);
+    }
+
+    public record EntryHeader(UUID transferId, long length) {
+    }
+}
@@ -0,0 +1,67 @@
+package com.atamanahmet.beamlink.agent.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Checksums of delta blocks. The weak checksum is the rsync rolling sum, two 16 bit
+ * sums that slide over a window one byte at a time. The strong checksum is a truncated
+ * SHA-256, computed only for windows whose weak checksum matches a block.
+ */
+public final class RollingChecksum {
+
+    /* bytes of SHA-256 kept per block */
+    public static final int STRONG_BYTES = 16;
+
+    private final int windowLength;
+    private int a;
+    private int b;
+
+    public RollingChecksum(int windowLength) {
+        this.windowLength = windowLength;
+    }
+
+    /* starts over on the window buf[off, off + windowLength) */
+    public void reset(byte[] buf, int off) {
+        a = 0;
+        b = 0;
+        for (int i = 0; i < windowLength; i++) {
+            int x = buf[off + i] & 0xff;
+            a += x;
+            b += (windowLength - i) * x;
+        }
+    }
+
+    /* slides the window one byte, out leaves at the front and in enters at the back */
+    public void roll(byte out, byte in) {
+        int x = out & 0xff;
+        a += (in & 0xff) - x;
+        b += a - windowLength * x;
+    }
+
+    public int value() {
+        return (a & 0xffff) | (b << 16);
+    }
+
+    /* weak checksum of a whole block, same value reset() then value() would give */
+    public static int of(byte[] buf, int off, int len) {
+        RollingChecksum checksum = new RollingChecksum(len);
+        checksum.reset(buf, off);
+        return checksum.value();
+    }
+
+    public static byte[] strong(MessageDigest sha256, byte[] buf, int off, int len) {
+        sha256.reset();
+        sha256.update(buf, off, len);
+        return Arrays.copyOf(sha256.digest(), STRONG_BYTES);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
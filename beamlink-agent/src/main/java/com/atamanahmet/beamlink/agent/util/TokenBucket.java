@@ -0,0 +1,54 @@
+package com.atamanahmet.beamlink.agent.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limit in bytes per second that holds up to one second of unused rate.
+ * Bytes are only taken once they can be sent, a caller that has to wait takes nothing
+ * and asks again, so waiting callers never hold up the ones after them. A chunk larger
+ * than a second of rate goes once the bucket is full and leaves it in debt, later
+ * callers wait until that is paid off.
+ */
+public final class TokenBucket {
+
+    private final long bytesPerSecond;
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond must be positive");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = bytesPerSecond;
+        this.refilledAt = System.nanoTime();
+    }
+
+    public long bytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Nanos until the bytes can be taken, 0 when they can be taken now. Takes nothing.
+     */
+    public synchronized long shortfall(long bytes) {
+        refill();
+        double needed = Math.min(bytes, bytesPerSecond) - tokens;
+        if (needed <= 0) return 0;
+        return Math.max(1, (long) (needed * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond));
+    }
+
+    /**
+     * Takes the bytes, called once shortfall returned 0 for them
+     */
+    public synchronized void take(long bytes) {
+        refill();
+        tokens -= bytes;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(bytesPerSecond, tokens + (now - refilledAt) * (double) bytesPerSecond / 1e9);
+        refilledAt = now;
+    }
+}
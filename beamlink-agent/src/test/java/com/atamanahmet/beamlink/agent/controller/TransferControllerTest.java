@@ -1,16 +1,20 @@
 package com.atamanahmet.beamlink.agent.controller;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 
+import com.atamanahmet.beamlink.agent.dto.ChunkAckResponse;
 import com.atamanahmet.beamlink.agent.dto.InitiateTransferRequest;
 import com.atamanahmet.beamlink.agent.dto.InitiateTransferResponse;
 
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
 
+import com.atamanahmet.beamlink.agent.metrics.TransferMetrics;
 import com.atamanahmet.beamlink.agent.security.config.SecurityConfig;
 import com.atamanahmet.beamlink.agent.service.*;
+import com.atamanahmet.beamlink.agent.util.ChunkCompression;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -28,11 +32,19 @@ import org.springframework.security.test.context.support.WithMockUser;
 
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -62,6 +74,21 @@ class TransferControllerTest {
     @MockBean
     private ChunkReceiverService receiverService;
 
+    @MockBean
+    private AdaptiveChunkSizer chunkSizer;
+
+    @MockBean
+    private OutboundTransferQueue outboundQueue;
+
+    @MockBean
+    private ReceiveAdmission receiveAdmission;
+
+    @MockBean
+    private AgentConfig agentConfig;
+
+    @MockBean
+    private TransferMetrics metrics;
+
     @MockBean
     private FileTransferRepository transferRepository;
 
@@ -160,4 +187,140 @@ class TransferControllerTest {
 
         verify(senderService).cancel(transferId);
     }
-}
\ No newline at end of file
+
+    @Test
+    @WithMockUser
+    void receiveChunk_returns503WithRetryAfterWhenReceiverBusy() throws Exception {
+        UUID transferId = UUID.randomUUID();
+        when(receiveAdmission.tryAdmit(eq(transferId), anyLong())).thenReturn(null);
+        when(receiveAdmission.retryAfterSeconds()).thenReturn(2L);
+
+        mockMvc.perform(patch("/api/transfers/{id}/chunk", transferId)
+                        .header("Content-Range", "bytes 0-3/4")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[4]))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"));
+
+        verifyNoInteractions(receiverService);
+    }
+
+    @Test
+    @WithMockUser
+    void receiveChunk_decompressesDeflatedChunkBeforeWritingIt() throws Exception {
+        UUID transferId = UUID.randomUUID();
+        byte[] payload = "beamlink,beamlink,beamlink,beamlink\n".repeat(100).getBytes();
+        byte[] deflated = ChunkCompression.compress(ByteBuffer.wrap(payload));
+
+        when(receiveAdmission.tryAdmit(eq(transferId), anyLong()))
+                .thenReturn(mock(ReceiveAdmission.Admission.class));
+        when(receiverService.receiveChunk(eq(transferId), eq(0L), anyLong(), any(InputStream.class), isNull()))
+                .thenAnswer(i -> {
+                    assertThat(i.<InputStream>getArgument(3).readAllBytes()).isEqualTo(payload);
+                    return new ChunkAckResponse(payload.length, true);
+                });
+
+        mockMvc.perform(patch("/api/transfers/{id}/chunk", transferId)
+                        .header("Content-Range", "bytes 0-" + (payload.length - 1) + "/" + payload.length)
+                        .header("Content-Encoding", ChunkCompression.DEFLATE)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(deflated))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.confirmedOffset").value(payload.length));
+    }
+
+    @Test
+    @WithMockUser
+    void receiveChunk_admitsDeflatedChunkByItsDecodedLength() throws Exception {
+        UUID transferId = UUID.randomUUID();
+        byte[] payload = "beamlink,beamlink,beamlink,beamlink\n".repeat(100).getBytes();
+        byte[] deflated = ChunkCompression.compress(ByteBuffer.wrap(payload));
+
+        when(receiveAdmission.tryAdmit(eq(transferId), anyLong())).thenReturn(null);
+        when(receiveAdmission.retryAfterSeconds()).thenReturn(1L);
+
+        mockMvc.perform(patch("/api/transfers/{id}/chunk", transferId)
+                        .header("Content-Range", "bytes 0-" + (payload.length - 1) + "/" + payload.length)
+                        .header("Content-Encoding", ChunkCompression.DEFLATE)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(deflated))
+                .andExpect(status().isServiceUnavailable());
+
+        verify(receiveAdmission).tryAdmit(transferId, payload.length);
+    }
+
+    @Test
+    @WithMockUser
+    void receiveChunk_rejectsDeflatedChunkThatDecodesPastItsRange() throws Exception {
+        UUID transferId = UUID.randomUUID();
+        byte[] payload = new byte[1024 * 1024];
+        byte[] deflated = ChunkCompression.compress(ByteBuffer.wrap(payload));
+
+        when(receiveAdmission.tryAdmit(eq(transferId), anyLong()))
+                .thenReturn(mock(ReceiveAdmission.Admission.class));
+        when(receiverService.receiveChunk(eq(transferId), eq(0L), anyLong(), any(InputStream.class), isNull()))
+                .thenAnswer(i -> {
+                    i.<InputStream>getArgument(3).readAllBytes();
+                    return new ChunkAckResponse(1024, false);
+                });
+
+        mockMvc.perform(patch("/api/transfers/{id}/chunk", transferId)
+                        .header("Content-Range", "bytes 0-1023/" + payload.length)
+                        .header("Content-Encoding", ChunkCompression.DEFLATE)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(deflated))
+                .andExpect(status().is5xxServerError());
+    }
+
+    @Test
+    @WithMockUser
+    void receiveChunk_rejectsChunkShorterThanItsRange() throws Exception {
+        UUID transferId = UUID.randomUUID();
+
+        when(receiveAdmission.tryAdmit(eq(transferId), anyLong()))
+                .thenReturn(mock(ReceiveAdmission.Admission.class));
+        when(receiverService.receiveChunk(eq(transferId), eq(0L), anyLong(), any(InputStream.class), isNull()))
+                .thenAnswer(i -> {
+                    i.<InputStream>getArgument(3).readAllBytes();
+                    return new ChunkAckResponse(8, false);
+                });
+
+        mockMvc.perform(patch("/api/transfers/{id}/chunk", transferId)
+                        .header("Content-Range", "bytes 0-7/16")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[4]))
+                .andExpect(status().is5xxServerError());
+    }
+
+    @Test
+    @WithMockUser
+    void receiveChunk_rejectsRangeEndingBeforeItStarts() throws Exception {
+        mockMvc.perform(patch("/api/transfers/{id}/chunk", UUID.randomUUID())
+                        .header("Content-Range", "bytes 8-3/16")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(new byte[4]))
+                .andExpect(status().is5xxServerError());
+
+        verifyNoInteractions(receiveAdmission, receiverService);
+    }
+
+    @Test
+    @WithMockUser
+    void prepareReceive_agreesToOfferedCompression() throws Exception {
+        when(agentConfig.getTransferStripes()).thenReturn(1);
+        when(agentConfig.isCompression()).thenReturn(true);
+
+        String registration = objectMapper.writeValueAsString(Map.of(
+                "transferId", UUID.randomUUID().toString(),
+                "sourceAgentId", UUID.randomUUID().toString(),
+                "fileName", "export.csv",
+                "fileSize", 1024,
+                "compression", List.of("zstd", ChunkCompression.DEFLATE)));
+
+        mockMvc.perform(post("/api/transfers/receive")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(registration))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.compression").value(ChunkCompression.DEFLATE));
+    }
+}
@@ -0,0 +1,104 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.dto.ChunkSizingStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdaptiveChunkSizerTest {
+
+    private static final String PEER = "http://10.0.0.2:9090";
+    private static final long MIB = 1024 * 1024;
+
+    private final AgentConfig agentConfig = mock(AgentConfig.class);
+    private final AdaptiveChunkSizer sizer = new AdaptiveChunkSizer(agentConfig);
+
+    private void bounded() {
+        when(agentConfig.getChunkSizeInitial()).thenReturn(8 * MIB);
+        when(agentConfig.getChunkSizeMin()).thenReturn(256 * 1024L);
+        when(agentConfig.getChunkSizeMax()).thenReturn(64 * MIB);
+        when(agentConfig.getChunkTargetMs()).thenReturn(1000L);
+    }
+
+    /**
+     * Chunks acked far inside the target duration grow the size, up to the max
+     */
+    @Test
+    void fastLink_growsToMax() {
+        bounded();
+
+        for (int i = 0; i < 10; i++) {
+            long size = sizer.nextChunkSize(PEER);
+            sizer.acked(PEER, size, TimeUnit.MILLISECONDS.toNanos(size / MIB));   // ~1 GB/s
+        }
+
+        assertThat(sizer.nextChunkSize(PEER)).isEqualTo(64 * MIB);
+    }
+
+    /**
+     * At 1 MiB/s a chunk of the target duration is about 1 MiB, reached a halving at a time
+     */
+    @Test
+    void slowLink_shrinksTowardsTargetDuration() {
+        bounded();
+
+        for (int i = 0; i < 10; i++) {
+            long size = sizer.nextChunkSize(PEER);
+            sizer.acked(PEER, size, TimeUnit.SECONDS.toNanos(1) * size / MIB);
+        }
+
+        assertThat(sizer.nextChunkSize(PEER)).isBetween(MIB / 2, 2 * MIB);
+    }
+
+    /**
+     * Ack time beyond what the size explains is treated as round trip,
+     * a chunk then aims to last several round trips
+     */
+    @Test
+    void longRoundTrip_keepsChunksLargerThanTheTargetAlone() {
+        bounded();
+
+        for (int i = 0; i < 20; i++) {
+            long size = sizer.nextChunkSize(PEER);
+            // 10 MiB/s plus half a second of latency on every chunk
+            sizer.acked(PEER, size, TimeUnit.MILLISECONDS.toNanos(100 * size / MIB + 500));
+        }
+
+        ChunkSizingStats stats = sizer.stats().get(0);
+        assertThat(stats.getRttMillis()).isGreaterThan(250);
+        assertThat(stats.getChunkSize()).isGreaterThan(20 * MIB);
+    }
+
+    /**
+     * A failed attempt halves the size and is counted in the stats
+     */
+    @Test
+    void failure_halvesSizeAndRaisesFailureRate() {
+        bounded();
+
+        sizer.failed(PEER);
+
+        assertThat(sizer.nextChunkSize(PEER)).isEqualTo(4 * MIB);
+        ChunkSizingStats stats = sizer.stats().get(0);
+        assertThat(stats.getPeer()).isEqualTo(PEER);
+        assertThat(stats.getFailures()).isEqualTo(1);
+        assertThat(stats.getFailureRate()).isGreaterThan(0);
+    }
+
+    /**
+     * Without a max every chunk has the initial size and nothing is tracked
+     */
+    @Test
+    void noMax_keepsInitialSize() {
+        sizer.acked(PEER, 8 * MIB, TimeUnit.SECONDS.toNanos(60));
+        sizer.failed(PEER);
+
+        assertThat(sizer.nextChunkSize(PEER)).isEqualTo(AdaptiveChunkSizer.DEFAULT_CHUNK_SIZE);
+        assertThat(sizer.stats()).isEmpty();
+    }
+}
@@ -0,0 +1,108 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.dto.BandwidthLimits;
+import com.atamanahmet.beamlink.agent.service.BandwidthScheduler.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class BandwidthSchedulerTest {
+
+    private static final String PEER = "10.0.0.2:9090";
+
+    private final BandwidthScheduler scheduler = new BandwidthScheduler(mock(AgentConfig.class));
+
+    /**
+     * One second of rate goes through at once, bytes beyond it wait for the bucket to refill
+     */
+    @Test
+    void acquire_waitsOnceGlobalBurstIsSpent() throws Exception {
+        scheduler.apply(new BandwidthLimits(10_000, new HashMap<>(), 1));
+
+        assertThat(millisToAcquire(PEER, Priority.INTERACTIVE, 10_000)).isLessThan(50);
+        assertThat(millisToAcquire(PEER, Priority.INTERACTIVE, 1_000)).isGreaterThanOrEqualTo(80);
+    }
+
+    /**
+     * A peer limit holds back sends to that peer only
+     */
+    @Test
+    void acquire_appliesPeerLimitToItsPeerOnly() throws Exception {
+        scheduler.apply(new BandwidthLimits(0, new HashMap<>(Map.of(PEER, 10_000L)), 1));
+
+        millisToAcquire(PEER, Priority.INTERACTIVE, 10_000);
+        assertThat(millisToAcquire("10.0.0.3:9090", Priority.INTERACTIVE, 50_000)).isLessThan(50);
+        assertThat(millisToAcquire(PEER, Priority.INTERACTIVE, 1_000)).isGreaterThanOrEqualTo(80);
+    }
+
+    /**
+     * While single files are sent, background sends are held to their share of the global limit
+     */
+    @Test
+    void acquire_holdsBackgroundToItsShareWhileInteractiveRuns() throws Exception {
+        scheduler.apply(new BandwidthLimits(100_000, new HashMap<>(), 0.1));
+
+        assertThat(millisToAcquire(PEER, Priority.BACKGROUND, 11_000)).isLessThan(50);
+
+        scheduler.acquire(PEER, Priority.INTERACTIVE, 1);
+        millisToAcquire(PEER, Priority.BACKGROUND, 10_000);
+        assertThat(millisToAcquire(PEER, Priority.BACKGROUND, 1_000)).isGreaterThanOrEqualTo(80);
+    }
+
+    /**
+     * A send that has to wait takes nothing, background sends held back by their share
+     * leave the global bucket to single files instead of running it into debt
+     */
+    @Test
+    void tryAcquire_takesNothingWhileThrottled() {
+        scheduler.apply(new BandwidthLimits(100_000, new HashMap<>(), 0.1));
+
+        scheduler.tryAcquire(PEER, Priority.INTERACTIVE, 1);
+        assertThat(scheduler.tryAcquire(PEER, Priority.BACKGROUND, 10_000)).isZero();
+        for (int i = 0; i < 20; i++) {
+            assertThat(scheduler.tryAcquire(PEER, Priority.BACKGROUND, 10_000)).isPositive();
+        }
+
+        assertThat(scheduler.tryAcquire(PEER, Priority.INTERACTIVE, 80_000)).isZero();
+    }
+
+    /**
+     * While background sends run, single files are held to the rest of the global limit
+     * so the background share stays theirs
+     */
+    @Test
+    void acquire_holdsInteractiveToItsShareWhileBackgroundRuns() throws Exception {
+        scheduler.apply(new BandwidthLimits(100_000, new HashMap<>(), 0.5));
+
+        scheduler.acquire(PEER, Priority.BACKGROUND, 1);
+        assertThat(millisToAcquire(PEER, Priority.INTERACTIVE, 50_000)).isLessThan(50);
+        assertThat(scheduler.tryAcquire(PEER, Priority.INTERACTIVE, 10_000)).isPositive();
+
+        assertThat(millisToAcquire(PEER, Priority.BACKGROUND, 30_000)).isLessThan(50);
+    }
+
+    @Test
+    void apply_dropsNonPositiveLimitsAndClampsShare() {
+        Map<String, Long> peers = new HashMap<>();
+        peers.put(PEER, 0L);
+        peers.put("10.0.0.3:9090", 5_000L);
+
+        BandwidthLimits applied = scheduler.apply(new BandwidthLimits(-1, peers, 0.001));
+
+        assertThat(applied.getGlobalBytesPerSecond()).isZero();
+        assertThat(applied.getPeerBytesPerSecond()).containsOnlyKeys("10.0.0.3:9090");
+        assertThat(applied.getBackgroundShare()).isEqualTo(0.05);
+    }
+
+    private long millisToAcquire(String peer, Priority priority, long bytes) throws InterruptedException {
+        long start = System.nanoTime();
+        scheduler.acquire(peer, priority, bytes);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
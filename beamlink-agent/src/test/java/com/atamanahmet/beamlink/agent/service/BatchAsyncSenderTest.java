@@ -1,5 +1,6 @@
 package com.atamanahmet.beamlink.agent.service;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.BatchTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
@@ -11,15 +12,19 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -38,6 +43,15 @@ class BatchAsyncSenderTest {
     @Mock
     private TransferAsyncSender transferAsyncSender;
 
+    @Mock
+    private AgentConfig agentConfig;
+
+    @Mock
+    private PeerHealthTracker peerHealth;
+
+    @Spy
+    private AsyncTaskExecutor groupFileExecutor = new TaskExecutorAdapter(Executors.newCachedThreadPool());
+
     @InjectMocks
     private BatchAsyncSender batchAsyncSender;
 
@@ -100,6 +114,29 @@ class BatchAsyncSenderTest {
         verifyNoInteractions(transferAsyncSender);
     }
 
+    /**
+     * Circuit to the target is open, the batch is paused for the peer instead of sending
+     */
+    @Test
+    void whenPeerCircuitOpen_pausesBatchWithoutSending() {
+        UUID batchId = UUID.randomUUID();
+        FileTransfer pending = makeFile(batchId, "pending.txt", TransferStatus.PENDING);
+        BatchTransfer bt = makeBatch(batchId, GroupTransferStatus.ACTIVE);
+
+        when(fileTransferRepository.findByBatchTransferId(batchId))
+                .thenReturn(List.of(pending));
+        when(batchTransferRepository.findById(batchId))
+                .thenReturn(Optional.of(bt));
+        when(peerHealth.isOpen("192.168.1.10:8080")).thenReturn(true);
+
+        batchAsyncSender.sendAsync(batchId, "192.168.1.10", 8080, "test-token");
+
+        verifyNoInteractions(transferAsyncSender);
+        assertEquals(GroupTransferStatus.PAUSED, bt.getStatus());
+        verify(batchTransferRepository).save(bt);
+        verify(peerHealth).pausedByCircuit("192.168.1.10:8080", PeerHealthTracker.PausedKind.BATCH, batchId);
+    }
+
     /**
      * Queue filtering: only PENDING, ACTIVE, PAUSED files get queued
      */
@@ -4,9 +4,13 @@ import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.BatchTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
+import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.InitiateBatchTransferRequest;
 import com.atamanahmet.beamlink.agent.dto.InitiateBatchTransferResponse;
+import com.atamanahmet.beamlink.agent.dto.ReceiveBatchRequest;
+import com.atamanahmet.beamlink.agent.dto.RegistrationAckResponse;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.http.HttpSender;
 import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -18,14 +22,15 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -39,9 +44,10 @@ class BatchSenderServiceTest {
     @Mock private FileTransferRepository fileTransferRepository;
     @Mock private AgentService agentService;
     @Mock private AgentConfig agentConfig;
-    @Mock private BatchAsyncSender batchAsyncSender;
+    @Mock private OutboundTransferQueue outboundQueue;
     @Mock private ObjectMapper objectMapper;
-    @Mock private HttpClient httpClient;
+    @Mock private HttpSender httpSender;
+    @Mock private ContentHashService contentHashService;
 
     @InjectMocks
     private BatchSenderService batchSenderService;
@@ -65,7 +71,7 @@ class BatchSenderServiceTest {
         when(agentService.getAgentId()).thenReturn(UUID.randomUUID());
         when(agentConfig.getTransferExpiryHours()).thenReturn(24L);
         when(objectMapper.writeValueAsString(any())).thenReturn("{}");
-        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        when(httpSender.send(any(HttpRequest.class)))
                 .thenReturn(httpResponse);
         when(batchTransferRepository.save(any(BatchTransfer.class)))
                 .thenAnswer(i -> i.getArgument(0));
@@ -94,7 +100,7 @@ class BatchSenderServiceTest {
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("No file paths");
 
-        verifyNoInteractions(batchTransferRepository, fileTransferRepository, httpClient);
+        verifyNoInteractions(batchTransferRepository, fileTransferRepository, httpSender);
     }
 
     @Test
@@ -184,34 +190,80 @@ class BatchSenderServiceTest {
     }
 
     /**
-     * Batch must be set to ACTIVE after target accepts registration.
+     * Batch must be set to QUEUED after target accepts registration.
      */
     @Test
-    void initiate_setsBatchActiveAfterTargetAccepts() throws Exception {
+    void initiate_setsBatchQueuedAfterTargetAccepts() throws Exception {
         Path file = createRealFile("active.txt", "x".getBytes());
         stubHappyPath(mockHttpResponse(200));
 
         batchSenderService.initiate(buildRequest(List.of(file.toString())));
 
         verify(batchTransferRepository, atLeastOnce()).save(argThat(bt ->
-                bt.getStatus() == GroupTransferStatus.ACTIVE));
+                bt.getStatus() == GroupTransferStatus.QUEUED));
     }
 
     /**
-     * Async sender must be called once with correct connection params after target accepts.
+     * Batch must be queued once with the target token after target accepts.
      */
     @Test
-    void initiate_triggersAsyncSend() throws Exception {
+    void initiate_enqueuesForSending() throws Exception {
         Path file = createRealFile("send.txt", "payload".getBytes());
         stubHappyPath(mockHttpResponse(200));
 
         batchSenderService.initiate(buildRequest(List.of(file.toString())));
 
-        verify(batchAsyncSender).sendAsync(any(), eq("192.168.1.2"), eq(9090), eq("token"));
+        verify(outboundQueue).enqueue(
+                argThat((BatchTransfer bt) -> "192.168.1.2".equals(bt.getTargetIp())), eq("token"));
     }
 
     /**
-     * Target rejecting registration must throw and not mark batch as ACTIVE.
+     * Files registered with a content hash the target already has are completed
+     * from its local copy, they are marked COMPLETED here and never sent.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void initiate_marksFilesTargetAlreadyHasAsCompleted() throws Exception {
+        Path known = createRealFile("installer.bin", new byte[64]);
+        Path fresh = createRealFile("notes.txt", "new".getBytes());
+
+        AtomicReference<List<FileTransfer>> registered = new AtomicReference<>();
+        when(agentService.getAgentId()).thenReturn(UUID.randomUUID());
+        when(agentConfig.getTransferExpiryHours()).thenReturn(24L);
+        when(contentHashService.hashForRegistration(any(), anyLong()))
+                .thenAnswer(i -> known.equals(i.getArgument(0)) ? "abc123" : null);
+        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+        HttpResponse<String> accepted = mockHttpResponse(200);
+        when(accepted.body()).thenReturn("{\"completed\":[]}");
+        when(httpSender.send(any(HttpRequest.class)))
+                .thenReturn(accepted);
+        when(batchTransferRepository.save(any(BatchTransfer.class)))
+                .thenAnswer(i -> i.getArgument(0));
+        when(fileTransferRepository.saveAll(any())).thenAnswer(i -> {
+            registered.compareAndSet(null, new ArrayList<>(i.<List<FileTransfer>>getArgument(0)));
+            return i.getArgument(0);
+        });
+        when(objectMapper.readValue(anyString(), eq(RegistrationAckResponse.class)))
+                .thenAnswer(i -> new RegistrationAckResponse(
+                        List.of(registered.get().get(0).getTransferId())));
+
+        batchSenderService.initiate(buildRequest(List.of(known.toString(), fresh.toString())));
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(objectMapper).writeValueAsString(payload.capture());
+        List<ReceiveBatchRequest.FileEntry> entries = ((ReceiveBatchRequest) payload.getValue()).getFiles();
+        assertThat(entries.get(0).getContentHash()).isEqualTo("abc123");
+        assertThat(entries.get(1).getContentHash()).isNull();
+
+        FileTransfer knownTransfer = registered.get().get(0);
+        assertThat(knownTransfer.getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(knownTransfer.getConfirmedOffset()).isEqualTo(64L);
+        assertThat(registered.get().get(1).getStatus()).isEqualTo(TransferStatus.PENDING);
+        verify(fileTransferRepository).saveAll(List.of(knownTransfer));
+    }
+
+    /**
+     * Target rejecting registration must throw and not mark batch as QUEUED.
      */
     @Test
     @SuppressWarnings("unchecked")
@@ -224,7 +276,7 @@ class BatchSenderServiceTest {
         when(fileTransferRepository.saveAll(any())).thenAnswer(i -> i.getArgument(0));
 
         HttpResponse<String> rejected = mockHttpResponse(403);
-        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        when(httpSender.send(any(HttpRequest.class)))
                 .thenReturn(rejected);
 
         assertThatThrownBy(() ->
@@ -233,7 +285,7 @@ class BatchSenderServiceTest {
                 .hasMessageContaining("Target rejected");
 
         verify(batchTransferRepository, never()).save(argThat(bt ->
-                bt.getStatus() == GroupTransferStatus.ACTIVE));
+                bt.getStatus() == GroupTransferStatus.QUEUED));
     }
 
     /**
@@ -267,10 +319,10 @@ class BatchSenderServiceTest {
     }
 
     /*
-    * Resume on PAUSED batch sets it ACTIVE and fires async send
+    * Resume on PAUSED batch sets it QUEUED and puts it back in the outbound queue
     */
     @Test
-    void resume_setsBatchActiveAndTriggersAsyncSend() {
+    void resume_setsBatchQueuedAndEnqueues() {
         UUID batchId = UUID.randomUUID();
         BatchTransfer bt = BatchTransfer.initiate(
                 batchId, UUID.randomUUID(), UUID.randomUUID(),
@@ -282,7 +334,7 @@ class BatchSenderServiceTest {
         batchSenderService.resume(batchId);
 
         verify(batchTransferRepository).save(argThat(b ->
-                b.getStatus() == GroupTransferStatus.ACTIVE));
-        verify(batchAsyncSender).sendAsync(eq(batchId), any(), anyInt(), isNull());
+                b.getStatus() == GroupTransferStatus.QUEUED));
+        verify(outboundQueue).enqueue(eq(bt), isNull());
     }
 }
\ No newline at end of file
@@ -1,29 +1,51 @@
 package com.atamanahmet.beamlink.agent.service;
 
 import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import com.atamanahmet.beamlink.agent.domain.enums.DurabilityPolicy;
+import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.ChunkAckResponse;
+import com.atamanahmet.beamlink.agent.dto.PackAckResponse;
+import com.atamanahmet.beamlink.agent.exception.ChunkChecksumException;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.metrics.TransferMetrics;
+import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.util.BlockSignatures;
+import com.atamanahmet.beamlink.agent.util.ChecksumFormat;
+import com.atamanahmet.beamlink.agent.util.DeltaFormat;
+import com.atamanahmet.beamlink.agent.util.FilePackFormat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -35,12 +57,30 @@ class ChunkReceiverServiceTest {
     @Mock
     private AgentConfig agentConfig;
 
+    @Mock
+    private DirectoryTransferRepository directoryTransferRepository;
+
     @Mock
     private LogService logService;
 
     @Mock
     private AgentService agentService;
 
+    @Spy
+    private PartialFileChannels partialFileChannels = new PartialFileChannels(mock(AgentConfig.class));
+
+    @Spy
+    private ContentHashService contentHashService = new ContentHashService(mock(AgentConfig.class));
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private TransferMetrics metrics = new TransferMetrics(registry);
+
+    /* runs segment verification on the calling thread */
+    @Spy
+    private AsyncTaskExecutor checksumExecutor = new TaskExecutorAdapter(Runnable::run);
+
     @InjectMocks
     private ChunkReceiverService chunkReceiverService;
 
@@ -72,7 +112,7 @@ class ChunkReceiverServiceTest {
                 .thenReturn(Optional.empty());
 
         assertThatThrownBy(() ->
-                chunkReceiverService.receiveChunk(transferId, 0,
+                chunkReceiverService.receiveChunk(transferId, 0, 0,
                         new ByteArrayInputStream(new byte[0])))
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("Transfer not found");
@@ -85,10 +125,12 @@ class ChunkReceiverServiceTest {
                 .thenReturn(Optional.of(activeTransfer));
 
         assertThatThrownBy(() ->
-                chunkReceiverService.receiveChunk(transferId, 0,
+                chunkReceiverService.receiveChunk(transferId, 0, 0,
                         new ByteArrayInputStream(new byte[0])))
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("not active");
+
+        verify(partialFileChannels).close(transferId);
     }
 
     /**
@@ -101,7 +143,7 @@ class ChunkReceiverServiceTest {
                 .thenReturn(Optional.of(activeTransfer));
 
         assertThatThrownBy(() ->
-                chunkReceiverService.receiveChunk(transferId, 0,
+                chunkReceiverService.receiveChunk(transferId, 0, 4,
                         new ByteArrayInputStream("data".getBytes())))
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("not active");
@@ -119,7 +161,7 @@ class ChunkReceiverServiceTest {
                 .thenReturn(Optional.of(activeTransfer));
 
         assertThatThrownBy(() ->
-                chunkReceiverService.receiveChunk(transferId, 0,
+                chunkReceiverService.receiveChunk(transferId, 0, 4,
                         new ByteArrayInputStream("data".getBytes())))
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("not active");
@@ -132,7 +174,7 @@ class ChunkReceiverServiceTest {
                 .thenReturn(Optional.of(activeTransfer));
 
         assertThatThrownBy(() ->
-                chunkReceiverService.receiveChunk(transferId, 512,
+                chunkReceiverService.receiveChunk(transferId, 512, 0,
                         new ByteArrayInputStream(new byte[0])))
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("Unexpected offset");
@@ -181,6 +223,216 @@ class ChunkReceiverServiceTest {
         assertThat(Files.size(expectedPartFile)).isEqualTo(declaredSize);
     }
 
+    /**
+     * A registration whose content hash matches a file already received is completed
+     * from that copy, no partial file is allocated and nothing needs to be sent.
+     */
+    @Test
+    void prepareReceive_completesFromLocalCopyWithSameContent() throws IOException {
+        Path uploads = tempDir.resolve("uploads");
+        Files.createDirectories(uploads);
+        byte[] content = "same installer bytes".getBytes();
+        Path earlierFile = Files.write(uploads.resolve("installer-v1.bin"), content);
+        String contentHash = ContentHashService.sha256(earlierFile);
+
+        FileTransfer earlier = FileTransfer.initiate(
+                UUID.randomUUID(), UUID.randomUUID(), null, "installer-v1.bin", null, content.length);
+        earlier.setStatus(TransferStatus.COMPLETED);
+        earlier.setContentHash(contentHash);
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), null, "installer.bin", null, content.length);
+        transfer.setStatus(TransferStatus.ACTIVE);
+        transfer.setContentHash(contentHash);
+
+        when(agentConfig.getUploadDirectory()).thenReturn(uploads.toString());
+        when(transferRepository.findByContentHashAndStatus(contentHash, TransferStatus.COMPLETED))
+                .thenReturn(List.of(earlier));
+
+        chunkReceiverService.prepareReceive(transfer);
+
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(transfer.getConfirmedOffset()).isEqualTo(content.length);
+        assertThat(uploads.resolve("installer.bin")).hasBinaryContent(content);
+        verify(agentConfig, never()).getPartialDirectory();
+        verify(transferRepository).save(transfer);
+    }
+
+    /**
+     * A file this agent sent is the user's own, a registration with its content is received in full
+     */
+    @Test
+    void prepareReceive_neverLinksFileThisAgentSent() throws IOException {
+        Path uploads = tempDir.resolve("uploads");
+        Path outside = Files.createDirectories(tempDir.resolve("documents"));
+        byte[] content = "users own report".getBytes();
+        Path sourceFile = Files.write(outside.resolve("report.pdf"), content);
+        String contentHash = ContentHashService.sha256(sourceFile);
+
+        FileTransfer sent = FileTransfer.initiate(
+                UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), "report.pdf",
+                sourceFile.toString(), content.length);
+        sent.setStatus(TransferStatus.COMPLETED);
+        sent.setContentHash(contentHash);
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), null, "report.pdf", null, content.length);
+        transfer.setStatus(TransferStatus.ACTIVE);
+        transfer.setContentHash(contentHash);
+
+        Path partialDir = tempDir.resolve("partial");
+        when(agentConfig.getUploadDirectory()).thenReturn(uploads.toString());
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(transferRepository.findByContentHashAndStatus(contentHash, TransferStatus.COMPLETED))
+                .thenReturn(List.of(sent));
+
+        chunkReceiverService.prepareReceive(transfer);
+
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.ACTIVE);
+        assertThat(uploads.resolve("report.pdf")).doesNotExist();
+    }
+
+    /**
+     * A content hash offered before the first chunk completes the file from a received copy
+     * and drops its partial file
+     */
+    @Test
+    void acceptContentHash_completesFromReceivedCopy() throws IOException {
+        Path uploads = Files.createDirectories(tempDir.resolve("uploads"));
+        Path partialDir = Files.createDirectories(tempDir.resolve("partial"));
+        byte[] content = "same video bytes".getBytes();
+        Path earlierFile = Files.write(uploads.resolve("video-v1.mp4"), content);
+        String contentHash = ContentHashService.sha256(earlierFile);
+        Path partialFile = Files.write(partialDir.resolve("video.mp4.part"), new byte[content.length]);
+
+        FileTransfer earlier = FileTransfer.initiate(
+                UUID.randomUUID(), UUID.randomUUID(), null, "video-v1.mp4", null, content.length);
+        earlier.setStatus(TransferStatus.COMPLETED);
+        earlier.setContentHash(contentHash);
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), null, "video.mp4", null, content.length);
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getUploadDirectory()).thenReturn(uploads.toString());
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(transferRepository.findByContentHashAndStatus(contentHash, TransferStatus.COMPLETED))
+                .thenReturn(List.of(earlier));
+        when(transferRepository.completeIfActive(eq(transferId), eq((long) content.length), any()))
+                .thenReturn(1);
+
+        assertThat(chunkReceiverService.acceptContentHash(transferId, contentHash)).isTrue();
+
+        verify(transferRepository).recordContentHash(transferId, contentHash);
+        assertThat(uploads.resolve("video.mp4")).hasBinaryContent(content);
+        assertThat(partialFile).doesNotExist();
+    }
+
+    /**
+     * A recorded copy that changed on disk since it was received is not reused,
+     * the file is received as usual.
+     */
+    @Test
+    void prepareReceive_receivesNormallyWhenLocalCopyChanged() throws IOException {
+        Path uploads = tempDir.resolve("uploads");
+        Files.createDirectories(uploads);
+        byte[] content = "original dataset".getBytes();
+        Path earlierFile = Files.write(uploads.resolve("dataset.csv"), content);
+        String contentHash = ContentHashService.sha256(earlierFile);
+        Files.write(earlierFile, "modified dataset".getBytes());
+
+        FileTransfer earlier = FileTransfer.initiate(
+                UUID.randomUUID(), UUID.randomUUID(), null, "dataset.csv", null, content.length);
+        earlier.setStatus(TransferStatus.COMPLETED);
+        earlier.setContentHash(contentHash);
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), null, "dataset-copy.csv", null, content.length);
+        transfer.setStatus(TransferStatus.ACTIVE);
+        transfer.setContentHash(contentHash);
+
+        Path partialDir = tempDir.resolve("partial");
+        when(agentConfig.getUploadDirectory()).thenReturn(uploads.toString());
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(transferRepository.findByContentHashAndStatus(contentHash, TransferStatus.COMPLETED))
+                .thenReturn(List.of(earlier));
+
+        chunkReceiverService.prepareReceive(transfer);
+
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.ACTIVE);
+        assertThat(partialDir.resolve("dataset-copy.csv.part")).exists();
+        assertThat(uploads.resolve("dataset-copy.csv")).doesNotExist();
+    }
+
+    /**
+     * A large file replacing an earlier copy is received as a delta against it,
+     * the range is rebuilt from the earlier copy plus the changed bytes and moved into place.
+     */
+    @Test
+    void receiveDelta_rebuildsFileFromEarlierCopy() throws IOException {
+        int blockSize = 4096;
+        Path uploads = tempDir.resolve("uploads");
+        Path partialDir = tempDir.resolve("partial");
+        Files.createDirectories(uploads);
+
+        byte[] earlier = new byte[16 * blockSize];
+        new java.util.Random(7).nextBytes(earlier);
+        byte[] current = earlier.clone();
+        current[5 * blockSize + 1] ^= 0x11;
+        Files.write(uploads.resolve("image.qcow2"), earlier);
+        Path source = Files.write(tempDir.resolve("image-source.qcow2"), current);
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), null, "image.qcow2", null, current.length);
+        transfer.setStatus(TransferStatus.ACTIVE);
+        transfer.splitIntoStripes(4);
+
+        when(agentConfig.getUploadDirectory()).thenReturn(uploads.toString());
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(agentConfig.getDeltaMinSize()).thenReturn(1L);
+        when(agentConfig.getDeltaBlockSize()).thenReturn(blockSize);
+
+        chunkReceiverService.prepareReceive(transfer);
+
+        assertThat(transfer.isDelta()).isTrue();
+        assertThat(transfer.getStripeCount()).isEqualTo(1);
+        assertThat(partialDir.resolve("image.qcow2.basis")).exists();
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+
+        byte[] signed = chunkReceiverService.blockSignatures(transferId);
+        BlockSignatures signatures = BlockSignatures.read(new java.io.DataInputStream(
+                new ByteArrayInputStream(signed)), signed.length);
+        assertThat(signatures.blockCount()).isEqualTo(16);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(source)) {
+            new DeltaEncoder(signatures).encode(channel, 0, current.length, new DeltaEncoder.Sink() {
+                @Override
+                public void copy(long basisOffset, int length) throws IOException {
+                    DeltaFormat.writeCopy(out, basisOffset, length);
+                }
+
+                @Override
+                public void literal(byte[] buf, int off, int length) throws IOException {
+                    DeltaFormat.writeLiteral(out, buf, off, length);
+                }
+            });
+        }
+        // one changed block travels, the other fifteen are copies
+        assertThat(body.size()).isLessThan(2 * blockSize);
+
+        ChunkAckResponse ack = chunkReceiverService.receiveDelta(
+                transferId, 0L, current.length, new ByteArrayInputStream(body.toByteArray()));
+
+        assertThat(ack.isComplete()).isTrue();
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(uploads.resolve("image.qcow2")).hasBinaryContent(current);
+        assertThat(partialDir.resolve("image.qcow2.basis")).doesNotExist();
+    }
+
     /**
      * Full path, single chunk that fills the file to status COMPLETED.
      */
@@ -218,15 +470,14 @@ class ChunkReceiverServiceTest {
         when(agentService.getAgentName()).thenReturn("test-agent");
 
         ChunkAckResponse ack = chunkReceiverService.receiveChunk(
-                transferId, 0L, new ByteArrayInputStream(payload)
+                transferId, 0L, payload.length, new ByteArrayInputStream(payload)
         );
 
         assertThat(ack.getConfirmedOffset()).isEqualTo(fileSize);
         assertThat(ack.isComplete()).isTrue();
 
-        verify(transferRepository, atLeastOnce()).save(argThat(t ->
-                t.getStatus() == TransferStatus.COMPLETED
-        ));
+        verify(transferRepository).completeIfActive(eq(transferId), eq((long) fileSize), any());
+        verify(transferRepository, never()).save(any());
 
         Path finalFile = finalDir.resolve(fileName);
         assertThat(finalFile).exists();
@@ -274,7 +525,7 @@ class ChunkReceiverServiceTest {
 
         // Chunk 1
         ChunkAckResponse ack1 = chunkReceiverService.receiveChunk(
-                transferId, 0L, new ByteArrayInputStream(part1)
+                transferId, 0L, part1.length, new ByteArrayInputStream(part1)
         );
 
         assertThat(ack1.getConfirmedOffset()).isEqualTo(part1.length);
@@ -286,7 +537,7 @@ class ChunkReceiverServiceTest {
 
         // Chunk 2
         ChunkAckResponse ack2 = chunkReceiverService.receiveChunk(
-                transferId, part1.length, new ByteArrayInputStream(part2)
+                transferId, part1.length, part2.length, new ByteArrayInputStream(part2)
         );
 
         assertThat(ack2.getConfirmedOffset()).isEqualTo(fileSize);
@@ -302,6 +553,55 @@ class ChunkReceiverServiceTest {
 
 
 
+    /**
+     * A chunk larger than the write buffer lands at its offset through the cached channel,
+     * and the channel is closed before the completed file is moved.
+     */
+    @Test
+    void receiveChunk_writesLargeChunkThroughCachedChannelAndClosesOnCompletion() throws IOException {
+        int headSize = 1024;
+        byte[] tail = new byte[3 * 1024 * 1024 + 17];
+        new java.util.Random(7).nextBytes(tail);
+        long fileSize = headSize + tail.length;
+
+        String fileName = "large-" + transferId + ".bin";
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        Path partialDir = tempDir.resolve("partial");
+        Path finalDir   = tempDir.resolve("uploads");
+        Files.createDirectories(partialDir);
+
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(agentConfig.getUploadDirectory()).thenReturn(finalDir.toString());
+        when(agentConfig.getReceiveWindowBytes()).thenReturn(64L * 1024 * 1024);
+
+        /* tail first, held in the window until the head arrives */
+        ChunkAckResponse ack1 = chunkReceiverService.receiveChunk(
+                transferId, headSize, tail.length, new ByteArrayInputStream(tail));
+        assertThat(ack1.getConfirmedOffset()).isZero();
+
+        ChunkAckResponse ack2 = chunkReceiverService.receiveChunk(
+                transferId, 0L, headSize, new ByteArrayInputStream(new byte[headSize]));
+        assertThat(ack2.isComplete()).isTrue();
+
+        verify(partialFileChannels).close(transferId);
+
+        byte[] written = Files.readAllBytes(finalDir.resolve(fileName));
+        assertThat(written).hasSize((int) fileSize);
+        assertThat(java.util.Arrays.copyOfRange(written, headSize, written.length)).isEqualTo(tail);
+    }
+
     /**
      * Verifies that after writing a middle chunk (not the last one),
      * confirmedOffset is advanced correctly in the database and isComplete is false.
@@ -334,15 +634,265 @@ class ChunkReceiverServiceTest {
         when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
 
         ChunkAckResponse ack = chunkReceiverService.receiveChunk(
-                transferId, 0L, new ByteArrayInputStream(payload)
+                transferId, 0L, payload.length, new ByteArrayInputStream(payload)
         );
 
         assertThat(ack.getConfirmedOffset()).isEqualTo(512L);
         assertThat(ack.isComplete()).isFalse();
 
-        verify(transferRepository).save(argThat(t ->
-                t.getConfirmedOffset() == 512L
-        ));
+        verify(transferRepository).advanceCheckpoint(eq(transferId), eq(512L), any());
+        verify(transferRepository, never()).save(any());
+    }
+
+    /**
+     * A cancelled, expired or idle transfer gives up its window, live offsets of an active
+     * one are persisted first and a later record no longer sees them
+     */
+    @Test
+    void evictWindow_persistsLiveOffsetsAndDropsWindow() throws IOException {
+        long fileSize = 1024L;
+        String fileName = "evict-" + transferId + ".bin";
+
+        Path partialDir = tempDir.resolve("partial");
+        Files.createDirectories(partialDir);
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+
+        chunkReceiverService.receiveChunk(transferId, 0L, 512, new ByteArrayInputStream(new byte[512]));
+        chunkReceiverService.evictWindow(transferId);
+
+        verify(transferRepository, times(2)).advanceCheckpoint(eq(transferId), eq(512L), any());
+        verify(partialFileChannels).close(transferId);
+
+        FileTransfer reloaded = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(), fileName, null, fileSize);
+        chunkReceiverService.applyLiveOffsets(reloaded);
+        assertThat(reloaded.getConfirmedOffset()).isZero();
+    }
+
+    /**
+     * A transfer no longer active is not written back when its window is evicted
+     */
+    @Test
+    void evictWindow_ofCancelledTransfer_persistsNothing() throws IOException {
+        long fileSize = 1024L;
+        String fileName = "cancelled-" + transferId + ".bin";
+
+        Path partialDir = tempDir.resolve("partial");
+        Files.createDirectories(partialDir);
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+
+        chunkReceiverService.receiveChunk(transferId, 0L, 512, new ByteArrayInputStream(new byte[512]));
+        transfer.setStatus(TransferStatus.CANCELLED);
+        chunkReceiverService.evictWindow(transferId);
+
+        verify(transferRepository, times(1)).advanceCheckpoint(any(), anyLong(), any());
+        verify(partialFileChannels).close(transferId);
+    }
+
+    /**
+     * The write timer leaves out the time the range takes to arrive, a slow sender
+     * does not make the disk look slow
+     */
+    @Test
+    void receiveChunk_writeTimerLeavesOutWaitingForTheRange() throws IOException {
+        long fileSize = 1024L;
+        String fileName = "slow-" + transferId + ".bin";
+
+        Path partialDir = tempDir.resolve("partial");
+        Files.createDirectories(partialDir);
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+
+        InputStream slowRange = new java.io.FilterInputStream(new ByteArrayInputStream(new byte[512])) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    throw new java.io.InterruptedIOException();
+                }
+                return super.read(b, off, Math.min(len, 128));
+            }
+        };
+
+        chunkReceiverService.receiveChunk(transferId, 0L, 512, slowRange);
+
+        io.micrometer.core.instrument.Timer write = registry.get("beamlink.receive.write").timer();
+        assertThat(write.count()).isEqualTo(1);
+        assertThat(write.totalTime(TimeUnit.MILLISECONDS)).isLessThan(200);
+    }
+
+    /**
+     * Under group commit the file is forced every fsync interval, only forced offsets are
+     * persisted and the ack tells the sender how far the bytes are durable.
+     */
+    @Test
+    void receiveChunk_groupCommitPersistsOnlyForcedOffsets() throws IOException {
+        long fileSize = 1536L;   // three chunks of 512
+        String fileName = "durable-" + transferId + ".bin";
+
+        Path partialDir = tempDir.resolve("partial");
+        Files.createDirectories(partialDir);
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(agentConfig.getFsyncIntervalBytes()).thenReturn(1024L);
+        when(agentConfig.getFsyncIntervalMs()).thenReturn(60_000L);
+
+        ChunkAckResponse first = chunkReceiverService.receiveChunk(
+                transferId, 0L, 512, new ByteArrayInputStream(new byte[512]));
+
+        assertThat(first.getConfirmedOffset()).isEqualTo(512L);
+        assertThat(first.getDurableOffset()).isZero();
+        assertThat(first.getDurability()).isEqualTo(DurabilityPolicy.GROUP_COMMIT);
+        assertThat(transfer.getConfirmedOffset()).isZero();
+        verify(partialFileChannels, never()).force(transferId);
+
+        ChunkAckResponse second = chunkReceiverService.receiveChunk(
+                transferId, 512L, 512, new ByteArrayInputStream(new byte[512]));
+
+        assertThat(second.getDurableOffset()).isEqualTo(1024L);
+        assertThat(transfer.getConfirmedOffset()).isEqualTo(1024L);
+        verify(partialFileChannels).force(transferId);
+    }
+
+    /**
+     * A chunk that does not match its checksum is not confirmed, the same chunk sent again is
+     */
+    @Test
+    void receiveChunk_rejectsChunkFailingItsChecksum() throws IOException {
+        long fileSize = 1024L;
+        String fileName = "crc-" + transferId + ".bin";
+        Path partialDir = tempDir.resolve("partial");
+        Files.createDirectories(partialDir);
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+
+        byte[] payload = new byte[512];
+        java.util.Arrays.fill(payload, (byte) 0x5A);
+        long crc = ChecksumFormat.crc32c(ByteBuffer.wrap(payload));
+
+        assertThatThrownBy(() -> chunkReceiverService.receiveChunk(
+                transferId, 0L, payload.length, new ByteArrayInputStream(payload), crc ^ 1))
+                .isInstanceOf(ChunkChecksumException.class);
+        assertThat(transfer.getConfirmedOffset()).isZero();
+
+        ChunkAckResponse ack = chunkReceiverService.receiveChunk(
+                transferId, 0L, payload.length, new ByteArrayInputStream(payload), crc);
+
+        assertThat(ack.getConfirmedOffset()).isEqualTo(512L);
+    }
+
+    /**
+     * A segment that does not match the file checksums is taken back when the file fills,
+     * the transfer completes only once that segment is received again
+     */
+    @Test
+    void receiveChunk_takesBackSegmentFailingFileChecksums() throws IOException {
+        long fileSize = 1024L;   // two segments of 512
+        String fileName = "segments-" + transferId + ".bin";
+        Path partialDir = tempDir.resolve("partial");
+        Files.createDirectories(partialDir);
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        Path finalDir = tempDir.resolve("uploads");
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(agentConfig.getUploadDirectory()).thenReturn(finalDir.toString());
+        when(agentService.getAgentId()).thenReturn(UUID.randomUUID());
+        when(agentService.getAgentName()).thenReturn("test-agent");
+
+        byte[] first = new byte[512];
+        byte[] second = new byte[512];
+        java.util.Arrays.fill(first, (byte) 1);
+        java.util.Arrays.fill(second, (byte) 2);
+
+        chunkReceiverService.acceptChecksums(transferId, new ChecksumFormat.Segments(512L, new long[]{
+                ChecksumFormat.crc32c(ByteBuffer.wrap(first)),
+                ChecksumFormat.crc32c(ByteBuffer.wrap(second))}));
+
+        chunkReceiverService.receiveChunk(transferId, 0L, first.length, new ByteArrayInputStream(first));
+        ChunkAckResponse corrupted = chunkReceiverService.receiveChunk(
+                transferId, 512L, 512, new ByteArrayInputStream(new byte[512]));
+
+        assertThat(corrupted.getConfirmedOffset()).isEqualTo(512L);
+        assertThat(corrupted.isComplete()).isFalse();
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.ACTIVE);
+
+        ChunkAckResponse resent = chunkReceiverService.receiveChunk(
+                transferId, 512L, second.length, new ByteArrayInputStream(second));
+
+        assertThat(resent.isComplete()).isTrue();
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        byte[] received = Files.readAllBytes(finalDir.resolve(fileName));
+        assertThat(received[0]).isEqualTo((byte) 1);
+        assertThat(received[1023]).isEqualTo((byte) 2);
     }
 
     /**
@@ -358,4 +908,207 @@ class ChunkReceiverServiceTest {
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("Invalid file size");
     }
-}
\ No newline at end of file
+
+    /**
+     * A chunk ahead of confirmedOffset inside the receive window is written in place
+     * but not confirmed until the gap before it arrives.
+     */
+    @Test
+    void receiveChunk_acceptsOutOfOrderChunkWithinWindow() throws IOException {
+        byte[] part1 = "FIRST_CHUNK_".getBytes();
+        byte[] part2 = "SECOND_CHUNK".getBytes();
+        long fileSize = part1.length + part2.length;
+
+        String fileName = "window-" + transferId + ".bin";
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+
+        Path partialDir = tempDir.resolve("partial");
+        Path finalDir   = tempDir.resolve("uploads");
+        Files.createDirectories(partialDir);
+
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getReceiveWindowBytes()).thenReturn(1024L);
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(agentConfig.getUploadDirectory()).thenReturn(finalDir.toString());
+        when(agentService.getAgentId()).thenReturn(UUID.randomUUID());
+        when(agentService.getAgentName()).thenReturn("test-agent");
+
+        // Second half arrives first, held behind the gap
+        ChunkAckResponse ack1 = chunkReceiverService.receiveChunk(
+                transferId, part1.length, part2.length, new ByteArrayInputStream(part2)
+        );
+
+        assertThat(ack1.getConfirmedOffset()).isZero();
+        assertThat(ack1.isComplete()).isFalse();
+
+        // Gap filled, confirmedOffset jumps over the buffered range
+        ChunkAckResponse ack2 = chunkReceiverService.receiveChunk(
+                transferId, 0L, part1.length, new ByteArrayInputStream(part1)
+        );
+
+        assertThat(ack2.getConfirmedOffset()).isEqualTo(fileSize);
+        assertThat(ack2.isComplete()).isTrue();
+
+        byte[] expected = new byte[part1.length + part2.length];
+        System.arraycopy(part1, 0, expected, 0, part1.length);
+        System.arraycopy(part2, 0, expected, part1.length, part2.length);
+
+        assertThat(Files.readAllBytes(finalDir.resolve(fileName))).isEqualTo(expected);
+    }
+
+    /**
+     * Chunks starting beyond the receive window are rejected without writing.
+     */
+    @Test
+    void receiveChunk_rejectsChunkBeyondWindow() {
+        when(transferRepository.findByTransferId(transferId))
+                .thenReturn(Optional.of(activeTransfer));
+        when(agentConfig.getReceiveWindowBytes()).thenReturn(256L);
+
+        assertThatThrownBy(() ->
+                chunkReceiverService.receiveChunk(transferId, 512, 16,
+                        new ByteArrayInputStream(new byte[16])))
+                .isInstanceOf(FileTransferException.class)
+                .hasMessageContaining("Unexpected offset");
+
+        verify(transferRepository, never()).save(any());
+    }
+
+    /**
+     * Striped transfer, each stripe starts at its own offset and the file
+     * completes once every stripe is filled.
+     */
+    @Test
+    void receiveChunk_stripedTransferTracksEachStripe() throws IOException {
+        byte[] part1 = "FIRST_STRIPE".getBytes();
+        byte[] part2 = "OTHER_STRIPE".getBytes();
+        long fileSize = part1.length + part2.length;
+
+        String fileName = "striped-" + transferId + ".bin";
+
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                fileName, null, fileSize
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+        transfer.splitIntoStripes(2);
+
+        Path partialDir = tempDir.resolve("partial");
+        Path finalDir   = tempDir.resolve("uploads");
+        Files.createDirectories(partialDir);
+
+        try (RandomAccessFile raf = new RandomAccessFile(
+                partialDir.resolve(fileName + ".part").toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+        when(agentConfig.getPartialDirectory()).thenReturn(partialDir.toString());
+        when(agentConfig.getUploadDirectory()).thenReturn(finalDir.toString());
+        when(agentService.getAgentId()).thenReturn(UUID.randomUUID());
+        when(agentService.getAgentName()).thenReturn("test-agent");
+
+        // Second stripe starts at its own offset, no window needed
+        ChunkAckResponse ack1 = chunkReceiverService.receiveChunk(
+                transferId, part1.length, part2.length, new ByteArrayInputStream(part2)
+        );
+
+        assertThat(ack1.getConfirmedOffset()).isEqualTo(fileSize);
+        assertThat(ack1.isComplete()).isFalse();
+        assertThat(transfer.getStripeOffsets()).containsExactly(0L, fileSize);
+        assertThat(transfer.getConfirmedOffset()).isEqualTo(part2.length);
+
+        ChunkAckResponse ack2 = chunkReceiverService.receiveChunk(
+                transferId, 0L, part1.length, new ByteArrayInputStream(part1)
+        );
+
+        assertThat(ack2.getConfirmedOffset()).isEqualTo(part1.length);
+        assertThat(ack2.isComplete()).isTrue();
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.COMPLETED);
+
+        byte[] expected = new byte[part1.length + part2.length];
+        System.arraycopy(part1, 0, expected, 0, part1.length);
+        System.arraycopy(part2, 0, expected, part1.length, part2.length);
+
+        assertThat(Files.readAllBytes(finalDir.resolve(fileName))).isEqualTo(expected);
+    }
+
+    /**
+     * A chunk running past the end of its stripe is rejected before it is written,
+     * it would otherwise confirm bytes of the next stripe.
+     */
+    @Test
+    void receiveChunk_rejectsChunkRunningPastItsStripe() {
+        FileTransfer transfer = FileTransfer.initiate(
+                transferId, UUID.randomUUID(), UUID.randomUUID(),
+                "striped-" + transferId + ".bin", null, 24
+        );
+        transfer.setStatus(TransferStatus.ACTIVE);
+        transfer.splitIntoStripes(2);
+
+        when(transferRepository.findByTransferId(transferId)).thenReturn(Optional.of(transfer));
+
+        assertThatThrownBy(() ->
+                chunkReceiverService.receiveChunk(transferId, 0, 24,
+                        new ByteArrayInputStream(new byte[24])))
+                .isInstanceOf(FileTransferException.class)
+                .hasMessageContaining("past the end of stripe 0");
+
+        verify(partialFileChannels, never()).write(any(), any(), anyLong(), any());
+        assertThat(transfer.getStripeOffsets()).containsExactly(0L, 12L);
+    }
+
+    /**
+     * A pack writes each expected file straight to its final location,
+     * entries for unknown transfers are skipped and not acked.
+     */
+    @Test
+    void receivePack_writesFilesToFinalLocationAndAcksOnlyKnownEntries() throws IOException {
+        UUID directoryId = UUID.randomUUID();
+        DirectoryTransfer dt = DirectoryTransfer.initiate(directoryId, UUID.randomUUID(), null,
+                null, 0, "project", null, 2, 9, List.of());
+        dt.setStatus(GroupTransferStatus.ACTIVE);
+
+        byte[] readme = "read me".getBytes();
+        FileTransfer file = FileTransfer.initiate(
+                UUID.randomUUID(), UUID.randomUUID(), null, "README.md", null, readme.length);
+        file.setDirectoryTransferId(directoryId);
+        file.setDirectoryName("project");
+        file.setRelativePath("docs/README.md");
+        file.setStatus(TransferStatus.ACTIVE);
+        UUID unknownId = UUID.randomUUID();
+
+        ByteArrayOutputStream pack = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(pack)) {
+            FilePackFormat.writeEntry(out, file.getTransferId(), readme);
+            FilePackFormat.writeEntry(out, unknownId, "ab".getBytes());
+        }
+
+        Path finalDir = tempDir.resolve("uploads");
+        when(directoryTransferRepository.findById(directoryId)).thenReturn(Optional.of(dt));
+        when(transferRepository.findAllById(any())).thenReturn(List.of(file));
+        when(agentConfig.getPackSize()).thenReturn(8L * 1024 * 1024);
+        when(agentConfig.getUploadDirectory()).thenReturn(finalDir.toString());
+        when(agentConfig.getPartialDirectory()).thenReturn(tempDir.resolve("partial").toString());
+
+        PackAckResponse ack = chunkReceiverService.receivePack(
+                directoryId, new ByteArrayInputStream(pack.toByteArray()));
+
+        assertThat(ack.getCompleted()).containsExactly(file.getTransferId());
+        assertThat(Files.readAllBytes(finalDir.resolve("project/docs/README.md"))).isEqualTo(readme);
+        assertThat(file.getStatus()).isEqualTo(TransferStatus.COMPLETED);
+        assertThat(file.getConfirmedOffset()).isEqualTo(readme.length);
+        verify(transferRepository).saveAll(List.of(file));
+        verify(logService).logTransfers(argThat(entries -> entries.size() == 1));
+    }
+}
@@ -0,0 +1,143 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.util.BlockSignatures;
+import com.atamanahmet.beamlink.agent.util.DeltaFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class DeltaEncoderTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path tempDir;
+
+    private final PartialFileChannels partialFileChannels = new PartialFileChannels(mock(AgentConfig.class));
+
+    /**
+     * Bytes inserted in the middle shift everything after them, the rolling window
+     * still finds the shifted blocks and only the insert and its block travel as literal.
+     */
+    @Test
+    void encode_findsBlocksShiftedByAnInsert() throws IOException {
+        byte[] earlier = randomBytes(64 * BLOCK_SIZE, 1);
+        byte[] current = new byte[earlier.length + 100];
+        System.arraycopy(earlier, 0, current, 0, 10 * BLOCK_SIZE + 7);
+        System.arraycopy(randomBytes(100, 2), 0, current, 10 * BLOCK_SIZE + 7, 100);
+        System.arraycopy(earlier, 10 * BLOCK_SIZE + 7, current, 10 * BLOCK_SIZE + 107,
+                earlier.length - 10 * BLOCK_SIZE - 7);
+
+        Encoded encoded = encode(earlier, current, 0);
+
+        assertThat(rebuild(earlier, encoded.body, 0, current.length)).isEqualTo(current);
+        assertThat(encoded.literalBytes).isLessThan(2L * BLOCK_SIZE);
+    }
+
+    /**
+     * A resumed delta starts at the confirmed offset, the range is rebuilt in place
+     * after what the receiver already has.
+     */
+    @Test
+    void encode_fromOffsetRebuildsOnlyTheRest() throws IOException {
+        byte[] earlier = randomBytes(32 * BLOCK_SIZE + 123, 3);
+        byte[] current = earlier.clone();
+        current[20 * BLOCK_SIZE + 5] ^= 0x5a;
+        long from = 16L * BLOCK_SIZE + 11;
+
+        Encoded encoded = encode(earlier, current, from);
+
+        byte[] rebuilt = rebuild(earlier, encoded.body, from, current.length);
+        assertThat(java.util.Arrays.copyOfRange(rebuilt, (int) from, current.length))
+                .isEqualTo(java.util.Arrays.copyOfRange(current, (int) from, current.length));
+        // the changed block plus the unaligned head and the short tail
+        assertThat(encoded.literalBytes).isLessThan(3L * BLOCK_SIZE + 123);
+    }
+
+    private Encoded encode(byte[] earlier, byte[] current, long from) throws IOException {
+        Path basis = Files.write(tempDir.resolve("earlier.bin"), earlier);
+        Path source = Files.write(tempDir.resolve("current.bin"), current);
+        BlockSignatures signatures = BlockSignatures.compute(basis, BLOCK_SIZE);
+
+        Encoded encoded = new Encoded();
+        DataOutputStream out = new DataOutputStream(encoded.body);
+
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            new DeltaEncoder(signatures).encode(channel, from, current.length, new DeltaEncoder.Sink() {
+                @Override
+                public void copy(long basisOffset, int length) throws IOException {
+                    DeltaFormat.writeCopy(out, basisOffset, length);
+                }
+
+                @Override
+                public void literal(byte[] buf, int off, int length) throws IOException {
+                    DeltaFormat.writeLiteral(out, buf, off, length);
+                    encoded.literalBytes += length;
+                }
+            });
+        }
+        return encoded;
+    }
+
+    /**
+     * A block count the body cannot hold is rejected before the arrays are allocated.
+     */
+    @Test
+    void readSignatures_rejectsBlockCountBeyondBody() throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(BLOCK_SIZE);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(42);
+
+        assertThatThrownBy(() -> BlockSignatures.read(
+                new DataInputStream(new ByteArrayInputStream(body.toByteArray())), body.size()))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Invalid block signatures");
+    }
+
+    private byte[] rebuild(byte[] earlier, ByteArrayOutputStream body, long from, int length) throws IOException {
+        Path basis = Files.write(tempDir.resolve("basis.bin"), earlier);
+        Path partial = tempDir.resolve("rebuilt.part");
+        // allocated on registration, like the receiver does
+        try (RandomAccessFile raf = new RandomAccessFile(partial.toFile(), "rw")) {
+            raf.setLength(length);
+        }
+        UUID transferId = UUID.randomUUID();
+
+        long written = partialFileChannels.applyDelta(transferId, partial, from, length - from,
+                new ByteArrayInputStream(body.toByteArray()), basis);
+        partialFileChannels.close(transferId);
+
+        assertThat(written).isEqualTo(length - from);
+        return Files.readAllBytes(partial);
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class Encoded {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        long literalBytes;
+    }
+}
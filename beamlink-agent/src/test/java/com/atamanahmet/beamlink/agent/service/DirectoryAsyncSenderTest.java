@@ -1,5 +1,6 @@
 package com.atamanahmet.beamlink.agent.service;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
@@ -11,15 +12,24 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -38,6 +48,21 @@ class DirectoryAsyncSenderTest {
     @Mock
     private TransferAsyncSender transferAsyncSender;
 
+    @Mock
+    private AgentConfig agentConfig;
+
+    @Mock
+    private FilePackSender filePackSender;
+
+    @Mock
+    private PeerHealthTracker peerHealth;
+
+    @Spy
+    private DirectoryWalkProgress walkProgress = new DirectoryWalkProgress();
+
+    @Spy
+    private AsyncTaskExecutor groupFileExecutor = new TaskExecutorAdapter(Executors.newCachedThreadPool());
+
     @InjectMocks
     private DirectoryAsyncSender directoryAsyncSender;
 
@@ -549,4 +574,163 @@ class DirectoryAsyncSenderTest {
         assertEquals(active.getTransferId(),  order.getAllValues().get(1), "active second");
         assertEquals(pending.getTransferId(), order.getAllValues().get(2), "pending last");
     }
-}
\ No newline at end of file
+
+    /**
+     * With parallelism, small files are sent while the largest one is still in flight
+     */
+    @Test
+    void parallelSend_smallFilesFillGapWhileLargeFileRuns() throws Exception {
+        UUID directoryId = UUID.randomUUID();
+
+        FileTransfer large  = makeFile(directoryId, "large.bin",  TransferStatus.PENDING);
+        large.setFileSize(512L * 1024 * 1024);
+        FileTransfer small1 = makeFile(directoryId, "small1.txt", TransferStatus.PENDING);
+        FileTransfer small2 = makeFile(directoryId, "small2.txt", TransferStatus.PENDING);
+
+        DirectoryTransfer dt = makeDirectory(directoryId, GroupTransferStatus.ACTIVE);
+
+        when(agentConfig.getGroupParallelism()).thenReturn(2);
+        when(fileTransferRepository.findByDirectoryTransferId(directoryId))
+                .thenReturn(List.of(small1, large, small2))
+                .thenReturn(List.of(done(small1), done(large), done(small2)));
+        when(directoryTransferRepository.findById(directoryId))
+                .thenReturn(Optional.of(dt));
+
+        // the large file only finishes once both small files went through beside it
+        CountDownLatch smallsSent = new CountDownLatch(2);
+        doAnswer(inv -> {
+            UUID id = inv.getArgument(0);
+            if (id.equals(large.getTransferId())) {
+                assertTrue(smallsSent.await(5, TimeUnit.SECONDS), "small files must not wait for the large one");
+            } else {
+                smallsSent.countDown();
+            }
+            return null;
+        }).when(transferAsyncSender).sendBlocking(any(), any(), anyInt(), any());
+
+        directoryAsyncSender.sendAsync(directoryId, "192.168.1.10", 8080, "test-token");
+
+        assertEquals(0, smallsSent.getCount());
+        verify(transferAsyncSender, times(3)).sendBlocking(any(), any(), anyInt(), any());
+
+        ArgumentCaptor<DirectoryTransfer> saved = ArgumentCaptor.forClass(DirectoryTransfer.class);
+        verify(directoryTransferRepository).save(saved.capture());
+        assertEquals(GroupTransferStatus.COMPLETED, saved.getValue().getStatus());
+    }
+
+    /**
+     * Small pending files go out packed, only the rest are sent one by one
+     */
+    @Test
+    void smallFilesAreSentPackedBeforeIndividualSends() throws Exception {
+        UUID directoryId = UUID.randomUUID();
+
+        FileTransfer small1 = makeFile(directoryId, "a.txt", TransferStatus.PENDING);
+        FileTransfer small2 = makeFile(directoryId, "b.txt", TransferStatus.PENDING);
+        FileTransfer large  = makeFile(directoryId, "large.bin", TransferStatus.PENDING);
+        large.setFileSize(64L * 1024 * 1024);
+
+        DirectoryTransfer dt = makeDirectory(directoryId, GroupTransferStatus.ACTIVE);
+
+        when(fileTransferRepository.findByDirectoryTransferId(directoryId))
+                .thenReturn(List.of(small1, small2, large))
+                .thenReturn(List.of(done(small1), done(small2), done(large)));
+        when(directoryTransferRepository.findById(directoryId))
+                .thenReturn(Optional.of(dt));
+        when(filePackSender.isPackable(anyLong()))
+                .thenAnswer(inv -> (long) inv.getArgument(0) < 1024 * 1024);
+        when(filePackSender.plan(List.of(small1, small2)))
+                .thenReturn(List.of(List.of(small1, small2)));
+        when(filePackSender.sendPack(directoryId, List.of(small1, small2), "192.168.1.10", 8080, "test-token"))
+                .thenReturn(Set.of(small1.getTransferId(), small2.getTransferId()));
+
+        directoryAsyncSender.sendAsync(directoryId, "192.168.1.10", 8080, "test-token");
+
+        verify(transferAsyncSender).sendBlocking(eq(large.getTransferId()), any(), anyInt(), any());
+        verifyNoMoreInteractions(transferAsyncSender);
+
+        ArgumentCaptor<DirectoryTransfer> saved = ArgumentCaptor.forClass(DirectoryTransfer.class);
+        verify(directoryTransferRepository).save(saved.capture());
+        assertEquals(GroupTransferStatus.COMPLETED, saved.getValue().getStatus());
+    }
+
+    /**
+     * While the source is still walking, files registered later are picked up
+     * and the directory is only completed once the walk is done
+     */
+    @Test
+    void filesRegisteredDuringWalkArePickedUpBeforeCompletion() throws Exception {
+        UUID directoryId = UUID.randomUUID();
+
+        FileTransfer first = makeFile(directoryId, "first.txt", TransferStatus.PENDING);
+        FileTransfer later = makeFile(directoryId, "later.txt", TransferStatus.PENDING);
+
+        DirectoryTransfer walking = makeDirectory(directoryId, GroupTransferStatus.ACTIVE);
+        walking.setWalkInProgress(true);
+        DirectoryTransfer walked = makeDirectory(directoryId, GroupTransferStatus.ACTIVE);
+
+        when(fileTransferRepository.findByDirectoryTransferId(directoryId))
+                .thenReturn(List.of(first))
+                .thenReturn(List.of(done(first), done(later)));
+        when(fileTransferRepository.findByDirectoryTransferIdAndStatus(directoryId, TransferStatus.PENDING))
+                .thenReturn(List.of(later));
+        when(directoryTransferRepository.findById(directoryId))
+                .thenReturn(Optional.of(walking))
+                .thenReturn(Optional.of(walking))
+                .thenReturn(Optional.of(walked));
+
+        directoryAsyncSender.sendAsync(directoryId, "192.168.1.10", 8080, "test-token");
+
+        var inOrder = inOrder(transferAsyncSender, directoryTransferRepository);
+        inOrder.verify(transferAsyncSender).sendBlocking(eq(first.getTransferId()), any(), anyInt(), any());
+        inOrder.verify(transferAsyncSender).sendBlocking(eq(later.getTransferId()), any(), anyInt(), any());
+        inOrder.verify(directoryTransferRepository).save(argThat(dt ->
+                dt.getStatus() == GroupTransferStatus.COMPLETED));
+    }
+
+    /**
+     * Out of files while the walk goes on, the sender waits for the walker
+     * instead of polling and picks up the segment registered meanwhile
+     */
+    @Test
+    void senderWaitsForWalkerToRegisterNextSegment() throws Exception {
+        UUID directoryId = UUID.randomUUID();
+
+        FileTransfer first = makeFile(directoryId, "first.txt", TransferStatus.PENDING);
+        FileTransfer later = makeFile(directoryId, "later.txt", TransferStatus.PENDING);
+
+        DirectoryTransfer walking = makeDirectory(directoryId, GroupTransferStatus.ACTIVE);
+        walking.setWalkInProgress(true);
+        AtomicReference<DirectoryTransfer> current = new AtomicReference<>(walking);
+        AtomicReference<List<FileTransfer>> registered = new AtomicReference<>(List.of());
+
+        when(fileTransferRepository.findByDirectoryTransferId(directoryId))
+                .thenReturn(List.of(first))
+                .thenReturn(List.of(done(first), done(later)));
+        when(fileTransferRepository.findByDirectoryTransferIdAndStatus(directoryId, TransferStatus.PENDING))
+                .thenAnswer(i -> registered.get());
+        when(directoryTransferRepository.findById(directoryId))
+                .thenAnswer(i -> Optional.of(current.get()));
+
+        walkProgress.walkStarted(directoryId);
+        CompletableFuture<Void> sending = CompletableFuture.runAsync(() ->
+                directoryAsyncSender.sendAsync(directoryId, "192.168.1.10", 8080, "test-token"));
+
+        // first file sent, nothing new registered yet, the sender is waiting on the walk
+        verify(fileTransferRepository, timeout(5000)).findByDirectoryTransferIdAndStatus(directoryId, TransferStatus.PENDING);
+        Thread.sleep(100);
+        assertFalse(sending.isDone());
+
+        registered.set(List.of(later));
+        current.set(makeDirectory(directoryId, GroupTransferStatus.ACTIVE));
+        walkProgress.segmentRegistered(directoryId);
+        walkProgress.walkEnded(directoryId);
+
+        sending.get(5, TimeUnit.SECONDS);
+
+        verify(transferAsyncSender).sendBlocking(eq(later.getTransferId()), any(), anyInt(), any());
+        // once to find nothing, once to find the new segment, once to find the walk done
+        verify(fileTransferRepository, times(3)).findByDirectoryTransferIdAndStatus(directoryId, TransferStatus.PENDING);
+        verify(directoryTransferRepository).save(argThat(dt -> dt.getStatus() == GroupTransferStatus.COMPLETED));
+    }
+}
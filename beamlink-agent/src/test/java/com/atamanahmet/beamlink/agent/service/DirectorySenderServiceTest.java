@@ -6,7 +6,9 @@ import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
 import com.atamanahmet.beamlink.agent.dto.InitiateDirectoryTransferRequest;
 import com.atamanahmet.beamlink.agent.dto.InitiateDirectoryTransferResponse;
+import com.atamanahmet.beamlink.agent.dto.ReceiveDirectoryRequest;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.http.HttpSender;
 import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,9 +18,9 @@ import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
@@ -26,6 +28,7 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -39,9 +42,12 @@ class DirectorySenderServiceTest {
     @Mock private FileTransferRepository fileTransferRepository;
     @Mock private AgentService agentService;
     @Mock private AgentConfig agentConfig;
-    @Mock private DirectoryAsyncSender directoryAsyncSender;
+    @Mock private OutboundTransferQueue outboundQueue;
     @Mock private ObjectMapper objectMapper;
-    @Mock private HttpClient httpClient;
+    @Mock private HttpSender httpSender;
+    @Mock private FilePackSender filePackSender;
+    @Mock private ContentHashService contentHashService;
+    @Spy private DirectoryWalkProgress walkProgress = new DirectoryWalkProgress();
 
     @InjectMocks
     private DirectorySenderService directorySenderService;
@@ -77,7 +83,7 @@ class DirectorySenderServiceTest {
         when(agentService.getAgentId()).thenReturn(UUID.randomUUID());
         when(agentConfig.getTransferExpiryHours()).thenReturn(24L);
         when(objectMapper.writeValueAsString(any())).thenReturn("{}");
-        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        when(httpSender.send(any(HttpRequest.class)))
                 .thenReturn(httpResponse);
         when(directoryTransferRepository.save(any(DirectoryTransfer.class)))
                 .thenAnswer(i -> i.getArgument(0));
@@ -106,7 +112,7 @@ class DirectorySenderServiceTest {
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("Directory not found");
 
-        verifyNoInteractions(directoryTransferRepository, fileTransferRepository, httpClient);
+        verifyNoInteractions(directoryTransferRepository, fileTransferRepository, httpSender);
     }
 
     /**
@@ -294,32 +300,32 @@ class DirectorySenderServiceTest {
     }
 
     /**
-     * DirectoryTransfer must be set to ACTIVE only after the target accepts registration.
-     * If target rejects, it must never reach ACTIVE.
+     * DirectoryTransfer must be set to QUEUED only after the target accepts registration.
+     * If target rejects, it must never reach QUEUED.
      */
     @Test
-    void initiate_setsDirectoryTransferActiveAfterTargetAccepts() throws Exception {
+    void initiate_setsDirectoryTransferQueuedAfterTargetAccepts() throws Exception {
         createFile("f.txt", "x".getBytes());
         stubHappyPath(mockHttpResponse(200));
 
         directorySenderService.initiate(buildRequest(tempDir.toString()));
 
         verify(directoryTransferRepository, atLeastOnce()).save(argThat(dt ->
-                dt.getStatus() == GroupTransferStatus.ACTIVE));
+                dt.getStatus() == GroupTransferStatus.QUEUED));
     }
 
     /**
-     * Async sender must be called once with the correct connection params.
+     * The directory must be queued once with the target token, the queue starts the sender.
      */
     @Test
-    void initiate_triggersAsyncSend() throws Exception {
+    void initiate_enqueuesForSending() throws Exception {
         createFile("send.txt", "payload".getBytes());
         stubHappyPath(mockHttpResponse(200));
 
         directorySenderService.initiate(buildRequest(tempDir.toString()));
 
-        verify(directoryAsyncSender).sendAsync(
-                any(UUID.class), eq("192.168.1.5"), eq(9090), eq("token"));
+        verify(outboundQueue).enqueue(
+                argThat((DirectoryTransfer dt) -> "192.168.1.5".equals(dt.getTargetIp())), eq("token"));
     }
 
     /**
@@ -349,7 +355,7 @@ class DirectorySenderServiceTest {
         when(directoryTransferRepository.save(any())).thenAnswer(i -> i.getArgument(0));
         when(fileTransferRepository.saveAll(any())).thenAnswer(i -> i.getArgument(0));
         HttpResponse<String> rejected = mockHttpResponse(403);
-        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        when(httpSender.send(any(HttpRequest.class)))
                 .thenReturn(rejected);
 
         assertThatThrownBy(() ->
@@ -358,8 +364,8 @@ class DirectorySenderServiceTest {
                 .hasMessageContaining("Target rejected");
 
         verify(directoryTransferRepository, never()).save(argThat(dt ->
-                dt.getStatus() == GroupTransferStatus.ACTIVE));
-        verifyNoInteractions(directoryAsyncSender);
+                dt.getStatus() == GroupTransferStatus.QUEUED));
+        verifyNoInteractions(outboundQueue);
     }
 
     /**
@@ -374,7 +380,7 @@ class DirectorySenderServiceTest {
         when(objectMapper.writeValueAsString(any())).thenReturn("{}");
         when(directoryTransferRepository.save(any())).thenAnswer(i -> i.getArgument(0));
         when(fileTransferRepository.saveAll(any())).thenAnswer(i -> i.getArgument(0));
-        when(httpClient.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+        when(httpSender.send(any(HttpRequest.class)))
                 .thenThrow(new java.io.IOException("connection refused"));
 
         assertThatThrownBy(() ->
@@ -382,7 +388,56 @@ class DirectorySenderServiceTest {
                 .isInstanceOf(FileTransferException.class)
                 .hasMessageContaining("Cannot reach target");
 
-        verifyNoInteractions(directoryAsyncSender);
+        verifyNoInteractions(outboundQueue);
+    }
+
+    /**
+     * A tree larger than one manifest segment registers the first segment before
+     * returning, the rest is appended in the background and the walk flag cleared.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void initiate_registersLaterManifestSegmentsInBackground() throws Exception {
+        createFile("one.txt", "1".getBytes());
+        createFile("two.txt", "2".getBytes());
+        createFileInSubdir("sub", "three.txt", "3".getBytes());
+        Files.createDirectories(tempDir.resolve("nothing-here"));
+
+        AtomicReference<DirectoryTransfer> saved = new AtomicReference<>();
+        when(agentService.getAgentId()).thenReturn(UUID.randomUUID());
+        when(agentConfig.getTransferExpiryHours()).thenReturn(24L);
+        when(agentConfig.getManifestSegmentSize()).thenReturn(1);
+        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+        HttpResponse<String> accepted = mockHttpResponse(200);
+        when(httpSender.send(any(HttpRequest.class)))
+                .thenReturn(accepted);
+        when(directoryTransferRepository.save(any(DirectoryTransfer.class)))
+                .thenAnswer(i -> {
+                    saved.set(i.getArgument(0));
+                    return i.getArgument(0);
+                });
+        when(directoryTransferRepository.findById(any()))
+                .thenAnswer(i -> Optional.of(saved.get()));
+
+        directorySenderService.initiate(buildRequest(tempDir.toString()));
+
+        verify(outboundQueue).enqueue(any(DirectoryTransfer.class), eq("token"));
+        verify(httpSender, timeout(5000).times(3))
+                .send(any(HttpRequest.class));
+        // same instance on every save, matched against its final state
+        verify(directoryTransferRepository, timeout(5000).atLeastOnce()).save(argThat(dt ->
+                !dt.isWalkInProgress() && dt.getTotalFiles() == 3));
+        verify(walkProgress, times(2)).segmentRegistered(any());
+        verify(walkProgress, timeout(5000)).walkEnded(any());
+
+        ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+        verify(objectMapper, times(3)).writeValueAsString(payloads.capture());
+        assertThat(payloads.getAllValues())
+                .allSatisfy(p -> assertThat(((ReceiveDirectoryRequest) p).getFiles()).hasSize(1));
+
+        DirectoryTransfer dt = saved.get();
+        assertThat(dt.getTotalSize()).isEqualTo(3L);
+        assertThat(dt.getEmptyDirectories()).containsExactly("nothing-here");
     }
 
     /**
@@ -414,23 +469,21 @@ class DirectorySenderServiceTest {
     }
 
     /**
-     * Resume on a PAUSED transfer must set it ACTIVE and fire async sender.
+     * Resume on a PAUSED transfer must set it QUEUED and put it back in the outbound queue.
      */
     @Test
-    void resume_setsPausedTransferActiveAndTriggersAsyncSend() {
+    void resume_setsPausedTransferQueuedAndEnqueues() {
         UUID id = UUID.randomUUID();
         DirectoryTransfer dt = mock(DirectoryTransfer.class);
         when(dt.getStatus()).thenReturn(GroupTransferStatus.PAUSED);
-        when(dt.getTargetIp()).thenReturn("10.0.0.1");
-        when(dt.getTargetPort()).thenReturn(8080);
         when(directoryTransferRepository.findById(id)).thenReturn(Optional.of(dt));
         when(directoryTransferRepository.save(any())).thenAnswer(i -> i.getArgument(0));
 
         directorySenderService.resume(id);
 
-        verify(dt).setStatus(GroupTransferStatus.ACTIVE);
+        verify(dt).setStatus(GroupTransferStatus.QUEUED);
         verify(directoryTransferRepository).save(dt);
         // null token is current known behavior — documented here intentionally
-        verify(directoryAsyncSender).sendAsync(eq(id), eq("10.0.0.1"), eq(8080), isNull());
+        verify(outboundQueue).enqueue(eq(dt), isNull());
     }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.jfr.ChunkSentEvent;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FlightRecordingServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private FlightRecordingService service;
+
+    @BeforeEach
+    void setUp() {
+        AgentConfig config = mock(AgentConfig.class);
+        when(config.getRecordingDirectory()).thenReturn(tempDir.toString());
+        when(config.getRecordingMaxMinutes()).thenReturn(5L);
+        service = new FlightRecordingService(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service.status().isRunning()) service.stop();
+    }
+
+    /**
+     * Events committed while recording are in the file written on stop
+     */
+    @Test
+    void stop_writesRecordingWithBeamlinkEvents() throws Exception {
+        assertTrue(service.start("default").isRunning());
+
+        ChunkSentEvent event = new ChunkSentEvent();
+        event.begin();
+        event.transferId = "t-1";
+        event.offset = 8192;
+        event.bytes = 4096;
+        event.outcome = "acked";
+        event.commit();
+
+        Path file = service.stop();
+
+        assertFalse(service.status().isRunning());
+        assertTrue(Files.size(file) > 0);
+        List<RecordedEvent> sent = RecordingFile.readAllEvents(file).stream()
+                .filter(e -> e.getEventType().getName().equals("beamlink.ChunkSent"))
+                .toList();
+        assertEquals(1, sent.size());
+        assertEquals("t-1", sent.get(0).getString("transferId"));
+        assertEquals(8192, sent.get(0).getLong("offset"));
+    }
+
+    /**
+     * One recording at a time, and only the settings the JDK ships
+     */
+    @Test
+    void start_rejectsSecondRecordingAndUnknownSettings() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> service.start("everything"));
+
+        service.start("default");
+        assertThrows(FileTransferException.class, () -> service.start("profile"));
+    }
+
+    @Test
+    void stop_withoutRecording_throws() {
+        assertThrows(FileTransferException.class, () -> service.stop());
+    }
+}
@@ -0,0 +1,106 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GroupTransferSchedulerTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * A file whose send throws stops the group, the files still in flight
+     * finish before run returns so none keeps sending behind a stopped group
+     */
+    @Test
+    void run_awaitsFilesInFlightWhenOneThrows() throws Exception {
+        FileTransfer broken = file(100);
+        FileTransfer large = file(300);
+        FileTransfer small = file(200);
+
+        CountDownLatch brokenThrew = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Set<FileTransfer> sent = ConcurrentHashMap.newKeySet();
+
+        GroupTransferScheduler scheduler = new GroupTransferScheduler(3, pool);
+        CompletableFuture<Boolean> ran = CompletableFuture.supplyAsync(() -> scheduler.run(
+                List.of(), List.of(broken, large, small),
+                file -> true, () -> true,
+                file -> {
+                    if (file == broken) {
+                        brokenThrew.countDown();
+                        throw new IllegalStateException("send bug");
+                    }
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    sent.add(file);
+                }));
+
+        assertThat(brokenThrew.await(5, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200);
+        assertThat(ran).isNotDone();
+
+        release.countDown();
+        assertThat(ran.get(5, TimeUnit.SECONDS)).isFalse();
+        assertThat(sent).containsExactlyInAnyOrder(large, small);
+    }
+
+    /**
+     * Interrupting the group thread cancels the files still in flight
+     */
+    @Test
+    void run_cancelsFilesInFlightWhenInterrupted() throws Exception {
+        FileTransfer first = file(100);
+        FileTransfer second = file(200);
+
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch interrupted = new CountDownLatch(2);
+
+        GroupTransferScheduler scheduler = new GroupTransferScheduler(2, pool);
+        Thread group = new Thread(() -> scheduler.run(
+                List.of(), List.of(first, second),
+                file -> true, () -> true,
+                file -> {
+                    started.countDown();
+                    try {
+                        new CountDownLatch(1).await();
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }));
+        group.start();
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        group.interrupt();
+
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        group.join(5000);
+        assertThat(group.isAlive()).isFalse();
+    }
+
+    private static FileTransfer file(long size) {
+        return FileTransfer.initiate(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                "file-" + size + ".bin", null, size);
+    }
+}
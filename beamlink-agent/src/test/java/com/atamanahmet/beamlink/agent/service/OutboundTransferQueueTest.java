@@ -0,0 +1,245 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.DirectoryTransfer;
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import com.atamanahmet.beamlink.agent.domain.enums.GroupTransferStatus;
+import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
+import com.atamanahmet.beamlink.agent.dto.QueuedTransferResponse;
+import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class OutboundTransferQueueTest {
+
+    @Mock private FileTransferRepository transferRepository;
+    @Mock private DirectoryTransferRepository directoryTransferRepository;
+    @Mock private BatchTransferRepository batchTransferRepository;
+    @Mock private TransferAsyncSender transferAsyncSender;
+    @Mock private DirectoryAsyncSender directoryAsyncSender;
+    @Mock private BatchAsyncSender batchAsyncSender;
+    @Mock private AgentConfig agentConfig;
+
+    @InjectMocks
+    private OutboundTransferQueue queue;
+
+    private final Map<UUID, FileTransfer> records = new HashMap<>();
+    private final Map<UUID, CompletableFuture<Void>> sends = new HashMap<>();
+    private final List<UUID> started = new ArrayList<>();
+
+    /* transfers are looked up from the map, each send runs until its future is completed */
+    @BeforeEach
+    void setUp() {
+        when(agentConfig.getQueueMaxConcurrent()).thenReturn(1);
+        when(transferRepository.findByTransferId(any()))
+                .thenAnswer(i -> Optional.ofNullable(records.get(i.<UUID>getArgument(0))));
+        when(transferAsyncSender.sendAsync(any(), anyString(), anyInt(), any())).thenAnswer(i -> {
+            UUID id = i.getArgument(0);
+            started.add(id);
+            return sends.computeIfAbsent(id, k -> new CompletableFuture<>());
+        });
+    }
+
+    /**
+     * Higher priority leaves first, equal priorities in the order they were queued
+     */
+    @Test
+    void dispatch_startsByPriorityThenFifo() {
+        FileTransfer running = queued(0, Instant.parse("2026-01-01T00:00:00Z"));
+        FileTransfer early = queued(0, Instant.parse("2026-01-01T00:00:01Z"));
+        FileTransfer late = queued(0, Instant.parse("2026-01-01T00:00:02Z"));
+        FileTransfer urgent = queued(5, Instant.parse("2026-01-01T00:00:03Z"));
+
+        queue.enqueue(running, "token");
+        queue.enqueue(late, "token");
+        queue.enqueue(urgent, "token");
+        queue.enqueue(early, "token");
+
+        assertThat(started).containsExactly(running.getTransferId());
+        assertThat(running.getStatus()).isEqualTo(TransferStatus.ACTIVE);
+
+        finish(running);
+        finish(urgent);
+        finish(early);
+
+        assertThat(started).containsExactly(running.getTransferId(), urgent.getTransferId(),
+                early.getTransferId(), late.getTransferId());
+    }
+
+    /**
+     * No more than max-concurrent sends run at once, 0 lifts the limit
+     */
+    @Test
+    void dispatch_respectsMaxConcurrent() {
+        when(agentConfig.getQueueMaxConcurrent()).thenReturn(2);
+        FileTransfer first = queued(0, Instant.now());
+        FileTransfer second = queued(0, Instant.now());
+        FileTransfer third = queued(0, Instant.now());
+
+        queue.enqueue(first, null);
+        queue.enqueue(second, null);
+        queue.enqueue(third, null);
+
+        assertThat(started).hasSize(2);
+        assertThat(queue.snapshot()).extracting(QueuedTransferResponse::getId)
+                .containsExactly(third.getTransferId());
+
+        when(agentConfig.getQueueMaxConcurrent()).thenReturn(0);
+        queue.enqueue(queued(0, Instant.now()), null);
+
+        assertThat(started).hasSize(4);
+    }
+
+    /**
+     * A transfer cancelled while waiting is not started when its turn comes
+     */
+    @Test
+    void dispatch_skipsTransferNoLongerQueued() {
+        FileTransfer running = queued(0, Instant.now());
+        FileTransfer cancelled = queued(0, Instant.now());
+        FileTransfer next = queued(0, Instant.now());
+        queue.enqueue(running, null);
+        queue.enqueue(cancelled, null);
+        queue.enqueue(next, null);
+
+        cancelled.setStatus(TransferStatus.CANCELLED);
+        finish(running);
+
+        assertThat(started).containsExactly(running.getTransferId(), next.getTransferId());
+        assertThat(cancelled.getStatus()).isEqualTo(TransferStatus.CANCELLED);
+    }
+
+    /**
+     * Moving to the front puts a transfer ahead of its priority and stores the new order
+     */
+    @Test
+    void moveToFront_reordersAndPersists() {
+        queue.enqueue(queued(0, Instant.parse("2026-01-01T00:00:00Z")), null);
+        FileTransfer first = queued(0, Instant.parse("2026-01-01T00:00:01Z"));
+        FileTransfer last = queued(0, Instant.parse("2026-01-01T00:00:02Z"));
+        queue.enqueue(first, null);
+        queue.enqueue(last, null);
+
+        QueuedTransferResponse moved = queue.moveToFront(last.getTransferId());
+
+        assertThat(moved.getPosition()).isZero();
+        assertThat(queue.snapshot()).extracting(QueuedTransferResponse::getId)
+                .containsExactly(last.getTransferId(), first.getTransferId());
+        verify(transferRepository).reorderIfQueued(eq(last.getTransferId()), eq(0),
+                eq(first.getQueuedAt().minusMillis(1)));
+        verify(transferRepository, never()).save(last);
+    }
+
+    /**
+     * A transfer its sender refuses goes back QUEUED and starts on the next dispatch
+     */
+    @Test
+    void dispatch_requeuesTransferItsSenderRefused() {
+        FileTransfer running = queued(0, Instant.now());
+        FileTransfer refused = queued(0, Instant.now());
+        queue.enqueue(running, null);
+
+        // stubbed without calling the send, the default answer records every call
+        doThrow(new RejectedExecutionException("chunk pool full"))
+                .doAnswer(i -> {
+                    started.add(refused.getTransferId());
+                    return new CompletableFuture<>();
+                })
+                .when(transferAsyncSender).sendAsync(eq(refused.getTransferId()), anyString(), anyInt(), any());
+        when(agentConfig.getQueueMaxConcurrent()).thenReturn(2);
+        queue.enqueue(refused, null);
+
+        assertThat(refused.getStatus()).isEqualTo(TransferStatus.QUEUED);
+        assertThat(queue.snapshot()).extracting(QueuedTransferResponse::getId)
+                .containsExactly(refused.getTransferId());
+
+        finish(running);
+
+        assertThat(started).containsExactly(running.getTransferId(), refused.getTransferId());
+        assertThat(refused.getStatus()).isEqualTo(TransferStatus.ACTIVE);
+        assertThat(queue.snapshot()).isEmpty();
+    }
+
+    /**
+     * Startup puts QUEUED records of every kind back and starts them without a token
+     */
+    @Test
+    void rebuild_requeuesPersistedTransfers() {
+        when(agentConfig.getQueueMaxConcurrent()).thenReturn(0);
+        FileTransfer transfer = queued(0, Instant.now());
+        DirectoryTransfer dt = DirectoryTransfer.initiate(UUID.randomUUID(), UUID.randomUUID(),
+                UUID.randomUUID(), "10.0.0.3", 9090, "photos", "/tmp/photos", 2, 100L, List.of());
+        dt.setStatus(GroupTransferStatus.QUEUED);
+        when(transferRepository.findByStatus(TransferStatus.QUEUED)).thenReturn(List.of(transfer));
+        when(directoryTransferRepository.findByStatus(GroupTransferStatus.QUEUED)).thenReturn(List.of(dt));
+        when(directoryTransferRepository.findById(dt.getDirectoryTransferId())).thenReturn(Optional.of(dt));
+
+        queue.rebuild();
+
+        verify(transferAsyncSender).sendAsync(eq(transfer.getTransferId()), eq("10.0.0.2"), eq(9090), isNull());
+        verify(directoryAsyncSender).sendAsync(eq(dt.getDirectoryTransferId()), eq("10.0.0.3"), eq(9090), isNull());
+        verify(batchAsyncSender, never()).sendAsync(any(), any(), anyInt(), any());
+        assertThat(dt.getStatus()).isEqualTo(GroupTransferStatus.ACTIVE);
+    }
+
+    /**
+     * A removed transfer is gone from the queue and never started
+     */
+    @Test
+    void remove_dropsWaitingTransfer() {
+        queue.enqueue(queued(0, Instant.now()), null);
+        FileTransfer waiting = queued(0, Instant.now());
+        queue.enqueue(waiting, null);
+
+        assertThat(queue.remove(waiting.getTransferId())).isTrue();
+        assertThat(queue.remove(waiting.getTransferId())).isFalse();
+        assertThat(queue.snapshot()).isEmpty();
+    }
+
+    private FileTransfer queued(int priority, Instant queuedAt) {
+        FileTransfer transfer = FileTransfer.initiate(UUID.randomUUID(), UUID.randomUUID(),
+                UUID.randomUUID(), "file.bin", "/tmp/file.bin", 1024L);
+        transfer.setTargetIp("10.0.0.2");
+        transfer.setTargetPort(9090);
+        transfer.setStatus(TransferStatus.QUEUED);
+        transfer.setQueuePriority(priority);
+        transfer.setQueuedAt(queuedAt);
+        records.put(transfer.getTransferId(), transfer);
+        return transfer;
+    }
+
+    private void finish(FileTransfer transfer) {
+        sends.get(transfer.getTransferId()).complete(null);
+    }
+}
@@ -0,0 +1,71 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.common.storage.PartialFileWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PartialFileChannelsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AgentConfig agentConfig = mock(AgentConfig.class);
+    private final PartialFileChannels partialFileChannels = new PartialFileChannels(agentConfig);
+
+    @AfterEach
+    void closeAll() {
+        partialFileChannels.closeAll();
+    }
+
+    /**
+     * Chunks at unaligned offsets and larger than one write buffer land byte for byte
+     * in every mode, DIRECT falls back to the page cache where the file system lacks it
+     */
+    @ParameterizedTest
+    @EnumSource(PartialFileWriter.Mode.class)
+    void write_assemblesFileInAnyMode(PartialFileWriter.Mode mode) throws IOException {
+        when(agentConfig.getWriteMode()).thenReturn(mode.name());
+        byte[] content = new byte[10 * 1024 * 1024 + 777];
+        new Random(7).nextBytes(content);
+        Path partial = allocate(content.length);
+        UUID transferId = UUID.randomUUID();
+
+        // out of order and split inside a block, like striped chunks
+        int split = 9 * 1024 * 1024 + 1234;
+        assertThat(write(transferId, partial, content, split, content.length)).isEqualTo(content.length - split);
+        assertThat(write(transferId, partial, content, 1000, split)).isEqualTo(split - 1000);
+        assertThat(write(transferId, partial, content, 0, 1000)).isEqualTo(1000);
+        partialFileChannels.close(transferId);
+
+        assertThat(Files.readAllBytes(partial)).isEqualTo(content);
+    }
+
+    private long write(UUID transferId, Path partial, byte[] content, int from, int to) {
+        return partialFileChannels.write(transferId, partial, from,
+                new ByteArrayInputStream(Arrays.copyOfRange(content, from, to)));
+    }
+
+    private Path allocate(long size) throws IOException {
+        Path partial = tempDir.resolve("file.part");
+        try (RandomAccessFile raf = new RandomAccessFile(partial.toFile(), "rw")) {
+            raf.setLength(size);
+        }
+        return partial;
+    }
+}
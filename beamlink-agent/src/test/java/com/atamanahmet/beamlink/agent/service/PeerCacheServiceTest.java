@@ -3,6 +3,7 @@ package com.atamanahmet.beamlink.agent.service;
 import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.Peer;
 import com.atamanahmet.beamlink.agent.dto.PeerStatusUpdate;
+import com.atamanahmet.beamlink.agent.event.PeerOnlineEvent;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -10,12 +11,15 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.web.reactive.function.client.WebClient;
 
 import java.util.List;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 class PeerCacheServiceTest {
@@ -24,6 +28,9 @@ class PeerCacheServiceTest {
     @Mock
     private ObjectMapper objectMapper;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private PeerCacheService peerCacheService;
 
@@ -62,6 +69,22 @@ class PeerCacheServiceTest {
         assertThat(isOnline).isFalse();
     }
 
+    @Test
+    @DisplayName("publishes an event when an offline peer comes back online")
+    void updatePeers_publishesPeerOnline_whenOfflinePeerComesBack() {
+
+        UUID id = UUID.randomUUID();
+        peerCacheService.updatePeers(List.of(buildPeer(id, false)), 1L);
+        verifyNoInteractions(eventPublisher);
+
+        Peer back = buildPeer(id, true);
+        back.setIpAddress("10.0.0.7");
+        back.setPort(9090);
+        peerCacheService.updatePeers(List.of(back), 2L);
+
+        verify(eventPublisher).publishEvent(new PeerOnlineEvent(id, "10.0.0.7", 9090));
+    }
+
     @Test
     @DisplayName("clears all peers from cache")
     void clearCache_removesAllPeers() {
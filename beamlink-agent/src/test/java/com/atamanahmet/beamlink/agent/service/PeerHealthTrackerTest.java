@@ -0,0 +1,162 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.event.PeerCircuitClosedEvent;
+import com.atamanahmet.beamlink.agent.service.PeerHealthTracker.PausedKind;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PeerHealthTrackerTest {
+
+    private static final String PEER = "10.0.0.2:9090";
+
+    private final AgentConfig agentConfig = mock(AgentConfig.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final PeerHealthTracker tracker = new PeerHealthTracker(agentConfig, eventPublisher);
+
+    /**
+     * Opens on the threshold-th consecutive failure, reported once
+     */
+    @Test
+    void failed_opensCircuitAtThreshold() {
+        when(agentConfig.getCircuitBreakerFailures()).thenReturn(3);
+
+        assertThat(tracker.failed(PEER)).isFalse();
+        assertThat(tracker.failed(PEER)).isFalse();
+        assertThat(tracker.isOpen(PEER)).isFalse();
+
+        assertThat(tracker.failed(PEER)).isTrue();
+        assertThat(tracker.isOpen(PEER)).isTrue();
+        assertThat(tracker.failed(PEER)).isFalse();
+    }
+
+    /**
+     * A success in between starts the count over, failures must be consecutive
+     */
+    @Test
+    void succeeded_resetsConsecutiveFailures() {
+        when(agentConfig.getCircuitBreakerFailures()).thenReturn(2);
+
+        tracker.failed(PEER);
+        tracker.succeeded(PEER);
+        tracker.failed(PEER);
+
+        assertThat(tracker.isOpen(PEER)).isFalse();
+    }
+
+    /**
+     * Closing hands back what the open circuit paused and forgets it
+     */
+    @Test
+    void close_returnsPausedTransfersAndResets() {
+        when(agentConfig.getCircuitBreakerFailures()).thenReturn(1);
+        UUID transfer = UUID.randomUUID();
+        UUID batch = UUID.randomUUID();
+
+        tracker.failed(PEER);
+        tracker.pausedByCircuit(PEER, PausedKind.TRANSFER, transfer);
+        tracker.pausedByCircuit(PEER, PausedKind.BATCH, batch);
+
+        var paused = tracker.close(PEER);
+
+        assertThat(paused.get(PausedKind.TRANSFER)).isEqualTo(Set.of(transfer));
+        assertThat(paused.get(PausedKind.BATCH)).isEqualTo(Set.of(batch));
+        assertThat(tracker.isOpen(PEER)).isFalse();
+        assertThat(tracker.close(PEER)).isEmpty();
+    }
+
+    /**
+     * Any success closes an open circuit and announces it, the paused transfers stay for the listener
+     */
+    @Test
+    void succeeded_closesOpenCircuit() {
+        when(agentConfig.getCircuitBreakerFailures()).thenReturn(1);
+        UUID transfer = UUID.randomUUID();
+
+        tracker.failed(PEER);
+        tracker.pausedByCircuit(PEER, PausedKind.TRANSFER, transfer);
+        tracker.succeeded(PEER);
+
+        assertThat(tracker.isOpen(PEER)).isFalse();
+        verify(eventPublisher).publishEvent(new PeerCircuitClosedEvent(PEER));
+        assertThat(tracker.close(PEER).get(PausedKind.TRANSFER)).isEqualTo(Set.of(transfer));
+    }
+
+    /**
+     * A success on a closed circuit announces nothing
+     */
+    @Test
+    void succeeded_onClosedCircuit_publishesNothing() {
+        when(agentConfig.getCircuitBreakerFailures()).thenReturn(2);
+
+        tracker.failed(PEER);
+        tracker.succeeded(PEER);
+
+        verify(eventPublisher, never()).publishEvent(any());
+    }
+
+    /**
+     * Past the cooldown the circuit is half-open, sends go through and one paused transfer is the probe
+     */
+    @Test
+    void afterCooldown_halfOpenHandsOutOneProbe() throws InterruptedException {
+        when(agentConfig.getCircuitBreakerFailures()).thenReturn(1);
+        when(agentConfig.getCircuitBreakerCooldownMs()).thenReturn(20L);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        tracker.failed(PEER);
+        tracker.pausedByCircuit(PEER, PausedKind.TRANSFER, first);
+        tracker.pausedByCircuit(PEER, PausedKind.TRANSFER, second);
+
+        assertThat(tracker.isOpen(PEER)).isTrue();
+        assertThat(tracker.probes()).isEmpty();
+
+        Thread.sleep(30);
+
+        assertThat(tracker.isOpen(PEER)).isFalse();
+        assertThat(tracker.probes())
+                .containsExactly(new PeerHealthTracker.Probe(PEER, PausedKind.TRANSFER, first));
+        // one probe per cooldown
+        assertThat(tracker.probes()).isEmpty();
+        assertThat(tracker.close(PEER).get(PausedKind.TRANSFER)).isEqualTo(Set.of(second));
+    }
+
+    /**
+     * A failure while half-open opens the circuit for another cooldown
+     */
+    @Test
+    void failedProbe_reopensCircuit() throws InterruptedException {
+        when(agentConfig.getCircuitBreakerFailures()).thenReturn(1);
+        when(agentConfig.getCircuitBreakerCooldownMs()).thenReturn(20L);
+
+        tracker.failed(PEER);
+        Thread.sleep(30);
+        assertThat(tracker.isOpen(PEER)).isFalse();
+
+        tracker.failed(PEER);
+
+        assertThat(tracker.isOpen(PEER)).isTrue();
+    }
+
+    /**
+     * Without a threshold the circuit never opens
+     */
+    @Test
+    void noThreshold_neverOpens() {
+        for (int i = 0; i < 100; i++) {
+            tracker.failed(PEER);
+        }
+        assertThat(tracker.isOpen(PEER)).isFalse();
+    }
+}
@@ -0,0 +1,114 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
+import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReceiveAdmissionTest {
+
+    private final AgentConfig agentConfig = mock(AgentConfig.class);
+    private final FileTransferRepository transferRepository = mock(FileTransferRepository.class);
+    private final DirectoryTransferRepository directoryTransferRepository = mock(DirectoryTransferRepository.class);
+    private final ReceiveAdmission admission =
+            new ReceiveAdmission(agentConfig, transferRepository, directoryTransferRepository);
+
+    private final Map<UUID, FileTransfer> records = new HashMap<>();
+
+    private final UUID sourceA = UUID.randomUUID();
+    private final UUID sourceB = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        when(agentConfig.getReceiveSlotIdleMs()).thenReturn(60_000L);
+        when(transferRepository.findByTransferId(any()))
+                .thenAnswer(i -> Optional.ofNullable(records.get(i.<UUID>getArgument(0))));
+        when(directoryTransferRepository.findById(any())).thenReturn(Optional.empty());
+    }
+
+    /**
+     * A transfer keeps its slot between chunks, a new one waits until a slot is finished
+     */
+    @Test
+    void tryAdmit_limitsConcurrentTransfers() {
+        when(agentConfig.getReceiveMaxTransfers()).thenReturn(1);
+        UUID first = transferFrom(sourceA);
+        UUID second = transferFrom(sourceA);
+
+        admission.tryAdmit(first, 100).close();
+
+        assertThat(admission.tryAdmit(second, 100)).isNull();
+        ReceiveAdmission.Admission last = admission.tryAdmit(first, 100);
+        assertThat(last).isNotNull();
+
+        admission.finished(first);
+        assertThat(admission.tryAdmit(second, 100)).isNull();
+
+        last.close();
+        assertThat(admission.tryAdmit(second, 100)).isNotNull();
+    }
+
+    /**
+     * Bytes being written are capped, closing an admission returns its bytes
+     */
+    @Test
+    void tryAdmit_limitsBytesInFlight() {
+        when(agentConfig.getReceiveMaxBytesInFlight()).thenReturn(1000L);
+        UUID transfer = transferFrom(sourceA);
+
+        ReceiveAdmission.Admission held = admission.tryAdmit(transfer, 800);
+        assertThat(admission.tryAdmit(transfer, 300)).isNull();
+
+        held.close();
+        // alone a request larger than the cap still gets through
+        assertThat(admission.tryAdmit(transfer, 5000)).isNotNull();
+    }
+
+    /**
+     * While another source waits, a source already holding its share gets no more slots
+     */
+    @Test
+    void tryAdmit_sharesSlotsBetweenSources() {
+        when(agentConfig.getReceiveMaxTransfers()).thenReturn(4);
+        UUID a1 = transferFrom(sourceA);
+        UUID a2 = transferFrom(sourceA);
+        UUID a3 = transferFrom(sourceA);
+        UUID b1 = transferFrom(sourceB);
+
+        assertThat(admission.tryAdmit(a1, 1)).isNotNull();
+        assertThat(admission.tryAdmit(a2, 1)).isNotNull();
+        assertThat(admission.tryAdmit(b1, 1)).isNotNull();
+
+        assertThat(admission.tryAdmit(a3, 1)).isNull();
+        assertThat(admission.stats().getRejected()).isEqualTo(1);
+    }
+
+    /**
+     * Requests for transfers the receiver does not know are not counted, the receiver rejects them
+     */
+    @Test
+    void tryAdmit_letsUnknownTransfersThrough() {
+        when(agentConfig.getReceiveMaxTransfers()).thenReturn(1);
+
+        assertThat(admission.tryAdmit(UUID.randomUUID(), 100)).isNotNull();
+        assertThat(admission.stats().getActiveTransfers()).isZero();
+    }
+
+    private UUID transferFrom(UUID source) {
+        UUID transferId = UUID.randomUUID();
+        records.put(transferId, FileTransfer.initiate(transferId, source, null, "f.bin", null, 1024L));
+        return transferId;
+    }
+}
@@ -1,30 +1,54 @@
 package com.atamanahmet.beamlink.agent.service;
 
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
 import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.ChunkAckResponse;
+import com.atamanahmet.beamlink.agent.http.ChunkBufferPool;
 import com.atamanahmet.beamlink.agent.http.HttpSender;
+import com.atamanahmet.beamlink.agent.metrics.TransferMetrics;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.util.BlockSignatures;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -43,9 +67,66 @@ class TransferAsyncSenderTest {
     @Mock
     private HttpSender httpSender;
 
+    @Mock
+    private AgentConfig agentConfig;
+
+    /** Real registry with zero checkpoint intervals, every ack is saved unless a test stubs it */
+    @Spy
+    private TransferProgressRegistry progressRegistry = new TransferProgressRegistry(mock(AgentConfig.class));
+
+    /** Real sizer with no bounds configured, every chunk is the default size */
+    @Spy
+    private AdaptiveChunkSizer chunkSizer = new AdaptiveChunkSizer(mock(AgentConfig.class));
+
+    /** Real circuit breaker with no threshold configured, it never opens unless a test stubs it */
+    @Spy
+    private PeerHealthTracker peerHealth = new PeerHealthTracker(mock(AgentConfig.class), mock(ApplicationEventPublisher.class));
+
+    /** Real scheduler with no limits configured, it never waits */
+    @Spy
+    private BandwidthScheduler bandwidth = new BandwidthScheduler(mock(AgentConfig.class));
+
+    /** Real pool keeping nothing idle, every chunk is read into a fresh buffer */
+    @Spy
+    private ChunkBufferPool chunkBuffers = new ChunkBufferPool(mock(AgentConfig.class));
+
+    /** Real hashing with no dedup-min-size configured, nothing is hashed unless a test stubs it */
+    @Spy
+    private ContentHashService contentHashService = new ContentHashService(mock(AgentConfig.class));
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    /** Real meters on an in-memory registry, tests read them back */
+    @Spy
+    private TransferMetrics metrics = new TransferMetrics(registry);
+
+    /** Unbounded pool standing in for the chunk executor bean */
+    @Spy
+    private AsyncTaskExecutor chunkExecutor = new TaskExecutorAdapter(Executors.newCachedThreadPool());
+
+    /** Unbounded pool standing in for the stripe executor bean */
+    @Spy
+    private AsyncTaskExecutor stripeExecutor = new TaskExecutorAdapter(Executors.newCachedThreadPool());
+
+    /** Unbounded pool standing in for the checksum executor bean */
+    @Spy
+    private AsyncTaskExecutor checksumExecutor = new TaskExecutorAdapter(Executors.newCachedThreadPool());
+
+    /** Timer standing in for the retry scheduler bean */
+    @Spy
+    private ScheduledExecutorService retryScheduler = new ScheduledThreadPoolExecutor(1);
+
     @InjectMocks
     private TransferAsyncSender asyncSender;
 
+    /** Constructor injection matches by type only, the executors share a type and are wired by name */
+    @BeforeEach
+    void wireExecutors() {
+        ReflectionTestUtils.setField(asyncSender, "chunkExecutor", chunkExecutor);
+        ReflectionTestUtils.setField(asyncSender, "stripeExecutor", stripeExecutor);
+        ReflectionTestUtils.setField(asyncSender, "checksumExecutor", checksumExecutor);
+    }
+
     @TempDir
     Path tempDir;
 
@@ -77,6 +158,16 @@ class TransferAsyncSenderTest {
         return resp;
     }
 
+    /** Receiver at its admission limits, retry right away */
+    @SuppressWarnings("unchecked")
+    private HttpResponse<String> httpBusy() {
+        HttpResponse<String> resp = mock(HttpResponse.class);
+        when(resp.statusCode()).thenReturn(503);
+        when(resp.headers()).thenReturn(java.net.http.HttpHeaders.of(
+                java.util.Map.of("Retry-After", List.of("0")), (name, value) -> true));
+        return resp;
+    }
+
     @SuppressWarnings("unchecked")
     private HttpResponse<String> http4xx() {
         HttpResponse<String> resp = mock(HttpResponse.class);
@@ -141,23 +232,25 @@ class TransferAsyncSenderTest {
     }
 
     /**
-     * Transfer was okay on first fetch but vanished on the re-fetch inside the loop
+     * Cancel signalled through the registry after the record was read,
+     * stops before the first chunk and persists the cancel
      */
     @Test
-    void whenTransferDisappearsMidSend_stopsGracefully() throws Exception {
+    void whenCancelSignalledAfterFetch_stopsAndPersistsCancel() throws Exception {
         Path file = tempDir.resolve("gone.bin");
         Files.write(file, new byte[512]);
 
         FileTransfer ft = makeTransfer(file, 512);
 
         when(transferRepository.findByTransferId(ft.getTransferId()))
-                .thenReturn(Optional.of(ft))    // initial fetch before opening file
-                .thenReturn(Optional.empty());  // re-fetch inside the loop
+                .thenReturn(Optional.of(ft));
+        doReturn(TransferStatus.CANCELLED).when(progressRegistry).signalled(ft.getTransferId());
 
         asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
 
         verifyNoInteractions(httpSender);
-        verify(transferRepository, never()).save(any());
+        verify(transferRepository).save(argThat(t -> t.getStatus() == TransferStatus.CANCELLED));
+        verify(transferRepository, times(1)).findByTransferId(ft.getTransferId());
     }
 
     /**
@@ -189,6 +282,50 @@ class TransferAsyncSenderTest {
         assertEquals(TransferStatus.COMPLETED, last.getStatus());
     }
 
+    /**
+     * Delta transfer fetches the target's block signatures and sends only the changed
+     * block as literal data, the rest as copies, to the delta endpoint.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void deltaTransfer_sendsOnlyChangedBlocksToDeltaEndpoint() throws Exception {
+        int blockSize = 4096;
+        byte[] earlier = new byte[8 * blockSize];
+        new java.util.Random(11).nextBytes(earlier);
+        byte[] current = earlier.clone();
+        current[3 * blockSize] ^= 0x01;
+
+        Path earlierFile = Files.write(tempDir.resolve("earlier.img"), earlier);
+        Path file = Files.write(tempDir.resolve("disk.img"), current);
+        java.io.ByteArrayOutputStream signatures = new java.io.ByteArrayOutputStream();
+        BlockSignatures.compute(earlierFile, blockSize).write(new java.io.DataOutputStream(signatures));
+
+        FileTransfer ft = makeTransfer(file, current.length);
+        ft.setDelta(true);
+
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        HttpResponse<byte[]> signaturesResponse = mock(HttpResponse.class);
+        when(signaturesResponse.statusCode()).thenReturn(200);
+        when(signaturesResponse.body()).thenReturn(signatures.toByteArray());
+        when(httpSender.sendForBytes(any(HttpRequest.class))).thenReturn(signaturesResponse);
+
+        ArgumentCaptor<HttpRequest> requests = ArgumentCaptor.forClass(HttpRequest.class);
+        HttpResponse<String> response = httpOk();
+        when(httpSender.send(requests.capture())).thenReturn(response);
+        when(objectMapper.readValue("{}", ChunkAckResponse.class))
+                .thenReturn(ackComplete(current.length));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        HttpRequest delta = requests.getValue();
+        assertTrue(delta.uri().getPath().endsWith("/delta"));
+        assertEquals("bytes 0-" + (current.length - 1) + "/" + current.length,
+                delta.headers().firstValue("Content-Range").orElseThrow());
+        assertTrue(readBody(delta).length < 2 * blockSize);
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+    }
+
     /**
      * First chunk must tell the receiver "bytes 0 to (length-1) of total"
      */
@@ -393,6 +530,8 @@ class TransferAsyncSenderTest {
         FileTransfer last = saved.getAllValues().get(saved.getAllValues().size() - 1);
         assertEquals(TransferStatus.FAILED, last.getStatus());
         assertNotNull(last.getFailureReason());
+        assertEquals(4.0, registry.get("beamlink.chunk.retries")
+                .tags("peer", "127.0.0.1:9999", "reason", "stalled").counter().count());
     }
 
     /**
@@ -448,6 +587,54 @@ class TransferAsyncSenderTest {
         assertNotNull(last.getFailureReason());
     }
 
+    /**
+     * Peer stops answering, once the circuit opens the transfer is paused for the peer
+     * instead of burning its remaining retries and failing
+     */
+    @Test
+    void whenPeerCircuitOpens_pausesInsteadOfFailing() throws Exception {
+        byte[] content = "peer asleep".getBytes();
+        Path file = tempDir.resolve("asleep.bin");
+        Files.write(file, content);
+
+        FileTransfer ft = makeTransfer(file, content.length);
+
+        // closed before the send and after the first failure, open after the second
+        doReturn(false, false, true).when(peerHealth).isOpen("127.0.0.1:9999");
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class)))
+                .thenThrow(new java.net.ConnectException("Connection refused"));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verify(httpSender, times(2)).send(any());
+        verify(peerHealth, times(2)).failed("127.0.0.1:9999");
+        assertEquals(TransferStatus.PAUSED, ft.getStatus());
+        assertNull(ft.getFailureReason());
+        verify(peerHealth).pausedByCircuit("127.0.0.1:9999",
+                PeerHealthTracker.PausedKind.TRANSFER, ft.getTransferId());
+    }
+
+    /**
+     * While the circuit is open a new send pauses before its first chunk
+     */
+    @Test
+    void whenPeerCircuitAlreadyOpen_pausesWithoutSending() throws Exception {
+        Path file = Files.write(tempDir.resolve("later.bin"), "later".getBytes());
+        FileTransfer ft = makeTransfer(file, 5);
+
+        doReturn(true).when(peerHealth).isOpen("127.0.0.1:9999");
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verifyNoInteractions(httpSender);
+        assertEquals(TransferStatus.PAUSED, ft.getStatus());
+        verify(transferRepository).save(ft);
+    }
+
     /**
      * Fails twice then succeeds on the third attempt
      */
@@ -479,6 +666,75 @@ class TransferAsyncSenderTest {
                 saved.getAllValues().get(saved.getAllValues().size() - 1).getStatus());
     }
 
+    /**
+     * A busy receiver is waited for, more times than there are retries and without
+     * the rejections counting toward the circuit
+     */
+    @Test
+    void receiverBusy_retriesWithoutCountingAsFailure() throws Exception {
+        byte[] content = "wait for me".getBytes();
+        Path file = tempDir.resolve("busy.bin");
+        Files.write(file, content);
+
+        FileTransfer ft = makeTransfer(file, content.length);
+        HttpResponse<String> busy = httpBusy();
+        HttpResponse<String> ok = httpOk();
+
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class)))
+                .thenReturn(busy, busy, busy, busy, busy, busy)
+                .thenReturn(ok);
+        when(objectMapper.readValue("{}", ChunkAckResponse.class))
+                .thenReturn(ackComplete(content.length));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verify(httpSender, times(7)).send(any());
+        verify(peerHealth, never()).failed(anyString());
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+        assertEquals(6.0, registry.get("beamlink.chunk.retries")
+                .tags("peer", "127.0.0.1:9999", "reason", "busy").counter().count());
+        assertEquals(content.length, registry.get("beamlink.transfer.sent")
+                .tag("peer", "127.0.0.1:9999").counter().count());
+        assertEquals(1, registry.get("beamlink.chunk.ack").timer().count());
+    }
+
+    /**
+     * Chunk bodies are streamed from the file region, a retry sends the same bytes again
+     */
+    @Test
+    void retryReplaysSameFileRegion() throws Exception {
+        byte[] content = new byte[300 * 1024];
+        new java.util.Random(3).nextBytes(content);
+        Path file = tempDir.resolve("replay.bin");
+        Files.write(file, content);
+
+        FileTransfer ft = makeTransfer(file, content.length);
+        List<byte[]> bodies = new java.util.ArrayList<>();
+
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class)))
+                .thenAnswer(inv -> {
+                    bodies.add(readBody(inv.getArgument(0)));
+                    throw new java.io.IOException("connection reset");
+                })
+                .thenAnswer(inv -> {
+                    bodies.add(readBody(inv.getArgument(0)));
+                    return httpOk();
+                });
+        when(objectMapper.readValue("{}", ChunkAckResponse.class))
+                .thenReturn(ackComplete(content.length));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        assertEquals(2, bodies.size());
+        assertArrayEquals(content, bodies.get(0));
+        assertArrayEquals(content, bodies.get(1));
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+    }
+
     /**
      * All 3 attempts fail, mark the transfer as failed
      */
@@ -505,6 +761,99 @@ class TransferAsyncSenderTest {
                 saved.getAllValues().get(saved.getAllValues().size() - 1).getStatus());
     }
 
+    /**
+     * Chunk pool full, the chunk waits on the retry timer instead of running on the caller
+     */
+    @Test
+    void chunkPoolFull_chunkDeferredAndSent() throws Exception {
+        byte[] content = "hello world".getBytes();
+        Path file = tempDir.resolve("deferred.txt");
+        Files.write(file, content);
+
+        FileTransfer ft = makeTransfer(file, content.length);
+
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        HttpResponse<String> response = httpOk();
+        when(httpSender.send(any(HttpRequest.class))).thenReturn(response);
+        when(objectMapper.readValue("{}", ChunkAckResponse.class))
+                .thenReturn(ackComplete(content.length));
+        doThrow(new RejectedExecutionException("full"))
+                .doCallRealMethod()
+                .when(chunkExecutor).execute(any(Runnable.class));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verify(retryScheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+        verify(chunkExecutor, times(2)).execute(any(Runnable.class));
+        verify(httpSender, times(1)).send(any());
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+    }
+
+    /**
+     * Chunk held back by the bandwidth limits waits on the retry timer and is sent once
+     * its bandwidth is there, without counting as a failed attempt
+     */
+    @Test
+    void bandwidthThrottled_chunkWaitsOnTimerAndIsSent() throws Exception {
+        byte[] content = "hello world".getBytes();
+        Path file = tempDir.resolve("throttled.txt");
+        Files.write(file, content);
+
+        FileTransfer ft = makeTransfer(file, content.length);
+
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        HttpResponse<String> response = httpOk();
+        when(httpSender.send(any(HttpRequest.class))).thenReturn(response);
+        when(objectMapper.readValue("{}", ChunkAckResponse.class))
+                .thenReturn(ackComplete(content.length));
+        doReturn(TimeUnit.MILLISECONDS.toNanos(30))
+                .doCallRealMethod()
+                .when(bandwidth).tryAcquire(anyString(), any(), anyLong());
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verify(retryScheduler).schedule(any(Runnable.class), eq(31L), eq(TimeUnit.MILLISECONDS));
+        verify(bandwidth, times(2)).tryAcquire(anyString(), any(), eq((long) content.length));
+        verify(httpSender, times(1)).send(any());
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+    }
+
+    /**
+     * Source file cut short after the first chunk, the next read fails the transfer
+     * instead of the JVM, and the first chunk's buffer goes back to the pool
+     */
+    @Test
+    void sourceTruncatedMidSend_marksTransferFailed() throws Exception {
+        int chunkSize = 8 * 1024 * 1024;
+        long fileSize = 2L * chunkSize + 10;
+        Path file = tempDir.resolve("truncated.bin");
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer ft = makeTransfer(file, fileSize);
+
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class))).thenAnswer(inv -> {
+            try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+                raf.setLength(chunkSize + 5);
+            }
+            return httpOk();
+        });
+        when(objectMapper.readValue("{}", ChunkAckResponse.class))
+                .thenReturn(ackAt(chunkSize));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verify(httpSender, times(1)).send(any());
+        verify(chunkBuffers, times(2)).release(any());
+        assertEquals(TransferStatus.FAILED, ft.getStatus());
+        assertEquals(chunkSize, ft.getConfirmedOffset());
+    }
+
     /**
      * File path in the DB points to a file that doesn't exist on disk, mark failed
      */
@@ -530,4 +879,285 @@ class TransferAsyncSenderTest {
         assertEquals(TransferStatus.FAILED, last.getStatus());
         assertNotNull(last.getFailureReason());
     }
-}
\ No newline at end of file
+
+    /**
+     * Window of 3 on a three chunk file, every chunk goes out before the first ack is consumed
+     */
+    @Test
+    void windowedSend_keepsChunksInFlightAndCompletes() throws Exception {
+        int chunkSize = 8 * 1024 * 1024;
+        long fileSize = 2L * chunkSize + 10;
+        Path file = tempDir.resolve("window.bin");
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer ft = makeTransfer(file, fileSize);
+
+        when(agentConfig.getTransferWindowSize()).thenReturn(3);
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class))).thenAnswer(inv -> rangeEchoResponse(inv.getArgument(0)));
+        when(objectMapper.readValue(anyString(), eq(ChunkAckResponse.class)))
+                .thenAnswer(inv -> {
+                    long end = Long.parseLong(inv.getArgument(0));
+                    return new ChunkAckResponse(end, end == fileSize);
+                });
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        ArgumentCaptor<HttpRequest> req = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpSender, times(3)).send(req.capture());
+
+        Set<String> ranges = req.getAllValues().stream()
+                .map(r -> r.headers().firstValue("Content-Range").orElse(""))
+                .collect(Collectors.toSet());
+        assertEquals(Set.of(
+                "bytes 0-" + (chunkSize - 1) + "/" + fileSize,
+                "bytes " + chunkSize + "-" + (2L * chunkSize - 1) + "/" + fileSize,
+                "bytes " + (2L * chunkSize) + "-" + (fileSize - 1) + "/" + fileSize
+        ), ranges);
+
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+        assertEquals(fileSize, ft.getConfirmedOffset());
+    }
+
+    /**
+     * Second chunk written before the first, its ack is below its end but the first ack
+     * already confirmed past it, no rewind
+     */
+    @Test
+    void windowedSend_olderAckAfterNewerOne_doesNotRewind() throws Exception {
+        int chunkSize = 8 * 1024 * 1024;
+        long fileSize = 2L * chunkSize + 10;
+        Path file = tempDir.resolve("reordered.bin");
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer ft = makeTransfer(file, fileSize);
+
+        when(agentConfig.getTransferWindowSize()).thenReturn(3);
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class))).thenAnswer(inv -> rangeEchoResponse(inv.getArgument(0)));
+        when(objectMapper.readValue(anyString(), eq(ChunkAckResponse.class)))
+                .thenAnswer(inv -> {
+                    long end = Long.parseLong(inv.getArgument(0));
+                    if (end == chunkSize) return new ChunkAckResponse(2L * chunkSize, false);
+                    if (end == 2L * chunkSize) return new ChunkAckResponse(0, false);
+                    return new ChunkAckResponse(fileSize, true);
+                });
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verify(httpSender, times(3)).send(any());
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+        assertEquals(fileSize, ft.getConfirmedOffset());
+    }
+
+    /**
+     * Chunks take the size the sizer picks for the peer, the last one is what is left
+     */
+    @Test
+    void windowedSend_usesChunkSizeOfTheSizer() throws Exception {
+        int chunkSize = 1024 * 1024;
+        long fileSize = 3L * chunkSize + 10;
+        Path file = tempDir.resolve("sized.bin");
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer ft = makeTransfer(file, fileSize);
+
+        doReturn((long) chunkSize).when(chunkSizer).nextChunkSize("http://127.0.0.1:9999");
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class))).thenAnswer(inv -> rangeEchoResponse(inv.getArgument(0)));
+        when(objectMapper.readValue(anyString(), eq(ChunkAckResponse.class)))
+                .thenAnswer(inv -> {
+                    long end = Long.parseLong(inv.getArgument(0));
+                    return new ChunkAckResponse(end, end == fileSize);
+                });
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        ArgumentCaptor<HttpRequest> req = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpSender, times(4)).send(req.capture());
+        assertTrue(req.getAllValues().stream()
+                .map(r -> r.headers().firstValue("Content-Range").orElse(""))
+                .anyMatch(("bytes " + (3L * chunkSize) + "-" + (fileSize - 1) + "/" + fileSize)::equals));
+        verify(chunkSizer, times(4)).acked(eq("http://127.0.0.1:9999"), anyLong(), anyLong());
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+    }
+
+    /**
+     * Acks inside the checkpoint interval stay in memory, only the completion is written
+     */
+    @Test
+    void windowedSend_checkpointsInsteadOfSavingEveryAck() throws Exception {
+        int chunkSize = 8 * 1024 * 1024;
+        long fileSize = 2L * chunkSize + 10;
+        Path file = tempDir.resolve("checkpoint.bin");
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer ft = makeTransfer(file, fileSize);
+
+        doReturn(false).when(progressRegistry).checkpointDue(eq(ft.getTransferId()), anyLong());
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class))).thenAnswer(inv -> rangeEchoResponse(inv.getArgument(0)));
+        when(objectMapper.readValue(anyString(), eq(ChunkAckResponse.class)))
+                .thenAnswer(inv -> {
+                    long end = Long.parseLong(inv.getArgument(0));
+                    return new ChunkAckResponse(end, end == fileSize);
+                });
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verify(httpSender, times(3)).send(any());
+        verify(transferRepository, times(1)).save(any());
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+        assertEquals(fileSize, ft.getConfirmedOffset());
+    }
+
+    /**
+     * Paused while the window is filling, nothing else is sent and the pause is persisted
+     */
+    @Test
+    void windowedSend_stopsFillingWhenPaused() throws Exception {
+        int chunkSize = 8 * 1024 * 1024;
+        long fileSize = 2L * chunkSize;
+        Path file = tempDir.resolve("paused-window.bin");
+        try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(fileSize);
+        }
+
+        FileTransfer active = makeTransfer(file, fileSize);
+
+        when(agentConfig.getTransferWindowSize()).thenReturn(2);
+        when(transferRepository.findByTransferId(active.getTransferId()))
+                .thenReturn(Optional.of(active));
+        // pause arrives after the first chunk is submitted
+        doReturn(null).doReturn(TransferStatus.PAUSED)
+                .when(progressRegistry).signalled(active.getTransferId());
+        // first chunk may be cancelled before it reaches the sender
+        lenient().when(httpSender.send(any(HttpRequest.class)))
+                .thenAnswer(inv -> rangeEchoResponse(inv.getArgument(0)));
+        lenient().when(objectMapper.readValue(anyString(), eq(ChunkAckResponse.class)))
+                .thenAnswer(inv -> new ChunkAckResponse(Long.parseLong(inv.getArgument(0)), false));
+
+        asyncSender.sendAsync(active.getTransferId(), "127.0.0.1", 9999, "token");
+
+        verify(httpSender, atMost(1)).send(any());
+        verify(transferRepository).save(argThat(t -> t.getStatus() == TransferStatus.PAUSED));
+    }
+
+    /**
+     * Two stripes go out as separate ranges, each stripe offset is tracked on its own
+     */
+    @Test
+    void stripedSend_sendsEachStripeAndTracksStripeOffsets() throws Exception {
+        byte[] content = "0123456789ABCDEFGHIJ".getBytes(); // 20 bytes, two stripes of 10
+        Path file = tempDir.resolve("striped.bin");
+        Files.write(file, content);
+
+        FileTransfer ft = makeTransfer(file, content.length);
+        ft.splitIntoStripes(2);
+
+        AtomicInteger acks = new AtomicInteger();
+
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class))).thenAnswer(inv -> rangeEchoResponse(inv.getArgument(0)));
+        when(objectMapper.readValue(anyString(), eq(ChunkAckResponse.class)))
+                .thenAnswer(inv -> new ChunkAckResponse(
+                        Long.parseLong(inv.getArgument(0)), acks.incrementAndGet() == 2));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        ArgumentCaptor<HttpRequest> req = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpSender, times(2)).send(req.capture());
+
+        Set<String> ranges = req.getAllValues().stream()
+                .map(r -> r.headers().firstValue("Content-Range").orElse(""))
+                .collect(Collectors.toSet());
+        assertEquals(Set.of("bytes 0-9/20", "bytes 10-19/20"), ranges);
+
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+        assertEquals(java.util.List.of(10L, 20L), ft.getStripeOffsets());
+        assertEquals(20L, ft.getConfirmedOffset());
+    }
+
+    /**
+     * Resumed striped transfer skips finished stripes and continues the others from their offsets
+     */
+    @Test
+    void stripedSend_resumesEachStripeFromItsOwnOffset() throws Exception {
+        byte[] content = "0123456789ABCDEFGHIJ".getBytes();
+        Path file = tempDir.resolve("striped-resume.bin");
+        Files.write(file, content);
+
+        FileTransfer ft = makeTransfer(file, content.length);
+        ft.splitIntoStripes(2);
+        ft.getStripeOffsets().set(0, 10L);   // first stripe already done
+        ft.getStripeOffsets().set(1, 15L);   // second stripe halfway
+
+        when(transferRepository.findByTransferId(ft.getTransferId()))
+                .thenReturn(Optional.of(ft));
+        when(httpSender.send(any(HttpRequest.class))).thenAnswer(inv -> rangeEchoResponse(inv.getArgument(0)));
+        when(objectMapper.readValue(anyString(), eq(ChunkAckResponse.class)))
+                .thenAnswer(inv -> new ChunkAckResponse(Long.parseLong(inv.getArgument(0)), true));
+
+        asyncSender.sendAsync(ft.getTransferId(), "127.0.0.1", 9999, "token");
+
+        ArgumentCaptor<HttpRequest> req = ArgumentCaptor.forClass(HttpRequest.class);
+        verify(httpSender).send(req.capture());
+        assertEquals("bytes 15-19/20",
+                req.getValue().headers().firstValue("Content-Range").orElse(""));
+        assertEquals(TransferStatus.COMPLETED, ft.getStatus());
+    }
+
+    /** 200 response whose body is the exclusive end of the chunk's Content-Range */
+    @SuppressWarnings("unchecked")
+    private HttpResponse<String> rangeEchoResponse(HttpRequest request) {
+        String range = request.headers().firstValue("Content-Range").orElseThrow();
+        long end = Long.parseLong(range.substring(range.indexOf('-') + 1, range.indexOf('/'))) + 1;
+        HttpResponse<String> resp = mock(HttpResponse.class);
+        when(resp.statusCode()).thenReturn(200);
+        when(resp.body()).thenReturn(String.valueOf(end));
+        return resp;
+    }
+
+    /** Drains a request body the way HttpClient would, checking the declared length */
+    private byte[] readBody(HttpRequest request) {
+        HttpRequest.BodyPublisher publisher = request.bodyPublisher().orElseThrow();
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        publisher.subscribe(new java.util.concurrent.Flow.Subscriber<java.nio.ByteBuffer>() {
+            @Override
+            public void onSubscribe(java.util.concurrent.Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(java.nio.ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                out.writeBytes(bytes);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        assertEquals(publisher.contentLength(), out.size());
+        return out.toByteArray();
+    }
+}
@@ -1,11 +1,14 @@
 package com.atamanahmet.beamlink.agent.service;
 
 import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import com.atamanahmet.beamlink.agent.domain.FileTransfer;
 import com.atamanahmet.beamlink.agent.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.agent.dto.InitiateTransferRequest;
 import com.atamanahmet.beamlink.agent.exception.FileTransferException;
+import com.atamanahmet.beamlink.agent.http.HttpSender;
 import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
@@ -15,8 +18,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import java.net.ConnectException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.*;
@@ -43,11 +48,23 @@ class TransferSenderServiceTest {
     private TransferSenderService transferSenderService;
 
     @Mock
-    private TransferAsyncSender asyncSender;
+    private OutboundTransferQueue outboundQueue;
+
+    @Mock
+    private TransferProgressRegistry progressRegistry;
+
+    @Mock
+    private HttpSender httpSender;
 
     @TempDir
     Path tempDir;
 
+    /** No target listens in these tests, registration calls fail like an unreachable peer */
+    @BeforeEach
+    void targetUnreachable() throws Exception {
+        when(httpSender.send(any())).thenThrow(new ConnectException("Connection refused"));
+    }
+
     /**
      * A path that does not exist on disk must be rejected immediately.
      */
@@ -131,6 +148,37 @@ class TransferSenderServiceTest {
                 .hasMessageContaining("Cannot reach target agent");
     }
 
+    @Test
+    void cancel_persistsCancelAndSignalsLiveSender() {
+        FileTransfer transfer = FileTransfer.initiate(
+                UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                "live.bin", "/tmp/live.bin", 1024L);
+        transfer.setStatus(TransferStatus.ACTIVE);
+        when(transferRepository.findByTransferId(transfer.getTransferId()))
+                .thenReturn(Optional.of(transfer));
+
+        transferSenderService.cancel(transfer.getTransferId());
+
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.CANCELLED);
+        verify(transferRepository).save(transfer);
+        verify(progressRegistry).signal(transfer.getTransferId(), TransferStatus.CANCELLED);
+    }
+
+    @Test
+    void cancel_takesQueuedTransferOutOfTheQueue() {
+        FileTransfer transfer = FileTransfer.initiate(
+                UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                "waiting.bin", "/tmp/waiting.bin", 1024L);
+        transfer.setStatus(TransferStatus.QUEUED);
+        when(transferRepository.findByTransferId(transfer.getTransferId()))
+                .thenReturn(Optional.of(transfer));
+
+        transferSenderService.cancel(transfer.getTransferId());
+
+        assertThat(transfer.getStatus()).isEqualTo(TransferStatus.CANCELLED);
+        verify(outboundQueue).remove(transfer.getTransferId());
+    }
+
     // helper
     private InitiateTransferRequest buildRequest(String filePath) {
         InitiateTransferRequest req = new InitiateTransferRequest();
@@ -0,0 +1,83 @@
+package com.atamanahmet.beamlink.agent.dto;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson round trip of the ReceiveDirectoryRequest a directory is registered with,
+ * one entry per file, as the source writes it and the target reads it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ManifestSerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    public int entries;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    private ReceiveDirectoryRequest manifest;
+    private byte[] json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        manifest = new ReceiveDirectoryRequest();
+        manifest.setDirectoryTransferId(UUID.randomUUID());
+        manifest.setSourceAgentId(UUID.randomUUID());
+        manifest.setDirectoryName("exports");
+        manifest.setTotalFiles(entries);
+        manifest.setEmptyDirectories(List.of("exports/archive/empty"));
+
+        List<ReceiveDirectoryRequest.FileEntry> files = new ArrayList<>(entries);
+        long totalSize = 0;
+        for (int i = 0; i < entries; i++) {
+            ReceiveDirectoryRequest.FileEntry entry = new ReceiveDirectoryRequest.FileEntry();
+            entry.setTransferId(UUID.randomUUID());
+            entry.setFileName("file-" + i + ".csv");
+            entry.setRelativePath("group-" + i / 1000 + "/dir-" + i / 100 + "/file-" + i + ".csv");
+            entry.setFileSize(4096L + i);
+            entry.setPacked(i % 4 != 0);
+            if (!entry.isPacked()) {
+                entry.setContentHash(String.format("%064x", i));
+            }
+            totalSize += entry.getFileSize();
+            files.add(entry);
+        }
+        manifest.setFiles(files);
+        manifest.setTotalSize(totalSize);
+
+        json = objectMapper.writeValueAsBytes(manifest);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(manifest);
+    }
+
+    @Benchmark
+    public ReceiveDirectoryRequest deserialize() throws IOException {
+        return objectMapper.readValue(json, ReceiveDirectoryRequest.class);
+    }
+}
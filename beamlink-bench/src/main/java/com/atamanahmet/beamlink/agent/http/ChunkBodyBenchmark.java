@@ -0,0 +1,175 @@
+package com.atamanahmet.beamlink.agent.http;
+
+import com.atamanahmet.beamlink.agent.config.AgentConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the send loop does with a chunk before it reaches the socket. pooledRead is the
+ * default body, read into a reused direct buffer, the mapped region is the opt-in mode
+ * published without a copy, heapCopy is the read-into-a-byte-array body both replaced.
+ * The CRC32C and the compression attempt run on every chunk when they are enabled,
+ * over the pooled copy, text compresses, random bytes stand for media and archives.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkBodyBenchmark {
+
+    private static final long FILE_SIZE = 64L * 1024 * 1024;
+
+    @Param({"1048576", "8388608"})
+    public int chunkSize;
+
+    @Param({"text", "random"})
+    public String content;
+
+    /* stands in for the socket send buffer, every published byte is copied into it */
+    private final ByteBuffer socket = ByteBuffer.allocateDirect(256 * 1024);
+
+    private final ChunkBufferPool pool = new ChunkBufferPool(new AgentConfig() {
+        @Override
+        public long getChunkBufferPoolBytes() {
+            return 64L * 1024 * 1024;
+        }
+    });
+
+    private Path file;
+    private FileChannel channel;
+    private long offset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("beamlink-bench", ".bin");
+        byte[] block = new byte[1024 * 1024];
+        if (content.equals("text")) {
+            byte[] line = "2024-05-01T12:00:00Z,agent-7,upload,report-q1.csv,1048576,COMPLETED\n"
+                    .getBytes(StandardCharsets.US_ASCII);
+            for (int i = 0; i < block.length; i++) block[i] = line[i % line.length];
+        } else {
+            new Random(42).nextBytes(block);
+        }
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            for (long written = 0; written < FILE_SIZE; written += block.length) {
+                out.write(ByteBuffer.wrap(block), written);
+            }
+        }
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Benchmark
+    public long mappedRegion() throws IOException {
+        return drain(FileRegionBodyPublisher.map(channel, nextOffset(), chunkSize));
+    }
+
+    @Benchmark
+    public long pooledRead() throws IOException {
+        FileRegionBodyPublisher region = FileRegionBodyPublisher.read(channel, nextOffset(), chunkSize, pool);
+        try {
+            return drain(region);
+        } finally {
+            region.release();
+        }
+    }
+
+    @Benchmark
+    public long heapCopy() throws IOException {
+        byte[] bytes = new byte[chunkSize];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long at = nextOffset();
+        while (buffer.hasRemaining()) {
+            channel.read(buffer, at + buffer.position());
+        }
+        return drain(HttpRequest.BodyPublishers.ofByteArray(bytes));
+    }
+
+    @Benchmark
+    public long crc32c() throws IOException {
+        FileRegionBodyPublisher region = FileRegionBodyPublisher.read(channel, nextOffset(), chunkSize, pool);
+        try {
+            return region.crc32c();
+        } finally {
+            region.release();
+        }
+    }
+
+    @Benchmark
+    public byte[] compress() throws IOException {
+        FileRegionBodyPublisher region = FileRegionBodyPublisher.read(channel, nextOffset(), chunkSize, pool);
+        try {
+            return region.compressed();
+        } finally {
+            region.release();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    private long nextOffset() {
+        long at = offset;
+        offset = (offset + chunkSize) % FILE_SIZE;
+        return at;
+    }
+
+    /* subscribes like the HTTP client does and copies what it is handed into the socket buffer */
+    private long drain(HttpRequest.BodyPublisher body) {
+        long[] total = new long[1];
+        body.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                total[0] += item.remaining();
+                while (item.hasRemaining()) {
+                    int n = Math.min(socket.capacity(), item.remaining());
+                    socket.clear();
+                    socket.put(item.slice(item.position(), n));
+                    item.position(item.position() + n);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return total[0];
+    }
+}
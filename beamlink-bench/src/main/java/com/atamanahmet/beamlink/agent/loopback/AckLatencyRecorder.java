@@ -0,0 +1,87 @@
+package com.atamanahmet.beamlink.agent.loopback;
+
+import com.atamanahmet.beamlink.agent.http.HttpSender;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Wraps the HttpSender of an agent context and keeps the time from send to a 200
+ * of every chunk, delta and pack request, the chunk-ack latency the sender sees.
+ */
+final class AckLatencyRecorder implements BeanPostProcessor {
+
+    private long[] samples = new long[1024];
+    private int count;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        return bean instanceof HttpSender sender ? new TimedSender(sender) : bean;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    synchronized void clear() {
+        count = 0;
+    }
+
+    /* the latency at the given percentile in millis, 0 without samples */
+    synchronized double percentileMillis(double percentile) {
+        if (count == 0) return 0;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    private static boolean isChunk(HttpRequest request) {
+        return request.method().equals("PATCH") || request.uri().getPath().endsWith("/pack");
+    }
+
+    private class TimedSender implements HttpSender {
+
+        private final HttpSender delegate;
+
+        TimedSender(HttpSender delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+            return timed(request, () -> delegate.send(request));
+        }
+
+        @Override
+        public HttpResponse<byte[]> sendForBytes(HttpRequest request) throws IOException, InterruptedException {
+            return timed(request, () -> delegate.sendForBytes(request));
+        }
+
+        private <T> HttpResponse<T> timed(HttpRequest request, Call<T> call) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            HttpResponse<T> response = call.send();
+            if (response.statusCode() == 200 && isChunk(request)) {
+                record(System.nanoTime() - start);
+            }
+            return response;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        HttpResponse<T> send() throws IOException, InterruptedException;
+    }
+}
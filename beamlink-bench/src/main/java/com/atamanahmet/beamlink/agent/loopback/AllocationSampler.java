@@ -0,0 +1,83 @@
+package com.atamanahmet.beamlink.agent.loopback;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bytes allocated by the threads of the JVM and the collections run while it was started.
+ * JDK 17 keeps no total of allocated bytes, the live threads are sampled every 100 ms,
+ * a thread that ends between two samples loses what it allocated since the last one.
+ */
+final class AllocationSampler {
+
+    private static final long SAMPLE_INTERVAL_MS = 100;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final Map<Long, Long> baseline = new HashMap<>();
+    private final Map<Long, Long> latest = new HashMap<>();
+    private ScheduledExecutorService timer;
+    private long gcCountAtStart;
+    private long gcMillisAtStart;
+
+    void start() {
+        baseline.clear();
+        latest.clear();
+        sample();
+        baseline.putAll(latest);
+        gcCountAtStart = gcCount();
+        gcMillisAtStart = gcMillis();
+
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "allocation-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /* stops sampling, returns the bytes allocated since start */
+    long stop() throws InterruptedException {
+        timer.shutdown();
+        timer.awaitTermination(1, TimeUnit.SECONDS);
+        sample();
+
+        long allocated = 0;
+        for (Map.Entry<Long, Long> thread : latest.entrySet()) {
+            allocated += thread.getValue() - baseline.getOrDefault(thread.getKey(), 0L);
+        }
+        return allocated;
+    }
+
+    long collections() {
+        return gcCount() - gcCountAtStart;
+    }
+
+    long collectionMillis() {
+        return gcMillis() - gcMillisAtStart;
+    }
+
+    private synchronized void sample() {
+        long[] ids = threads.getAllThreadIds();
+        long[] allocated = threads.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            if (allocated[i] >= 0) latest.put(ids[i], allocated[i]);
+        }
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
@@ -0,0 +1,223 @@
+package com.atamanahmet.beamlink.agent.loopback;
+
+import com.atamanahmet.beamlink.agent.BeamlinkAgentApplication;
+import com.atamanahmet.beamlink.agent.dto.LoginRequest;
+import com.atamanahmet.beamlink.agent.repository.BatchTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.DirectoryTransferRepository;
+import com.atamanahmet.beamlink.agent.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.agent.service.AgentService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * One beamlink-agent application context on a loopback port with its own SQLite DB,
+ * upload and partial directories under its home. The nexus url points at a closed port,
+ * the agent stays unregistered and gets a random agent id for peers to address it by.
+ * UI endpoints are called with the cookie of a login as the configured UI user.
+ */
+final class LoopbackAgent implements AutoCloseable {
+
+    private static final String NO_NEXUS = "http://127.0.0.1:1";
+
+    private static final Set<String> FAILED = Set.of("PARTIAL", "PAUSED", "CANCELLED", "FAILED", "EXPIRED");
+
+    private static final long POLL_INTERVAL_MS = 50;
+
+    private final ConfigurableApplicationContext context;
+    private final Path uploads;
+    private final int port;
+    private final UUID agentId;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private String cookie;
+
+    private LoopbackAgent(ConfigurableApplicationContext context, Path uploads) {
+        this.context = context;
+        this.uploads = uploads;
+        this.port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        AgentService agentService = context.getBean(AgentService.class);
+        if (agentService.getAgentId() == null) {
+            agentService.updateAgentId(UUID.randomUUID());
+        }
+        this.agentId = agentService.getAgentId();
+    }
+
+    /**
+     * Boots an agent under home, logging to logFile, its chunk acks are timed into acks.
+     * Arguments of the form --name=value override the harness defaults.
+     */
+    static LoopbackAgent start(Path home, Path logFile, AckLatencyRecorder acks, String[] args)
+            throws IOException, InterruptedException {
+        Files.createDirectories(home);
+        Path uploads = home.resolve("uploads");
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("server.address", "127.0.0.1");
+        properties.put("agent.ip-address", "127.0.0.1");
+        properties.put("agent.nexus.url", NO_NEXUS);
+        properties.put("agent.upload.directory", uploads.toString());
+        properties.put("agent.upload.partial-directory", home.resolve("partial").toString());
+        properties.put("spring.datasource.url", "jdbc:sqlite:" + home.resolve("beamlink-agent.db"));
+        // several senders write one receiver's DB at once, readers must not block the writer
+        // and a writer waits for the lock instead of failing, the agent defaults are left alone
+        properties.put("spring.datasource.hikari.maximum-pool-size", "4");
+        properties.put("spring.datasource.hikari.minimum-idle", "1");
+        properties.put("spring.datasource.hikari.data-source-properties.journal_mode", "WAL");
+        properties.put("spring.datasource.hikari.data-source-properties.busy_timeout", "3000");
+        // the nexus migrations are on the benchmark classpath too
+        properties.put("spring.flyway.enabled", "false");
+        properties.put("spring.jpa.properties.hibernate.generate_statistics", "true");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.file.name", logFile.toString());
+        properties.put("logging.threshold.console", "WARN");
+        properties.put("logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener", "WARN");
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            properties.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        // command line arguments, so they win over application.yaml
+        String[] commandLine = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BeamlinkAgentApplication.class)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().addBeanPostProcessor(acks))
+                .run(commandLine);
+
+        LoopbackAgent agent = new LoopbackAgent(context, uploads);
+        agent.login();
+        return agent;
+    }
+
+    int port() {
+        return port;
+    }
+
+    UUID agentId() {
+        return agentId;
+    }
+
+    Path uploads() {
+        return uploads;
+    }
+
+    Statistics statistics() {
+        return context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /* inserts, updates and deletes of entities since the statistics were last cleared */
+    long dbWrites() {
+        Statistics statistics = statistics();
+        return statistics.getEntityInsertCount() + statistics.getEntityUpdateCount()
+                + statistics.getEntityDeleteCount();
+    }
+
+    void clearStatistics() {
+        statistics().clear();
+    }
+
+    /* POSTs the request as JSON to a UI endpoint, returns the UUID field of the response */
+    UUID post(String path, Object request, String idField) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(path))
+                        .header("Content-Type", "application/json")
+                        .header("Cookie", cookie)
+                        .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(request)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("POST " + path + " answered " + response.statusCode()
+                    + ": " + response.body());
+        }
+        return UUID.fromString(objectMapper.readTree(response.body()).path(idField).asText());
+    }
+
+    void awaitTransfer(UUID transferId, Duration timeout) throws InterruptedException {
+        FileTransferRepository transfers = context.getBean(FileTransferRepository.class);
+        await("Transfer " + transferId, timeout,
+                () -> transfers.findStatusByTransferId(transferId).map(Enum::name).orElse(null));
+    }
+
+    void awaitDirectory(UUID directoryTransferId, Duration timeout) throws InterruptedException {
+        DirectoryTransferRepository directories = context.getBean(DirectoryTransferRepository.class);
+        await("Directory transfer " + directoryTransferId, timeout,
+                () -> directories.findByDirectoryTransferId(directoryTransferId)
+                        .map(directory -> directory.getStatus().name()).orElse(null));
+    }
+
+    void awaitBatch(UUID batchTransferId, Duration timeout) throws InterruptedException {
+        BatchTransferRepository batches = context.getBean(BatchTransferRepository.class);
+        await("Batch transfer " + batchTransferId, timeout,
+                () -> batches.findByBatchTransferId(batchTransferId)
+                        .map(batch -> batch.getStatus().name()).orElse(null));
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+
+    private void login() throws IOException, InterruptedException {
+        String username = context.getEnvironment().getRequiredProperty("agent.ui.username");
+        String password = context.getEnvironment().getRequiredProperty("agent.ui.password");
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/api/auth/login"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(
+                                objectMapper.writeValueAsString(new LoginRequest(username, password))))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        cookie = response.headers().allValues("Set-Cookie").stream()
+                .filter(header -> header.startsWith("agent_ui_token="))
+                .map(header -> header.split(";", 2)[0])
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Login answered " + response.statusCode()
+                        + " without a token: " + response.body()));
+    }
+
+    private void await(String what, Duration timeout, Supplier<String> status) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            String current = status.get();
+            if ("COMPLETED".equals(current)) return;
+            if (FAILED.contains(current)) {
+                throw new IllegalStateException(what + " ended " + current);
+            }
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException(what + " not completed in " + timeout + ", still " + current);
+            }
+            Thread.sleep(POLL_INTERVAL_MS);
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + port + path);
+    }
+}
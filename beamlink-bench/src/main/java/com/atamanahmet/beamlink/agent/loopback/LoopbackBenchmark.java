@@ -0,0 +1,364 @@
+package com.atamanahmet.beamlink.agent.loopback;
+
+import com.atamanahmet.beamlink.agent.dto.InitiateBatchTransferRequest;
+import com.atamanahmet.beamlink.agent.dto.InitiateDirectoryTransferRequest;
+import com.atamanahmet.beamlink.agent.dto.InitiateTransferRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * End to end throughput of the data plane, agents in one JVM sending to each other over loopback.
+ * Every workload boots a fresh receiver and its senders, drives the real /api/transfers,
+ * /directory and /multi endpoints and waits for the senders to see their transfers completed.
+ * Reports MiB/s, files/s, p50/p99 chunk-ack latency, allocation rate, collections and DB writes.
+ * Time is from the first initiate request to the last completion, so it includes the
+ * registration, manifest walk and hashing a real transfer does.
+ * Workloads:
+ * sparse - one sparse file of bench.sparse-size (10g) sent with /api/transfers
+ * small  - bench.small-files (100000) files of bench.small-size (4k) sent with /directory
+ * mixed  - a tree of bench.mixed-files (1000) files from 4 KiB to 64 MiB sent with /directory
+ * multi  - bench.multi-files (50) loose files from 1 to 32 MiB sent with /multi
+ * fan-in - bench.senders (4) agents sending a file of bench.fan-in-size (1g) each to one receiver
+ * File contents are random from fixed seeds, the same on every run and not compressible.
+ * Options are system properties, program arguments of the form --name=value go to every agent.
+ */
+public final class LoopbackBenchmark {
+
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private LoopbackBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = System.getProperty("bench.dir") != null
+                ? Files.createDirectories(Path.of(System.getProperty("bench.dir")))
+                : Files.createTempDirectory("beamlink-loopback");
+        Duration timeout = Duration.ofMinutes(Long.getLong("bench.timeout-minutes", 60));
+
+        List<Result> results = new ArrayList<>();
+        for (String name : System.getProperty("bench.workloads", "sparse,small,mixed,multi,fan-in").split(",")) {
+            Workload workload = Workload.of(name.trim());
+            System.out.println("Running " + workload.label + " in " + dir.resolve(workload.label));
+            results.add(run(workload, dir.resolve(workload.label), timeout, args));
+        }
+
+        System.out.println();
+        System.out.printf("%-8s %8s %10s %8s %9s %9s %11s %11s %11s %6s %9s%n", "workload", "files", "MiB",
+                "seconds", "MiB/s", "files/s", "ack p50 ms", "ack p99 ms", "alloc MB/s", "GCs", "DB writes");
+        for (Result r : results) {
+            System.out.printf(Locale.ROOT, "%-8s %8d %10.1f %8.2f %9.1f %9.1f %11.2f %11.2f %11.1f %6d %9d%n",
+                    r.workload(), r.files(), r.bytes() / 1048576.0, r.seconds(), r.mibPerSecond(),
+                    r.filesPerSecond(), r.ackP50Millis(), r.ackP99Millis(), r.allocatedMbPerSecond(),
+                    r.collections(), r.dbWrites());
+        }
+
+        String resultFile = System.getProperty("bench.result");
+        if (resultFile != null) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(Path.of(resultFile).toFile(), results);
+        }
+        // the agents leave non-daemon threads behind
+        System.exit(0);
+    }
+
+    private static Result run(Workload workload, Path dir, Duration timeout, String[] args) throws Exception {
+        Path logFile = dir.getParent().resolve("agents.log");
+        AckLatencyRecorder acks = new AckLatencyRecorder();
+        List<LoopbackAgent> agents = new ArrayList<>();
+
+        try {
+            List<Source> sources = new ArrayList<>();
+            for (int sender = 0; sender < workload.senders(); sender++) {
+                sources.add(workload.generate(dir.resolve("source-" + sender), sender));
+            }
+
+            LoopbackAgent receiver = LoopbackAgent.start(dir.resolve("receiver"), logFile, acks, args);
+            agents.add(receiver);
+            for (int sender = 0; sender < workload.senders(); sender++) {
+                agents.add(LoopbackAgent.start(dir.resolve("sender-" + sender), logFile, acks, args));
+            }
+
+            agents.forEach(LoopbackAgent::clearStatistics);
+            acks.clear();
+            AllocationSampler allocation = new AllocationSampler();
+            allocation.start();
+            long start = System.nanoTime();
+
+            List<Completion> completions = new ArrayList<>();
+            for (int sender = 0; sender < sources.size(); sender++) {
+                completions.add(workload.initiate(agents.get(sender + 1), sources.get(sender), receiver));
+            }
+            for (Completion completion : completions) {
+                completion.await(timeout);
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long allocated = allocation.stop();
+
+            long files = sources.stream().mapToLong(Source::files).sum();
+            long bytes = sources.stream().mapToLong(Source::bytes).sum();
+            verifyReceived(receiver.uploads(), files, bytes);
+
+            return new Result(workload.label, files, bytes, seconds,
+                    bytes / 1048576.0 / seconds, files / seconds,
+                    acks.count(), acks.percentileMillis(50), acks.percentileMillis(99),
+                    allocated / 1e6 / seconds, allocation.collections(), allocation.collectionMillis(),
+                    agents.stream().mapToLong(LoopbackAgent::dbWrites).sum());
+        } finally {
+            agents.forEach(LoopbackAgent::close);
+            if (!Boolean.getBoolean("bench.keep")) {
+                delete(dir);
+            }
+        }
+    }
+
+    /* every byte sent landed in the receiver's upload directory */
+    private static void verifyReceived(Path uploads, long files, long bytes) throws IOException {
+        long receivedFiles;
+        long receivedBytes = 0;
+        try (Stream<Path> walk = Files.walk(uploads)) {
+            List<Path> received = walk.filter(Files::isRegularFile).toList();
+            receivedFiles = received.size();
+            for (Path file : received) {
+                receivedBytes += Files.size(file);
+            }
+        }
+        if (receivedFiles != files || receivedBytes != bytes) {
+            throw new IllegalStateException("Receiver has " + receivedFiles + " files of " + receivedBytes
+                    + " bytes, expected " + files + " files of " + bytes + " bytes");
+        }
+    }
+
+    private enum Workload {
+        SPARSE("sparse") {
+            @Override
+            Source generate(Path source, int sender) throws IOException {
+                Path file = Files.createDirectories(source).resolve("sparse.bin");
+                long size = size("bench.sparse-size", "10g");
+                try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                    raf.setLength(size);
+                }
+                return new Source(file, 1, size);
+            }
+
+            @Override
+            Completion initiate(LoopbackAgent sender, Source source, LoopbackAgent receiver) throws Exception {
+                return sendFile(sender, source, receiver);
+            }
+        },
+        SMALL("small") {
+            @Override
+            Source generate(Path source, int sender) throws IOException {
+                int files = Integer.getInteger("bench.small-files", 100_000);
+                long size = size("bench.small-size", "4k");
+                return tree(source, files, new SplittableRandom(1), random -> size);
+            }
+
+            @Override
+            Completion initiate(LoopbackAgent sender, Source source, LoopbackAgent receiver) throws Exception {
+                return sendDirectory(sender, source, receiver);
+            }
+        },
+        MIXED("mixed") {
+            @Override
+            Source generate(Path source, int sender) throws IOException {
+                int files = Integer.getInteger("bench.mixed-files", 1000);
+                // mostly small files, a quarter up to 4 MiB and one in twenty up to 64 MiB
+                return tree(source, files, new SplittableRandom(2), random -> {
+                    int bucket = random.nextInt(100);
+                    if (bucket < 70) return random.nextLong(4 << 10, 64 << 10);
+                    if (bucket < 95) return random.nextLong(64 << 10, 4 << 20);
+                    return random.nextLong(4 << 20, 64 << 20);
+                });
+            }
+
+            @Override
+            Completion initiate(LoopbackAgent sender, Source source, LoopbackAgent receiver) throws Exception {
+                return sendDirectory(sender, source, receiver);
+            }
+        },
+        MULTI("multi") {
+            @Override
+            Source generate(Path source, int sender) throws IOException {
+                int files = Integer.getInteger("bench.multi-files", 50);
+                SplittableRandom random = new SplittableRandom(3);
+                Files.createDirectories(source);
+                long bytes = 0;
+                for (int i = 0; i < files; i++) {
+                    long size = random.nextLong(1 << 20, 32 << 20);
+                    writeRandom(source.resolve("file-" + i + ".bin"), size, random.nextLong());
+                    bytes += size;
+                }
+                return new Source(source, files, bytes);
+            }
+
+            @Override
+            Completion initiate(LoopbackAgent sender, Source source, LoopbackAgent receiver) throws Exception {
+                List<String> filePaths;
+                try (Stream<Path> list = Files.list(source.path())) {
+                    filePaths = list.sorted().map(Path::toString).toList();
+                }
+                InitiateBatchTransferRequest request = new InitiateBatchTransferRequest();
+                request.setFilePaths(filePaths);
+                request.setTargetAgentId(receiver.agentId());
+                request.setTargetIp("127.0.0.1");
+                request.setTargetPort(receiver.port());
+
+                UUID batchTransferId = sender.post("/api/transfers/multi", request, "batchTransferId");
+                return timeout -> sender.awaitBatch(batchTransferId, timeout);
+            }
+        },
+        FAN_IN("fan-in") {
+            @Override
+            int senders() {
+                return Integer.getInteger("bench.senders", 4);
+            }
+
+            @Override
+            Source generate(Path source, int sender) throws IOException {
+                // a different seed per sender, the receiver would complete equal files from its own copy
+                Path file = Files.createDirectories(source).resolve("sender-" + sender + ".bin");
+                long size = size("bench.fan-in-size", "1g");
+                writeRandom(file, size, 4 + sender);
+                return new Source(file, 1, size);
+            }
+
+            @Override
+            Completion initiate(LoopbackAgent sender, Source source, LoopbackAgent receiver) throws Exception {
+                return sendFile(sender, source, receiver);
+            }
+        };
+
+        private final String label;
+
+        Workload(String label) {
+            this.label = label;
+        }
+
+        static Workload of(String label) {
+            for (Workload workload : values()) {
+                if (workload.label.equals(label)) return workload;
+            }
+            throw new IllegalArgumentException("Unknown workload " + label);
+        }
+
+        int senders() {
+            return 1;
+        }
+
+        /* writes the files one sender sends under source */
+        abstract Source generate(Path source, int sender) throws IOException;
+
+        /* asks the sender to send the source to the receiver */
+        abstract Completion initiate(LoopbackAgent sender, Source source, LoopbackAgent receiver) throws Exception;
+    }
+
+    private static Completion sendFile(LoopbackAgent sender, Source source, LoopbackAgent receiver) throws Exception {
+        InitiateTransferRequest request = new InitiateTransferRequest();
+        request.setFilePath(source.path().toString());
+        request.setTargetAgentId(receiver.agentId());
+        request.setTargetIp("127.0.0.1");
+        request.setTargetPort(receiver.port());
+
+        UUID transferId = sender.post("/api/transfers", request, "transferId");
+        return timeout -> sender.awaitTransfer(transferId, timeout);
+    }
+
+    private static Completion sendDirectory(LoopbackAgent sender, Source source, LoopbackAgent receiver)
+            throws Exception {
+        InitiateDirectoryTransferRequest request = new InitiateDirectoryTransferRequest();
+        request.setSourcePath(source.path().toString());
+        request.setTargetAgentId(receiver.agentId());
+        request.setTargetIp("127.0.0.1");
+        request.setTargetPort(receiver.port());
+
+        UUID directoryTransferId = sender.post("/api/transfers/directory", request, "directoryTransferId");
+        return timeout -> sender.awaitDirectory(directoryTransferId, timeout);
+    }
+
+    /* files in directories of 100, ten directories to a group, sized by the given function */
+    private static Source tree(Path root, int files, SplittableRandom random, FileSize fileSize) throws IOException {
+        long bytes = 0;
+        for (int i = 0; i < files; i++) {
+            int d = i / FILES_PER_DIRECTORY;
+            Path directory = Files.createDirectories(root.resolve("group-" + d / 10).resolve("dir-" + d));
+            long size = fileSize.next(random);
+            writeRandom(directory.resolve("file-" + i % FILES_PER_DIRECTORY + ".bin"), size, random.nextLong());
+            bytes += size;
+        }
+        return new Source(root, files, bytes);
+    }
+
+    private static void writeRandom(Path file, long size, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        byte[] bytes = new byte[(int) Math.min(size, WRITE_BUFFER_SIZE)];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < size) {
+                random.nextBytes(bytes);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, (int) Math.min(bytes.length, size - written));
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /* a size property in bytes, with an optional k, m or g suffix */
+    private static long size(String property, String defaultValue) {
+        String value = System.getProperty(property, defaultValue).trim().toLowerCase(Locale.ROOT);
+        long unit = switch (value.charAt(value.length() - 1)) {
+            case 'k' -> 1L << 10;
+            case 'm' -> 1L << 20;
+            case 'g' -> 1L << 30;
+            default -> 1;
+        };
+        return Long.parseLong(unit == 1 ? value : value.substring(0, value.length() - 1)) * unit;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface FileSize {
+        long next(SplittableRandom random);
+    }
+
+    @FunctionalInterface
+    private interface Completion {
+        void await(Duration timeout) throws InterruptedException;
+    }
+
+    /* what one sender sends, a file or a directory */
+    private record Source(Path path, long files, long bytes) {
+    }
+
+    record Result(String workload, long files, long bytes, double seconds, double mibPerSecond,
+                  double filesPerSecond, int acks, double ackP50Millis, double ackP99Millis,
+                  double allocatedMbPerSecond, long collections, long collectionMillis, long dbWrites) {
+    }
+}
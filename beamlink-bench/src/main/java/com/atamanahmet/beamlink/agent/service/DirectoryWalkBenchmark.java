@@ -0,0 +1,75 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The manifest walk DirectorySenderService runs before registering a directory, over a
+ * synthetic tree of small files, 100 per directory, with every tenth directory left empty.
+ * A segment size of 0 hands out the whole manifest at the end of the walk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirectoryWalkBenchmark {
+
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    @Param({"1000", "10000"})
+    public int files;
+
+    @Param({"0", "1000"})
+    public int segmentSize;
+
+    private Path root;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("beamlink-bench-tree");
+        byte[] content = new byte[128];
+
+        for (int d = 0; d * FILES_PER_DIRECTORY < files; d++) {
+            Path directory = Files.createDirectories(root.resolve("group-" + d / 10).resolve("dir-" + d));
+            Files.createDirectories(root.resolve("group-" + d / 10).resolve("empty-" + d));
+            for (int f = 0; f < FILES_PER_DIRECTORY && d * FILES_PER_DIRECTORY + f < files; f++) {
+                Files.write(directory.resolve("file-" + f + ".txt"), content);
+            }
+        }
+    }
+
+    @Benchmark
+    public void walk(Blackhole blackhole) throws InterruptedException {
+        new DirectoryManifestWalker(root, segmentSize).walk(blackhole::consume);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> tree = Files.walk(root)) {
+            for (Path path : tree.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.agent.domain.TransferLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LogService appending a completed transfer and syncing to the nexus with a log of
+ * the given size. LogService keeps transfer_log.json in the working directory, the
+ * benchmark refuses to run where one exists already and deletes the one it wrote.
+ * The log is reset every iteration, appends grow it by the operations of one iteration.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogServiceBenchmark {
+
+    private static final Path LOG_FILE = Paths.get("transfer_log.json");
+
+    @Param({"100", "10000"})
+    public int logSize;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    private LogService logService;
+
+    @Setup(Level.Trial)
+    public void checkWorkingDirectory() {
+        if (Files.exists(LOG_FILE)) {
+            throw new IllegalStateException(LOG_FILE.toAbsolutePath()
+                    + " exists, run the benchmarks outside an agent's working directory");
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        List<TransferLog> logs = new ArrayList<>(logSize);
+        for (int i = 0; i < logSize; i++) {
+            TransferLog log = entry();
+            log.setId(UUID.randomUUID().toString());
+            logs.add(log);
+        }
+        objectMapper.writeValue(LOG_FILE.toFile(), logs);
+        logService = new LogService(objectMapper);
+    }
+
+    @Benchmark
+    public void append() {
+        logService.logTransfer(entry());
+    }
+
+    /* an ack from the nexus for an entry already synced, the log is rewritten at the same size */
+    @Benchmark
+    public void sync() {
+        logService.markAsSynced(List.of("synced-earlier"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(LOG_FILE);
+    }
+
+    private static TransferLog entry() {
+        TransferLog log = new TransferLog();
+        log.setFromAgentId(UUID.randomUUID());
+        log.setFromAgentName("agent-source");
+        log.setToAgentId(UUID.randomUUID());
+        log.setToAgentName("agent-target");
+        log.setFilename("report-q1.csv");
+        log.setFileSize(1_048_576L);
+        return log;
+    }
+}
@@ -0,0 +1,82 @@
+package com.atamanahmet.beamlink.agent.service;
+
+import com.atamanahmet.beamlink.common.storage.PartialFileWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunk writes into a preallocated partial file in each write mode ChunkReceiverService
+ * can be configured with. Chunks land one after the other and wrap around the file.
+ * The file is created under -Dbench.dir, java.io.tmpdir by default, DIRECT needs a
+ * file system that supports O_DIRECT and fails on tmpfs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartialFileWriterBenchmark {
+
+    private static final long FILE_SIZE = 256L * 1024 * 1024;
+
+    @Param({"CHANNEL", "MAPPED", "DIRECT"})
+    public PartialFileWriter.Mode mode;
+
+    @Param({"1048576", "8388608"})
+    public int chunkSize;
+
+    private Path directory;
+    private PartialFileWriter writer;
+    private byte[] chunk;
+    private long offset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory(
+                Paths.get(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir"))), "beamlink-bench");
+        Path partialFile = directory.resolve("bench.part");
+        try (RandomAccessFile raf = new RandomAccessFile(partialFile.toFile(), "rw")) {
+            raf.setLength(FILE_SIZE);
+        }
+
+        writer = PartialFileWriter.open(mode, partialFile, false);
+
+        chunk = new byte[chunkSize];
+        new Random(42).nextBytes(chunk);
+    }
+
+    @Benchmark
+    public long writeChunk() throws IOException {
+        long at = offset;
+        offset = (offset + chunkSize) % FILE_SIZE;
+        return writer.write(at, new ByteArrayInputStream(chunk));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        writer.close();
+        Files.deleteIfExists(directory.resolve("bench.part"));
+        Files.deleteIfExists(directory);
+    }
+}
@@ -0,0 +1,58 @@
+package com.atamanahmet.beamlink.nexus.security;
+
+import com.atamanahmet.beamlink.nexus.config.JwtConfig;
+import com.atamanahmet.beamlink.nexus.security.enums.TokenType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token checks the nexus runs on every authenticated agent request,
+ * signature verification and the decodes that read the agent id and token type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AgentTokenServiceBenchmark {
+
+    private AgentTokenService tokenService;
+    private String authToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        JwtConfig jwtConfig = new JwtConfig();
+        jwtConfig.setSecret("beamlink-bench-secret-beamlink-bench-secret-beamlink-bench-secret");
+        jwtConfig.setAgentAuthExpirationDays(30);
+        tokenService = new AgentTokenService(jwtConfig);
+        authToken = tokenService.generateAuthToken(UUID.randomUUID());
+    }
+
+    @Benchmark
+    public boolean validateToken() {
+        return tokenService.validateToken(authToken);
+    }
+
+    @Benchmark
+    public UUID extractAgentId() {
+        return tokenService.extractAgentId(authToken);
+    }
+
+    @Benchmark
+    public TokenType extractTokenType() {
+        return tokenService.extractTokenType(authToken);
+    }
+}
@@ -0,0 +1,54 @@
+package com.atamanahmet.beamlink.common.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Positional writes through the page cache, the default and the fallback of the other modes.
+ */
+class ChannelPartialFileWriter implements PartialFileWriter {
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    /* one reusable write buffer per request thread */
+    private static final ThreadLocal<byte[]> WRITE_BUFFERS =
+            ThreadLocal.withInitial(() -> new byte[WRITE_BUFFER_SIZE]);
+
+    private final FileChannel channel;
+
+    ChannelPartialFileWriter(Path partialFile) throws IOException {
+        this.channel = FileChannel.open(partialFile, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public long write(long offset, InputStream chunkStream) throws IOException {
+        byte[] buffer = WRITE_BUFFERS.get();
+        long position = offset;
+
+        int filled;
+        while ((filled = PartialFileWriter.fill(chunkStream, buffer, buffer.length)) > 0) {
+            position += PartialFileWriter.writeFully(channel, ByteBuffer.wrap(buffer, 0, filled), position);
+        }
+        return position - offset;
+    }
+
+    @Override
+    public FileChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public void force() throws IOException {
+        // the file is preallocated, its data is all that needs to reach the disk
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,125 @@
+package com.atamanahmet.beamlink.common.storage;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the block-aligned middle of each chunk with O_DIRECT in BUFFER_SIZE writes,
+ * a huge file received this way does not evict the page cache. The unaligned head and
+ * tail of a chunk go through the page cache, they are never shared with a direct write
+ * of another chunk since direct writes only cover blocks wholly inside their own chunk.
+ * Opening fails on file systems without O_DIRECT, e.g. tmpfs.
+ */
+class DirectPartialFileWriter implements PartialFileWriter {
+
+    private static final int BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    /* one reusable aligned buffer per request thread, reallocated for a larger block size */
+    private static final ThreadLocal<ByteBuffer> ALIGNED_BUFFERS = new ThreadLocal<>();
+
+    /* one reusable read buffer per request thread */
+    private static final ThreadLocal<byte[]> READ_BUFFERS =
+            ThreadLocal.withInitial(() -> new byte[READ_BUFFER_SIZE]);
+
+    private final FileChannel channel;
+    private final FileChannel direct;
+    private final int blockSize;
+
+    DirectPartialFileWriter(Path partialFile) throws IOException {
+        this.channel = FileChannel.open(partialFile, StandardOpenOption.WRITE);
+        try {
+            this.blockSize = (int) Files.getFileStore(partialFile).getBlockSize();
+            if (Integer.bitCount(blockSize) != 1 || blockSize > READ_BUFFER_SIZE) {
+                throw new IOException("Unsupported block size for direct writes: " + blockSize);
+            }
+            this.direct = FileChannel.open(partialFile, StandardOpenOption.WRITE, ExtendedOpenOption.DIRECT);
+        } catch (IOException | UnsupportedOperationException e) {
+            channel.close();
+            throw e instanceof IOException io ? io : new IOException(e);
+        }
+    }
+
+    @Override
+    public long write(long offset, InputStream chunkStream) throws IOException {
+        byte[] heap = READ_BUFFERS.get();
+        long position = offset;
+
+        // up to the next block boundary through the page cache
+        int head = (int) ((blockSize - offset % blockSize) % blockSize);
+        if (head > 0) {
+            int n = PartialFileWriter.fill(chunkStream, heap, Math.min(head, heap.length));
+            position += PartialFileWriter.writeFully(channel, ByteBuffer.wrap(heap, 0, n), position);
+            if (n < head) return position - offset;
+        }
+
+        ByteBuffer aligned = alignedBuffer();
+        while (true) {
+            aligned.clear();
+            int filled = fill(chunkStream, aligned, heap);
+            if (filled == 0) break;
+
+            int whole = filled - filled % blockSize;
+            aligned.flip();
+            if (whole > 0) {
+                aligned.limit(whole);
+                position += PartialFileWriter.writeFully(direct, aligned, position);
+            }
+            if (filled > whole) {
+                // the stream ended inside a block, the tail goes through the page cache
+                aligned.limit(filled);
+                position += PartialFileWriter.writeFully(channel, aligned, position);
+            }
+            if (filled < aligned.capacity()) break;
+        }
+        return position - offset;
+    }
+
+    @Override
+    public FileChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public void force() throws IOException {
+        // the file is preallocated, its data is all that needs to reach the disk
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            direct.close();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer alignedBuffer() {
+        ByteBuffer buffer = ALIGNED_BUFFERS.get();
+        if (buffer == null || buffer.alignmentOffset(0, blockSize) != 0) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE + blockSize).alignedSlice(blockSize);
+            buffer.limit(BUFFER_SIZE);
+            buffer = buffer.slice();
+            ALIGNED_BUFFERS.set(buffer);
+        }
+        return buffer;
+    }
+
+    /* reads until the aligned buffer is full or the stream ends */
+    private static int fill(InputStream in, ByteBuffer target, byte[] heap) throws IOException {
+        while (target.hasRemaining()) {
+            int n = PartialFileWriter.fill(in, heap, Math.min(heap.length, target.remaining()));
+            if (n == 0) break;
+            target.put(heap, 0, n);
+        }
+        return target.position();
+    }
+}
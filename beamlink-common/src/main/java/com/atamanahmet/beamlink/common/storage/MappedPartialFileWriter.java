@@ -0,0 +1,102 @@
+package com.atamanahmet.beamlink.common.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Copies chunks into memory-mapped windows of the preallocated partial file, the write
+ * needs no system call per buffer and dirty pages are written back by the kernel.
+ * A window covers at most WINDOW_SIZE bytes from the chunk offset and is released by
+ * the garbage collector. Bytes past the allocated size are written through the channel.
+ * When the file is forced, windows are kept once written until the next force.
+ * Windows refuses to move or delete a file while any part of it is mapped, there a completed
+ * file can stay locked after close until its windows are collected, so MAPPED is opt-in only.
+ */
+class MappedPartialFileWriter implements PartialFileWriter {
+
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    /* one reusable read buffer per request thread */
+    private static final ThreadLocal<byte[]> READ_BUFFERS =
+            ThreadLocal.withInitial(() -> new byte[READ_BUFFER_SIZE]);
+
+    private final FileChannel channel;
+
+    /* windows written since the last force, null when the file is never forced */
+    private final Queue<MappedByteBuffer> unforced;
+
+    MappedPartialFileWriter(Path partialFile, boolean forced) throws IOException {
+        this.unforced = forced ? new ConcurrentLinkedQueue<>() : null;
+        // a read-write mapping needs the channel readable as well
+        this.channel = FileChannel.open(partialFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public long write(long offset, InputStream chunkStream) throws IOException {
+        byte[] buffer = READ_BUFFERS.get();
+        long position = offset;
+        MappedByteBuffer window = null;
+        long windowStart = 0;
+
+        int filled;
+        while ((filled = PartialFileWriter.fill(chunkStream, buffer, buffer.length)) > 0) {
+            int done = 0;
+            while (done < filled) {
+                if (window == null || position >= windowStart + window.capacity()) {
+                    release(window);
+                    window = null;
+                    long size = channel.size();
+                    if (position >= size) {
+                        position += PartialFileWriter.writeFully(channel,
+                                ByteBuffer.wrap(buffer, done, filled - done), position);
+                        done = filled;
+                        continue;
+                    }
+                    windowStart = position;
+                    window = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                            Math.min(WINDOW_SIZE, size - position));
+                }
+                int n = (int) Math.min(filled - done, windowStart + window.capacity() - position);
+                window.put((int) (position - windowStart), buffer, done, n);
+                position += n;
+                done += n;
+            }
+        }
+        release(window);
+        return position - offset;
+    }
+
+    @Override
+    public void force() throws IOException {
+        MappedByteBuffer window;
+        while (unforced != null && (window = unforced.poll()) != null) {
+            window.force();
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public FileChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* queued only after its last put, a force never misses bytes of a returned write */
+    private void release(MappedByteBuffer window) {
+        if (window != null && unforced != null) {
+            unforced.add(window);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.atamanahmet.beamlink.common.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * Writes chunks into the open partial file of one inbound transfer.
+ * The PartialFileChannels of the agent and of Nexus create one per transfer in the mode
+ * configured for the upload directory.
+ * Writes are positional, concurrent chunks of the same transfer can be written in parallel.
+ */
+public interface PartialFileWriter extends Closeable {
+
+    /**
+     * Opens the preallocated partial file for writing in the given mode, forced tells
+     * whether the file will be forced to disk. Fails when the mode cannot be used for the file.
+     */
+    static PartialFileWriter open(Mode mode, Path partialFile, boolean forced) throws IOException {
+        return switch (mode) {
+            case CHANNEL -> new ChannelPartialFileWriter(partialFile);
+            case MAPPED -> new MappedPartialFileWriter(partialFile, forced);
+            case DIRECT -> new DirectPartialFileWriter(partialFile);
+        };
+    }
+
+    /**
+     * Streams the chunk into the file at the given offset.
+     * Returns the number of bytes written.
+     */
+    long write(long offset, InputStream chunkStream) throws IOException;
+
+    /* the channel writes through the page cache with, delta copies transfer into it */
+    FileChannel channel();
+
+    /**
+     * Forces every write that returned before this call to the storage device.
+     * Writes still running may or may not be included.
+     */
+    void force() throws IOException;
+
+    enum Mode {
+        CHANNEL,        // positional FileChannel writes through the page cache
+        MAPPED,         // copies into memory-mapped windows of the file, for fast local SSDs
+        DIRECT          // large aligned writes bypassing the page cache, for huge files
+    }
+
+    /* reads until length bytes are in the buffer or the stream ends, so writes stay large */
+    static int fill(InputStream in, byte[] buffer, int length) throws IOException {
+        int filled = 0;
+        int read;
+        while (filled < length
+                && (read = in.read(buffer, filled, length - filled)) != -1) {
+            filled += read;
+        }
+        return filled;
+    }
+
+    /* a positional write of the whole buffer, returns its length */
+    static int writeFully(FileChannel channel, ByteBuffer src, long position) throws IOException {
+        int length = src.remaining();
+        long at = position;
+        while (src.hasRemaining()) {
+            at += channel.write(src, at);
+        }
+        return length;
+    }
+}
@@ -19,9 +19,67 @@ public class NexusConfig {
     @Value("${nexus.upload.partial-directory:./data/partial}")
     private String partialDirectory;
 
+    /* CHANNEL, MAPPED for fast local SSDs or DIRECT to keep huge files out of the page cache.
+       MAPPED files are unmapped by the GC, on Windows a completed file can stay locked until then */
+    @Value("${nexus.upload.write-mode:CHANNEL}")
+    private String writeMode;
+
+    /* files smaller than this are always written through the page cache */
+    @Value("${nexus.upload.write-mode-min-size:0}")
+    private long writeModeMinSize;
+
     @Value("${nexus.transfer.expiry-hours}")
     private long transferExpiryHours;
 
+    /* how far ahead of confirmedOffset the receiver accepts out of order chunks */
+    @Value("${nexus.transfer.receive-window-bytes:67108864}")
+    private long receiveWindowBytes;
+
+    /* confirmedOffset is written to the DB after this many bytes or millis, whichever comes first */
+    @Value("${nexus.transfer.checkpoint-interval-bytes:16777216}")
+    private long checkpointIntervalBytes;
+
+    @Value("${nexus.transfer.checkpoint-interval-ms:1000}")
+    private long checkpointIntervalMs;
+
+    /* NONE, GROUP_COMMIT or STRICT, how received bytes are forced to disk before their offset is persisted */
+    @Value("${nexus.transfer.durability:GROUP_COMMIT}")
+    private String durability;
+
+    /* under GROUP_COMMIT the partial file is forced after this many bytes or millis, whichever comes first */
+    @Value("${nexus.transfer.fsync-interval-bytes:67108864}")
+    private long fsyncIntervalBytes;
+
+    @Value("${nexus.transfer.fsync-interval-ms:1000}")
+    private long fsyncIntervalMs;
+
+    /* chunks are sent with their CRC32C, the receiver verifies it before confirming the chunk */
+    @Value("${nexus.transfer.checksums:true}")
+    private boolean checksums;
+
+    /* size of the first chunk to an agent, later chunks are sized from measured throughput and ack time */
+    @Value("${nexus.transfer.chunk-size-initial:8388608}")
+    private long chunkSizeInitial;
+
+    @Value("${nexus.transfer.chunk-size-min:262144}")
+    private long chunkSizeMin;
+
+    /* 0 sends every chunk at the initial size */
+    @Value("${nexus.transfer.chunk-size-max:16777216}")
+    private long chunkSizeMax;
+
+    /* how long one chunk should take to send and ack */
+    @Value("${nexus.transfer.chunk-target-ms:1000}")
+    private long chunkTargetMs;
+
+    /* HTTP_2 or HTTP_1_1 for calls to agents, HTTP_2 falls back when the agent does not offer it */
+    @Value("${nexus.http.version:HTTP_2}")
+    private String httpVersion;
+
+    /* time to open a connection to an agent */
+    @Value("${nexus.http.connect-timeout-ms:5000}")
+    private long httpConnectTimeoutMs;
+
     @Value("${server.port}")
     private int nexusPort;
 
@@ -0,0 +1,27 @@
+package com.atamanahmet.beamlink.nexus.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * The one JDK HttpClient for calls to agents, it keeps connections
+ * to each agent open between requests instead of opening one per transfer.
+ */
+@Configuration
+public class PeerHttpClientConfig {
+
+    @Bean
+    public HttpClient peerHttpClient(NexusConfig config) {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.valueOf(config.getHttpVersion()))
+                .followRedirects(HttpClient.Redirect.NEVER);
+
+        if (config.getHttpConnectTimeoutMs() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.getHttpConnectTimeoutMs()));
+        }
+        return builder.build();
+    }
+}
@@ -1,6 +1,8 @@
 package com.atamanahmet.beamlink.nexus.controller;
 
 import com.atamanahmet.beamlink.nexus.domain.Agent;
+import com.atamanahmet.beamlink.nexus.dto.BandwidthLimits;
+import com.atamanahmet.beamlink.nexus.service.AgentPushService;
 import com.atamanahmet.beamlink.nexus.service.AgentService;
 import com.atamanahmet.beamlink.nexus.security.DynamicCorsRegistry;
 
@@ -20,6 +22,7 @@ public class NexusAgentController {
 
     private final AgentService agentService;
     private final DynamicCorsRegistry corsRegistry;
+    private final AgentPushService agentPushService;
 
     @GetMapping
     public ResponseEntity<List<Agent>> getAll() {
@@ -100,6 +103,22 @@ public class NexusAgentController {
                 .build();
     }
 
+    /**
+     * Pushes bandwidth limits to a connected agent, they replace all its current limits
+     */
+    @PutMapping("/{id}/bandwidth")
+    public ResponseEntity<HttpStatus> pushBandwidthLimits(@PathVariable UUID id,
+                                                          @RequestBody BandwidthLimits limits) {
+
+        Agent agent = agentService.findByAgentId(id);
+
+        boolean pushed = agentPushService.pushBandwidthLimits(agent, limits);
+
+        return ResponseEntity
+                .status(pushed ? HttpStatus.OK : HttpStatus.CONFLICT)
+                .build();
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<HttpStatus> delete(@PathVariable UUID id) {
 
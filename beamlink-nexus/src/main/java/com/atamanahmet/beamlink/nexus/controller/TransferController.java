@@ -5,8 +5,11 @@ import com.atamanahmet.beamlink.nexus.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.nexus.dto.*;
 import com.atamanahmet.beamlink.nexus.exception.FileTransferException;
 import com.atamanahmet.beamlink.nexus.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.nexus.service.AdaptiveChunkSizer;
 import com.atamanahmet.beamlink.nexus.service.ChunkReceiverService;
+import com.atamanahmet.beamlink.nexus.service.TransferProgressRegistry;
 import com.atamanahmet.beamlink.nexus.service.TransferSenderService;
+import com.atamanahmet.beamlink.nexus.util.ChecksumFormat;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -30,6 +33,8 @@ public class TransferController {
     private final TransferSenderService senderService;
     private final ChunkReceiverService receiverService;
     private final FileTransferRepository transferRepository;
+    private final TransferProgressRegistry progressRegistry;
+    private final AdaptiveChunkSizer chunkSizer;
 
     /**
      * User initiates a transfer from the UI.
@@ -62,6 +67,17 @@ public class TransferController {
                 .body(toResponse(transfer));
     }
 
+    /**
+     * Chunk size currently chosen per agent and the measurements it was chosen from.
+     */
+    @GetMapping("/chunk-sizing")
+    public ResponseEntity<List<ChunkSizingStats>> getChunkSizing() {
+
+        return ResponseEntity
+                .status(HttpStatus.OK)
+                .body(chunkSizer.stats());
+    }
+
     @GetMapping
     public ResponseEntity<List<TransferStatusResponse>> getAll() {
         List<TransferStatusResponse> transfers = transferRepository
@@ -103,7 +119,7 @@ public class TransferController {
 
     /**
      * Cancel an in progress transfer.
-     * Sender loop checks status before each chunk and stops on CANCELLED.
+     * The sender loop is signalled and stops before its next chunk.
      */
     @DeleteMapping("/{transferId}")
     public ResponseEntity<Void> cancel(@PathVariable UUID transferId) {
@@ -113,6 +129,7 @@ public class TransferController {
                     || transfer.getStatus() == TransferStatus.PAUSED) {
                 transfer.setStatus(TransferStatus.CANCELLED);
                 transferRepository.save(transfer);
+                progressRegistry.signal(transferId, TransferStatus.CANCELLED);
                 log.info("Transfer cancelled by user: {}", transferId);
             }
         });
@@ -177,6 +194,7 @@ public class TransferController {
     public ResponseEntity<ChunkAckResponse> receiveChunk(
             @PathVariable UUID transferId,
             @RequestHeader("Content-Range") String contentRange,
+            @RequestHeader(value = ChecksumFormat.CHUNK_HEADER, required = false) String checksum,
             HttpServletRequest request) throws IOException {
 
         long offset = parseOffset(contentRange);
@@ -184,7 +202,8 @@ public class TransferController {
         ChunkAckResponse ack = receiverService.receiveChunk(
                 transferId,
                 offset,
-                request.getInputStream()   // raw stream
+                request.getInputStream(),   // raw stream
+                parseChecksum(checksum)
         );
 
         return ResponseEntity
@@ -201,6 +220,7 @@ public class TransferController {
         FileTransfer transfer = transferRepository.findByTransferId(transferId)
                 .orElseThrow(() -> new FileTransferException(
                         "Transfer not found: " + transferId, null));
+        receiverService.applyLiveOffsets(transfer);
 
         return ResponseEntity
                 .status(HttpStatus.OK)
@@ -222,6 +242,17 @@ public class TransferController {
         }
     }
 
+    /* null when the chunk came without a checksum */
+    private Long parseChecksum(String checksum) {
+        if (checksum == null) return null;
+        try {
+            return ChecksumFormat.parse(checksum);
+        } catch (IllegalArgumentException e) {
+            throw new FileTransferException(
+                    "Invalid " + ChecksumFormat.CHUNK_HEADER + " header: " + checksum, e);
+        }
+    }
+
     // Mapper for transfer
     private TransferStatusResponse toResponse(FileTransfer t) {
         return new TransferStatusResponse(
@@ -0,0 +1,17 @@
+package com.atamanahmet.beamlink.nexus.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BandwidthLimits {
+    private long globalBytesPerSecond;                              // 0 for no limit
+    private Map<String, Long> peerBytesPerSecond = new HashMap<>();  // keyed by ip:port, 0 or missing for no limit
+    private double backgroundShare;                                 // of the global limit, for directory and batch sends while single files are sent
+}
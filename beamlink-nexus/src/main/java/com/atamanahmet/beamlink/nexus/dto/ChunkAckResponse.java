@@ -1,21 +1,37 @@
 package com.atamanahmet.beamlink.nexus.dto;
 
+import com.atamanahmet.beamlink.nexus.domain.enums.DurabilityPolicy;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Getter;
 
+/**
+ * confirmedOffset is what the receiver has written, durableOffset what it has forced to disk
+ * under its durability policy. After a receiver crash resume starts from durableOffset.
+ */
 @Getter
 public class ChunkAckResponse {
 
     private final long confirmedOffset;
     private final boolean complete;
+    private final long durableOffset;
+    private final DurabilityPolicy durability;
 
     @JsonCreator
     public ChunkAckResponse(
             @JsonProperty("confirmedOffset") long confirmedOffset,
-            @JsonProperty("complete") boolean complete) {
+            @JsonProperty("complete") boolean complete,
+            @JsonProperty("durableOffset") long durableOffset,
+            @JsonProperty("durability") DurabilityPolicy durability) {
 
         this.confirmedOffset = confirmedOffset;
         this.complete = complete;
+        this.durableOffset = durableOffset;
+        this.durability = durability;
     }
-}
\ No newline at end of file
+
+    /* an ack with every confirmed byte on disk */
+    public ChunkAckResponse(long confirmedOffset, boolean complete) {
+        this(confirmedOffset, complete, confirmedOffset, DurabilityPolicy.STRICT);
+    }
+}
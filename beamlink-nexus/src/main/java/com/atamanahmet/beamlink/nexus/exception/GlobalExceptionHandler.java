@@ -46,6 +46,14 @@ public class GlobalExceptionHandler {
                 .body(Map.of("success", false, "error", "Insufficient disk space", "message", ex.getMessage()));
     }
 
+    @ExceptionHandler(ChunkChecksumException.class)
+    public ResponseEntity<Map<String, Object>> handleChunkChecksum(ChunkChecksumException ex) {
+        log.warn("Chunk rejected: {}", ex.getMessage());
+        return ResponseEntity
+                .status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body(Map.of("success", false, "error", "Checksum mismatch", "message", ex.getMessage()));
+    }
+
     @ExceptionHandler(FileTransferException.class)
     public ResponseEntity<Map<String, Object>> handleFileTransfer(FileTransferException ex) {
         log.error("File transfer failed: {}", ex.getMessage(), ex);
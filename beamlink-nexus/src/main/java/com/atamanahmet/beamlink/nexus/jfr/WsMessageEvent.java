@@ -0,0 +1,28 @@
+package com.atamanahmet.beamlink.nexus.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One WebSocket message from an agent, from parsing it to its handler returning.
+ */
+@Name("beamlink.WsMessage")
+@Label("WebSocket Message")
+@Category({"Beamlink", "Control Plane"})
+@Description("One WebSocket message from an agent handled by the nexus")
+public class WsMessageEvent extends Event {
+
+    @Label("Agent Id")
+    public String agentId;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Payload Size")
+    @DataAmount
+    public long payloadSize;
+}
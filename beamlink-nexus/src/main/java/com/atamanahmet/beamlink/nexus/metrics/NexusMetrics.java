@@ -0,0 +1,49 @@
+package com.atamanahmet.beamlink.nexus.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Control plane meters, exported with the rest on /actuator/prometheus.
+ * Repository calls are timed by Spring Boot as spring.data.repository.invocations.
+ */
+@Component
+public class NexusMetrics {
+
+    private final MeterRegistry registry;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final DistributionSummary logSyncBatch;
+
+    public NexusMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("beamlink.ws.sessions", sessions, AtomicInteger::get)
+                .description("Agents connected over WebSocket")
+                .register(registry);
+        this.logSyncBatch = DistributionSummary.builder("beamlink.log.sync.batch")
+                .description("Transfer logs in one sync from an agent")
+                .baseUnit("logs")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void sessions(int open) {
+        sessions.set(open);
+    }
+
+    public void messageReceived(String type) {
+        Counter.builder("beamlink.ws.messages")
+                .description("WebSocket messages received from agents")
+                .tag("type", type)
+                .register(registry)
+                .increment();
+    }
+
+    public void logSynced(int logs) {
+        logSyncBatch.record(logs);
+    }
+}
@@ -70,6 +70,12 @@ public class SecurityConfig {
             "/api/upload"
     };
 
+    /* scraped by Prometheus on the LAN */
+    private static final String[] MONITORING = {
+            "/actuator/health",
+            "/actuator/prometheus"
+    };
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
@@ -83,6 +89,7 @@ public class SecurityConfig {
                         .requestMatchers(PUBLIC_ASSETS).permitAll()
                         .requestMatchers(UNAUTHED_AGENT).permitAll()
                         .requestMatchers(AGENT_TO_AGENT).permitAll()
+                        .requestMatchers(MONITORING).permitAll()
                         .requestMatchers("/api/nexus/auth/login").permitAll()
                         .requestMatchers(UPLOAD).hasAnyRole(AGENT, AGENT_PUBLIC)
                         .requestMatchers("/api/nexus/peers/**").hasAnyRole(AGENT, AGENT_PUBLIC, ADMIN)
@@ -0,0 +1,168 @@
+package com.atamanahmet.beamlink.nexus.service;
+
+import com.atamanahmet.beamlink.nexus.config.NexusConfig;
+import com.atamanahmet.beamlink.nexus.dto.ChunkSizingStats;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the size of the next chunk sent to a peer from what recent chunks to it measured.
+ * Ack times of recent chunks are fitted to a fixed per-chunk round trip plus size over
+ * throughput, newer chunks weighing more. The next chunk aims to take chunk-target-ms,
+ * or RTT_MULTIPLE round trips when the link is slow to answer, so fast links get chunks
+ * that amortise the per-request overhead and slow ones get chunks that are cheap to retry.
+ * A failed chunk halves the size and raises the failure rate, which shrinks later targets.
+ * Sizes stay within chunk-size-min and chunk-size-max, with no max the initial size is fixed.
+ * State is in memory per peer and lost on restart.
+ */
+@Component
+@RequiredArgsConstructor
+public class AdaptiveChunkSizer {
+
+    /* used when no initial size is configured */
+    static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    /* a chunk should take at least this many round trips, the wait for the ack stays a small share */
+    private static final int RTT_MULTIPLE = 8;
+
+    /* weight of the newest sample in the failure rate */
+    private static final double SMOOTHING = 0.25;
+
+    /* weight left to older chunks in the fit each time a chunk is acked */
+    private static final double DECAY = 0.75;
+
+    private final NexusConfig nexusConfig;
+
+    private final Map<String, PeerSizing> peers = new ConcurrentHashMap<>();
+
+    /**
+     * Size of the next chunk to the peer, the initial size until its first ack
+     */
+    public long nextChunkSize(String peer) {
+        if (!isAdaptive()) return initialSize();
+        return sizing(peer).chunkSize();
+    }
+
+    /* a chunk of the given size was acked elapsedNanos after it was sent */
+    public void acked(String peer, long bytes, long elapsedNanos) {
+        if (!isAdaptive() || bytes <= 0 || elapsedNanos <= 0) return;
+        sizing(peer).acked(bytes, elapsedNanos);
+    }
+
+    /* one attempt of a chunk failed or made no progress */
+    public void failed(String peer) {
+        if (!isAdaptive()) return;
+        sizing(peer).failed();
+    }
+
+    /**
+     * Current size and measurements of every peer chunks were sent to
+     */
+    public List<ChunkSizingStats> stats() {
+        return peers.entrySet().stream()
+                .map(entry -> entry.getValue().stats(entry.getKey()))
+                .sorted(Comparator.comparing(ChunkSizingStats::getPeer))
+                .toList();
+    }
+
+    private PeerSizing sizing(String peer) {
+        return peers.computeIfAbsent(peer, p -> new PeerSizing(initialSize()));
+    }
+
+    private boolean isAdaptive() {
+        return nexusConfig.getChunkSizeMax() > 0;
+    }
+
+    private long initialSize() {
+        long initial = nexusConfig.getChunkSizeInitial() > 0
+                ? nexusConfig.getChunkSizeInitial()
+                : DEFAULT_CHUNK_SIZE;
+        return isAdaptive() ? clamp(initial) : initial;
+    }
+
+    private long clamp(long size) {
+        long min = Math.max(1, nexusConfig.getChunkSizeMin());
+        long max = Math.max(min, nexusConfig.getChunkSizeMax());
+        return Math.max(min, Math.min(max, size));
+    }
+
+    private long targetNanos() {
+        long targetMs = nexusConfig.getChunkTargetMs() > 0 ? nexusConfig.getChunkTargetMs() : 1000;
+        return TimeUnit.MILLISECONDS.toNanos(targetMs);
+    }
+
+    private class PeerSizing {
+        private long chunkSize;
+        private double bytesPerSecond;
+        private double rttNanos;
+
+        /* decayed sums of the fit, x is chunk bytes and y ack nanos */
+        private double sw, sx, sy, sxx, sxy;
+
+        private double failureRate;
+        private long acks;
+        private long failures;
+
+        PeerSizing(long chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        synchronized long chunkSize() {
+            return chunkSize;
+        }
+
+        synchronized void acked(long bytes, long elapsedNanos) {
+            fit(bytes, elapsedNanos);
+            failureRate = smooth(failureRate, 0);
+            acks++;
+
+            double duration = Math.max(targetNanos(), RTT_MULTIPLE * rttNanos);
+            long target = (long) (bytesPerSecond * (duration - rttNanos) / 1e9 * (1 - failureRate));
+
+            // moves at most a factor of two per ack, one slow chunk cannot collapse the size
+            chunkSize = clamp(Math.max(chunkSize / 2, Math.min(chunkSize * 2, target)));
+        }
+
+        /* least squares of ack time over chunk size, the slope is 1 / throughput and the intercept the round trip */
+        private void fit(double x, double y) {
+            sw = sw * DECAY + 1;
+            sx = sx * DECAY + x;
+            sy = sy * DECAY + y;
+            sxx = sxx * DECAY + x * x;
+            sxy = sxy * DECAY + x * y;
+
+            double spread = sw * sxx - sx * sx;
+            double slope = spread > 0.01 * sw * sxx ? (sw * sxy - sx * sy) / spread : 0;
+
+            if (slope > 0) {
+                bytesPerSecond = 1e9 / slope;
+                rttNanos = Math.max(0, (sy - slope * sx) / sw);
+            } else {
+                // sizes too alike to separate the two, the last round trip is kept
+                rttNanos = Math.min(rttNanos, 0.5 * sy / sw);
+                bytesPerSecond = sx * 1e9 / (sy - sw * rttNanos);
+            }
+        }
+
+        synchronized void failed() {
+            failureRate = smooth(failureRate, 1);
+            failures++;
+            chunkSize = clamp(chunkSize / 2);
+        }
+
+        synchronized ChunkSizingStats stats(String peer) {
+            return new ChunkSizingStats(peer, chunkSize, (long) bytesPerSecond,
+                    TimeUnit.NANOSECONDS.toMillis((long) rttNanos), failureRate, acks, failures);
+        }
+
+        private double smooth(double average, double sample) {
+            return average + SMOOTHING * (sample - average);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.atamanahmet.beamlink.nexus.domain.Agent;
 import com.atamanahmet.beamlink.nexus.domain.enums.AgentState;
 import com.atamanahmet.beamlink.nexus.dto.AgentRenameResponse;
 import com.atamanahmet.beamlink.nexus.dto.ApprovalPushRequest;
+import com.atamanahmet.beamlink.nexus.dto.BandwidthLimits;
 import com.atamanahmet.beamlink.nexus.event.AgentApprovedEvent;
 import com.atamanahmet.beamlink.nexus.repository.AgentRepository;
 import com.atamanahmet.beamlink.nexus.security.AgentTokenService;
@@ -77,6 +78,22 @@ public class AgentPushService {
         }
     }
 
+    /**
+     * Replaces the agent's bandwidth limits. Only over WS, the agent keeps them in memory,
+     * returns false when the agent is not connected.
+     */
+    public boolean pushBandwidthLimits(Agent agent, BandwidthLimits limits) {
+        if (!webSocketHandler.isConnected(agent.getId())) {
+            log.warn("Agent {} not connected, bandwidth limits not pushed", agent.getId());
+            return false;
+        }
+        webSocketHandler.sendMessage(agent.getId(), Map.of(
+                "type", "bandwidth_limits",
+                "payload", limits));
+        log.info("Bandwidth limits pushed via WS to agent {}", agent.getId());
+        return true;
+    }
+
     private void pushViaWebSocket(Agent agent, ApprovalPushRequest payload) {
         try {
             webSocketHandler.sendMessage(agent.getId(), Map.of(
@@ -2,8 +2,10 @@ package com.atamanahmet.beamlink.nexus.service;
 
 import com.atamanahmet.beamlink.nexus.config.NexusConfig;
 import com.atamanahmet.beamlink.nexus.domain.FileTransfer;
+import com.atamanahmet.beamlink.nexus.domain.enums.DurabilityPolicy;
 import com.atamanahmet.beamlink.nexus.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.nexus.dto.ChunkAckResponse;
+import com.atamanahmet.beamlink.nexus.exception.ChunkChecksumException;
 import com.atamanahmet.beamlink.nexus.exception.FileTransferException;
 import com.atamanahmet.beamlink.nexus.repository.FileTransferRepository;
 import com.atamanahmet.beamlink.nexus.util.PathNormalizer;
@@ -20,19 +22,28 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
 
 @Service
 @RequiredArgsConstructor
 public class ChunkReceiverService {
 
     private static final Logger log = LoggerFactory.getLogger(ChunkReceiverService.class);
-    private static final int BUFFER_SIZE = 8192;
 
     private final FileTransferRepository transferRepository;
     private final NexusConfig nexusConfig;
     private final TransferLogService transferLogService;
     private final AgentService agentService;
+    private final PartialFileChannels partialFileChannels;
+
+    /* live receive windows, keyed by transferId */
+    private final Map<UUID, ReceiveWindow> receiveWindows = new ConcurrentHashMap<>();
 
     /**
      * Called by target agent when source initiates a transfer.
@@ -66,68 +77,127 @@ public class ChunkReceiverService {
 
     /**
      * Called on each incoming chunk PATCH request.
-     * Writes bytes at the correct offset, updates confirmedOffset in DB.
-     * Reject chunks for non-active and out of order transfers
+     * Writes bytes at the correct offset, checkpoints confirmedOffset to the DB.
+     * Chunks ahead of confirmedOffset are accepted within the receive window,
+     * written in place and held until the gap before them is filled.
+     * Reject chunks for non-active transfers and chunks beyond the window
      */
     @Transactional
     public ChunkAckResponse receiveChunk(UUID transferId, long offset, InputStream chunkStream) {
+        return receiveChunk(transferId, offset, chunkStream, null);
+    }
+
+    /**
+     * Receives a chunk sent with the CRC32C of its bytes, null when it came without one.
+     * The checksum is computed while the chunk is written, a chunk that does not match
+     * is rejected before its range is confirmed and the sender sends it again.
+     */
+    @Transactional
+    public ChunkAckResponse receiveChunk(UUID transferId, long offset, InputStream chunkStream, Long checksum) {
         FileTransfer transfer = transferRepository.findByTransferId(transferId)
                 .orElseThrow(() -> new FileTransferException("Transfer not found: " + transferId, null));
 
         if (transfer.getStatus() != TransferStatus.ACTIVE) {
+            receiveWindows.remove(transferId);
+            partialFileChannels.close(transferId);
             throw new FileTransferException(
                     "Transfer is not active: " + transfer.getStatus(), null
             );
         }
 
-        if (offset != transfer.getConfirmedOffset()) {
+        ReceiveWindow window = receiveWindows.computeIfAbsent(
+                transferId, id -> new ReceiveWindow(transfer.getConfirmedOffset()));
+
+        long confirmed = window.confirmedOffset();
+        if (offset > confirmed && offset - confirmed >= nexusConfig.getReceiveWindowBytes()) {
             throw new FileTransferException(
-                    "Unexpected offset. Expected: " + transfer.getConfirmedOffset() + " got: " + offset, null
+                    "Unexpected offset. Expected: " + confirmed + " got: " + offset, null
             );
         }
 
         Path partialFile = resolvePartialPath(transfer.getFileName());
-        long bytesWritten = writeChunkToDisk(partialFile, offset, chunkStream);
-        long newOffset = offset + bytesWritten;
+        long bytesWritten;
+        if (checksum == null) {
+            bytesWritten = partialFileChannels.write(transferId, partialFile, offset, chunkStream);
+        } else {
+            CheckedInputStream checked = new CheckedInputStream(chunkStream, new CRC32C());
+            bytesWritten = partialFileChannels.write(transferId, partialFile, offset, checked);
+            long actual = checked.getChecksum().getValue();
+            if (actual != checksum) {
+                throw new ChunkChecksumException(offset, checksum, actual);
+            }
+        }
 
-        transfer.setConfirmedOffset(newOffset);
-        transfer.setLastChunkAt(Instant.now());
+        long newOffset;
+        boolean complete;
+        synchronized (window) {
+            newOffset = window.record(offset, offset + bytesWritten);
+            complete = newOffset >= transfer.getFileSize() && window.markCompleted();
+        }
+
+        DurabilityPolicy durability = partialFileChannels.durabilityPolicy();
+        long durableOffset = forceIfDue(transferId, window, durability, complete);
+
+        boolean checkpoint;
+        synchronized (window) {
+            checkpoint = complete || window.checkpointDue(durableOffset,
+                    nexusConfig.getCheckpointIntervalBytes(), nexusConfig.getCheckpointIntervalMs());
+        }
 
-        boolean complete = newOffset >= transfer.getFileSize();
+        /* only forced offsets are persisted, any of them is safe, a stale commit only causes a resend */
+        transfer.setConfirmedOffset(durableOffset);
+        transfer.setLastChunkAt(Instant.now());
 
         if (complete) {
+            receiveWindows.remove(transferId);
+            partialFileChannels.close(transferId);
             transfer.setStatus(TransferStatus.COMPLETED);
             moveToFinalLocation(transfer, partialFile);
             logCompletedTransfer(transfer);
             log.info("Transfer completed: {}", transfer.getFileName());
         }
 
-        transferRepository.save(transfer);
+        // the window holds the live offset, the DB only gets checkpoints
+        if (checkpoint) {
+            transferRepository.save(transfer);
+        }
 
-        return new ChunkAckResponse(newOffset, complete);
+        return new ChunkAckResponse(newOffset, newOffset >= transfer.getFileSize(), durableOffset, durability);
     }
 
     /**
-     * Writes chunk bytes to disk at the given offset using RandomAccessFile.
+     * Forces the partial file when the durability policy asks for it and returns the
+     * offset known to be on disk. The offset is taken before the force, every range it
+     * covers was written before it started. The last range of a transfer is always forced.
      */
-    private long writeChunkToDisk(Path filePath, long offset, InputStream chunkStream) {
-        long bytesWritten = 0;
-        byte[] buffer = new byte[BUFFER_SIZE];
-
-        try (RandomAccessFile raf = new RandomAccessFile(filePath.toFile(), "rw")) {
-            raf.seek(offset);
+    private long forceIfDue(UUID transferId, ReceiveWindow window,
+                            DurabilityPolicy durability, boolean complete) {
+        if (durability == DurabilityPolicy.NONE) {
+            return window.confirmedOffset();
+        }
 
-            int bytesRead;
-            while ((bytesRead = chunkStream.read(buffer)) != -1) {
-                raf.write(buffer, 0, bytesRead);
-                bytesWritten += bytesRead;
+        long written;
+        synchronized (window) {
+            if (!complete && durability == DurabilityPolicy.GROUP_COMMIT
+                    && !window.forceDue(nexusConfig.getFsyncIntervalBytes(), nexusConfig.getFsyncIntervalMs())) {
+                return window.durableOffset();
             }
-
-        } catch (IOException e) {
-            throw new FileTransferException("Failed to write chunk at offset " + offset, e);
+            written = window.confirmedOffset();
         }
 
-        return bytesWritten;
+        partialFileChannels.force(transferId);
+        return window.forced(written);
+    }
+
+    /**
+     * Overlays the live receive window onto a loaded record,
+     * the DB copy lags behind by up to one checkpoint interval.
+     */
+    public void applyLiveOffsets(FileTransfer transfer) {
+        ReceiveWindow window = receiveWindows.get(transfer.getTransferId());
+        if (window != null) {
+            transfer.setConfirmedOffset(window.confirmedOffset());
+        }
     }
 
     /**
@@ -178,4 +248,92 @@ public class ChunkReceiverService {
             log.warn("Could not delete partial file for: {}", fileName);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * In-memory receive state for one live transfer.
+     * Tracks the contiguous confirmed offset plus written ranges beyond it,
+     * lost on restart, the sender then resends from the persisted offset.
+     */
+    private static class ReceiveWindow {
+        private long confirmedOffset;
+        private final TreeMap<Long, Long> pendingRanges = new TreeMap<>();
+        private boolean completed;
+        private long checkpointedOffset;
+        private long checkpointedAt = System.nanoTime();
+        private long durableOffset;
+        private long unforcedBytes;
+        private long forcedAt = System.nanoTime();
+
+        ReceiveWindow(long confirmedOffset) {
+            this.confirmedOffset = confirmedOffset;
+            this.checkpointedOffset = confirmedOffset;
+            // the persisted offset was forced, or persisted under NONE
+            this.durableOffset = confirmedOffset;
+        }
+
+        synchronized long confirmedOffset() {
+            return confirmedOffset;
+        }
+
+        /* records a written range [start, end) and returns the new contiguous offset */
+        synchronized long record(long start, long end) {
+            if (end <= start) {
+                return confirmedOffset;
+            }
+            unforcedBytes += end - start;
+            if (start <= confirmedOffset) {
+                confirmedOffset = Math.max(confirmedOffset, end);
+            } else {
+                pendingRanges.merge(start, end, Math::max);
+            }
+
+            Map.Entry<Long, Long> next;
+            while ((next = pendingRanges.firstEntry()) != null && next.getKey() <= confirmedOffset) {
+                confirmedOffset = Math.max(confirmedOffset, next.getValue());
+                pendingRanges.pollFirstEntry();
+            }
+            return confirmedOffset;
+        }
+
+        /* true when the byte or time interval since the last DB write has passed */
+        synchronized boolean checkpointDue(long offset, long intervalBytes, long intervalMs) {
+            long now = System.nanoTime();
+            if (offset - checkpointedOffset < intervalBytes
+                    && now - checkpointedAt < TimeUnit.MILLISECONDS.toNanos(intervalMs)) {
+                return false;
+            }
+            checkpointedOffset = offset;
+            checkpointedAt = now;
+            return true;
+        }
+
+        synchronized long durableOffset() {
+            return durableOffset;
+        }
+
+        /* true when the byte or time interval since the last force has passed, the caller forces */
+        synchronized boolean forceDue(long intervalBytes, long intervalMs) {
+            long now = System.nanoTime();
+            if (unforcedBytes < intervalBytes
+                    && now - forcedAt < TimeUnit.MILLISECONDS.toNanos(intervalMs)) {
+                return false;
+            }
+            unforcedBytes = 0;
+            forcedAt = now;
+            return true;
+        }
+
+        /* an offset taken before a completed force is on disk, forces may finish out of order */
+        synchronized long forced(long offset) {
+            durableOffset = Math.max(durableOffset, offset);
+            return durableOffset;
+        }
+
+        /* true only for the first caller, the file is moved exactly once */
+        synchronized boolean markCompleted() {
+            if (completed) return false;
+            completed = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.atamanahmet.beamlink.nexus.service;
+
+import com.atamanahmet.beamlink.nexus.config.NexusConfig;
+import com.atamanahmet.beamlink.nexus.domain.enums.DurabilityPolicy;
+import com.atamanahmet.beamlink.nexus.exception.FileTransferException;
+import com.atamanahmet.beamlink.common.storage.PartialFileWriter;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one open PartialFileWriter per live inbound transfer so chunks are written
+ * with positional writes instead of reopening the partial file for every chunk.
+ * Positional writes do not share a file pointer, concurrent chunks of the same
+ * transfer can be written in parallel.
+ * Partial files of at least upload.write-mode-min-size are written in upload.write-mode,
+ * smaller ones and files the mode cannot be used for are written through the page cache.
+ * Nothing is forced to disk here, the receiver forces a transfer as its durability policy asks.
+ */
+@Component
+@RequiredArgsConstructor
+public class PartialFileChannels {
+
+    private static final Logger log = LoggerFactory.getLogger(PartialFileChannels.class);
+
+    private final NexusConfig nexusConfig;
+
+    private final Map<UUID, PartialFileWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * Streams the chunk into the partial file at the given offset.
+     * Returns the number of bytes written.
+     */
+    public long write(UUID transferId, Path partialFile, long offset, InputStream chunkStream) {
+        PartialFileWriter writer = open(transferId, partialFile);
+
+        try {
+            return writer.write(offset, chunkStream);
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to write chunk at offset " + offset, e);
+        }
+    }
+
+    /**
+     * Forces the bytes written so far for the transfer to disk, nothing to do without an open writer.
+     */
+    public void force(UUID transferId) {
+        PartialFileWriter writer = writers.get(transferId);
+        if (writer == null) return;
+
+        try {
+            writer.force();
+        } catch (IOException e) {
+            throw new FileTransferException("Failed to force partial file of " + transferId, e);
+        }
+    }
+
+    /* GROUP_COMMIT unless configured otherwise */
+    public DurabilityPolicy durabilityPolicy() {
+        String configured = nexusConfig.getDurability();
+        if (configured == null || configured.isBlank()) return DurabilityPolicy.GROUP_COMMIT;
+        try {
+            return DurabilityPolicy.valueOf(configured.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown durability policy {}, forcing in groups", configured);
+            return DurabilityPolicy.GROUP_COMMIT;
+        }
+    }
+
+    /**
+     * Closes the cached writer of a transfer, if any.
+     * Called on completion before the file is moved, on pause/cancel and on expiry.
+     */
+    public void close(UUID transferId) {
+        PartialFileWriter writer = writers.remove(transferId);
+        if (writer == null) return;
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Could not close partial file channel for: {}", transferId);
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        writers.keySet().forEach(this::close);
+    }
+
+    private PartialFileWriter open(UUID transferId, Path partialFile) {
+        try {
+            return writers.computeIfAbsent(transferId, id -> {
+                try {
+                    return createWriter(partialFile);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new FileTransferException(
+                    "Failed to open partial file: " + partialFile, e.getCause());
+        }
+    }
+
+    private PartialFileWriter createWriter(Path partialFile) throws IOException {
+        PartialFileWriter.Mode mode = writeMode();
+        if (mode != PartialFileWriter.Mode.CHANNEL
+                && Files.exists(partialFile) && Files.size(partialFile) >= nexusConfig.getWriteModeMinSize()) {
+            try {
+                return PartialFileWriter.open(mode, partialFile, durabilityPolicy() != DurabilityPolicy.NONE);
+            } catch (IOException e) {
+                log.warn("{} writes not available for {}, writing through the page cache: {}",
+                        mode, partialFile, e.getMessage());
+            }
+        }
+        return PartialFileWriter.open(PartialFileWriter.Mode.CHANNEL, partialFile, false);
+    }
+
+    private PartialFileWriter.Mode writeMode() {
+        String configured = nexusConfig.getWriteMode();
+        if (configured == null || configured.isBlank()) return PartialFileWriter.Mode.CHANNEL;
+        try {
+            return PartialFileWriter.Mode.valueOf(configured.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("Unknown upload write mode {}, writing through the page cache", configured);
+            return PartialFileWriter.Mode.CHANNEL;
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package com.atamanahmet.beamlink.nexus.service;
 
+import com.atamanahmet.beamlink.nexus.config.NexusConfig;
 import com.atamanahmet.beamlink.nexus.domain.FileTransfer;
 import com.atamanahmet.beamlink.nexus.domain.enums.TransferStatus;
 import com.atamanahmet.beamlink.nexus.dto.ChunkAckResponse;
 import com.atamanahmet.beamlink.nexus.dto.TransferStats;
 import com.atamanahmet.beamlink.nexus.exception.FileTransferException;
 import com.atamanahmet.beamlink.nexus.repository.FileTransferRepository;
+import com.atamanahmet.beamlink.nexus.util.ChecksumFormat;
+import com.atamanahmet.beamlink.nexus.util.FileRegionBodyPublisher;
 import com.atamanahmet.beamlink.nexus.util.PathNormalizer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
@@ -15,14 +18,15 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
-import java.util.Arrays;
 import java.util.UUID;
 
 @Service
@@ -30,16 +34,28 @@ import java.util.UUID;
 public class TransferAsyncSender {
 
     private static final Logger log = LoggerFactory.getLogger(TransferAsyncSender.class);
-    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
     private static final int MAX_CHUNK_RETRIES = 3;
     private static final long RETRY_DELAY_MS = 2000;
 
     private final FileTransferRepository transferRepository;
     private final ObjectMapper objectMapper;
-
+    private final TransferProgressRegistry progressRegistry;
+    private final AdaptiveChunkSizer chunkSizer;
+    private final HttpClient httpClient;
+    private final NexusConfig nexusConfig;
 
     @Async
     public void sendAsync(UUID transferId, String targetIp, int targetPort, String targetToken) {
+        // registered before the record is read, a cancel landing in between is not missed
+        progressRegistry.register(transferId);
+        try {
+            doSend(transferId, targetIp, targetPort, targetToken);
+        } finally {
+            progressRegistry.unregister(transferId);
+        }
+    }
+
+    private void doSend(UUID transferId, String targetIp, int targetPort, String targetToken) {
         FileTransfer transfer = transferRepository.findByTransferId(transferId)
                 .orElse(null);
 
@@ -47,55 +63,56 @@ public class TransferAsyncSender {
             log.warn("Transfer not found, aborting async send: {}", transferId);
             return;
         }
-
-        HttpClient httpClient = HttpClient.newHttpClient();
+        progressRegistry.checkpointed(transferId, transfer.getConfirmedOffset());
 
         String baseUrl = "http://" + targetIp + ":" + targetPort;
 
         String cleanedPath = PathNormalizer.normalize(transfer.getFilePath());
 
-        try (RandomAccessFile raf = new RandomAccessFile(
-                Paths.get(cleanedPath).toFile(), "r")) {
+        try (FileChannel channel = FileChannel.open(
+                Paths.get(cleanedPath), StandardOpenOption.READ)) {
 
             long offset = transfer.getConfirmedOffset();
-            raf.seek(offset);
+            long fileLength = channel.size();
+            // one chunk is sent at a time, its buffer is reused by the next one
+            ByteBuffer buffer = null;
 
-            byte[] buffer = new byte[CHUNK_SIZE];
-            int bytesRead;
+            while (offset < fileLength) {
 
-            while ((bytesRead = raf.read(buffer)) != -1) {
-
-                transfer = transferRepository.findByTransferId(transferId)
-                        .orElse(null);
-
-                if (transfer == null) {
-                    log.warn("Transfer disappeared during send, stopping: {}", transferId);
-                    return;
-                }
+                // pause and cancel are signalled through the registry, not polled from the DB
+                TransferStatus signal = progressRegistry.signalled(transferId);
+                TransferStatus status = signal != null ? signal : transfer.getStatus();
 
-                if (transfer.getStatus() == TransferStatus.CANCELLED) {
+                if (status == TransferStatus.CANCELLED) {
                     log.info("Transfer cancelled: {}", transferId);
+                    persistSignal(transfer, signal);
                     return;
                 }
-                if (transfer.getStatus() == TransferStatus.PAUSED) {
+                if (status == TransferStatus.PAUSED) {
                     log.info("Transfer paused: {}", transferId);
+                    persistSignal(transfer, signal);
                     return;
                 }
 
-                byte[] chunk = Arrays.copyOf(buffer, bytesRead);
+                long chunkLength = Math.min(chunkSizer.nextChunkSize(baseUrl), fileLength - offset);
+                long chunkEnd = offset + chunkLength - 1;
 
-                long chunkEnd = offset + bytesRead - 1;
+                if (buffer == null || buffer.capacity() < chunkLength) {
+                    buffer = ByteBuffer.allocateDirect(Math.toIntExact(chunkLength));
+                }
+                // read once, retries replay the same buffer
+                HttpRequest.BodyPublisher chunk =
+                        FileRegionBodyPublisher.read(channel, offset, (int) chunkLength, buffer);
 
                 // Retry loop per chunk
                 ChunkAckResponse ack = sendChunkWithRetry(
-                        httpClient, baseUrl, transferId,
+                        baseUrl, transferId,
                         offset, chunkEnd, transfer.getFileSize(), chunk, targetToken
                 );
 
                 if (ack.getConfirmedOffset() < offset) {
                     log.warn("Receiver offset mismatch. Rewinding from {} to {}", offset, ack.getConfirmedOffset());
                     offset = ack.getConfirmedOffset();
-                    raf.seek(offset);
                     continue;
                 }
 
@@ -107,7 +124,6 @@ public class TransferAsyncSender {
 
                 transfer.setConfirmedOffset(offset);
                 transfer.setLastChunkAt(Instant.now());
-                transferRepository.save(transfer);
 
                 if (ack.isComplete()) {
                     transfer.setStatus(TransferStatus.COMPLETED);
@@ -115,6 +131,10 @@ public class TransferAsyncSender {
                     log.info("Transfer completed: {}", transferId);
                     return;
                 }
+
+                if (progressRegistry.checkpointDue(transferId, offset)) {
+                    transferRepository.save(transfer);
+                }
             }
 
         } catch (Exception e) {
@@ -127,27 +147,31 @@ public class TransferAsyncSender {
                                 ? (transfer.getConfirmedOffset() * 100 / transfer.getFileSize())
                                 : 0
                 );
-                markTransferStatus(TransferStatus.PAUSED,transferId, e.getMessage());
+                markTransferStatus(TransferStatus.PAUSED, transfer, e.getMessage());
             } else {
                 log.error("Transfer failed: {}", transferId, e);
-                markTransferStatus(TransferStatus.FAILED, transferId, e.getMessage());
+                markTransferStatus(TransferStatus.FAILED, transfer, e.getMessage());
             }
         }
     }
 
     private ChunkAckResponse sendChunkWithRetry(
-            HttpClient httpClient, String baseUrl, UUID transferId,
+            String baseUrl, UUID transferId,
             long offset, long chunkEnd, long fileSize,
-            byte[] chunk, String targetToken
+            HttpRequest.BodyPublisher chunk, String targetToken
     ) throws IOException, InterruptedException {
 
         Exception lastException = null;
 
         for (int attempt = 1; attempt <= MAX_CHUNK_RETRIES; attempt++) {
             try {
-                return sendChunk(httpClient, baseUrl, transferId,
+                long sentAt = System.nanoTime();
+                ChunkAckResponse ack = sendChunk(baseUrl, transferId,
                         offset, chunkEnd, fileSize, chunk, targetToken);
+                chunkSizer.acked(baseUrl, chunkEnd - offset + 1, System.nanoTime() - sentAt);
+                return ack;
             } catch (Exception e) {
+                chunkSizer.failed(baseUrl);
                 lastException = e;
                 log.warn("Chunk send failed (attempt {}/{}): {}", attempt, MAX_CHUNK_RETRIES, e.getMessage());
                 if (attempt < MAX_CHUNK_RETRIES) {
@@ -163,22 +187,25 @@ public class TransferAsyncSender {
     }
 
     private ChunkAckResponse sendChunk(
-            HttpClient httpClient, String baseUrl, UUID transferId,
+            String baseUrl, UUID transferId,
             long offset, long chunkEnd, long fileSize,
-            byte[] chunk, String targetToken
+            HttpRequest.BodyPublisher chunk, String targetToken
     ) throws IOException, InterruptedException {
 
         String contentRange = "bytes " + offset + "-" + chunkEnd + "/" + fileSize;
 
-        HttpRequest request = HttpRequest.newBuilder()
+        HttpRequest.Builder request = HttpRequest.newBuilder()
                 .uri(URI.create(baseUrl + "/api/transfers/" + transferId + "/chunk"))
                 .header("Content-Type", "application/octet-stream")
                 .header("Content-Range", contentRange)
                 .header("X-Auth-Token", targetToken != null ? targetToken : "")
-                .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(chunk))
-                .build();
+                .method("PATCH", chunk);
 
-        HttpResponse<String> response = httpClient.send(request,
+        if (nexusConfig.isChecksums() && chunk instanceof FileRegionBodyPublisher region) {
+            request.header(ChecksumFormat.CHUNK_HEADER, ChecksumFormat.format(region.crc32c()));
+        }
+
+        HttpResponse<String> response = httpClient.send(request.build(),
                 HttpResponse.BodyHandlers.ofString());
 
         if (response.statusCode() != 200) {
@@ -191,12 +218,18 @@ public class TransferAsyncSender {
         return objectMapper.readValue(response.body(), ChunkAckResponse.class);
     }
 
-    private void markTransferStatus(TransferStatus status, UUID transferId, String reason) {
-        transferRepository.findByTransferId(transferId).ifPresent(transfer -> {
-            transfer.setStatus(status);
-            transfer.setFailureReason(reason);
-            transferRepository.save(transfer);
-        });
+    /* a signalled stop is saved with the progress held back by the checkpoint interval */
+    private void persistSignal(FileTransfer transfer, TransferStatus signal) {
+        if (signal == null) return;
+        transfer.setStatus(signal);
+        transferRepository.save(transfer);
+    }
+
+    /* saves the in-memory record, it carries progress not yet checkpointed */
+    private void markTransferStatus(TransferStatus status, FileTransfer transfer, String reason) {
+        transfer.setStatus(status);
+        transfer.setFailureReason(reason);
+        transferRepository.save(transfer);
     }
 
     private boolean isConnectionError(Throwable e) {
@@ -26,6 +26,7 @@ public class TransferExpiryJob {
 
     private final FileTransferRepository transferRepository;
     private final NexusConfig nexusConfig;
+    private final PartialFileChannels partialFileChannels;
 
     @Scheduled(fixedDelay = 3_600_000)
     @Transactional
@@ -42,6 +43,7 @@ public class TransferExpiryJob {
 
         for (FileTransfer transfer : stale) {
             transfer.setStatus(TransferStatus.EXPIRED);
+            partialFileChannels.close(transfer.getTransferId());
             deletePartialFile(transfer.getFileName());
             log.info("Transfer expired: {} ({})", transfer.getFileName(), transfer.getTransferId());
         }
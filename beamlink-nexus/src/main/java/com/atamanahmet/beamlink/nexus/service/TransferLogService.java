@@ -3,6 +3,7 @@ package com.atamanahmet.beamlink.nexus.service;
 import com.atamanahmet.beamlink.nexus.domain.TransferLog;
 import com.atamanahmet.beamlink.nexus.dto.LogSyncRequest;
 import com.atamanahmet.beamlink.nexus.dto.TransferStats;
+import com.atamanahmet.beamlink.nexus.metrics.NexusMetrics;
 import com.atamanahmet.beamlink.nexus.repository.TransferLogRepository;
 
 import lombok.RequiredArgsConstructor;
@@ -30,9 +31,11 @@ public class TransferLogService {
     private final Logger log = LoggerFactory.getLogger(TransferLogService.class);
 
     private final TransferLogRepository transferLogRepository;
+    private final NexusMetrics metrics;
 
     @Transactional
     public List<UUID> sync(UUID agentId, List<LogSyncRequest> incoming) {
+        metrics.logSynced(incoming.size());
 
         List<TransferLog> toSave = incoming.stream()
                 .filter(r -> r.getId() != null)
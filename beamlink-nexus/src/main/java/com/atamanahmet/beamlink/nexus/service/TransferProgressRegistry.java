@@ -0,0 +1,92 @@
+package com.atamanahmet.beamlink.nexus.service;
+
+import com.atamanahmet.beamlink.nexus.config.NexusConfig;
+import com.atamanahmet.beamlink.nexus.domain.enums.TransferStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory state of the transfers this nexus is currently sending.
+ * Authoritative while a transfer is live: pause and cancel are signalled here
+ * instead of being polled from the DB before every chunk, and confirmedOffset
+ * is written behind on a checkpoint interval instead of on every ack.
+ * Lost on restart, startup recovery reconciles offsets with the target.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransferProgressRegistry {
+
+    private final NexusConfig nexusConfig;
+
+    private final Map<UUID, LiveTransfer> live = new ConcurrentHashMap<>();
+
+    /**
+     * Starts tracking a transfer about to be sent
+     */
+    public void register(UUID transferId) {
+        live.put(transferId, new LiveTransfer());
+    }
+
+    /* progress up to confirmedOffset is persisted */
+    public void checkpointed(UUID transferId, long confirmedOffset) {
+        LiveTransfer transfer = live.get(transferId);
+        if (transfer == null) return;
+
+        synchronized (transfer) {
+            transfer.checkpointedOffset = confirmedOffset;
+            transfer.checkpointedAt = System.nanoTime();
+        }
+    }
+
+    public void unregister(UUID transferId) {
+        live.remove(transferId);
+    }
+
+    /**
+     * Asks a live sender to stop before its next chunk.
+     * Returns false when the transfer is not being sent by this nexus.
+     */
+    public boolean signal(UUID transferId, TransferStatus status) {
+        LiveTransfer transfer = live.get(transferId);
+        if (transfer == null) return false;
+        transfer.signal = status;
+        return true;
+    }
+
+    /* the signalled stop status, null while the transfer should keep going */
+    public TransferStatus signalled(UUID transferId) {
+        LiveTransfer transfer = live.get(transferId);
+        return transfer != null ? transfer.signal : null;
+    }
+
+    /**
+     * True when confirmedOffset should be written now, either the byte or the time
+     * interval since the last checkpoint has passed. Untracked transfers always write.
+     */
+    public boolean checkpointDue(UUID transferId, long confirmedOffset) {
+        LiveTransfer transfer = live.get(transferId);
+        if (transfer == null) return true;
+
+        synchronized (transfer) {
+            long now = System.nanoTime();
+            boolean due = confirmedOffset - transfer.checkpointedOffset >= nexusConfig.getCheckpointIntervalBytes()
+                    || now - transfer.checkpointedAt >= TimeUnit.MILLISECONDS.toNanos(nexusConfig.getCheckpointIntervalMs());
+            if (due) {
+                transfer.checkpointedOffset = confirmedOffset;
+                transfer.checkpointedAt = now;
+            }
+            return due;
+        }
+    }
+
+    private static class LiveTransfer {
+        private volatile TransferStatus signal;
+        private long checkpointedOffset;
+        private long checkpointedAt = System.nanoTime();
+    }
+}
@@ -40,6 +40,7 @@ public class TransferSenderService {
     private final NexusConfig nexusConfig;
     private final ObjectMapper objectMapper;
     private final TransferAsyncSender asyncSender;
+    private final HttpClient httpClient;
 
     /**
      * Called by TransferController when UI initiates a transfer.
@@ -135,7 +136,6 @@ public class TransferSenderService {
     }
 
     private long queryTargetOffset(FileTransfer transfer) {
-        HttpClient httpClient = HttpClient.newHttpClient();
         String url = "http://" + transfer.getTargetIp() + ":"
                 + transfer.getTargetPort()
                 + "/api/transfers/" + transfer.getTransferId() + "/offset";
@@ -176,8 +176,6 @@ public class TransferSenderService {
             String fileName,
             long fileSize
     ) throws FileTransferException {
-        HttpClient httpClient = HttpClient.newHttpClient();
-
         try {
             String body = objectMapper.writeValueAsString(Map.of(
                     "transferId", transferId.toString(),
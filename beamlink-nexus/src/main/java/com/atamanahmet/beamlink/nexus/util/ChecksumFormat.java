@@ -0,0 +1,37 @@
+package com.atamanahmet.beamlink.nexus.util;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C checksums of transferred chunks, CRC32C is computed by a CPU instruction on current
+ * hardware and keeps up with any link. A chunk carries the checksum of its body in the
+ * CHUNK_HEADER as 8 hex digits.
+ */
+public final class ChecksumFormat {
+
+    public static final String CHUNK_HEADER = "X-Chunk-Crc32c";
+
+    private ChecksumFormat() {
+    }
+
+    public static String format(long crc) {
+        return String.format("%08x", crc);
+    }
+
+    /* the checksum of a chunk header, IllegalArgumentException when it is not 8 hex digits */
+    public static long parse(String header) {
+        String value = header.trim();
+        if (value.isEmpty() || value.length() > 8) {
+            throw new IllegalArgumentException("Invalid CRC32C: " + header);
+        }
+        return Long.parseLong(value, 16);
+    }
+
+    /* checksum of the remaining bytes of the buffer, its position is left as it is */
+    public static long crc32c(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        return crc.getValue();
+    }
+}
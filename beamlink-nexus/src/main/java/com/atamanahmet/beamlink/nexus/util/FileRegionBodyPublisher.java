@@ -0,0 +1,120 @@
+package com.atamanahmet.beamlink.nexus.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request body backed by a region of a file read into a direct buffer.
+ * Slices of the buffer are published as-is, file bytes go to the socket
+ * without another copy into the Java heap. Each subscription reads a fresh
+ * view of the same buffer, so a retry replays the region without re-reading it.
+ * The region is a copy, not a mapping, a file cut short while it is sent fails the
+ * chunk instead of faulting the JVM on the checksum.
+ */
+public class FileRegionBodyPublisher implements HttpRequest.BodyPublisher {
+
+    private static final int SLICE_SIZE = 256 * 1024;
+
+    private final ByteBuffer region;
+
+    /* CRC32C of the region, computed by the first attempt, retries reuse it */
+    private volatile Long crc32c;
+
+    private FileRegionBodyPublisher(ByteBuffer region) {
+        this.region = region;
+    }
+
+    /**
+     * Reads [position, position + length) of the channel into the buffer with positional reads.
+     * The buffer is the caller's to reuse once the chunk has been answered.
+     * EOFException when the file ends before the region does.
+     */
+    public static FileRegionBodyPublisher read(FileChannel channel, long position, int length, ByteBuffer buffer)
+            throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("File ended at " + (position + buffer.position())
+                        + " before the chunk ending at " + (position + length));
+            }
+        }
+        return new FileRegionBodyPublisher(buffer.flip());
+    }
+
+    public long crc32c() {
+        Long crc = crc32c;
+        if (crc == null) {
+            crc = ChecksumFormat.crc32c(region);
+            crc32c = crc;
+        }
+        return crc;
+    }
+
+    @Override
+    public long contentLength() {
+        return region.limit();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new RegionSubscription(subscriber, region.duplicate()));
+    }
+
+    /**
+     * Emits slices of the region as demand arrives.
+     * Reentrant request calls from onNext are folded into the running drain loop.
+     */
+    private static class RegionSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final ByteBuffer region;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger draining = new AtomicInteger();
+        private volatile boolean cancelled;
+
+        RegionSubscription(Flow.Subscriber<? super ByteBuffer> subscriber, ByteBuffer region) {
+            this.subscriber = subscriber;
+            this.region = region;
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) return;
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (draining.getAndIncrement() != 0) return;
+
+            do {
+                while (!cancelled && demand.get() > 0 && region.hasRemaining()) {
+                    int size = Math.min(SLICE_SIZE, region.remaining());
+                    ByteBuffer slice = region.slice(region.position(), size);
+                    region.position(region.position() + size);
+                    demand.decrementAndGet();
+                    subscriber.onNext(slice);
+                }
+                if (!cancelled && !region.hasRemaining()) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                }
+            } while (draining.decrementAndGet() != 0);
+        }
+    }
+}
@@ -8,6 +8,8 @@ import com.atamanahmet.beamlink.nexus.dto.AgentDTO;
 import com.atamanahmet.beamlink.nexus.dto.LogSyncRequest;
 import com.atamanahmet.beamlink.nexus.dto.StatusUpdatePayload;
 import com.atamanahmet.beamlink.nexus.dto.WebSocketMessageDTO;
+import com.atamanahmet.beamlink.nexus.jfr.WsMessageEvent;
+import com.atamanahmet.beamlink.nexus.metrics.NexusMetrics;
 import com.atamanahmet.beamlink.nexus.repository.FileTransferRepository;
 import com.atamanahmet.beamlink.nexus.service.AgentSessionService;
 import com.atamanahmet.beamlink.nexus.service.PeerListService;
@@ -24,6 +26,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,11 +42,15 @@ public class AgentWebSocketHandler implements WebSocketHandler {
     private final TransferLogService transferLogService;
     private final TransferSenderService transferSenderService;
     private final FileTransferRepository fileTransferRepository;
+    private final NexusMetrics metrics;
 
 
     private static final UUID NEXUS_ID = UUID.fromString("00000000-0000-0000-0000-000000000000");
     private static final UUID NEXUS_PUBLIC_ID = UUID.fromString("00000000-0000-0000-0000-000000000001");
 
+    /* message counts are tagged with these, anything else as unknown */
+    private static final Set<String> MESSAGE_TYPES = Set.of("status_update", "peer_update", "log_sync");
+
     private final Map<UUID, WebSocketSession> sessions = new ConcurrentHashMap<>();
 
     @Override
@@ -51,6 +58,7 @@ public class AgentWebSocketHandler implements WebSocketHandler {
         UUID agentId = getAgentId(session);
         if (agentId != null) {
             sessions.put(agentId, session);
+            metrics.sessions(sessions.size());
             log.info("Agent {} connected via WS", agentId);
             resumePausedTransfers(agentId);
         }
@@ -72,10 +80,29 @@ public class AgentWebSocketHandler implements WebSocketHandler {
 
     @Override
     public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        WsMessageEvent event = new WsMessageEvent();
+        event.begin();
+        try {
+            dispatch(session, message, event);
+        } finally {
+            if (event.shouldCommit()) {
+                UUID agentId = getAgentId(session);
+                event.agentId = agentId != null ? agentId.toString() : null;
+                event.payloadSize = message.getPayloadLength();
+                event.commit();
+            }
+        }
+    }
+
+    private void dispatch(WebSocketSession session, WebSocketMessage<?> message, WsMessageEvent event)
+            throws Exception {
         WebSocketMessageDTO<JsonNode> envelope = objectMapper.readValue(
                 message.getPayload().toString(),
                 objectMapper.getTypeFactory().constructParametricType(WebSocketMessageDTO.class, JsonNode.class));
 
+        event.type = envelope.getType();
+        metrics.messageReceived(MESSAGE_TYPES.contains(envelope.getType()) ? envelope.getType() : "unknown");
+
         switch (envelope.getType()) {
             case "status_update" -> handleStatusUpdate(session,
                     objectMapper.treeToValue(envelope.getPayload(), StatusUpdatePayload.class));
@@ -165,6 +192,7 @@ public class AgentWebSocketHandler implements WebSocketHandler {
         UUID agentId = getAgentId(session);
         if (agentId != null) {
             sessions.remove(agentId);
+            metrics.sessions(sessions.size());
             agentSessionService.markOffline(agentId);
             log.info("Agent {} WS session closed: {}", agentId, closeStatus);
         }